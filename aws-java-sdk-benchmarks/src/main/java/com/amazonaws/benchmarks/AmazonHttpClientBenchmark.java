@@ -0,0 +1,165 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.Signer;
+import com.amazonaws.http.AmazonHttpClient;
+import com.amazonaws.http.ExecutionContext;
+import com.amazonaws.http.HttpClient;
+import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.http.JsonErrorResponseHandler;
+import com.amazonaws.http.JsonResponseHandler;
+import com.amazonaws.http.NioHttpClient;
+import com.amazonaws.http.UrlHttpClient;
+import com.amazonaws.services.kms.model.ListKeysResult;
+import com.amazonaws.services.kms.model.transform.ListKeysResultJsonUnmarshaller;
+import com.amazonaws.transform.JsonErrorUnmarshaller;
+import com.amazonaws.util.StringUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end execution of signed requests by {@link AmazonHttpClient}, over
+ * each transport, against a stub server in the same process. The server
+ * answers every request with the same small JSON document, so the benchmark
+ * measures the overhead of the client rather than the network. Nagle's
+ * algorithm is disabled on the server, which would otherwise hold back the
+ * body of each response until the client acknowledges its headers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@Threads(4)
+@State(Scope.Benchmark)
+public class AmazonHttpClientBenchmark {
+
+    private static final byte[] RESPONSE = ("{\"Keys\":[{\"KeyArn\":"
+            + "\"arn:aws:kms:us-east-1:111122223333:key/1234abcd-12ab-34cd-56ef-1234567890ab\","
+            + "\"KeyId\":\"1234abcd-12ab-34cd-56ef-1234567890ab\"}],\"Truncated\":false}")
+            .getBytes(StringUtils.UTF8);
+    private static final int SERVER_THREADS = 8;
+    private static final int BUFFER_SIZE = 1024;
+
+    /** The transport: "url" for {@link UrlHttpClient}, "nio" for {@link NioHttpClient}. */
+    @Param({"url", "nio"})
+    private String transport;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private AmazonHttpClient client;
+    private URI endpoint;
+    private final Signer signer = new AWS4Signer();
+    private final JsonResponseHandler<ListKeysResult> responseHandler =
+            new JsonResponseHandler<ListKeysResult>(ListKeysResultJsonUnmarshaller.getInstance());
+    private final JsonErrorResponseHandler errorResponseHandler = new JsonErrorResponseHandler(
+            new ArrayList<JsonErrorUnmarshaller>());
+
+    @Setup
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final InputStream body = exchange.getRequestBody();
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                while (body.read(buffer) != -1) {
+                    // Drain the request
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/x-amz-json-1.1");
+                exchange.sendResponseHeaders(200, RESPONSE.length);
+                exchange.getResponseBody().write(RESPONSE);
+                exchange.close();
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(SERVER_THREADS);
+        server.setExecutor(serverExecutor);
+        server.start();
+        endpoint = URI.create("http://localhost:" + server.getAddress().getPort());
+
+        ((AWS4Signer) signer).setServiceName("kms");
+        ((AWS4Signer) signer).setRegionName("us-east-1");
+        final ClientConfiguration config = new ClientConfiguration();
+        final HttpClient httpClient = "nio".equals(transport)
+                ? new NioHttpClient(config)
+                : new UrlHttpClient(config);
+        client = new AmazonHttpClient(config, httpClient);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.shutdown();
+        server.stop(0);
+        serverExecutor.shutdown();
+    }
+
+    @Benchmark
+    public ListKeysResult execute() {
+        final Request<AmazonWebServiceRequest> request = new DefaultRequest<AmazonWebServiceRequest>(
+                "AWSKMS");
+        request.setHttpMethod(HttpMethodName.POST);
+        request.setEndpoint(endpoint);
+        request.addHeader("X-Amz-Target", "TrentService.ListKeys");
+        request.addHeader("Content-Type", "application/x-amz-json-1.1");
+        final byte[] content = "{\"Limit\":100}".getBytes(StringUtils.UTF8);
+        request.addHeader("Content-Length", Integer.toString(content.length));
+        request.setContent(new ByteArrayInputStream(content));
+
+        final ExecutionContext executionContext = new ExecutionContext() {
+            @Override
+            public Signer getSignerByURI(URI uri) {
+                return signer;
+            }
+        };
+        executionContext.setCredentials(new BasicAWSCredentials("AKIDEXAMPLE",
+                "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY"));
+        return client.execute(request, responseHandler, errorResponseHandler, executionContext)
+                .getAwsResponse();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.util.Base16;
+import com.amazonaws.util.Base64;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding with {@link Base64} and {@link Base16}: MD5 digests
+ * (16 bytes) are encoded for every upload, larger values for KMS and
+ * encryption metadata.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    private int size;
+
+    private byte[] bytes;
+    private String base64;
+    private String base16;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        new Random(1).nextBytes(bytes);
+        base64 = Base64.encodeAsString(bytes);
+        base16 = Base16.encodeAsString(bytes);
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return Base64.encodeAsString(bytes);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64.decode(base64);
+    }
+
+    @Benchmark
+    public String base16Encode() {
+        return Base16.encodeAsString(bytes);
+    }
+
+    @Benchmark
+    public byte[] base16Decode() {
+        return Base16.decode(base16);
+    }
+}
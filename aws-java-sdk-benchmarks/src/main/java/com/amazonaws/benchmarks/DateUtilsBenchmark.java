@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.util.DateUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting and parsing of the date formats of {@link DateUtils}: every
+ * request is signed with a compressed ISO 8601 date, and every object listing
+ * holds one ISO 8601 date per key.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DateUtilsBenchmark {
+
+    private final Date date = new Date(1528374896123L);
+    private final String iso8601 = DateUtils.formatISO8601Date(date);
+    private final String rfc822 = DateUtils.formatRFC822Date(date);
+
+    @Benchmark
+    public String formatISO8601() {
+        return DateUtils.formatISO8601Date(date);
+    }
+
+    @Benchmark
+    public String formatRFC822() {
+        return DateUtils.formatRFC822Date(date);
+    }
+
+    @Benchmark
+    public String formatCompressedISO8601() {
+        return DateUtils.format(DateUtils.COMPRESSED_DATE_PATTERN, date);
+    }
+
+    @Benchmark
+    public Date parseISO8601() {
+        return DateUtils.parseISO8601Date(iso8601);
+    }
+
+    @Benchmark
+    public Date parseRFC822() {
+        return DateUtils.parseRFC822Date(rfc822);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.services.kms.model.ListKeysResult;
+import com.amazonaws.services.kms.model.transform.ListKeysResultJsonUnmarshaller;
+import com.amazonaws.transform.JsonUnmarshallerContext;
+import com.amazonaws.util.StringUtils;
+import com.amazonaws.util.json.JsonUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unmarshalling of a JSON service response through a
+ * {@link JsonUnmarshallerContext}, with the generated unmarshaller of the AWS
+ * KMS ListKeys operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonUnmarshallerBenchmark {
+
+    /** The number of keys in the response. */
+    @Param({"10", "1000"})
+    private int keys;
+
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        final StringBuilder json = new StringBuilder("{\"Keys\":[");
+        for (int i = 0; i < keys; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            final String keyId = String.format("1234abcd-12ab-34cd-56ef-%012d", i);
+            json.append("{\"KeyArn\":\"arn:aws:kms:us-east-1:111122223333:key/")
+                    .append(keyId).append("\",\"KeyId\":\"").append(keyId).append("\"}");
+        }
+        json.append("],\"NextMarker\":\"eyJ2IjoxLCJzIjoxLCJjIjowfQ\",\"Truncated\":true}");
+        response = json.toString().getBytes(StringUtils.UTF8);
+    }
+
+    @Benchmark
+    public ListKeysResult unmarshallListKeys() throws Exception {
+        final JsonUnmarshallerContext context = new JsonUnmarshallerContext(
+                JsonUtils.getJsonReader(new InputStreamReader(
+                        new ByteArrayInputStream(response), StringUtils.UTF8)));
+        return ListKeysResultJsonUnmarshaller.getInstance().unmarshall(context);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.services.s3.internal.MD5DigestCalculatingInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an upload through {@link MD5DigestCalculatingInputStream}, as
+ * Amazon S3 puts and part uploads do to validate the returned ETag. The
+ * digest dominates; compare with {@link #readPlain()} for the bare copy.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MD5DigestCalculatingInputStreamBenchmark {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    @Param({"65536", "8388608"})
+    private int size;
+
+    private byte[] content;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    @Setup
+    public void setup() {
+        content = new byte[size];
+        new Random(1).nextBytes(content);
+    }
+
+    @Benchmark
+    public byte[] readWithDigest() throws IOException {
+        final MD5DigestCalculatingInputStream in = new MD5DigestCalculatingInputStream(
+                new ByteArrayInputStream(content));
+        while (in.read(buffer) != -1) {
+            // Only the digest is of interest
+        }
+        in.close();
+        return in.getMd5Digest();
+    }
+
+    @Benchmark
+    public int readPlain() throws IOException {
+        final ByteArrayInputStream in = new ByteArrayInputStream(content);
+        int total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.internal.AWSS3V4Signer;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing with {@link AWS4Signer}, and with {@link AWSS3V4Signer} for an
+ * Amazon S3 put whose payload is signed chunk by chunk while it's read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignerBenchmark {
+
+    private static final URI ENDPOINT = URI.create("https://bucket.s3.amazonaws.com");
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /** The size of the payload of the put, in bytes. */
+    @Param({"0", "1048576"})
+    private int payloadSize;
+
+    private final AWSCredentials credentials = new BasicAWSCredentials("AKIDEXAMPLE",
+            "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY");
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private AWS4Signer signer;
+    private AWSS3V4Signer s3Signer;
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        signer = new AWS4Signer();
+        signer.setServiceName("s3");
+        signer.setRegionName("us-east-1");
+        s3Signer = new AWSS3V4Signer();
+        s3Signer.setServiceName("s3");
+        s3Signer.setRegionName("us-east-1");
+        payload = new byte[payloadSize];
+        new Random(1).nextBytes(payload);
+    }
+
+    @Benchmark
+    public Request<?> signGet() {
+        final Request<Void> request = new DefaultRequest<Void>("Amazon S3");
+        request.setHttpMethod(HttpMethodName.GET);
+        request.setEndpoint(ENDPOINT);
+        request.setResourcePath("/photos/2018/06/07/IMG_0001.jpg");
+        request.addParameter("versionId", "3HL4kqtJlcpXroDTDmJ+rmSpXd3dIbrHY");
+        signer.sign(request, credentials);
+        return request;
+    }
+
+    @Benchmark
+    public long signChunkedPut() throws IOException {
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(payload.length);
+        final PutObjectRequest putObjectRequest = new PutObjectRequest("bucket",
+                "photos/IMG_0001.jpg", new ByteArrayInputStream(payload), metadata);
+        final Request<PutObjectRequest> request = new DefaultRequest<PutObjectRequest>(
+                putObjectRequest, "Amazon S3");
+        request.setHttpMethod(HttpMethodName.PUT);
+        request.setEndpoint(ENDPOINT);
+        request.setResourcePath("/photos/IMG_0001.jpg");
+        request.addHeader(Headers.CONTENT_LENGTH, String.valueOf(payload.length));
+        request.setContent(new ByteArrayInputStream(payload));
+        s3Signer.sign(request, credentials);
+
+        final InputStream content = request.getContent();
+        long total = 0;
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+}
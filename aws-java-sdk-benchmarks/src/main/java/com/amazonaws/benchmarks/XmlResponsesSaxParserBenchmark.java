@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.transform.XmlResponsesSaxParser;
+import com.amazonaws.util.StringUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of Amazon S3 object listings with {@link XmlResponsesSaxParser}. A
+ * full page holds 1000 keys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlResponsesSaxParserBenchmark {
+
+    /** The number of keys in the listing. */
+    @Param({"10", "1000"})
+    private int keys;
+
+    private byte[] listing;
+
+    @Setup
+    public void setup() {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>bucket</Name><Prefix>photos/</Prefix><Marker></Marker>")
+                .append("<MaxKeys>1000</MaxKeys><IsTruncated>true</IsTruncated>");
+        for (int i = 0; i < keys; i++) {
+            xml.append("<Contents><Key>photos/2018/06/07/IMG_").append(i)
+                    .append(".jpg</Key><LastModified>2018-06-07T12:34:56.000Z</LastModified>")
+                    .append("<ETag>&quot;fba9dede5f27731c9771645a39863328&quot;</ETag>")
+                    .append("<Size>").append(434234 + i).append("</Size>")
+                    .append("<Owner><ID>75aa57f09aa0c8caeab4f8c24e99d10f8e7faeebf76c078efc7c6caea54ba06a")
+                    .append("</ID><DisplayName>mtd@amazon.com</DisplayName></Owner>")
+                    .append("<StorageClass>STANDARD</StorageClass></Contents>");
+        }
+        xml.append("</ListBucketResult>");
+        listing = xml.toString().getBytes(StringUtils.UTF8);
+    }
+
+    @Benchmark
+    public ObjectListing parseListBucketObjects() throws IOException {
+        return new XmlResponsesSaxParser()
+                .parseListBucketObjectsResponse(new ByteArrayInputStream(listing), false)
+                .getObjectListing();
+    }
+}
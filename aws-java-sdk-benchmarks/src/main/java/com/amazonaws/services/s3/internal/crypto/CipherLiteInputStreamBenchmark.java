@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypting and decrypting an object through {@link CipherLiteInputStream},
+ * as the S3 encryption client does for uploads and downloads, with AES/CBC
+ * (encryption only mode), AES/CTR (ranged gets) and AES/GCM (authenticated
+ * encryption mode). As in the client, AES/GCM runs on Bouncy Castle, which
+ * streams the plaintext out as it decrypts. The 2 KB buffer size is the one
+ * the client used to read with; compare with 16 KB to see the effect of larger
+ * blocks. The scores are in objects per second, so multiply by the size for
+ * the throughput.
+ * <p>
+ * The benchmark lives in the package of the stream because cipher lites are
+ * package private.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CipherLiteInputStreamBenchmark {
+
+    private static final int READ_SIZE = 8 * 1024;
+
+    @Param({"CBC", "CTR", "GCM"})
+    private String mode;
+
+    @Param({"2048", "16384"})
+    private int bufferSize;
+
+    @Param({"8388608"})
+    private int size;
+
+    private SecretKey key;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+    private final byte[] buffer = new byte[READ_SIZE];
+
+    @Setup
+    public void setup() throws Exception {
+        final Random random = new Random(1);
+        final byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "AES");
+        plaintext = new byte[size];
+        random.nextBytes(plaintext);
+        CryptoRuntime.enableBouncyCastle();
+        ciphertext = newCipher(Cipher.ENCRYPT_MODE).doFinal(plaintext);
+    }
+
+    private CipherLite newCipher(int cipherMode) throws Exception {
+        final ContentCryptoScheme scheme;
+        if ("CBC".equals(mode)) {
+            scheme = ContentCryptoScheme.AES_CBC;
+        } else if ("CTR".equals(mode)) {
+            scheme = ContentCryptoScheme.AES_CTR;
+        } else {
+            scheme = ContentCryptoScheme.AES_GCM;
+        }
+        return scheme.createCipherLite(key, new byte[scheme.getIVLengthInBytes()], cipherMode);
+    }
+
+    private long readAll(CipherLiteInputStream in) throws IOException {
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        in.close();
+        return total;
+    }
+
+    @Benchmark
+    public long encrypt() throws Exception {
+        return readAll(new CipherLiteInputStream(new ByteArrayInputStream(plaintext),
+                newCipher(Cipher.ENCRYPT_MODE), bufferSize));
+    }
+
+    @Benchmark
+    public long decrypt() throws Exception {
+        return readAll(new CipherLiteInputStream(new ByteArrayInputStream(ciphertext),
+                newCipher(Cipher.DECRYPT_MODE), bufferSize));
+    }
+}
@@ -24,8 +24,8 @@ import com.amazonaws.handlers.RequestHandler;
 import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.http.AmazonHttpClient;
 import com.amazonaws.http.ExecutionContext;
+import com.amazonaws.http.HttpClientFactory;
 import com.amazonaws.http.HttpClient;
-import com.amazonaws.http.UrlHttpClient;
 import com.amazonaws.metrics.AwsSdkMetrics;
 import com.amazonaws.metrics.RequestMetricCollector;
 import com.amazonaws.regions.Region;
@@ -116,7 +116,7 @@ public abstract class AmazonWebServiceClient {
      */
     protected AmazonWebServiceClient(
             final ClientConfiguration clientConfiguration) {
-        this(clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(clientConfiguration, HttpClientFactory.createTransport(clientConfiguration));
     }
 
     /**
@@ -131,7 +131,7 @@ public abstract class AmazonWebServiceClient {
     protected AmazonWebServiceClient(
             final ClientConfiguration clientConfiguration,
             final RequestMetricCollector requestMetricCollector) {
-        this(clientConfiguration, new UrlHttpClient(clientConfiguration), null);
+        this(clientConfiguration, HttpClientFactory.createTransport(clientConfiguration), null);
     }
 
     /**
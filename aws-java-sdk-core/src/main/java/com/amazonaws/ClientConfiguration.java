@@ -39,6 +39,9 @@ public class ClientConfiguration {
     /** The default max connection pool size. */
     public static final int DEFAULT_MAX_CONNECTIONS = 10;
 
+    /** The default maximum number of concurrent streams per HTTP/2 connection. */
+    public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
     /** The default HTTP user agent header for AWS Java SDK clients. */
     public static final String DEFAULT_USER_AGENT = VersionInfoUtils.getUserAgent();
 
@@ -184,6 +187,14 @@ public class ClientConfiguration {
      */
     private boolean enableGzip = false;
 
+    /** The HTTP version used by the default transport. */
+    private HttpVersion httpVersion = HttpVersion.HTTP_1_1;
+
+    /**
+     * The maximum number of requests multiplexed on one HTTP/2 connection.
+     */
+    private int maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+
     /**
      * Constructor.
      */
@@ -217,6 +228,8 @@ public class ClientConfiguration {
         this.trustManager = other.trustManager;
         this.curlLogging = other.curlLogging;
         this.enableGzip = other.enableGzip;
+        this.httpVersion = other.httpVersion;
+        this.maxConcurrentStreams = other.maxConcurrentStreams;
     }
 
     /**
@@ -1132,4 +1145,80 @@ public class ClientConfiguration {
         setEnableGzip(enableGzip);
         return this;
     }
+
+    /**
+     * Returns the HTTP version the default transport uses to talk to Amazon
+     * Web Services. Defaults to {@link HttpVersion#HTTP_1_1}.
+     *
+     * @return the HTTP version.
+     */
+    public HttpVersion getHttpVersion() {
+        return httpVersion;
+    }
+
+    /**
+     * Sets the HTTP version the default transport uses to talk to Amazon Web
+     * Services. With {@link HttpVersion#HTTP_2}, requests to the same endpoint
+     * are multiplexed over a few connections; endpoints that do not negotiate
+     * HTTP/2 are still reached over HTTP/1.1.
+     *
+     * @param httpVersion the HTTP version.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public void setHttpVersion(HttpVersion httpVersion) {
+        this.httpVersion = httpVersion;
+    }
+
+    /**
+     * Sets the HTTP version the default transport uses, and returns the
+     * updated ClientConfiguration object so that additional calls may be
+     * chained together.
+     *
+     * @param httpVersion the HTTP version.
+     * @return The updated ClientConfiguration object.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ClientConfiguration withHttpVersion(HttpVersion httpVersion) {
+        setHttpVersion(httpVersion);
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of requests executed concurrently on one
+     * HTTP/2 connection. Once all connections to an endpoint carry this many
+     * requests, a new connection is opened, up to
+     * {@link #getMaxConnections()}. Servers may impose a lower limit.
+     *
+     * @return the maximum number of concurrent streams per connection.
+     */
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    /**
+     * Sets the maximum number of requests executed concurrently on one HTTP/2
+     * connection.
+     *
+     * @param maxConcurrentStreams the maximum number of concurrent streams
+     *            per connection.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    /**
+     * Sets the maximum number of requests executed concurrently on one HTTP/2
+     * connection, and returns the updated ClientConfiguration object so that
+     * additional calls may be chained together.
+     *
+     * @param maxConcurrentStreams the maximum number of concurrent streams
+     *            per connection.
+     * @return The updated ClientConfiguration object.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ClientConfiguration withMaxConcurrentStreams(int maxConcurrentStreams) {
+        setMaxConcurrentStreams(maxConcurrentStreams);
+        return this;
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws;
+
+/**
+ * Represents the HTTP version the default transport uses when sending
+ * requests to AWS.
+ */
+public enum HttpVersion {
+
+    /**
+     * HTTP/1.1 - one request at a time per connection. This is the default.
+     */
+    HTTP_1_1,
+
+    /**
+     * HTTP/2 - many concurrent requests multiplexed on one connection. Over
+     * HTTPS the version is negotiated with ALPN and HTTP/1.1 is used if the
+     * endpoint or the platform does not support HTTP/2; over HTTP the server
+     * is assumed to speak HTTP/2 (prior knowledge).
+     */
+    HTTP_2
+}
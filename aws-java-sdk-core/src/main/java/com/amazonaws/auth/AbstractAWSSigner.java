@@ -119,7 +119,7 @@ public abstract class AbstractAWSSigner implements Signer {
 
     protected byte[] sign(byte[] data, byte[] key, SigningAlgorithm algorithm) {
         try {
-            final Mac mac = Mac.getInstance(algorithm.toString());
+            final Mac mac = algorithm.getMac();
             mac.init(new SecretKeySpec(key, algorithm.toString()));
             return mac.doFinal(data);
         } catch (final Exception e) {
@@ -178,7 +178,7 @@ public abstract class AbstractAWSSigner implements Signer {
      */
     public byte[] hash(byte[] data) {
         try {
-            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            final MessageDigest md = getMessageDigestInstance();
             md.update(data);
             return md.digest();
         } catch (final Exception e) {
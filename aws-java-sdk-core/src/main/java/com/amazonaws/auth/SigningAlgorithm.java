@@ -15,6 +15,12 @@
 
 package com.amazonaws.auth;
 
+import com.amazonaws.AmazonClientException;
+
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+
 /** Enum for the signing algorithm. */
 public enum SigningAlgorithm {
 
@@ -24,4 +30,31 @@ public enum SigningAlgorithm {
     /** HMAC SHA 256. */
     HmacSHA256;
 
+    private final ThreadLocal<Mac> macReference;
+
+    private SigningAlgorithm() {
+        final String algorithmName = this.toString();
+        macReference = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    return Mac.getInstance(algorithmName);
+                } catch (final NoSuchAlgorithmException e) {
+                    throw new AmazonClientException("Unable to fetch Mac instance for Algorithm "
+                            + algorithmName + ": " + e.getMessage(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the thread local reference for the crypto algorithm. A Mac is
+     * looked up once per thread, and must be initialized with a key before
+     * each use.
+     *
+     * @return the Mac of this algorithm for the current thread.
+     */
+    public Mac getMac() {
+        return macReference.get();
+    }
 }
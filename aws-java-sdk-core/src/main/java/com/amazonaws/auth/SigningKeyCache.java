@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.auth;
+
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Cache of AWS4 signing keys derived for recently used credential scopes. A
+ * signing key only depends on the secret key, date, region and service, so it
+ * can be reused for every request signed with the same credentials on the same
+ * day. This cache has a max size, and the least recently used entry is aged
+ * out once the max size has been reached.
+ * <p>
+ * Entries are keyed by access key id and scope, and remember the secret key
+ * they were derived from: a key is only returned for the same secret, so
+ * credentials rotated under the same access key id are never signed with a
+ * stale key. Keys of past days are never looked up again and age out.
+ */
+final class SigningKeyCache {
+    private final InternalCache internalCache;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a new cache that will contain, at most the specified number of
+     * entries.
+     *
+     * @param maxEntries The maximum size of this cache.
+     */
+    SigningKeyCache(int maxEntries) {
+        internalCache = new InternalCache(maxEntries);
+    }
+
+    /**
+     * Returns the signing key for the given credentials and scope, or null if
+     * it isn't cached.
+     *
+     * @param accessKeyId The access key id of the credentials.
+     * @param secretKey The secret key of the credentials.
+     * @param scope The credential scope (date/region/service/aws4_request).
+     * @return The signing key, which must not be modified, or null.
+     */
+    synchronized byte[] get(String accessKeyId, String secretKey, String scope) {
+        final SigningKey key = internalCache.get(accessKeyId + "/" + scope);
+        if (key == null || !key.secretKey.equals(secretKey)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return key.kSigning;
+    }
+
+    /**
+     * Adds a signing key to this cache, possibly evicting the least recently
+     * used entry if the cache is at its size limit.
+     *
+     * @param accessKeyId The access key id of the credentials.
+     * @param secretKey The secret key the signing key was derived from.
+     * @param scope The credential scope (date/region/service/aws4_request).
+     * @param kSigning The signing key.
+     */
+    synchronized void put(String accessKeyId, String secretKey, String scope, byte[] kSigning) {
+        internalCache.put(accessKeyId + "/" + scope, new SigningKey(secretKey, kSigning));
+    }
+
+    synchronized int size() {
+        return internalCache.size();
+    }
+
+    synchronized long getHitCount() {
+        return hits;
+    }
+
+    synchronized long getMissCount() {
+        return misses;
+    }
+
+    private static final class SigningKey {
+        private final String secretKey;
+        private final byte[] kSigning;
+
+        SigningKey(String secretKey, byte[] kSigning) {
+            this.secretKey = secretKey;
+            this.kSigning = kSigning;
+        }
+    }
+
+    /**
+     * Simple implementation of LinkedHashMap in access order that overrides
+     * the <code>removeEldestEntry</code> method to turn LinkedHashMap into a
+     * LRU cache that automatically evicts old entries.
+     */
+    private static final class InternalCache extends LinkedHashMap<String, SigningKey> {
+        private static final long serialVersionUID = 1L;
+        private static final float LOAD_FACTOR = 0.75f;
+        private final int maxSize;
+
+        InternalCache(int maxSize) {
+            super(maxSize, LOAD_FACTOR, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, SigningKey> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
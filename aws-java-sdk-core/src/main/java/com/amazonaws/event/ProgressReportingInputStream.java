@@ -15,6 +15,8 @@
 
 package com.amazonaws.event;
 
+import com.amazonaws.internal.FileRegionInputStream;
+import com.amazonaws.internal.FileRegionSource;
 import com.amazonaws.internal.SdkFilterInputStream;
 
 import java.io.IOException;
@@ -30,7 +32,8 @@ import java.io.InputStream;
  * deprecated in favor of this new class.
  * </p>
  */
-public class ProgressReportingInputStream extends SdkFilterInputStream {
+public class ProgressReportingInputStream extends SdkFilterInputStream
+        implements FileRegionSource {
 
     /** Constant to represent 1KB. */
     private static final int BYTES_IN_KB = 1024;
@@ -137,6 +140,17 @@ public class ProgressReportingInputStream extends SdkFilterInputStream {
         return bytesRead;
     }
 
+    @Override
+    public FileRegionInputStream getFileRegion() {
+        return getWrappedFileRegion();
+    }
+
+    @Override
+    public void transferred(long count) throws IOException {
+        wrappedTransferred(count);
+        notify((int) count);
+    }
+
     @Override
     public void close() throws IOException {
         if (unnotifiedByteCount > 0) {
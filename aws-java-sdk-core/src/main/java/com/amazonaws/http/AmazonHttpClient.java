@@ -53,6 +53,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Amazon HTTP Client class.
@@ -109,7 +114,7 @@ public class AmazonHttpClient {
      *            communicate with AWS (ex: proxy settings, retry count, etc.).
      */
     public AmazonHttpClient(ClientConfiguration config) {
-        this(config, new UrlHttpClient(config));
+        this(config, HttpClientFactory.createTransport(config));
     }
 
     /**
@@ -126,7 +131,7 @@ public class AmazonHttpClient {
     @Deprecated
     public AmazonHttpClient(ClientConfiguration config,
             RequestMetricCollector requestMetricCollector) {
-        this(config, new UrlHttpClient(config), requestMetricCollector);
+        this(config, HttpClientFactory.createTransport(config), requestMetricCollector);
     }
 
     /**
@@ -220,6 +225,50 @@ public class AmazonHttpClient {
         }
     }
 
+    /**
+     * Executes the request asynchronously. If the underlying {@link HttpClient}
+     * is an {@link AsyncHttpClient}, no thread is blocked while the request is
+     * in flight: signing, retries, redirects and response handling are driven
+     * from completion callbacks, and retry back-offs are scheduled rather than
+     * slept. Otherwise the request is executed on the calling thread and the
+     * returned future is already done.
+     *
+     * @param request The AmazonWebServices request to send to the remote server
+     * @param responseHandler A response handler to accept a successful response
+     *            from the remote server
+     * @param errorResponseHandler A response handler to accept an unsuccessful
+     *            response from the remote server
+     * @param executionContext Additional information about the context of this
+     *            web service call
+     * @param <T> the response type.
+     * @return a future holding the result of the request. Failures are
+     *         reported as the cause of an
+     *         {@link java.util.concurrent.ExecutionException}.
+     */
+    public <T> Future<Response<T>> executeAsync(Request<?> request,
+            HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
+            HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+            ExecutionContext executionContext) {
+        if (executionContext == null) {
+            throw new AmazonClientException(
+                    "Internal SDK Error: No execution context parameter specified.");
+        }
+        final CompletionFuture<Response<T>> future = new CompletionFuture<Response<T>>();
+        if (!(httpClient instanceof AsyncHttpClient)) {
+            try {
+                future.complete(execute(request, responseHandler, errorResponseHandler,
+                        executionContext));
+            } catch (final RuntimeException e) {
+                future.fail(e);
+            }
+            return future;
+        }
+        final List<RequestHandler2> requestHandler2s = requestHandler2s(request, executionContext);
+        new AsyncExecution<T>(request, responseHandler, errorResponseHandler, executionContext,
+                requestHandler2s, future).start();
+        return future;
+    }
+
     void afterError(Request<?> request, Response<?> response,
             List<RequestHandler2> requestHandler2s, AmazonClientException e) {
         for (final RequestHandler2 handler2 : requestHandler2s) {
@@ -747,6 +796,33 @@ public class AmazonHttpClient {
             AmazonClientException previousException,
             int requestCount,
             RetryPolicy retryPolicy) {
+        final long delay = delayBeforeNextRetry(originalRequest, previousException,
+                requestCount, retryPolicy);
+        try {
+            Thread.sleep(delay);
+            return delay;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Computes the period of time to wait on failed request before retrying.
+     *
+     * @param originalRequest The original service request that is being
+     *            executed.
+     * @param previousException Exception information for the previous attempt,
+     *            if any.
+     * @param requestCount current request count (including the next attempt
+     *            after the delay)
+     * @param retryPolicy The retry policy configured in this http client.
+     * @return the delay in milliseconds.
+     */
+    private long delayBeforeNextRetry(AmazonWebServiceRequest originalRequest,
+            AmazonClientException previousException,
+            int requestCount,
+            RetryPolicy retryPolicy) {
         final int retries = requestCount // including next attempt
                 - 1 // number of attempted requests
                 - 1; // number of attempted retries
@@ -758,14 +834,7 @@ public class AmazonHttpClient {
             log.debug("Retriable error detected, " +
                     "will retry in " + delay + "ms, attempt number: " + retries);
         }
-
-        try {
-            Thread.sleep(delay);
-            return delay;
-        } catch (final InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new AmazonClientException(e.getMessage(), e);
-        }
+        return delay;
     }
 
     /**
@@ -831,4 +900,257 @@ public class AmazonHttpClient {
     public RequestMetricCollector getRequestMetricCollector() {
         return requestMetricCollector;
     }
+
+    /**
+     * Lazily created scheduler shared by all clients to delay asynchronous
+     * retries without blocking a thread.
+     */
+    private static final class RetryScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread t = new Thread(r);
+                        t.setName("aws-sdk-retry-scheduler");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * State of one asynchronous execution. It performs the same steps as
+     * {@link AmazonHttpClient#executeHelper}, with each attempt started either
+     * by the caller or by the retry scheduler and completed by the
+     * {@link AsyncHttpClient} callback.
+     */
+    private final class AsyncExecution<T> implements AsyncHttpClient.Callback {
+        private final Request<?> request;
+        private final HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler;
+        private final HttpResponseHandler<AmazonServiceException> errorResponseHandler;
+        private final ExecutionContext executionContext;
+        private final List<RequestHandler2> requestHandler2s;
+        private final CompletionFuture<Response<T>> future;
+        private final AWSRequestMetrics awsRequestMetrics;
+        private final AWSCredentials credentials;
+
+        private Map<String, String> originalParameters;
+        private Map<String, String> originalHeaders;
+        private InputStream originalContent;
+        private int requestCount = 0;
+        private long lastBackoffDelay = 0;
+        private URI redirectedURI = null;
+        private AmazonClientException retriedException = null;
+        private Signer signer = null;
+        private HttpRequest httpRequest = null;
+
+        AsyncExecution(Request<?> request,
+                HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
+                HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+                ExecutionContext executionContext,
+                List<RequestHandler2> requestHandler2s,
+                CompletionFuture<Response<T>> future) {
+            this.request = request;
+            this.responseHandler = responseHandler;
+            this.errorResponseHandler = errorResponseHandler;
+            this.executionContext = executionContext;
+            this.requestHandler2s = requestHandler2s;
+            this.future = future;
+            this.awsRequestMetrics = executionContext.getAwsRequestMetrics();
+            this.credentials = executionContext.getCredentials();
+        }
+
+        void start() {
+            awsRequestMetrics.addProperty(Field.ServiceName, request.getServiceName());
+            awsRequestMetrics.addProperty(Field.ServiceEndpoint, request.getEndpoint());
+            setUserAgent(request);
+            request.addHeader(HEADER_SDK_TRANSACTION_ID, UUID.randomUUID().toString());
+            originalParameters = new LinkedHashMap<String, String>(request.getParameters());
+            originalHeaders = new HashMap<String, String>(request.getHeaders());
+            originalContent = request.getContent();
+            if (originalContent != null && originalContent.markSupported()) {
+                originalContent.mark(-1);
+            }
+            attempt();
+        }
+
+        /**
+         * Signs and sends the next attempt of the request.
+         */
+        private void attempt() {
+            try {
+                ++requestCount;
+                awsRequestMetrics.setCounter(Field.RequestCount, requestCount);
+                if (requestCount > 1) { // retry
+                    request.setParameters(originalParameters);
+                    request.setHeaders(originalHeaders);
+                    request.setContent(originalContent);
+                    final InputStream content = request.getContent();
+                    if (content != null && content.markSupported()) {
+                        content.reset();
+                    }
+                }
+                if (redirectedURI != null && request.getEndpoint() == null
+                        && request.getResourcePath() == null) {
+                    request.setEndpoint(URI.create(
+                            redirectedURI.getScheme() + "://" + redirectedURI.getAuthority()));
+                    request.setResourcePath(redirectedURI.getPath());
+                }
+                request.addHeader(HEADER_SDK_RETRY_INFO,
+                        (requestCount - 1) + "/" + lastBackoffDelay);
+
+                if (signer == null) {
+                    signer = executionContext.getSignerByURI(request.getEndpoint());
+                }
+                if (signer != null && credentials != null) {
+                    awsRequestMetrics.startEvent(Field.RequestSigningTime);
+                    try {
+                        signer.sign(request, credentials);
+                    } finally {
+                        awsRequestMetrics.endEvent(Field.RequestSigningTime);
+                    }
+                }
+
+                if (REQUEST_LOG.isDebugEnabled()) {
+                    REQUEST_LOG.debug("Sending Request: " + request.toString());
+                }
+
+                httpRequest = requestFactory.createHttpRequest(request, config,
+                        executionContext);
+                retriedException = null;
+                awsRequestMetrics.startEvent(Field.HttpRequestTime);
+                ((AsyncHttpClient) httpClient).executeAsync(httpRequest, this);
+            } catch (final IOException ioe) {
+                onFailure(ioe);
+            } catch (final RuntimeException e) {
+                fail(handleUnexpectedFailure(e, awsRequestMetrics));
+            } catch (final Error e) {
+                fail(handleUnexpectedFailure(e, awsRequestMetrics));
+            }
+        }
+
+        @Override
+        public void onResponse(HttpResponse httpResponse) {
+            awsRequestMetrics.endEvent(Field.HttpRequestTime);
+            boolean leaveHttpConnectionOpen = false;
+            try {
+                if (isRequestSuccessful(httpResponse)) {
+                    awsRequestMetrics.addProperty(Field.StatusCode, httpResponse.getStatusCode());
+                    leaveHttpConnectionOpen = responseHandler.needsConnectionLeftOpen();
+                    final T response = handleResponse(request, responseHandler,
+                            httpResponse, executionContext);
+                    succeed(new Response<T>(response, httpResponse));
+                } else if (isTemporaryRedirect(httpResponse)) {
+                    final String redirectedLocation = httpResponse.getHeaders().get("Location");
+                    log.debug("Redirecting to: " + redirectedLocation);
+                    redirectedURI = URI.create(redirectedLocation);
+                    request.setEndpoint(null);
+                    request.setResourcePath(null);
+                    awsRequestMetrics.addProperty(Field.StatusCode, httpResponse.getStatusCode());
+                    awsRequestMetrics.addProperty(Field.RedirectLocation, redirectedLocation);
+                    awsRequestMetrics.addProperty(Field.AWSRequestID, null);
+                    scheduleNextAttempt();
+                } else {
+                    leaveHttpConnectionOpen = errorResponseHandler.needsConnectionLeftOpen();
+                    final AmazonServiceException ase = handleErrorResponse(request,
+                            errorResponseHandler, httpResponse);
+                    awsRequestMetrics.addProperty(Field.AWSRequestID, ase.getRequestId());
+                    awsRequestMetrics.addProperty(Field.AWSErrorCode, ase.getErrorCode());
+                    awsRequestMetrics.addProperty(Field.StatusCode, ase.getStatusCode());
+
+                    if (!shouldRetry(request.getOriginalRequest(),
+                            httpRequest.getContent(),
+                            ase,
+                            requestCount,
+                            config.getRetryPolicy())) {
+                        fail(ase);
+                        return;
+                    }
+                    retriedException = ase;
+                    if (RetryUtils.isClockSkewError(ase)) {
+                        final int timeOffset = parseClockSkewOffset(httpResponse, ase);
+                        SDKGlobalConfiguration.setGlobalTimeOffset(timeOffset);
+                    }
+                    resetRequestAfterError(request, ase);
+                    scheduleNextAttempt();
+                }
+            } catch (final IOException ioe) {
+                handleIOException(ioe);
+            } catch (final RuntimeException e) {
+                fail(handleUnexpectedFailure(e, awsRequestMetrics));
+            } catch (final Error e) {
+                fail(handleUnexpectedFailure(e, awsRequestMetrics));
+            } finally {
+                if (!leaveHttpConnectionOpen) {
+                    try {
+                        if (httpResponse.getRawContent() != null) {
+                            httpResponse.getRawContent().close();
+                        }
+                    } catch (final IOException e) {
+                        log.warn("Cannot close the response content.", e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(IOException ioe) {
+            awsRequestMetrics.endEvent(Field.HttpRequestTime);
+            try {
+                handleIOException(ioe);
+            } catch (final RuntimeException e) {
+                fail(handleUnexpectedFailure(e, awsRequestMetrics));
+            }
+        }
+
+        private void handleIOException(IOException ioe) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to execute HTTP request: " + ioe.getMessage(), ioe);
+            }
+            awsRequestMetrics.incrementCounter(Field.Exception);
+            awsRequestMetrics.addProperty(Field.Exception, ioe);
+            awsRequestMetrics.addProperty(Field.AWSRequestID, null);
+
+            final AmazonClientException ace = new AmazonClientException(
+                    "Unable to execute HTTP request: " + ioe.getMessage(), ioe);
+            if (!shouldRetry(request.getOriginalRequest(),
+                    httpRequest == null ? null : httpRequest.getContent(),
+                    ace,
+                    requestCount,
+                    config.getRetryPolicy())) {
+                fail(ace);
+                return;
+            }
+            retriedException = ace;
+            resetRequestAfterError(request, ioe);
+            scheduleNextAttempt();
+        }
+
+        private void scheduleNextAttempt() {
+            final long delay = delayBeforeNextRetry(request.getOriginalRequest(),
+                    retriedException, requestCount + 1, config.getRetryPolicy());
+            awsRequestMetrics.startEvent(Field.RetryPauseTime);
+            RetryScheduler.INSTANCE.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    awsRequestMetrics.endEvent(Field.RetryPauseTime);
+                    lastBackoffDelay = delay;
+                    attempt();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void succeed(Response<T> response) {
+            final TimingInfo timingInfo = awsRequestMetrics.getTimingInfo().endTiming();
+            afterResponse(request, requestHandler2s, response, timingInfo);
+            future.complete(response);
+        }
+
+        private void fail(Throwable t) {
+            if (t instanceof AmazonClientException) {
+                afterError(request, null, requestHandler2s, (AmazonClientException) t);
+            }
+            future.fail(t);
+        }
+    }
 }
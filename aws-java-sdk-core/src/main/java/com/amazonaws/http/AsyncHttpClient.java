@@ -0,0 +1,61 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * An {@link HttpClient} that is also able to execute requests without blocking
+ * the calling thread. The same requirements documented on {@link HttpClient}
+ * apply to asynchronous executions: requests are sent unmodified, and retries
+ * and redirects are left to the service client.
+ */
+public interface AsyncHttpClient extends HttpClient {
+
+    /**
+     * Starts executing a {@link HttpRequest} and returns immediately. The
+     * callback, if not null, is notified once the response status and headers
+     * are available, or once the request failed. It is never invoked on the
+     * thread performing the network I/O, so it may block, for example to read
+     * the response content.
+     *
+     * @param request a HTTP request
+     * @param callback the callback to notify on completion, or null
+     * @return a future holding the response object
+     */
+    Future<HttpResponse> executeAsync(HttpRequest request, Callback callback);
+
+    /**
+     * Completion callback of {@link AsyncHttpClient#executeAsync}.
+     */
+    interface Callback {
+
+        /**
+         * Invoked when the response status and headers have been received.
+         *
+         * @param response the response object.
+         */
+        void onResponse(HttpResponse response);
+
+        /**
+         * Invoked when the request could not be executed.
+         *
+         * @param exception the connection problem.
+         */
+        void onFailure(IOException exception);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Future} that is completed explicitly from a completion callback
+ * rather than by running a task.
+ *
+ * @param <V> the result type.
+ */
+class CompletionFuture<V> implements Future<V> {
+
+    private V result;
+    private Throwable failure;
+    private boolean done;
+    private boolean cancelled;
+
+    /**
+     * Completes this future with the given result. Has no effect if the future
+     * is already done.
+     *
+     * @param result the result.
+     */
+    synchronized void complete(V result) {
+        if (done) {
+            return;
+        }
+        this.result = result;
+        done = true;
+        notifyAll();
+    }
+
+    /**
+     * Completes this future with the given failure. Has no effect if the
+     * future is already done.
+     *
+     * @param t the failure.
+     */
+    synchronized void fail(Throwable t) {
+        if (done) {
+            return;
+        }
+        failure = t;
+        done = true;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+        if (done) {
+            return false;
+        }
+        cancelled = true;
+        done = true;
+        notifyAll();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized V get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized V get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    private V report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import com.amazonaws.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HPACK header compression for HTTP/2 (RFC 7541).
+ * <p>
+ * The encoder never adds entries to the dynamic table: it references the
+ * static table where possible and otherwise emits literals, which keeps the
+ * peer's decoder state trivial and sensitive values out of any table. The
+ * decoder is complete, including the dynamic table and Huffman coding.
+ */
+final class Hpack {
+
+    /** Default and maximum dynamic table size we allow the peer to use. */
+    static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+
+    /** Per-entry overhead used when accounting for the dynamic table size. */
+    private static final int ENTRY_OVERHEAD = 32;
+
+    /** The static table as name/value pairs, starting at index 1. */
+    private static final String[] STATIC_TABLE = {
+            ":authority", "",
+            ":method", "GET",
+            ":method", "POST",
+            ":path", "/",
+            ":path", "/index.html",
+            ":scheme", "http",
+            ":scheme", "https",
+            ":status", "200",
+            ":status", "204",
+            ":status", "206",
+            ":status", "304",
+            ":status", "400",
+            ":status", "404",
+            ":status", "500",
+            "accept-charset", "",
+            "accept-encoding", "gzip, deflate",
+            "accept-language", "",
+            "accept-ranges", "",
+            "accept", "",
+            "access-control-allow-origin", "",
+            "age", "",
+            "allow", "",
+            "authorization", "",
+            "cache-control", "",
+            "content-disposition", "",
+            "content-encoding", "",
+            "content-language", "",
+            "content-length", "",
+            "content-location", "",
+            "content-range", "",
+            "content-type", "",
+            "cookie", "",
+            "date", "",
+            "etag", "",
+            "expect", "",
+            "expires", "",
+            "from", "",
+            "host", "",
+            "if-match", "",
+            "if-modified-since", "",
+            "if-none-match", "",
+            "if-range", "",
+            "if-unmodified-since", "",
+            "last-modified", "",
+            "link", "",
+            "location", "",
+            "max-forwards", "",
+            "proxy-authenticate", "",
+            "proxy-authorization", "",
+            "range", "",
+            "referer", "",
+            "refresh", "",
+            "retry-after", "",
+            "server", "",
+            "set-cookie", "",
+            "strict-transport-security", "",
+            "transfer-encoding", "",
+            "user-agent", "",
+            "vary", "",
+            "via", "",
+            "www-authenticate", ""
+    };
+
+    private static final int STATIC_TABLE_LENGTH = STATIC_TABLE.length / 2;
+
+    private static final int[] HUFFMAN_CODES = {
+            0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5,
+            0xfffffe6, 0xfffffe7, 0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9,
+            0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec, 0xfffffed, 0xfffffee,
+            0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+            0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9,
+            0xffffffa, 0xffffffb, 0x14, 0x3f8, 0x3f9, 0xffa,
+            0x1ff9, 0x15, 0xf8, 0x7fa, 0x3fa, 0x3fb,
+            0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+            0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b,
+            0x1c, 0x1d, 0x1e, 0x1f, 0x5c, 0xfb,
+            0x7ffc, 0x20, 0xffb, 0x3fc, 0x1ffa, 0x21,
+            0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+            0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+            0x69, 0x6a, 0x6b, 0x6c, 0x6d, 0x6e,
+            0x6f, 0x70, 0x71, 0x72, 0xfc, 0x73,
+            0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+            0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5,
+            0x25, 0x26, 0x27, 0x6, 0x74, 0x75,
+            0x28, 0x29, 0x2a, 0x7, 0x2b, 0x76,
+            0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+            0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd,
+            0x1ffd, 0xffffffc, 0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8,
+            0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9, 0x3fffd6, 0x7fffda,
+            0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+            0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1,
+            0x7fffe2, 0x7fffe3, 0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5,
+            0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef, 0x3fffda, 0x1fffdd,
+            0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+            0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf,
+            0x7fffeb, 0x7fffec, 0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2,
+            0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef, 0xfffea, 0x3fffe2,
+            0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+            0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2,
+            0x3fffe8, 0x1ffffec, 0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde,
+            0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed, 0x7fff2, 0x1fffe3,
+            0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+            0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3,
+            0x7ffffe4, 0x7ffffe5, 0xfffec, 0xfffff3, 0xfffed, 0x1fffe6,
+            0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3, 0x3fffea, 0x3fffeb,
+            0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+            0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8,
+            0x7ffffe9, 0x7ffffea, 0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed,
+            0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee
+    };
+
+    private static final byte[] HUFFMAN_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26
+    };
+
+    private static final Map<String, Integer> STATIC_NAME_INDEX = new HashMap<String, Integer>();
+    private static final Map<String, Integer> STATIC_ENTRY_INDEX = new HashMap<String, Integer>();
+
+    /**
+     * Huffman decoding tree: each node has two children, a negative child
+     * value -(symbol + 1) denotes a leaf.
+     */
+    private static final int[][] HUFFMAN_TREE;
+
+    static {
+        for (int i = STATIC_TABLE_LENGTH; i >= 1; i--) {
+            final String name = STATIC_TABLE[2 * (i - 1)];
+            final String value = STATIC_TABLE[2 * (i - 1) + 1];
+            STATIC_NAME_INDEX.put(name, i);
+            STATIC_ENTRY_INDEX.put(name + ":" + value, i);
+        }
+        final List<int[]> nodes = new ArrayList<int[]>();
+        nodes.add(new int[2]);
+        for (int symbol = 0; symbol < HUFFMAN_CODES.length; symbol++) {
+            final int code = HUFFMAN_CODES[symbol];
+            final int length = HUFFMAN_LENGTHS[symbol];
+            int node = 0;
+            for (int bit = length - 1; bit > 0; bit--) {
+                final int branch = (code >>> bit) & 1;
+                int child = nodes.get(node)[branch];
+                if (child == 0) {
+                    nodes.add(new int[2]);
+                    child = nodes.size() - 1;
+                    nodes.get(node)[branch] = child;
+                }
+                node = child;
+            }
+            nodes.get(node)[code & 1] = -(symbol + 1);
+        }
+        HUFFMAN_TREE = nodes.toArray(new int[nodes.size()][]);
+    }
+
+    private Hpack() {
+    }
+
+    /**
+     * Encodes header lists. Instances are not thread safe.
+     */
+    static final class Encoder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        /**
+         * Appends a header field to the current header block.
+         *
+         * @param name the header name, lowercased as required by HTTP/2.
+         * @param value the header value.
+         */
+        void header(String name, String value) {
+            final String lowerName = name.toLowerCase(Locale.ENGLISH);
+            final Integer entryIndex = STATIC_ENTRY_INDEX.get(lowerName + ":" + value);
+            if (entryIndex != null) {
+                writeInteger(out, 0x80, 7, entryIndex);
+                return;
+            }
+            // Credentials are marked never-indexed so that intermediaries
+            // don't put them in their tables either
+            final int representation = isSensitive(lowerName) ? 0x10 : 0x00;
+            final Integer nameIndex = STATIC_NAME_INDEX.get(lowerName);
+            if (nameIndex != null) {
+                writeInteger(out, representation, 4, nameIndex);
+            } else {
+                out.write(representation);
+                writeString(out, lowerName);
+            }
+            writeString(out, value);
+        }
+
+        /**
+         * Returns the header block built so far and starts a new one.
+         *
+         * @return the encoded header block.
+         */
+        byte[] finish() {
+            final byte[] block = out.toByteArray();
+            out.reset();
+            return block;
+        }
+
+        private static boolean isSensitive(String name) {
+            return "authorization".equals(name) || "x-amz-security-token".equals(name)
+                    || "cookie".equals(name);
+        }
+    }
+
+    /**
+     * Decodes header blocks, maintaining the dynamic table across blocks of
+     * a connection. Instances are not thread safe.
+     */
+    static final class Decoder {
+
+        /** Dynamic table entries, most recent first. */
+        private final LinkedList<String[]> dynamicTable = new LinkedList<String[]>();
+        private int dynamicTableSize;
+        private int maxDynamicTableSize = DEFAULT_HEADER_TABLE_SIZE;
+
+        /**
+         * Decodes a complete header block.
+         *
+         * @param block the header block, concatenated from a HEADERS frame and
+         *            its CONTINUATION frames.
+         * @return the header fields as name/value pairs.
+         * @throws IOException if the block is malformed.
+         */
+        List<String[]> decode(byte[] block) throws IOException {
+            final List<String[]> headers = new ArrayList<String[]>();
+            final int[] position = {
+                0
+            };
+            while (position[0] < block.length) {
+                final int b = block[position[0]] & 0xff;
+                if ((b & 0x80) != 0) {
+                    headers.add(lookup(readInteger(block, position, 7)));
+                } else if ((b & 0xc0) == 0x40) {
+                    final String[] header = readLiteral(block, position, 6);
+                    add(header);
+                    headers.add(header);
+                } else if ((b & 0xe0) == 0x20) {
+                    final int size = readInteger(block, position, 5);
+                    if (size > DEFAULT_HEADER_TABLE_SIZE) {
+                        throw new IOException("HPACK table size update exceeds the limit: " + size);
+                    }
+                    maxDynamicTableSize = size;
+                    evict(0);
+                } else {
+                    headers.add(readLiteral(block, position, 4));
+                }
+            }
+            return headers;
+        }
+
+        private String[] readLiteral(byte[] block, int[] position, int prefixBits)
+                throws IOException {
+            final int nameIndex = readInteger(block, position, prefixBits);
+            final String name = nameIndex == 0 ? readString(block, position)
+                    : lookup(nameIndex)[0];
+            return new String[] {
+                    name, readString(block, position)
+            };
+        }
+
+        private String[] lookup(int index) throws IOException {
+            if (index >= 1 && index <= STATIC_TABLE_LENGTH) {
+                return new String[] {
+                        STATIC_TABLE[2 * (index - 1)], STATIC_TABLE[2 * (index - 1) + 1]
+                };
+            }
+            final int dynamicIndex = index - STATIC_TABLE_LENGTH - 1;
+            if (dynamicIndex < 0 || dynamicIndex >= dynamicTable.size()) {
+                throw new IOException("Invalid HPACK table index: " + index);
+            }
+            return dynamicTable.get(dynamicIndex);
+        }
+
+        private void add(String[] header) {
+            final int size = entrySize(header);
+            evict(size);
+            if (size <= maxDynamicTableSize) {
+                dynamicTable.addFirst(header);
+                dynamicTableSize += size;
+            }
+        }
+
+        private void evict(int room) {
+            while (!dynamicTable.isEmpty() && dynamicTableSize + room > maxDynamicTableSize) {
+                dynamicTableSize -= entrySize(dynamicTable.removeLast());
+            }
+        }
+
+        private static int entrySize(String[] header) {
+            return header[0].getBytes(StringUtils.UTF8).length
+                    + header[1].getBytes(StringUtils.UTF8).length + ENTRY_OVERHEAD;
+        }
+    }
+
+    static void writeInteger(ByteArrayOutputStream out, int first, int prefixBits, int value) {
+        final int max = (1 << prefixBits) - 1;
+        if (value < max) {
+            out.write(first | value);
+            return;
+        }
+        out.write(first | max);
+        int remaining = value - max;
+        while (remaining >= 0x80) {
+            out.write((remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write(remaining);
+    }
+
+    static void writeString(ByteArrayOutputStream out, String value) {
+        final byte[] bytes = value.getBytes(StringUtils.UTF8);
+        writeInteger(out, 0x00, 7, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static int readInteger(byte[] block, int[] position, int prefixBits) throws IOException {
+        final int max = (1 << prefixBits) - 1;
+        int value = block[position[0]++] & max;
+        if (value < max) {
+            return value;
+        }
+        int shift = 0;
+        int b;
+        do {
+            if (position[0] >= block.length || shift > 21) {
+                throw new IOException("Malformed HPACK integer");
+            }
+            b = block[position[0]++] & 0xff;
+            value += (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static String readString(byte[] block, int[] position) throws IOException {
+        if (position[0] >= block.length) {
+            throw new IOException("Truncated HPACK string");
+        }
+        final boolean huffman = (block[position[0]] & 0x80) != 0;
+        final int length = readInteger(block, position, 7);
+        if (length > block.length - position[0]) {
+            throw new IOException("Truncated HPACK string");
+        }
+        final int offset = position[0];
+        position[0] += length;
+        if (huffman) {
+            return huffmanDecode(block, offset, length);
+        }
+        return new String(block, offset, length, StringUtils.UTF8);
+    }
+
+    static String huffmanDecode(byte[] data, int offset, int length) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(length * 2);
+        int node = 0;
+        // number of bits consumed since the last emitted symbol, and whether
+        // they were all ones, to validate the EOS padding at the end
+        int pendingBits = 0;
+        boolean pendingOnes = true;
+        for (int i = offset; i < offset + length; i++) {
+            final int b = data[i] & 0xff;
+            for (int bit = 7; bit >= 0; bit--) {
+                final int branch = (b >>> bit) & 1;
+                final int child = HUFFMAN_TREE[node][branch];
+                pendingBits++;
+                pendingOnes &= branch == 1;
+                if (child < 0) {
+                    out.write(-child - 1);
+                    node = 0;
+                    pendingBits = 0;
+                    pendingOnes = true;
+                } else if (child == 0) {
+                    // only EOS, which must not appear in a string, ends here
+                    throw new IOException("Invalid Huffman code");
+                } else {
+                    node = child;
+                }
+            }
+        }
+        if (pendingBits > 7 || !pendingOnes) {
+            throw new IOException("Invalid Huffman padding");
+        }
+        return new String(out.toByteArray(), StringUtils.UTF8);
+    }
+}
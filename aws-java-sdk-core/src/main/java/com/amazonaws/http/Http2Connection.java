@@ -0,0 +1,1031 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import com.amazonaws.util.StringUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A single HTTP/2 connection (RFC 7540) multiplexing concurrent request
+ * streams. Frames are read by a dedicated daemon thread; request threads write
+ * their own frames, serialized by a write lock.
+ * <p>
+ * Each stream advertises a receive window of {@link #STREAM_WINDOW_SIZE}
+ * which is only replenished as the response content is consumed, so a slow
+ * reader holds back its own stream without stalling the others.
+ */
+final class Http2Connection {
+
+    private static final Log log = LogFactory.getLog(Http2Connection.class);
+
+    private static final byte[] CONNECTION_PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n"
+            .getBytes(StringUtils.UTF8);
+
+    private static final int FRAME_HEADER_LENGTH = 9;
+
+    private static final int TYPE_DATA = 0x0;
+    private static final int TYPE_HEADERS = 0x1;
+    private static final int TYPE_RST_STREAM = 0x3;
+    private static final int TYPE_SETTINGS = 0x4;
+    private static final int TYPE_PUSH_PROMISE = 0x5;
+    private static final int TYPE_PING = 0x6;
+    private static final int TYPE_GOAWAY = 0x7;
+    private static final int TYPE_WINDOW_UPDATE = 0x8;
+    private static final int TYPE_CONTINUATION = 0x9;
+
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTING_LENGTH = 6;
+
+    private static final int ERROR_NO_ERROR = 0x0;
+    private static final int ERROR_PROTOCOL_ERROR = 0x1;
+    private static final int ERROR_FLOW_CONTROL_ERROR = 0x3;
+    private static final int ERROR_FRAME_SIZE_ERROR = 0x6;
+    private static final int ERROR_CANCEL = 0x8;
+
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+    private static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+    private static final int PRIORITY_LENGTH = 5;
+    private static final int PING_LENGTH = 8;
+    private static final int HTTP_STATUS_CONTINUE = 100;
+    private static final int HTTP_STATUS_OK = 200;
+
+    /** Receive window advertised for each stream. */
+    static final int STREAM_WINDOW_SIZE = 1024 * 1024;
+
+    /** Receive window of the connection as a whole. */
+    private static final int CONNECTION_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final String scheme;
+    private final int maxConcurrentStreams;
+    private final Runnable capacityListener;
+    private final Hpack.Encoder encoder = new Hpack.Encoder();
+    private final Hpack.Decoder decoder = new Hpack.Decoder();
+    private final Object writeLock = new Object();
+
+    // Guarded by this
+    private final Map<Integer, Stream> streams = new HashMap<Integer, Stream>();
+    private int reservedStreams;
+    private int nextStreamId = 1;
+    private int peerMaxConcurrentStreams = Integer.MAX_VALUE;
+    private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+    private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private long sendWindow = DEFAULT_WINDOW_SIZE;
+    private boolean goAway;
+    private boolean closed;
+    private long idleSince = System.currentTimeMillis();
+
+    // Only accessed from the reader thread
+    private int unacknowledgedConnectionBytes;
+    private ByteArrayOutputStream headerBlock;
+    private int headerStreamId;
+    private int headerFlags;
+
+    /**
+     * Starts HTTP/2 on an established connection: exchanges the connection
+     * prefaces, so the server's stream limit is known before any stream is
+     * opened, and starts the reader thread.
+     *
+     * @param socket the connected socket, with TLS already negotiated if
+     *            secure, and with the socket timeout applying to the preface.
+     * @param scheme the URI scheme of the requests sent on this connection.
+     * @param maxConcurrentStreams the maximum number of streams to open
+     *            concurrently, further limited by the peer's settings.
+     * @param capacityListener notified when a stream slot becomes available
+     *            or the connection closes.
+     * @throws IOException if the prefaces could not be exchanged.
+     */
+    Http2Connection(Socket socket, String scheme, int maxConcurrentStreams,
+            Runnable capacityListener) throws IOException {
+        this.socket = socket;
+        this.scheme = scheme;
+        this.maxConcurrentStreams = Math.max(1, maxConcurrentStreams);
+        this.capacityListener = capacityListener;
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new BufferedOutputStream(socket.getOutputStream(), DEFAULT_MAX_FRAME_SIZE);
+
+        final byte[] settings = new byte[2 * SETTING_LENGTH];
+        putSetting(settings, 0, SETTINGS_ENABLE_PUSH, 0);
+        putSetting(settings, SETTING_LENGTH, SETTINGS_INITIAL_WINDOW_SIZE, STREAM_WINDOW_SIZE);
+        synchronized (writeLock) {
+            out.write(CONNECTION_PREFACE);
+            writeFrameLocked(TYPE_SETTINGS, 0, 0, settings, 0, settings.length);
+            writeFrameLocked(TYPE_WINDOW_UPDATE, 0, 0,
+                    intBytes(CONNECTION_WINDOW_SIZE - DEFAULT_WINDOW_SIZE), 0, 4);
+            out.flush();
+        }
+        final byte[] header = new byte[FRAME_HEADER_LENGTH];
+        try {
+            if (readFrame(header) != TYPE_SETTINGS || (header[4] & FLAG_ACK) != 0) {
+                throw new ProtocolException(ERROR_PROTOCOL_ERROR,
+                        "Server connection preface must be a SETTINGS frame");
+            }
+        } catch (final ProtocolException e) {
+            close(e);
+            throw e;
+        }
+        // Read timeouts are enforced per stream; the reader waits indefinitely
+        socket.setSoTimeout(0);
+
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readFrames();
+            }
+        }, "aws-sdk-http2-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Reserves a stream slot for a request, if the connection has capacity.
+     * A successful reservation must be followed by a call to
+     * {@link #execute(HttpRequest, int)}.
+     *
+     * @return true if a slot was reserved.
+     */
+    synchronized boolean tryReserve() {
+        if (closed || goAway || reservedStreams >= getStreamLimit()) {
+            return false;
+        }
+        reservedStreams++;
+        return true;
+    }
+
+    /**
+     * @return the number of streams currently reserved or open.
+     */
+    synchronized int getActiveStreamCount() {
+        return reservedStreams;
+    }
+
+    /**
+     * @return whether new streams may still be opened on this connection.
+     */
+    synchronized boolean isUsable() {
+        return !closed && !goAway;
+    }
+
+    /**
+     * @return the time since which the connection has no active stream, or
+     *         -1 if it has.
+     */
+    synchronized long getIdleSince() {
+        return reservedStreams == 0 ? idleSince : -1;
+    }
+
+    private int getStreamLimit() {
+        return Math.min(maxConcurrentStreams, peerMaxConcurrentStreams);
+    }
+
+    /**
+     * Executes a request on a previously reserved stream slot. The request
+     * content is sent entirely before the response headers are awaited.
+     *
+     * @param request the request.
+     * @param timeout the socket timeout in milliseconds applying to each wait
+     *            for the peer, or 0 for no timeout.
+     * @return the response, whose content is streamed from the connection.
+     * @throws IOException if the request failed.
+     */
+    HttpResponse execute(HttpRequest request, int timeout) throws IOException {
+        final Stream stream = new Stream(timeout);
+        try {
+            final boolean hasContent = request.getContent() != null;
+            sendHeaders(stream, request, !hasContent);
+            if (hasContent) {
+                sendContent(stream, request);
+            }
+            return stream.awaitResponse(request.getMethod());
+        } catch (final IOException e) {
+            stream.cancel();
+            throw e;
+        } catch (final RuntimeException e) {
+            stream.cancel();
+            throw e;
+        }
+    }
+
+    private void sendHeaders(Stream stream, HttpRequest request, boolean endStream)
+            throws IOException {
+        final URI uri = request.getUri();
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        if (uri.getRawQuery() != null) {
+            path = path + "?" + uri.getRawQuery();
+        }
+        String authority = null;
+        final List<String[]> headers = new ArrayList<String[]>();
+        for (final Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            final String name = header.getKey().toLowerCase(Locale.ENGLISH);
+            if (name.equals("host")) {
+                authority = header.getValue();
+            } else if (!isConnectionSpecific(name)) {
+                headers.add(new String[] {
+                        name, header.getValue()
+                });
+            }
+        }
+        if (authority == null) {
+            authority = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        }
+
+        synchronized (writeLock) {
+            encoder.header(":method", request.getMethod());
+            encoder.header(":scheme", scheme);
+            encoder.header(":authority", authority);
+            encoder.header(":path", path);
+            for (final String[] header : headers) {
+                encoder.header(header[0], header[1]);
+            }
+            final byte[] block = encoder.finish();
+            final int maxFrameSize;
+            synchronized (this) {
+                if (closed || goAway) {
+                    throw new IOException("HTTP/2 connection is no longer accepting streams");
+                }
+                // Stream identifiers must be used in increasing order, so
+                // they are assigned while holding the write lock
+                stream.id = nextStreamId;
+                nextStreamId += 2;
+                stream.sendWindow = peerInitialWindowSize;
+                streams.put(stream.id, stream);
+                maxFrameSize = peerMaxFrameSize;
+            }
+            int offset = 0;
+            int type = TYPE_HEADERS;
+            do {
+                final int length = Math.min(maxFrameSize, block.length - offset);
+                int flags = offset + length == block.length ? FLAG_END_HEADERS : 0;
+                if (type == TYPE_HEADERS && endStream) {
+                    flags |= FLAG_END_STREAM;
+                }
+                writeFrameLocked(type, flags, stream.id, block, offset, length);
+                offset += length;
+                type = TYPE_CONTINUATION;
+            } while (offset < block.length);
+            out.flush();
+        }
+        if (endStream) {
+            stream.onRequestSent();
+        }
+    }
+
+    private static boolean isConnectionSpecific(String name) {
+        return name.equals("connection") || name.equals("keep-alive")
+                || name.equals("proxy-connection") || name.equals("transfer-encoding")
+                || name.equals("upgrade") || name.equals("expect");
+    }
+
+    private void sendContent(Stream stream, HttpRequest request) throws IOException {
+        final InputStream content = request.getContent();
+        long remaining = request.isStreaming() ? -1 : getContentLength(request);
+        final byte[] buffer = new byte[DEFAULT_MAX_FRAME_SIZE];
+        while (true) {
+            final int allowed = acquireSendWindow(stream, buffer.length);
+            if (allowed == 0) {
+                // the response is already complete; stop sending the content
+                resetStream(stream, ERROR_NO_ERROR);
+                return;
+            }
+            final int toRead = remaining < 0 ? allowed : (int) Math.min(allowed, remaining);
+            final int read = toRead == 0 ? -1 : content.read(buffer, 0, toRead);
+            if (read < 0) {
+                releaseSendWindow(stream, allowed);
+                writeFrame(TYPE_DATA, FLAG_END_STREAM, stream.id, buffer, 0, 0);
+                break;
+            }
+            releaseSendWindow(stream, allowed - read);
+            if (remaining > 0) {
+                remaining -= read;
+            }
+            writeFrame(TYPE_DATA, remaining == 0 ? FLAG_END_STREAM : 0, stream.id, buffer, 0,
+                    read);
+            if (remaining == 0) {
+                break;
+            }
+        }
+        stream.onRequestSent();
+    }
+
+    private static long getContentLength(HttpRequest request) {
+        final String length = request.getHeaders().get(HttpHeader.CONTENT_LENGTH);
+        if (length == null) {
+            for (final Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                if (header.getKey().equalsIgnoreCase(HttpHeader.CONTENT_LENGTH)) {
+                    return Long.parseLong(header.getValue().trim());
+                }
+            }
+            return -1;
+        }
+        return Long.parseLong(length.trim());
+    }
+
+    /**
+     * Waits until both the connection and the stream send windows are open,
+     * and takes up to {@code max} bytes from them.
+     *
+     * @return the number of bytes that may be sent, or 0 if the peer already
+     *         completed the stream.
+     */
+    private synchronized int acquireSendWindow(Stream stream, int max) throws IOException {
+        final long deadline = stream.timeout == 0 ? 0
+                : System.currentTimeMillis() + stream.timeout;
+        while (true) {
+            if (stream.failure != null) {
+                throw stream.failure;
+            }
+            if (stream.responseComplete) {
+                return 0;
+            }
+            if (sendWindow > 0 && stream.sendWindow > 0) {
+                break;
+            }
+            waitUntil(this, deadline);
+        }
+        final int allowed = (int) Math.min(Math.min(sendWindow, stream.sendWindow),
+                Math.min(max, peerMaxFrameSize));
+        sendWindow -= allowed;
+        stream.sendWindow -= allowed;
+        return allowed;
+    }
+
+    private synchronized void releaseSendWindow(Stream stream, int unused) {
+        sendWindow += unused;
+        stream.sendWindow += unused;
+    }
+
+    private static void waitUntil(Object monitor, long deadline) throws IOException {
+        long wait = 0;
+        if (deadline != 0) {
+            wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                throw new SocketTimeoutException("Timed out waiting for the HTTP/2 peer");
+            }
+        }
+        try {
+            monitor.wait(wait);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the HTTP/2 peer");
+        }
+    }
+
+    private void resetStream(Stream stream, int errorCode) {
+        if (stream.id != 0) {
+            try {
+                writeFrame(TYPE_RST_STREAM, 0, stream.id, intBytes(errorCode), 0, 4);
+            } catch (final IOException e) {
+                log.debug("Unable to reset HTTP/2 stream " + stream.id, e);
+            }
+        }
+        stream.fail(new IOException("HTTP/2 stream was cancelled"));
+    }
+
+    private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset,
+            int length) throws IOException {
+        synchronized (writeLock) {
+            writeFrameLocked(type, flags, streamId, payload, offset, length);
+            out.flush();
+        }
+    }
+
+    private void writeFrameLocked(int type, int flags, int streamId, byte[] payload, int offset,
+            int length) throws IOException {
+        final byte[] header = new byte[FRAME_HEADER_LENGTH];
+        header[0] = (byte) (length >>> 16);
+        header[1] = (byte) (length >>> 8);
+        header[2] = (byte) length;
+        header[3] = (byte) type;
+        header[4] = (byte) flags;
+        putInt(header, 5, streamId);
+        out.write(header);
+        out.write(payload, offset, length);
+    }
+
+    private void readFrames() {
+        final byte[] header = new byte[FRAME_HEADER_LENGTH];
+        try {
+            while (true) {
+                readFrame(header);
+            }
+        } catch (final ProtocolException e) {
+            try {
+                final byte[] goAwayPayload = new byte[8];
+                putInt(goAwayPayload, 4, e.errorCode);
+                writeFrame(TYPE_GOAWAY, 0, 0, goAwayPayload, 0, goAwayPayload.length);
+            } catch (final IOException ignored) {
+                // the connection is being closed anyway
+            }
+            close(e);
+        } catch (final IOException e) {
+            close(e);
+        }
+    }
+
+    /**
+     * Reads and handles one frame.
+     *
+     * @param header buffer for the frame header.
+     * @return the frame type.
+     */
+    private int readFrame(byte[] header) throws IOException {
+        in.readFully(header);
+        final int length = ((header[0] & 0xff) << 16) | ((header[1] & 0xff) << 8)
+                | (header[2] & 0xff);
+        final int type = header[3] & 0xff;
+        final int flags = header[4] & 0xff;
+        final int streamId = getInt(header, 5) & Integer.MAX_VALUE;
+        if (length > DEFAULT_MAX_FRAME_SIZE) {
+            throw new ProtocolException(ERROR_FRAME_SIZE_ERROR,
+                    "Frame of " + length + " bytes exceeds the maximum frame size");
+        }
+        final byte[] payload = new byte[length];
+        in.readFully(payload);
+        onFrame(type, flags, streamId, payload);
+        return type;
+    }
+
+    private void onFrame(int type, int flags, int streamId, byte[] payload) throws IOException {
+        if (headerBlock != null && type != TYPE_CONTINUATION) {
+            throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Expected CONTINUATION frame");
+        }
+        switch (type) {
+            case TYPE_DATA:
+                onData(flags, streamId, payload);
+                break;
+            case TYPE_HEADERS:
+                int start = 0;
+                int end = payload.length;
+                if ((flags & FLAG_PADDED) != 0) {
+                    start = 1;
+                    end -= payload.length == 0 ? 0 : payload[0] & 0xff;
+                }
+                if ((flags & FLAG_PRIORITY) != 0) {
+                    start += PRIORITY_LENGTH;
+                }
+                if (start > end) {
+                    throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Invalid HEADERS padding");
+                }
+                headerBlock = new ByteArrayOutputStream();
+                headerBlock.write(payload, start, end - start);
+                headerStreamId = streamId;
+                headerFlags = flags;
+                if ((flags & FLAG_END_HEADERS) != 0) {
+                    onHeaderBlock();
+                }
+                break;
+            case TYPE_CONTINUATION:
+                if (headerBlock == null || streamId != headerStreamId) {
+                    throw new ProtocolException(ERROR_PROTOCOL_ERROR,
+                            "Unexpected CONTINUATION frame");
+                }
+                headerBlock.write(payload, 0, payload.length);
+                if ((flags & FLAG_END_HEADERS) != 0) {
+                    onHeaderBlock();
+                }
+                break;
+            case TYPE_RST_STREAM:
+                final Stream reset = getStream(streamId);
+                if (reset != null) {
+                    reset.fail(new IOException("HTTP/2 stream was reset with error code "
+                            + getInt(payload, 0)));
+                }
+                break;
+            case TYPE_SETTINGS:
+                if ((flags & FLAG_ACK) == 0) {
+                    onSettings(payload);
+                }
+                break;
+            case TYPE_PUSH_PROMISE:
+                throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Server push is disabled");
+            case TYPE_PING:
+                if ((flags & FLAG_ACK) == 0 && payload.length == PING_LENGTH) {
+                    writeFrame(TYPE_PING, FLAG_ACK, 0, payload, 0, payload.length);
+                }
+                break;
+            case TYPE_GOAWAY:
+                onGoAway(getInt(payload, 0) & Integer.MAX_VALUE, getInt(payload, 4));
+                break;
+            case TYPE_WINDOW_UPDATE:
+                onWindowUpdate(streamId, getInt(payload, 0) & Integer.MAX_VALUE);
+                break;
+            default:
+                // PRIORITY frames and unknown frame types are ignored
+                break;
+        }
+    }
+
+    private void onHeaderBlock() throws IOException {
+        // The block is always decoded to keep the HPACK state in sync, even
+        // if the stream no longer exists
+        final List<String[]> headers = decoder.decode(headerBlock.toByteArray());
+        headerBlock = null;
+        final Stream stream = getStream(headerStreamId);
+        if (stream != null) {
+            stream.onHeaders(headers, (headerFlags & FLAG_END_STREAM) != 0);
+        }
+    }
+
+    private void onData(int flags, int streamId, byte[] payload) throws IOException {
+        // Flow control covers the whole payload including padding, and the
+        // connection window is replenished right away
+        unacknowledgedConnectionBytes += payload.length;
+        if (unacknowledgedConnectionBytes >= CONNECTION_WINDOW_SIZE / 2) {
+            writeFrame(TYPE_WINDOW_UPDATE, 0, 0, intBytes(unacknowledgedConnectionBytes), 0, 4);
+            unacknowledgedConnectionBytes = 0;
+        }
+        int start = 0;
+        int end = payload.length;
+        if ((flags & FLAG_PADDED) != 0) {
+            start = 1;
+            end -= payload.length == 0 ? 0 : payload[0] & 0xff;
+            if (start > end) {
+                throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Invalid DATA padding");
+            }
+        }
+        final Stream stream = getStream(streamId);
+        if (stream != null) {
+            stream.onData(payload, start, end - start, payload.length - (end - start),
+                    (flags & FLAG_END_STREAM) != 0);
+        }
+    }
+
+    private void onSettings(byte[] payload) throws IOException {
+        if (payload.length % SETTING_LENGTH != 0) {
+            throw new ProtocolException(ERROR_FRAME_SIZE_ERROR, "Invalid SETTINGS frame");
+        }
+        synchronized (this) {
+            for (int i = 0; i < payload.length; i += SETTING_LENGTH) {
+                final int id = ((payload[i] & 0xff) << 8) | (payload[i + 1] & 0xff);
+                final int value = getInt(payload, i + 2);
+                switch (id) {
+                    case SETTINGS_MAX_CONCURRENT_STREAMS:
+                        peerMaxConcurrentStreams = value < 0 ? Integer.MAX_VALUE : value;
+                        break;
+                    case SETTINGS_INITIAL_WINDOW_SIZE:
+                        if (value < 0) {
+                            throw new ProtocolException(ERROR_FLOW_CONTROL_ERROR,
+                                    "Invalid initial window size");
+                        }
+                        final int delta = value - peerInitialWindowSize;
+                        for (final Stream stream : streams.values()) {
+                            stream.sendWindow += delta;
+                        }
+                        peerInitialWindowSize = value;
+                        break;
+                    case SETTINGS_MAX_FRAME_SIZE:
+                        peerMaxFrameSize = value;
+                        break;
+                    case SETTINGS_HEADER_TABLE_SIZE:
+                        // the encoder never uses the dynamic table
+                    default:
+                        break;
+                }
+            }
+            notifyAll();
+        }
+        writeFrame(TYPE_SETTINGS, FLAG_ACK, 0, payload, 0, 0);
+        capacityListener.run();
+    }
+
+    private void onGoAway(int lastStreamId, int errorCode) {
+        final List<Stream> unprocessed = new ArrayList<Stream>();
+        synchronized (this) {
+            goAway = true;
+            for (final Stream stream : streams.values()) {
+                if (stream.id > lastStreamId) {
+                    unprocessed.add(stream);
+                }
+            }
+        }
+        for (final Stream stream : unprocessed) {
+            // The peer did not process these streams, so they can be retried
+            stream.fail(new IOException("HTTP/2 connection was shut down by the server (error "
+                    + errorCode + ") before processing the request"));
+        }
+        capacityListener.run();
+        synchronized (this) {
+            if (reservedStreams > 0) {
+                return;
+            }
+        }
+        close(new IOException("HTTP/2 connection was shut down by the server"));
+    }
+
+    private void onWindowUpdate(int streamId, int increment) throws IOException {
+        synchronized (this) {
+            if (streamId == 0) {
+                sendWindow += increment;
+                if (sendWindow > MAX_WINDOW_SIZE) {
+                    throw new ProtocolException(ERROR_FLOW_CONTROL_ERROR,
+                            "Connection send window overflow");
+                }
+            } else {
+                final Stream stream = streams.get(streamId);
+                if (stream != null) {
+                    stream.sendWindow += increment;
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    private synchronized Stream getStream(int streamId) {
+        return streams.get(streamId);
+    }
+
+    /**
+     * Called once a stream is closed in both directions or reset.
+     */
+    private void release(Stream stream) {
+        boolean closeConnection;
+        synchronized (this) {
+            if (stream.id != 0) {
+                streams.remove(stream.id);
+            }
+            reservedStreams--;
+            if (reservedStreams == 0) {
+                idleSince = System.currentTimeMillis();
+            }
+            closeConnection = goAway && reservedStreams == 0 && !closed;
+            notifyAll();
+        }
+        capacityListener.run();
+        if (closeConnection) {
+            close(new IOException("HTTP/2 connection was shut down by the server"));
+        }
+    }
+
+    /**
+     * Closes the connection, failing all streams that are still open.
+     *
+     * @param cause the reason for closing.
+     */
+    void close(IOException cause) {
+        final List<Stream> open;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            open = new ArrayList<Stream>(streams.values());
+            notifyAll();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Closing HTTP/2 connection to " + socket.getRemoteSocketAddress() + ": "
+                    + cause.getMessage());
+        }
+        for (final Stream stream : open) {
+            stream.fail(cause);
+        }
+        try {
+            socket.close();
+        } catch (final IOException e) {
+            log.debug("Error closing HTTP/2 connection", e);
+        }
+        capacityListener.run();
+    }
+
+    /**
+     * Gracefully shuts the connection down, telling the peer no more streams
+     * will be opened.
+     */
+    void shutdown() {
+        try {
+            writeFrame(TYPE_GOAWAY, 0, 0, new byte[8], 0, 8);
+        } catch (final IOException e) {
+            log.debug("Unable to send GOAWAY", e);
+        }
+        close(new IOException("HTTP/2 connection was shut down"));
+    }
+
+    private static void putSetting(byte[] bytes, int offset, int id, int value) {
+        bytes[offset] = (byte) (id >>> 8);
+        bytes[offset + 1] = (byte) id;
+        putInt(bytes, offset + 2, value);
+    }
+
+    private static byte[] intBytes(int value) {
+        final byte[] bytes = new byte[4];
+        putInt(bytes, 0, value);
+        return bytes;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] bytes, int offset) throws IOException {
+        if (bytes.length < offset + 4) {
+            throw new ProtocolException(ERROR_FRAME_SIZE_ERROR, "Truncated frame");
+        }
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    /**
+     * A connection error; the connection is closed with a GOAWAY frame
+     * carrying the error code.
+     */
+    private static final class ProtocolException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final int errorCode;
+
+        ProtocolException(int errorCode, String message) {
+            super(message);
+            this.errorCode = errorCode;
+        }
+    }
+
+    /**
+     * A request/response exchange. Send-side state is guarded by the
+     * connection, receive-side state by the stream itself. The stream lock may
+     * be held while acquiring the connection lock, never the other way round.
+     */
+    private final class Stream {
+        private final int timeout;
+        // Assigned when the headers are sent, guarded by the connection
+        private int id;
+        private long sendWindow;
+
+        private final LinkedList<byte[]> data = new LinkedList<byte[]>();
+        private int dataOffset;
+        private int buffered;
+        private int unacknowledgedBytes;
+        private int status = -1;
+        private Map<String, String> headers;
+        private boolean requestSent;
+        private boolean released;
+        // Also read by senders holding the connection lock
+        private volatile boolean responseComplete;
+        private volatile IOException failure;
+
+        Stream(int timeout) {
+            this.timeout = timeout;
+        }
+
+        synchronized void onHeaders(List<String[]> fields, boolean endStream) {
+            if (status == -1) {
+                int code = -1;
+                final Map<String, String> map = new HashMap<String, String>();
+                for (final String[] field : fields) {
+                    if (field[0].equals(":status")) {
+                        code = Integer.parseInt(field[1]);
+                    } else if (!field[0].startsWith(":")) {
+                        final String existing = map.get(field[0]);
+                        map.put(field[0], existing == null ? field[1] : existing + ","
+                                + field[1]);
+                    }
+                }
+                if (code >= HTTP_STATUS_CONTINUE && code < HTTP_STATUS_OK) {
+                    // interim response
+                    return;
+                }
+                status = code;
+                headers = map;
+            }
+            if (endStream) {
+                onEndStream();
+            }
+            notifyAll();
+        }
+
+        void onData(byte[] payload, int offset, int length, int padding, boolean endStream)
+                throws IOException {
+            int acknowledge = padding;
+            synchronized (this) {
+                buffered += length;
+                if (buffered > STREAM_WINDOW_SIZE) {
+                    throw new ProtocolException(ERROR_FLOW_CONTROL_ERROR,
+                            "Stream receive window exceeded");
+                }
+                if (failure != null) {
+                    // nobody reads the content any more
+                    acknowledge += length;
+                    buffered -= length;
+                } else if (length > 0) {
+                    final byte[] chunk = new byte[length];
+                    System.arraycopy(payload, offset, chunk, 0, length);
+                    data.add(chunk);
+                }
+                if (endStream) {
+                    onEndStream();
+                }
+                notifyAll();
+            }
+            if (!endStream) {
+                acknowledge(acknowledge);
+            }
+        }
+
+        private void onEndStream() {
+            responseComplete = true;
+            if (requestSent) {
+                releaseOnce();
+            }
+        }
+
+        synchronized void onRequestSent() {
+            requestSent = true;
+            if (responseComplete) {
+                releaseOnce();
+            }
+        }
+
+        private void releaseOnce() {
+            if (!released) {
+                released = true;
+                release(this);
+            }
+        }
+
+        void fail(IOException cause) {
+            synchronized (this) {
+                // A complete response stays readable, for instance when the
+                // server answered before the whole request content was sent
+                if (failure == null && !responseComplete) {
+                    failure = cause;
+                    data.clear();
+                }
+                releaseOnce();
+                notifyAll();
+            }
+            synchronized (Http2Connection.this) {
+                Http2Connection.this.notifyAll();
+            }
+        }
+
+        void cancel() {
+            final boolean open;
+            synchronized (this) {
+                open = !released;
+            }
+            if (open) {
+                resetStream(this, ERROR_CANCEL);
+            }
+        }
+
+        /**
+         * Credits consumed bytes back to the peer once enough accumulated.
+         */
+        private void acknowledge(int bytes) throws IOException {
+            int increment = 0;
+            synchronized (this) {
+                unacknowledgedBytes += bytes;
+                if (unacknowledgedBytes >= STREAM_WINDOW_SIZE / 2 && !responseComplete) {
+                    increment = unacknowledgedBytes;
+                    unacknowledgedBytes = 0;
+                }
+            }
+            if (increment > 0) {
+                writeFrame(TYPE_WINDOW_UPDATE, 0, id, intBytes(increment), 0, 4);
+            }
+        }
+
+        synchronized HttpResponse awaitResponse(String method) throws IOException {
+            final long deadline = timeout == 0 ? 0 : System.currentTimeMillis() + timeout;
+            while (status == -1) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (responseComplete) {
+                    throw new IOException("HTTP/2 response had no status");
+                }
+                waitUntil(this, deadline);
+            }
+            final HttpResponse.Builder builder = HttpResponse.builder().statusCode(status);
+            for (final Map.Entry<String, String> header : headers.entrySet()) {
+                builder.header(header.getKey(), header.getValue());
+            }
+            if (!"HEAD".equals(method)) {
+                builder.content(new ContentInputStream());
+            }
+            return builder.build();
+        }
+
+        /**
+         * Reads from the buffered DATA frames, replenishing the stream window
+         * as the content is consumed.
+         */
+        private final class ContentInputStream extends InputStream {
+            private boolean closed;
+
+            @Override
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                final int read = read(b, 0, 1);
+                return read == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int read = 0;
+                synchronized (Stream.this) {
+                    final long deadline = timeout == 0 ? 0
+                            : System.currentTimeMillis() + timeout;
+                    while (data.isEmpty()) {
+                        if (closed) {
+                            throw new IOException("Stream closed");
+                        }
+                        if (failure != null) {
+                            throw failure;
+                        }
+                        if (responseComplete) {
+                            return -1;
+                        }
+                        waitUntil(Stream.this, deadline);
+                    }
+                    while (read < len && !data.isEmpty()) {
+                        final byte[] chunk = data.getFirst();
+                        final int n = Math.min(len - read, chunk.length - dataOffset);
+                        System.arraycopy(chunk, dataOffset, b, off + read, n);
+                        read += n;
+                        dataOffset += n;
+                        if (dataOffset == chunk.length) {
+                            data.removeFirst();
+                            dataOffset = 0;
+                        }
+                    }
+                    buffered -= read;
+                }
+                acknowledge(read);
+                return read;
+            }
+
+            @Override
+            public int available() {
+                synchronized (Stream.this) {
+                    return buffered;
+                }
+            }
+
+            @Override
+            public void close() {
+                synchronized (Stream.this) {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    data.clear();
+                }
+                cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import com.amazonaws.ClientConfiguration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+
+/**
+ * An implementation of {@link HttpClient} using HTTP/2. Concurrent requests
+ * to the same endpoint are multiplexed as streams over a shared connection; a
+ * further connection is only opened once every connection carries
+ * {@link ClientConfiguration#getMaxConcurrentStreams()} streams (or the
+ * server's lower limit), up to {@link ClientConfiguration#getMaxConnections()}
+ * connections per endpoint. Requests beyond that wait for a free stream.
+ * <p>
+ * HTTPS endpoints negotiate HTTP/2 with ALPN. When the endpoint or the
+ * platform doesn't support it, requests to that endpoint are executed by a
+ * {@link UrlHttpClient} instead. HTTP endpoints are spoken to in HTTP/2
+ * directly (h2c with prior knowledge).
+ * <p>
+ * Proxy settings of the {@link ClientConfiguration} are not supported.
+ */
+public class Http2HttpClient implements HttpClient {
+
+    private static final Log log = LogFactory.getLog(Http2HttpClient.class);
+
+    private static final long IDLE_CONNECTION_TIMEOUT_MILLIS = 60 * 1000;
+    private static final int HTTP_PORT = 80;
+    private static final int HTTPS_PORT = 443;
+    private static final String H2 = "h2";
+    private static final String[] APPLICATION_PROTOCOLS = {
+            H2, "http/1.1"
+    };
+
+    private final ClientConfiguration config;
+    private final HttpClient fallback;
+    private final Map<String, Route> routes = new HashMap<String, Route>();
+    private SSLContext sslContext;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Constructor.
+     *
+     * @param config the client config.
+     */
+    public Http2HttpClient(ClientConfiguration config) {
+        this.config = config;
+        this.fallback = new UrlHttpClient(config);
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        if (shutdown) {
+            throw new IOException("Http2HttpClient has been shut down");
+        }
+        final Route route = getRoute(request.getUri());
+        final Http2Connection connection = route.acquire();
+        if (connection == null) {
+            return fallback.execute(request);
+        }
+        return connection.execute(request, config.getSocketTimeout());
+    }
+
+    /**
+     * Returns the number of active streams on each open HTTP/2 connection,
+     * keyed by endpoint ("scheme://host:port").
+     *
+     * @return the stream counts per connection.
+     */
+    public Map<String, List<Integer>> getActiveStreamCounts() {
+        final List<Route> snapshot;
+        synchronized (routes) {
+            snapshot = new ArrayList<Route>(routes.values());
+        }
+        final Map<String, List<Integer>> counts = new HashMap<String, List<Integer>>();
+        for (final Route route : snapshot) {
+            final List<Integer> perConnection = new ArrayList<Integer>();
+            for (final Http2Connection connection : route.getConnections()) {
+                perConnection.add(connection.getActiveStreamCount());
+            }
+            if (!perConnection.isEmpty()) {
+                counts.put(route.key, perConnection);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        final List<Route> snapshot;
+        synchronized (routes) {
+            snapshot = new ArrayList<Route>(routes.values());
+            routes.clear();
+        }
+        for (final Route route : snapshot) {
+            for (final Http2Connection connection : route.getConnections()) {
+                connection.shutdown();
+            }
+        }
+        fallback.shutdown();
+    }
+
+    private Route getRoute(URI uri) {
+        final boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort();
+        if (port == -1) {
+            port = secure ? HTTPS_PORT : HTTP_PORT;
+        }
+        final String key = (secure ? "https://" : "http://") + uri.getHost() + ":" + port;
+        synchronized (routes) {
+            Route route = routes.get(key);
+            if (route == null) {
+                route = new Route(key, uri.getHost(), port, secure);
+                routes.put(key, route);
+            }
+            return route;
+        }
+    }
+
+    private Socket connect(Route route) throws IOException {
+        final Socket plain = new Socket();
+        try {
+            plain.connect(new InetSocketAddress(route.host, route.port),
+                    config.getConnectionTimeout());
+            plain.setSoTimeout(config.getSocketTimeout());
+            if (!route.secure) {
+                return plain;
+            }
+            final SSLSocket socket = (SSLSocket) getSslContext().getSocketFactory()
+                    .createSocket(plain, route.host, route.port, true);
+            final SSLParameters parameters = socket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            final boolean alpn = setApplicationProtocols(parameters);
+            socket.setSSLParameters(parameters);
+            socket.startHandshake();
+            if (alpn && H2.equals(getApplicationProtocol(socket))) {
+                return socket;
+            }
+            log.info(route.key + " does not support HTTP/2, falling back to HTTP/1.1");
+            socket.close();
+            return null;
+        } catch (final IOException e) {
+            plain.close();
+            throw e;
+        }
+    }
+
+    private synchronized SSLContext getSslContext() throws IOException {
+        if (sslContext == null) {
+            try {
+                if (config.getTrustManager() != null) {
+                    sslContext = SSLContext.getInstance("TLS");
+                    sslContext.init(null, new TrustManager[] {
+                            config.getTrustManager()
+                    }, null);
+                } else {
+                    sslContext = SSLContext.getDefault();
+                }
+            } catch (final GeneralSecurityException e) {
+                throw new IOException("Unable to initialize TLS", e);
+            }
+        }
+        return sslContext;
+    }
+
+    /*
+     * ALPN is only available from Java 9 (and Java 8u252), so it is looked up
+     * reflectively.
+     */
+    private static boolean setApplicationProtocols(SSLParameters parameters) {
+        try {
+            final Method method = SSLParameters.class.getMethod("setApplicationProtocols",
+                    String[].class);
+            method.invoke(parameters, new Object[] {
+                    APPLICATION_PROTOCOLS
+            });
+            return true;
+        } catch (final Exception e) {
+            log.debug("ALPN is not supported on this platform", e);
+            return false;
+        }
+    }
+
+    private static String getApplicationProtocol(SSLSocket socket) {
+        try {
+            final Method method = SSLSocket.class.getMethod("getApplicationProtocol");
+            return (String) method.invoke(socket);
+        } catch (final Exception e) {
+            log.debug("ALPN is not supported on this platform", e);
+            return null;
+        }
+    }
+
+    /**
+     * The connections to one endpoint.
+     */
+    private final class Route implements Runnable {
+        private final String key;
+        private final String host;
+        private final int port;
+        private final boolean secure;
+
+        // Guarded by this
+        private final List<Http2Connection> connections = new LinkedList<Http2Connection>();
+        private int connecting;
+        private boolean http2Unsupported;
+
+        Route(String key, String host, int port, boolean secure) {
+            this.key = key;
+            this.host = host;
+            this.port = port;
+            this.secure = secure;
+        }
+
+        synchronized List<Http2Connection> getConnections() {
+            return new ArrayList<Http2Connection>(connections);
+        }
+
+        /**
+         * Reserves a stream on a connection, opening a new connection if all
+         * are busy and the limit allows it, or waiting otherwise.
+         *
+         * @return the connection, or null if the endpoint doesn't support
+         *         HTTP/2.
+         */
+        Http2Connection acquire() throws IOException {
+            final List<Http2Connection> idle = new ArrayList<Http2Connection>();
+            try {
+                synchronized (this) {
+                    while (true) {
+                        if (shutdown) {
+                            throw new IOException("Http2HttpClient has been shut down");
+                        }
+                        if (http2Unsupported) {
+                            return null;
+                        }
+                        final Http2Connection connection = reserve(idle);
+                        if (connection != null) {
+                            return connection;
+                        }
+                        if (connections.size() + connecting < Math.max(1,
+                                config.getMaxConnections())) {
+                            connecting++;
+                            break;
+                        }
+                        try {
+                            wait();
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException(
+                                    "Interrupted waiting for an HTTP/2 stream");
+                        }
+                    }
+                }
+            } finally {
+                // Closing fails streams, which must not happen under the route lock
+                for (final Http2Connection connection : idle) {
+                    connection.shutdown();
+                }
+            }
+            return open();
+        }
+
+        private Http2Connection reserve(List<Http2Connection> idle) {
+            final long now = System.currentTimeMillis();
+            Http2Connection reserved = null;
+            for (final Iterator<Http2Connection> it = connections.iterator(); it.hasNext();) {
+                final Http2Connection connection = it.next();
+                if (!connection.isUsable()) {
+                    it.remove();
+                } else if (reserved == null && connection.tryReserve()) {
+                    reserved = connection;
+                } else {
+                    final long idleSince = connection.getIdleSince();
+                    if (idleSince != -1 && now - idleSince > IDLE_CONNECTION_TIMEOUT_MILLIS) {
+                        it.remove();
+                        idle.add(connection);
+                    }
+                }
+            }
+            return reserved;
+        }
+
+        private Http2Connection open() throws IOException {
+            Http2Connection connection = null;
+            boolean unsupported = false;
+            try {
+                final Socket socket = connect(this);
+                if (socket == null) {
+                    unsupported = true;
+                } else {
+                    try {
+                        connection = new Http2Connection(socket, secure ? "https" : "http",
+                                config.getMaxConcurrentStreams(), this);
+                    } catch (final IOException e) {
+                        socket.close();
+                        throw e;
+                    }
+                    connection.tryReserve();
+                }
+                return connection;
+            } finally {
+                synchronized (this) {
+                    connecting--;
+                    if (connection != null) {
+                        connections.add(connection);
+                    }
+                    http2Unsupported |= unsupported;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Wakes up requests waiting for a stream.
+         */
+        @Override
+        public synchronized void run() {
+            notifyAll();
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.amazonaws.http;
 
 import com.amazonaws.ClientConfiguration;
+import com.amazonaws.HttpVersion;
 import com.amazonaws.http.impl.client.HttpRequestNoRetryHandler;
 import com.amazonaws.http.impl.client.SdkHttpClient;
 
@@ -39,12 +40,30 @@ import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.HttpContext;
 
-/** Responsible for creating and configuring instances of Apache HttpClient4. */
-class HttpClientFactory {
+/**
+ * Responsible for creating and configuring instances of Apache HttpClient4,
+ * and of the default transport of the service clients.
+ */
+public class HttpClientFactory {
 
     private static final int HTTP_PORT = 80;
     private static final int HTTPS_PORT = 443;
 
+    /**
+     * Creates the default transport for the specified ClientConfiguration: a
+     * {@link Http2HttpClient} if {@link ClientConfiguration#getHttpVersion()}
+     * is {@link HttpVersion#HTTP_2}, a {@link UrlHttpClient} otherwise.
+     *
+     * @param config Client configuration options.
+     * @return The new, configured transport.
+     */
+    public static com.amazonaws.http.HttpClient createTransport(ClientConfiguration config) {
+        if (config.getHttpVersion() == HttpVersion.HTTP_2) {
+            return new Http2HttpClient(config);
+        }
+        return new UrlHttpClient(config);
+    }
+
     /**
      * Creates a new HttpClient object using the specified AWS
      * ClientConfiguration to configure the client.
@@ -20,6 +20,7 @@ package com.amazonaws.http;
 
 import com.amazonaws.HttpMethod;
 import com.amazonaws.internal.SdkInputStream;
+import com.amazonaws.util.BufferPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -172,6 +173,33 @@ public class HttpMethodReleaseInputStream extends SdkInputStream {
         }
     }
 
+    /**
+     * Skips by reading into a pooled buffer, so that {@link #releaseConnection}
+     * is called if the end of the stream is reached or an error occurs.
+     *
+     * @see java.io.InputStream#skip(long)
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        final byte[] buffer = BufferPool.getDefault().acquire();
+        try {
+            long remaining = n;
+            while (remaining > 0) {
+                final int read = read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    break;
+                }
+                remaining -= read;
+            }
+            return n - remaining;
+        } finally {
+            BufferPool.getDefault().release(buffer);
+        }
+    }
+
     /**
      * Standard input stream available method, except it ensures that
      * {@link #releaseConnection()} is called if any errors are encountered from
@@ -18,8 +18,8 @@ package com.amazonaws.http;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -119,7 +119,9 @@ public class HttpResponse {
         private String statusText;
         private int statusCode;
         private InputStream content;
-        private final Map<String, String> headers = new HashMap<String, String>();
+        // header names are case insensitive; HTTP/2 for instance lowercases them
+        private final Map<String, String> headers = new TreeMap<String, String>(
+                String.CASE_INSENSITIVE_ORDER);
 
         /**
          * Sets the status text.
@@ -0,0 +1,1345 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.internal.FileRegionInputStream;
+import com.amazonaws.internal.FileRegionSource;
+import com.amazonaws.util.BufferPool;
+import com.amazonaws.util.StringUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+
+/**
+ * A non-blocking implementation of {@link HttpClient} built on a single
+ * selector thread. Any number of requests can be in flight at the same time
+ * without holding a thread each: the selector thread performs all socket I/O,
+ * and completion callbacks run on a small callback executor.
+ * <p>
+ * Connections are kept alive and pooled per endpoint; at most
+ * {@link ClientConfiguration#getMaxConnections()} connections are opened to
+ * the same endpoint, and requests beyond that wait for a free connection.
+ * Response content is buffered up to a fixed window per connection, after
+ * which reading from the socket is suspended until the content is consumed,
+ * so a slow reader never makes the client buffer a whole download.
+ * <p>
+ * Request content of a known length backed by a file region (see
+ * {@link FileRegionSource}) is sent without copying it through the Java heap:
+ * with {@link java.nio.channels.FileChannel#transferTo} on plain connections,
+ * and encrypted straight from memory mapped windows of the file on TLS
+ * connections.
+ * <p>
+ * Proxy settings of the {@link ClientConfiguration} are not supported.
+ */
+public class NioHttpClient implements AsyncHttpClient {
+
+    private static final Log log = LogFactory.getLog(NioHttpClient.class);
+
+    private static final int RESPONSE_BUFFER_LIMIT = 64 * 1024;
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int CHUNK_HEADER_SIZE = 16;
+    static final long FILE_REGION_WINDOW_SIZE = 8 * 1024 * 1024;
+    private static final int HEX = 16;
+    private static final long SELECT_TIMEOUT_MILLIS = 250;
+    private static final long IDLE_CONNECTION_TIMEOUT_MILLIS = 60 * 1000;
+    private static final int HTTP_PORT = 80;
+    private static final int HTTPS_PORT = 443;
+    private static final int HTTP_STATUS_CONTINUE = 100;
+    private static final int HTTP_STATUS_SWITCHING_PROTOCOLS = 101;
+    private static final int HTTP_STATUS_OK = 200;
+    private static final int HTTP_STATUS_NO_CONTENT = 204;
+    private static final int HTTP_STATUS_NOT_MODIFIED = 304;
+    private static final String CRLF = "\r\n";
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final ClientConfiguration config;
+    private final ExecutorService callbackExecutor;
+    private final boolean ownsCallbackExecutor;
+    private final Selector selector;
+    private final Thread ioThread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private volatile boolean shutdown = false;
+    private volatile int openConnectionCount = 0;
+
+    // Only accessed from the I/O thread
+    private final Map<String, Route> routes = new HashMap<String, Route>();
+    private final Set<Connection> connections = new HashSet<Connection>();
+    private SSLContext sslContext;
+
+    /**
+     * Constructor. Completion callbacks run on a fixed pool with one daemon
+     * thread per available processor.
+     *
+     * @param config the client config.
+     */
+    public NioHttpClient(ClientConfiguration config) {
+        this(config, createCallbackExecutor(), true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param config the client config.
+     * @param callbackExecutor the executor running completion callbacks. It
+     *            is not shut down by {@link #shutdown()}.
+     */
+    public NioHttpClient(ClientConfiguration config, ExecutorService callbackExecutor) {
+        this(config, callbackExecutor, false);
+    }
+
+    private NioHttpClient(ClientConfiguration config, ExecutorService callbackExecutor,
+            boolean ownsCallbackExecutor) {
+        this.config = config;
+        this.callbackExecutor = callbackExecutor;
+        this.ownsCallbackExecutor = ownsCallbackExecutor;
+        try {
+            this.selector = Selector.open();
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to open selector: " + e.getMessage(), e);
+        }
+        this.ioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runSelectorLoop();
+            }
+        });
+        ioThread.setName("aws-sdk-nio-http-client");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    private static ExecutorService createCallbackExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread t = new Thread(r);
+                        t.setName("aws-sdk-nio-http-callback-" + threadCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        final Future<HttpResponse> future = executeAsync(request, null);
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public Future<HttpResponse> executeAsync(HttpRequest request, Callback callback) {
+        final Exchange exchange = new Exchange(request, callback);
+        if (shutdown) {
+            exchange.fail(new IOException("HTTP client has been shut down"));
+            return exchange.future;
+        }
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                final Route route;
+                try {
+                    route = route(exchange.request.getUri());
+                } catch (final RuntimeException e) {
+                    exchange.fail(new IOException("Invalid request URI: " + e.getMessage(), e));
+                    return;
+                }
+                route.pending.add(exchange);
+                dispatch(route);
+            }
+        });
+        return exchange.future;
+    }
+
+    /**
+     * Closes all connections, fails pending requests and stops the I/O
+     * thread.
+     */
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        selector.wakeup();
+        if (ownsCallbackExecutor) {
+            callbackExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the number of open connections, both busy and idle.
+     *
+     * @return the number of open connections.
+     */
+    public int getOpenConnectionCount() {
+        return openConnectionCount;
+    }
+
+    private void scheduleDispatch(final Route route) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                dispatch(route);
+            }
+        });
+    }
+
+    private void submit(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void runSelectorLoop() {
+        while (!shutdown) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+            } catch (final IOException e) {
+                log.warn("Selector failure", e);
+            }
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (final RuntimeException e) {
+                    // Failures of an exchange are reported to it where they
+                    // happen; anything else must not stop the I/O thread
+                    log.warn("Unexpected failure on the I/O thread", e);
+                }
+            }
+            for (final SelectionKey key : selector.selectedKeys()) {
+                final Connection connection = (Connection) key.attachment();
+                try {
+                    if (key.isValid()) {
+                        connection.process();
+                    }
+                } catch (final IOException e) {
+                    connection.fail(e);
+                } catch (final RuntimeException e) {
+                    connection.fail(new IOException(e));
+                }
+            }
+            selector.selectedKeys().clear();
+            checkTimeouts();
+        }
+        final IOException shutdownException = new IOException("HTTP client has been shut down");
+        for (final Connection connection : new ArrayList<Connection>(connections)) {
+            connection.fail(shutdownException);
+        }
+        for (final Route route : routes.values()) {
+            for (final Exchange exchange : route.pending) {
+                exchange.fail(shutdownException);
+            }
+            route.pending.clear();
+        }
+        try {
+            selector.close();
+        } catch (final IOException e) {
+            log.debug("Unable to close selector", e);
+        }
+    }
+
+    private void checkTimeouts() {
+        final long now = System.currentTimeMillis();
+        for (final Connection connection : new ArrayList<Connection>(connections)) {
+            if (connection.deadline > 0 && connection.deadline < now) {
+                if (connection.exchange == null) {
+                    connection.close();
+                } else {
+                    connection.fail(new SocketTimeoutException(connection.state == State.CONNECTING
+                            ? "connect timed out" : "Read timed out"));
+                }
+            }
+        }
+    }
+
+    private Route route(URI uri) {
+        final boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort();
+        if (port < 0) {
+            port = secure ? HTTPS_PORT : HTTP_PORT;
+        }
+        final String key = (secure ? "https://" : "http://") + uri.getHost() + ":" + port;
+        Route route = routes.get(key);
+        if (route == null) {
+            route = new Route(uri.getHost(), port, secure);
+            routes.put(key, route);
+        }
+        return route;
+    }
+
+    /**
+     * Assigns pending requests of the route to idle connections, opening new
+     * connections up to the configured maximum.
+     */
+    private void dispatch(Route route) {
+        while (!shutdown && !route.pending.isEmpty()) {
+            final Exchange exchange = route.pending.peek();
+            if (exchange.future.isCancelled()) {
+                route.pending.poll();
+                continue;
+            }
+            Connection connection = route.idle.pollLast();
+            if (connection == null) {
+                if (route.openConnections >= Math.max(1, config.getMaxConnections())) {
+                    return;
+                }
+                try {
+                    connection = openConnection(route);
+                } catch (final IOException e) {
+                    route.pending.poll().fail(e);
+                    continue;
+                }
+            }
+            connection.start(route.pending.poll());
+        }
+    }
+
+    private Connection openConnection(Route route) throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            final int sendBufferSize = config.getSocketBufferSizeHints()[0];
+            final int receiveBufferSize = config.getSocketBufferSizeHints()[1];
+            if (sendBufferSize > 0) {
+                channel.socket().setSendBufferSize(sendBufferSize);
+            }
+            if (receiveBufferSize > 0) {
+                channel.socket().setReceiveBufferSize(receiveBufferSize);
+            }
+            if (config.getLocalAddress() != null) {
+                channel.socket().bind(new InetSocketAddress(config.getLocalAddress(), 0));
+            }
+            final Connection connection = new Connection(route, channel);
+            connection.key = channel.register(selector, 0, connection);
+            final boolean connected;
+            try {
+                connected = channel.connect(new InetSocketAddress(route.host, route.port));
+            } catch (final UnresolvedAddressException e) {
+                throw new UnknownHostException(route.host);
+            }
+            if (connected) {
+                connection.onConnected();
+            } else {
+                connection.state = State.CONNECTING;
+                connection.interest(SelectionKey.OP_CONNECT);
+                connection.deadline = deadline(config.getConnectionTimeout());
+            }
+            connections.add(connection);
+            openConnectionCount = connections.size();
+            route.openConnections++;
+            return connection;
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        } catch (final RuntimeException e) {
+            channel.close();
+            throw new IOException("Unable to open a connection to " + route.host + ":"
+                    + route.port + ": " + e.getMessage(), e);
+        }
+    }
+
+    private SSLEngine createSSLEngine(Route route) throws IOException {
+        if (sslContext == null) {
+            try {
+                if (config.getTrustManager() != null) {
+                    sslContext = SSLContext.getInstance("TLS");
+                    sslContext.init(null, new TrustManager[] {
+                            config.getTrustManager()
+                    }, null);
+                } else {
+                    sslContext = SSLContext.getDefault();
+                }
+            } catch (final GeneralSecurityException e) {
+                throw new SSLException("Unable to initialize SSL context", e);
+            }
+        }
+        final SSLEngine engine = sslContext.createSSLEngine(route.host, route.port);
+        engine.setUseClientMode(true);
+        final SSLParameters parameters = engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(parameters);
+        return engine;
+    }
+
+    private static long deadline(int timeoutMillis) {
+        return timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+    }
+
+    /**
+     * Connection pool and request queue of one scheme, host and port.
+     */
+    private static final class Route {
+        private final String host;
+        private final int port;
+        private final boolean secure;
+        private final LinkedList<Connection> idle = new LinkedList<Connection>();
+        private final LinkedList<Exchange> pending = new LinkedList<Exchange>();
+        private int openConnections;
+
+        private Route(String host, int port, boolean secure) {
+            this.host = host;
+            this.port = port;
+            this.secure = secure;
+        }
+    }
+
+    /**
+     * A request, its completion callback and the state of its response.
+     */
+    private final class Exchange {
+        private final HttpRequest request;
+        private final Callback callback;
+        private final CompletionFuture<HttpResponse> future = new CompletionFuture<HttpResponse>();
+        private ContentStream content;
+        private boolean delivered = false;
+        private boolean responseStarted = false;
+        private boolean retried = false;
+
+        private Exchange(HttpRequest request, Callback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+
+        private void deliver(final HttpResponse response) {
+            delivered = true;
+            future.complete(response);
+            if (callback != null) {
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onResponse(response);
+                    }
+                });
+            }
+        }
+
+        private void fail(final IOException e) {
+            if (delivered) {
+                content.fail(e);
+                return;
+            }
+            delivered = true;
+            future.fail(e);
+            if (callback != null) {
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFailure(e);
+                    }
+                });
+            }
+        }
+    }
+
+    private enum State {
+        CONNECTING, HANDSHAKING, WRITING, READING, IDLE
+    }
+
+    private enum ResponseState {
+        HEAD, BODY, BODY_UNTIL_CLOSE, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, CHUNK_TRAILER, DONE
+    }
+
+    /**
+     * A pooled connection. All methods are invoked on the I/O thread.
+     */
+    private final class Connection {
+        private final Route route;
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private State state = State.IDLE;
+        private long deadline;
+        private boolean reused = false;
+        private boolean keepAlive;
+
+        private SSLEngine engine;
+        private ByteBuffer netIn;
+        private ByteBuffer netOut;
+        // Plain connections read straight into a pooled direct buffer
+        private ByteBuffer appIn = BufferPool.getDefault().acquireDirect();
+
+        private Exchange exchange;
+        private ByteBuffer out;
+        private byte[] bodyBuffer;
+        private InputStream body;
+        private FileRegionSource bodyRegion;
+        /** The bytes of the mapped window being written, not yet accounted for. */
+        private long bodyRegionPending;
+        private long bodyRemaining;
+        private boolean chunked;
+        private boolean requestComplete;
+
+        private ResponseState responseState;
+        private final StringBuilder line = new StringBuilder();
+        private HttpResponse.Builder responseBuilder;
+        private Map<String, String> responseHeaders;
+        private long contentRemaining;
+        private boolean paused;
+
+        private Connection(Route route, SocketChannel channel) {
+            this.route = route;
+            this.channel = channel;
+        }
+
+        private void interest(int ops) {
+            if (key.isValid()) {
+                key.interestOps(ops);
+            }
+        }
+
+        private void onConnected() throws IOException {
+            channel.finishConnect();
+            if (route.secure) {
+                engine = createSSLEngine(route);
+                final int packetSize = engine.getSession().getPacketBufferSize();
+                netIn = ByteBuffer.allocate(packetSize);
+                netOut = ByteBuffer.allocate(packetSize);
+                BufferPool.getDefault().release(appIn);
+                appIn = ByteBuffer.allocate(Math.max(appIn.capacity(),
+                        engine.getSession().getApplicationBufferSize()));
+                engine.beginHandshake();
+                state = State.HANDSHAKING;
+            } else {
+                state = State.WRITING;
+            }
+            deadline = deadline(config.getSocketTimeout());
+        }
+
+        private void start(Exchange next) {
+            exchange = next;
+            reused = state == State.IDLE;
+            if (reused) {
+                state = State.WRITING;
+            }
+            try {
+                prepareRequest(next.request);
+            } catch (final RuntimeException e) {
+                // Preparing the request again would fail the same way
+                next.retried = true;
+                fail(new IOException("Unable to prepare the request: " + e.getMessage(), e));
+                return;
+            }
+            if (state != State.CONNECTING) {
+                deadline = deadline(config.getSocketTimeout());
+                try {
+                    process();
+                } catch (final IOException e) {
+                    fail(e);
+                } catch (final RuntimeException e) {
+                    fail(new IOException(e));
+                }
+            }
+        }
+
+        private void process() throws IOException {
+            if (state == State.CONNECTING) {
+                if (!key.isConnectable()) {
+                    return;
+                }
+                onConnected();
+            }
+            if (state == State.HANDSHAKING) {
+                if (!handshake()) {
+                    interest(netOut.position() > 0
+                            || engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP
+                            ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                    return;
+                }
+                state = State.WRITING;
+            }
+            if (state == State.WRITING) {
+                if (!writeRequest()) {
+                    interest(SelectionKey.OP_WRITE);
+                    return;
+                }
+                state = State.READING;
+                interest(SelectionKey.OP_READ);
+            }
+            if (state == State.READING) {
+                readResponse();
+            } else if (state == State.IDLE && key.isReadable()) {
+                // An idle connection only becomes readable when the server
+                // closes it
+                close();
+            }
+        }
+
+        private boolean handshake() throws IOException {
+            while (true) {
+                switch (engine.getHandshakeStatus()) {
+                    case NEED_TASK:
+                        Runnable task;
+                        while ((task = engine.getDelegatedTask()) != null) {
+                            task.run();
+                        }
+                        break;
+                    case NEED_WRAP:
+                        final SSLEngineResult result = engine.wrap(EMPTY, netOut);
+                        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            throw new SSLException("Connection closed during handshake");
+                        }
+                        if (!flushNet()) {
+                            return false;
+                        }
+                        break;
+                    case NEED_UNWRAP:
+                        final int read = unwrap();
+                        if (read < 0) {
+                            throw new SSLException("Connection closed during handshake");
+                        }
+                        if (read == 0 && engine.getHandshakeStatus()
+                                == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                            return false;
+                        }
+                        break;
+                    default:
+                        return flushNet();
+                }
+            }
+        }
+
+        /**
+         * Unwraps buffered and newly read network data into the application
+         * buffer.
+         *
+         * @return the number of application bytes produced, 0 if more network
+         *         data is needed, -1 at end of stream.
+         */
+        private int unwrap() throws IOException {
+            int produced = 0;
+            while (true) {
+                netIn.flip();
+                final SSLEngineResult result = engine.unwrap(netIn, appIn);
+                netIn.compact();
+                produced += result.bytesProduced();
+                switch (result.getStatus()) {
+                    case OK:
+                        if (state == State.HANDSHAKING) {
+                            return Math.max(produced, result.bytesConsumed() > 0 ? 1 : 0);
+                        }
+                        // Post-handshake messages, such as session tickets
+                        if (result.getHandshakeStatus()
+                                == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                            Runnable task;
+                            while ((task = engine.getDelegatedTask()) != null) {
+                                task.run();
+                            }
+                        } else if (result.getHandshakeStatus()
+                                == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                            engine.wrap(EMPTY, netOut);
+                            flushNet();
+                        }
+                        if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                            return produced;
+                        }
+                        break;
+                    case BUFFER_UNDERFLOW:
+                        if (produced > 0) {
+                            return produced;
+                        }
+                        if (netIn.remaining() == 0) {
+                            netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                        }
+                        final int read = channel.read(netIn);
+                        if (read < 0) {
+                            return -1;
+                        }
+                        if (read == 0) {
+                            return 0;
+                        }
+                        break;
+                    case BUFFER_OVERFLOW:
+                        appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                        break;
+                    default:
+                        return produced > 0 ? produced : -1;
+                }
+            }
+        }
+
+        private boolean flushNet() throws IOException {
+            netOut.flip();
+            channel.write(netOut);
+            final boolean flushed = !netOut.hasRemaining();
+            netOut.compact();
+            return flushed;
+        }
+
+        private ByteBuffer enlarge(ByteBuffer buffer, int minimum) {
+            final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() + minimum);
+            buffer.flip();
+            larger.put(buffer);
+            return larger;
+        }
+
+        private void prepareRequest(HttpRequest request) {
+            final URI uri = request.getUri();
+            final StringBuilder head = new StringBuilder(request.getMethod()).append(' ');
+            final String path = uri.getRawPath();
+            head.append(path == null || path.isEmpty() ? "/" : path);
+            if (uri.getRawQuery() != null) {
+                head.append('?').append(uri.getRawQuery());
+            }
+            head.append(" HTTP/1.1").append(CRLF);
+            boolean hasHost = false;
+            for (final Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                final String name = header.getKey();
+                // The framing headers are computed below, and 100-continue is
+                // not supported for the same reasons as in UrlHttpClient
+                if (name.equalsIgnoreCase(HttpHeader.CONTENT_LENGTH)
+                        || name.equalsIgnoreCase(HttpHeader.EXPECT)
+                        || name.equalsIgnoreCase("Transfer-Encoding")
+                        || name.equalsIgnoreCase("Connection")) {
+                    continue;
+                }
+                hasHost |= name.equalsIgnoreCase(HttpHeader.HOST);
+                head.append(name).append(": ").append(header.getValue()).append(CRLF);
+            }
+            if (!hasHost) {
+                head.append(HttpHeader.HOST).append(": ").append(uri.getHost());
+                if (uri.getPort() > 0) {
+                    head.append(':').append(uri.getPort());
+                }
+                head.append(CRLF);
+            }
+            body = request.getContent();
+            final String length = request.getHeaders().get(HttpHeader.CONTENT_LENGTH);
+            chunked = body != null && (request.isStreaming() || length == null || length.isEmpty());
+            if (chunked) {
+                head.append("Transfer-Encoding: chunked").append(CRLF);
+            } else if (body != null) {
+                bodyRemaining = request.getContentLength();
+                head.append(HttpHeader.CONTENT_LENGTH).append(": ").append(bodyRemaining).append(CRLF);
+            } else if ("POST".equals(request.getMethod()) || "PUT".equals(request.getMethod())) {
+                head.append(HttpHeader.CONTENT_LENGTH).append(": 0").append(CRLF);
+            }
+            head.append(CRLF);
+            out = ByteBuffer.wrap(head.toString().getBytes(StringUtils.UTF8));
+            requestComplete = body == null || (!chunked && bodyRemaining == 0);
+            bodyRegion = null;
+            bodyRegionPending = 0;
+            if (!chunked && body instanceof FileRegionSource
+                    && ((FileRegionSource) body).getFileRegion() != null) {
+                bodyRegion = (FileRegionSource) body;
+            }
+
+            responseState = ResponseState.HEAD;
+            line.setLength(0);
+            responseBuilder = null;
+            paused = false;
+        }
+
+        private boolean writeRequest() throws IOException {
+            deadline = deadline(config.getSocketTimeout());
+            while (true) {
+                if (engine != null && !flushNet()) {
+                    return false;
+                }
+                if (!out.hasRemaining()) {
+                    if (bodyRegionPending > 0) {
+                        // The window has been encrypted and flushed, so the
+                        // streams of the content, and progress, catch up
+                        bodyRegion.transferred(bodyRegionPending);
+                        bodyRegionPending = 0;
+                    }
+                    if (requestComplete) {
+                        return true;
+                    }
+                    if (bodyRegion != null && engine == null) {
+                        if (!transferRequestContent()) {
+                            return false;
+                        }
+                        continue;
+                    }
+                    out = nextRequestContent();
+                    continue;
+                }
+                if (engine != null) {
+                    final SSLEngineResult result = engine.wrap(out, netOut);
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("Connection closed while writing request");
+                    }
+                } else {
+                    channel.write(out);
+                    if (out.hasRemaining()) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sends request content from its file region straight to the socket.
+         *
+         * @return false if the socket can't accept more bytes.
+         */
+        private boolean transferRequestContent() throws IOException {
+            final FileRegionInputStream region = bodyRegion.getFileRegion();
+            final long sent = region.transferTo(channel,
+                    Math.min(bodyRemaining, FILE_REGION_WINDOW_SIZE));
+            if (sent == 0) {
+                if (region.getRemaining() == 0) {
+                    throw new IOException("Request content ended before Content-Length bytes");
+                }
+                return false;
+            }
+            bodyRegion.transferred(sent);
+            bodyRemaining -= sent;
+            requestComplete = bodyRemaining == 0;
+            return true;
+        }
+
+        /**
+         * Reads the next piece of the request content, framed as a chunk if
+         * the content length is unknown. Content backed by a file region is
+         * mapped rather than read, so that it is encrypted straight from the
+         * file; the region is told of the mapped bytes once they are written.
+         */
+        private ByteBuffer nextRequestContent() throws IOException {
+            if (bodyRegion != null) {
+                final ByteBuffer window = bodyRegion.getFileRegion().map(
+                        Math.min(bodyRemaining, FILE_REGION_WINDOW_SIZE));
+                if (!window.hasRemaining()) {
+                    throw new IOException("Request content ended before Content-Length bytes");
+                }
+                bodyRegionPending = window.remaining();
+                bodyRemaining -= window.remaining();
+                requestComplete = bodyRemaining == 0;
+                return window;
+            }
+            if (bodyBuffer == null) {
+                bodyBuffer = BufferPool.getDefault().acquire();
+            }
+            if (!chunked) {
+                final int read = body.read(bodyBuffer, 0,
+                        (int) Math.min(bodyBuffer.length, bodyRemaining));
+                if (read < 0) {
+                    throw new IOException("Request content ended before Content-Length bytes");
+                }
+                bodyRemaining -= read;
+                requestComplete = bodyRemaining == 0;
+                return ByteBuffer.wrap(bodyBuffer, 0, read);
+            }
+            final int max = bodyBuffer.length - CHUNK_HEADER_SIZE - CRLF.length();
+            final int read = body.read(bodyBuffer, CHUNK_HEADER_SIZE, max);
+            if (read < 0) {
+                requestComplete = true;
+                return ByteBuffer.wrap(("0" + CRLF + CRLF).getBytes(StringUtils.UTF8));
+            }
+            final byte[] chunkHeader = (Integer.toHexString(read) + CRLF).getBytes(StringUtils.UTF8);
+            final int start = CHUNK_HEADER_SIZE - chunkHeader.length;
+            System.arraycopy(chunkHeader, 0, bodyBuffer, start, chunkHeader.length);
+            bodyBuffer[CHUNK_HEADER_SIZE + read] = '\r';
+            bodyBuffer[CHUNK_HEADER_SIZE + read + 1] = '\n';
+            return ByteBuffer.wrap(bodyBuffer, start, chunkHeader.length + read + CRLF.length());
+        }
+
+        private void readResponse() throws IOException {
+            while (true) {
+                appIn.flip();
+                consumeResponse(appIn);
+                appIn.compact();
+                if (exchange == null || paused) {
+                    return;
+                }
+                final int read = engine != null ? unwrap() : channel.read(appIn);
+                if (read < 0) {
+                    onEndOfStream();
+                    return;
+                }
+                if (read == 0) {
+                    return;
+                }
+                exchange.responseStarted = true;
+                deadline = deadline(config.getSocketTimeout());
+            }
+        }
+
+        private void consumeResponse(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining() && !paused && exchange != null) {
+                switch (responseState) {
+                    case HEAD:
+                        final String headLine = readLine(buffer);
+                        if (headLine != null) {
+                            onHeadLine(headLine);
+                        }
+                        break;
+                    case BODY:
+                        final int length = (int) Math.min(buffer.remaining(), contentRemaining);
+                        contentRemaining -= length;
+                        emit(buffer, length);
+                        if (contentRemaining == 0) {
+                            complete();
+                        }
+                        break;
+                    case BODY_UNTIL_CLOSE:
+                        emit(buffer, buffer.remaining());
+                        break;
+                    case CHUNK_SIZE:
+                        final String chunkSize = readLine(buffer);
+                        if (chunkSize != null) {
+                            onChunkSize(chunkSize);
+                        }
+                        break;
+                    case CHUNK_DATA:
+                        final int chunkLength = (int) Math.min(buffer.remaining(), contentRemaining);
+                        contentRemaining -= chunkLength;
+                        emit(buffer, chunkLength);
+                        if (contentRemaining == 0) {
+                            responseState = ResponseState.CHUNK_END;
+                        }
+                        break;
+                    case CHUNK_END:
+                        if (readLine(buffer) != null) {
+                            responseState = ResponseState.CHUNK_SIZE;
+                        }
+                        break;
+                    case CHUNK_TRAILER:
+                        final String trailer = readLine(buffer);
+                        if (trailer != null && trailer.isEmpty()) {
+                            complete();
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unexpected content after response");
+                }
+            }
+        }
+
+        /**
+         * Reads the remainder of a CRLF terminated line.
+         *
+         * @return the line without its terminator, or null if the buffer ends
+         *         before the line does.
+         */
+        private String readLine(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                final char c = (char) (buffer.get() & 0xff);
+                if (c == '\n') {
+                    int end = line.length();
+                    if (end > 0 && line.charAt(end - 1) == '\r') {
+                        end--;
+                    }
+                    final String text = line.substring(0, end);
+                    line.setLength(0);
+                    return text;
+                }
+                line.append(c);
+                if (line.length() > MAX_HEADER_SIZE) {
+                    throw new IOException("Response header line too long");
+                }
+            }
+            return null;
+        }
+
+        private void onHeadLine(String text) throws IOException {
+            if (responseBuilder == null) {
+                final String[] status = text.split(" ", 3);
+                if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+                    throw new IOException("Invalid response status line: " + text);
+                }
+                responseBuilder = HttpResponse.builder()
+                        .statusCode(Integer.parseInt(status[1]))
+                        .statusText(status.length > 2 ? status[2] : "");
+                responseHeaders = new HashMap<String, String>();
+                keepAlive = !status[0].equals("HTTP/1.0");
+                return;
+            }
+            if (!text.isEmpty()) {
+                final int colon = text.indexOf(':');
+                if (colon > 0) {
+                    final String name = text.substring(0, colon).trim();
+                    final String value = text.substring(colon + 1).trim();
+                    // No AWS service returns a list of header values, so
+                    // it's safe to keep the first one.
+                    if (!responseHeaders.containsKey(name)) {
+                        responseHeaders.put(name, value);
+                        responseBuilder.header(name, value);
+                    }
+                }
+                return;
+            }
+            onHeadComplete();
+        }
+
+        private void onHeadComplete() throws IOException {
+            final HttpResponse head = responseBuilder.build();
+            final int status = head.getStatusCode();
+            if (status >= HTTP_STATUS_CONTINUE && status < HTTP_STATUS_OK
+                    && status != HTTP_STATUS_SWITCHING_PROTOCOLS) {
+                // Skip informational responses
+                responseBuilder = null;
+                return;
+            }
+            if ("close".equalsIgnoreCase(header("Connection"))) {
+                keepAlive = false;
+            }
+            exchange.content = new ContentStream(this);
+            final boolean hasBody = !"HEAD".equals(exchange.request.getMethod())
+                    && status != HTTP_STATUS_NO_CONTENT && status != HTTP_STATUS_NOT_MODIFIED;
+            final String length = header(HttpHeader.CONTENT_LENGTH);
+            if (!hasBody) {
+                contentRemaining = 0;
+                responseState = ResponseState.BODY;
+            } else if ("chunked".equalsIgnoreCase(header("Transfer-Encoding"))) {
+                responseState = ResponseState.CHUNK_SIZE;
+            } else if (length != null) {
+                contentRemaining = Long.parseLong(length);
+                responseState = ResponseState.BODY;
+            } else {
+                keepAlive = false;
+                responseState = ResponseState.BODY_UNTIL_CLOSE;
+            }
+            if (responseState == ResponseState.BODY && contentRemaining == 0) {
+                complete();
+            }
+        }
+
+        private String header(String name) {
+            for (final Map.Entry<String, String> header : responseHeaders.entrySet()) {
+                if (header.getKey().equalsIgnoreCase(name)) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+
+        private void onChunkSize(String line) throws IOException {
+            String size = line;
+            final int extension = size.indexOf(';');
+            if (extension >= 0) {
+                size = size.substring(0, extension);
+            }
+            try {
+                contentRemaining = Long.parseLong(size.trim(), HEX);
+            } catch (final NumberFormatException e) {
+                throw new IOException("Invalid chunk size: " + size);
+            }
+            responseState = contentRemaining == 0
+                    ? ResponseState.CHUNK_TRAILER : ResponseState.CHUNK_DATA;
+        }
+
+        private void emit(ByteBuffer buffer, int length) {
+            if (length == 0) {
+                return;
+            }
+            final byte[] data = new byte[length];
+            buffer.get(data);
+            if (exchange.content.offer(data)) {
+                // The server isn't being waited on while the consumer drains
+                // the buffer, so the read timeout is only re-armed on resume
+                paused = true;
+                interest(0);
+                deadline = 0;
+            }
+            if (!exchange.delivered && exchange.content.available() >= RESPONSE_BUFFER_LIMIT) {
+                deliver();
+            }
+        }
+
+        private void deliver() {
+            final HttpResponse head = responseBuilder.build();
+            final HttpResponse.Builder builder = HttpResponse.builder()
+                    .statusCode(head.getStatusCode())
+                    .statusText(head.getStatusText())
+                    .content("HEAD".equals(exchange.request.getMethod()) ? null : exchange.content);
+            for (final Map.Entry<String, String> header : head.getHeaders().entrySet()) {
+                builder.header(header.getKey(), header.getValue());
+            }
+            exchange.deliver(builder.build());
+        }
+
+        /**
+         * Resumes reading once the consumer drained the response buffer.
+         */
+        private void resume() {
+            if (!paused || exchange == null) {
+                return;
+            }
+            paused = false;
+            interest(SelectionKey.OP_READ);
+            deadline = deadline(config.getSocketTimeout());
+            try {
+                readResponse();
+            } catch (final IOException e) {
+                fail(e);
+            } catch (final RuntimeException e) {
+                fail(new IOException(e));
+            }
+        }
+
+        private void complete() {
+            final Exchange completed = exchange;
+            responseState = ResponseState.DONE;
+            completed.content.finish();
+            if (!completed.delivered) {
+                deliver();
+            }
+            exchange = null;
+            out = null;
+            body = null;
+            bodyRegion = null;
+            if (keepAlive && !shutdown) {
+                state = State.IDLE;
+                interest(SelectionKey.OP_READ);
+                deadline = System.currentTimeMillis() + IDLE_CONNECTION_TIMEOUT_MILLIS;
+                route.idle.add(this);
+            } else {
+                close();
+            }
+            // Dispatching is deferred as this may run while the response
+            // buffer of this connection is still being consumed
+            scheduleDispatch(route);
+        }
+
+        private void onEndOfStream() throws IOException {
+            if (responseState == ResponseState.BODY_UNTIL_CLOSE) {
+                complete();
+                return;
+            }
+            throw new IOException("Connection closed by server before the response was complete");
+        }
+
+        private void fail(IOException e) {
+            final Exchange failed = exchange;
+            exchange = null;
+            close();
+            if (failed != null) {
+                if (!failed.responseStarted && !failed.retried && reused
+                        && failed.request.getContent() == null) {
+                    // The server most likely closed the pooled connection
+                    // while it was idle; try once more on a new connection.
+                    failed.retried = true;
+                    route.pending.addFirst(failed);
+                } else {
+                    failed.fail(e);
+                }
+            }
+            scheduleDispatch(route);
+        }
+
+        private void abort() {
+            if (exchange != null && exchange.content != null && exchange.content.isClosed()) {
+                exchange = null;
+                close();
+                scheduleDispatch(route);
+            }
+        }
+
+        private void close() {
+            if (!connections.remove(this)) {
+                return;
+            }
+            openConnectionCount = connections.size();
+            route.openConnections--;
+            route.idle.remove(this);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                log.debug("Unable to close connection", e);
+            }
+            // The buffers may still be in use further up the stack, so they
+            // are only returned to the pool once the current event is handled
+            final ByteBuffer readBuffer = appIn;
+            final byte[] writeBuffer = bodyBuffer;
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    BufferPool.getDefault().release(readBuffer);
+                    BufferPool.getDefault().release(writeBuffer);
+                }
+            });
+        }
+    }
+
+    /**
+     * Response content fed by the I/O thread and read by the consumer.
+     */
+    private final class ContentStream extends InputStream {
+        private final Connection connection;
+        private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+        private int offset;
+        private int buffered;
+        private boolean paused;
+        private boolean finished;
+        private boolean closed;
+        private IOException failure;
+
+        private ContentStream(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * @return true if the I/O thread should stop reading until resumed.
+         */
+        private synchronized boolean offer(byte[] data) {
+            chunks.add(data);
+            buffered += data.length;
+            notifyAll();
+            paused = buffered >= RESPONSE_BUFFER_LIMIT;
+            return paused;
+        }
+
+        private synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+
+        private synchronized void fail(IOException e) {
+            failure = e;
+            notifyAll();
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            final int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final int read;
+            final boolean resume;
+            synchronized (this) {
+                while (chunks.isEmpty() && !finished && failure == null && !closed) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException(e.getMessage());
+                    }
+                }
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                if (chunks.isEmpty()) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                }
+                final byte[] head = chunks.peek();
+                read = Math.min(len, head.length - offset);
+                System.arraycopy(head, offset, b, off, read);
+                offset += read;
+                if (offset == head.length) {
+                    chunks.poll();
+                    offset = 0;
+                }
+                buffered -= read;
+                resume = paused && buffered <= RESPONSE_BUFFER_LIMIT / 2;
+                if (resume) {
+                    paused = false;
+                }
+            }
+            if (resume) {
+                submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        connection.resume();
+                    }
+                });
+            }
+            return read;
+        }
+
+        @Override
+        public synchronized int available() {
+            return buffered;
+        }
+
+        @Override
+        public void close() {
+            final boolean abort;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                abort = !finished && failure == null;
+                chunks.clear();
+                buffered = 0;
+                notifyAll();
+            }
+            if (abort) {
+                // The rest of the response is unwanted, so the connection
+                // cannot be reused.
+                submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        connection.abort();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.amazonaws.metrics.MetricInputStreamEntity;
 import com.amazonaws.metrics.ServiceMetricType;
 import com.amazonaws.metrics.ThroughputMetricType;
 import com.amazonaws.metrics.internal.ServiceMetricTypeGuesser;
+import com.amazonaws.util.BufferPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -148,7 +149,11 @@ class RepeatableInputStreamRequestEntity extends BasicHttpEntity {
                 content.reset();
 
             firstAttempt = false;
-            inputStreamRequestEntity.writeTo(output);
+            if (inputStreamRequestEntity instanceof MetricInputStreamEntity) {
+                inputStreamRequestEntity.writeTo(output);
+            } else {
+                writeContentTo(output);
+            }
         } catch (IOException ioe) {
             if (originalException == null)
                 originalException = ioe;
@@ -156,4 +161,36 @@ class RepeatableInputStreamRequestEntity extends BasicHttpEntity {
         }
     }
 
+    /**
+     * Same as {@link InputStreamEntity#writeTo(OutputStream)}, but copies
+     * through a pooled buffer rather than allocating one for every attempt.
+     */
+    private void writeContentTo(OutputStream output) throws IOException {
+        final long length = inputStreamRequestEntity.getContentLength();
+        final byte[] buffer = BufferPool.getDefault().acquire();
+        try {
+            int l;
+            if (length < 0) {
+                // consume until EOF
+                while ((l = content.read(buffer)) != -1) {
+                    output.write(buffer, 0, l);
+                }
+            } else {
+                // consume no more than length
+                long remaining = length;
+                while (remaining > 0) {
+                    l = content.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (l == -1) {
+                        break;
+                    }
+                    output.write(buffer, 0, l);
+                    remaining -= l;
+                }
+            }
+        } finally {
+            BufferPool.getDefault().release(buffer);
+            content.close();
+        }
+    }
+
 }
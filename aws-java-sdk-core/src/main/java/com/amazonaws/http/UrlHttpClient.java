@@ -16,6 +16,7 @@
 package com.amazonaws.http;
 
 import com.amazonaws.ClientConfiguration;
+import com.amazonaws.util.BufferPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -51,8 +52,6 @@ public class UrlHttpClient implements HttpClient {
 
     private static final String TAG = "amazonaws";
     private static final Log log = LogFactory.getLog(UrlHttpClient.class);
-    private static final int DEFAULT_BUFFER_SIZE = 1024;
-    private static final int BUFFER_SIZE_MULTIPLIER = 8;
     private final ClientConfiguration config;
 
     /**
@@ -239,17 +238,21 @@ public class UrlHttpClient implements HttpClient {
 
     private void write(InputStream is, OutputStream os, CurlBuilder curlBuilder,
             ByteBuffer curlBuffer) throws IOException {
-        final byte[] buf = new byte[DEFAULT_BUFFER_SIZE * BUFFER_SIZE_MULTIPLIER];
-        int len;
-        while ((len = is.read(buf)) != -1) {
-            try {
-                if (curlBuffer != null) {
-                    curlBuffer.put(buf, 0 /* offset */, len);
+        final byte[] buf = BufferPool.getDefault().acquire();
+        try {
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                try {
+                    if (curlBuffer != null) {
+                        curlBuffer.put(buf, 0 /* offset */, len);
+                    }
+                } catch (final BufferOverflowException e) {
+                    curlBuilder.setContentOverflow(true);
                 }
-            } catch (final BufferOverflowException e) {
-                curlBuilder.setContentOverflow(true);
+                os.write(buf, 0, len);
             }
-            os.write(buf, 0, len);
+        } finally {
+            BufferPool.getDefault().release(buf);
         }
     }
 
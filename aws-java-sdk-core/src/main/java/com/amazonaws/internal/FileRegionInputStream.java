@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A repeatable input stream over a region of a file. Reads are positional
+ * reads of a {@link FileChannel}, so marking and resetting the stream is
+ * cheap, and the remaining content can be sent to a channel without being
+ * copied through the Java heap with {@link #transferTo(WritableByteChannel, long)}
+ * or {@link #map(long)}.
+ */
+public class FileRegionInputStream extends SdkInputStream implements FileRegionSource {
+
+    private final File file;
+    private final FileInputStream fis;
+    private final FileChannel channel;
+    private final long offset;
+    private final long length;
+
+    /** The number of bytes of the region consumed so far. */
+    private long position = 0;
+    private long markedPosition = 0;
+
+    /**
+     * Creates an input stream over the whole of a file. Content appended to
+     * the file while it is read is included.
+     *
+     * @param file the file from which this input stream reads data.
+     * @throws FileNotFoundException if the file doesn't exist, or can't be
+     *             opened.
+     */
+    public FileRegionInputStream(File file) throws FileNotFoundException {
+        this(file, 0, -1);
+    }
+
+    /**
+     * Creates an input stream over a region of a file. The stream ends early
+     * if the file is shorter than the region.
+     *
+     * @param file the file from which this input stream reads data.
+     * @param offset the offset, in bytes, into the file at which the region
+     *            starts.
+     * @param length the length, in bytes, of the region, or -1 for the rest
+     *            of the file.
+     * @throws FileNotFoundException if the file doesn't exist, or can't be
+     *             opened.
+     */
+    public FileRegionInputStream(File file, long offset, long length)
+            throws FileNotFoundException {
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+        if (offset < 0 || length < -1) {
+            throw new IllegalArgumentException("Invalid file region: offset " + offset
+                    + ", length " + length);
+        }
+        this.file = file;
+        this.fis = new FileInputStream(file);
+        this.channel = fis.getChannel();
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return the file this stream is reading data from.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the position in the file of the next byte of this stream.
+     */
+    public long getFilePosition() {
+        return offset + position;
+    }
+
+    /**
+     * @return the number of bytes left in the region.
+     * @throws IOException if the size of the file can't be determined.
+     */
+    public long getRemaining() throws IOException {
+        long end = channel.size();
+        if (length >= 0) {
+            end = Math.min(end, offset + length);
+        }
+        return Math.max(0, end - getFilePosition());
+    }
+
+    /**
+     * Transfers bytes from the current position of this stream to a channel.
+     * The position of the stream is not changed; callers account for the bytes
+     * with {@link #transferred(long)} on the outermost stream.
+     *
+     * @param target the channel to write to.
+     * @param count the maximum number of bytes to transfer.
+     * @return the number of bytes transferred, possibly zero if the target is
+     *         a non-blocking channel that can't accept more bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    public long transferTo(WritableByteChannel target, long count) throws IOException {
+        abortIfNeeded();
+        return channel.transferTo(getFilePosition(), Math.min(count, getRemaining()), target);
+    }
+
+    /**
+     * Maps bytes from the current position of this stream into memory. The
+     * position of the stream is not changed; callers account for the bytes
+     * with {@link #transferred(long)} on the outermost stream.
+     *
+     * @param count the maximum number of bytes to map.
+     * @return a read only buffer of the mapped bytes, empty at the end of the
+     *         region.
+     * @throws IOException if an I/O error occurs.
+     */
+    public MappedByteBuffer map(long count) throws IOException {
+        abortIfNeeded();
+        return channel.map(FileChannel.MapMode.READ_ONLY, getFilePosition(),
+                Math.min(count, getRemaining()));
+    }
+
+    @Override
+    public FileRegionInputStream getFileRegion() {
+        return this;
+    }
+
+    @Override
+    public void transferred(long count) throws IOException {
+        if (count < 0 || count > getRemaining()) {
+            throw new IOException("Transferred " + count + " bytes, but only "
+                    + getRemaining() + " remain in " + file);
+        }
+        position += count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        final int read = read(b, 0, 1);
+        return read == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        abortIfNeeded();
+        if (len == 0) {
+            return 0;
+        }
+        final int max = (int) Math.min(len, getRemaining());
+        if (max == 0) {
+            return -1;
+        }
+        final int read = channel.read(ByteBuffer.wrap(b, off, max), getFilePosition());
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        abortIfNeeded();
+        if (n <= 0) {
+            return 0;
+        }
+        final long skipped = Math.min(n, getRemaining());
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        abortIfNeeded();
+        return (int) Math.min(Integer.MAX_VALUE, getRemaining());
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        abortIfNeeded();
+        markedPosition = position;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        abortIfNeeded();
+        position = markedPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fis.close();
+        abortIfNeeded();
+    }
+
+    @Override
+    protected InputStream getWrappedInputStream() {
+        return fis;
+    }
+}
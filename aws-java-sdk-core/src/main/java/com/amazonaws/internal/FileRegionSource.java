@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.internal;
+
+import java.io.IOException;
+
+/**
+ * An input stream whose remaining content is a region of a file, so that an
+ * HTTP client can send it straight from the file (for example with
+ * {@link java.nio.channels.FileChannel#transferTo}) instead of reading it
+ * through the stream.
+ * <p>
+ * Streams wrapping a {@link FileRegionSource} only implement this interface
+ * if they can account for content they never see: a stream that transforms
+ * the content, or a subclass overriding the read methods to observe it, must
+ * return null from {@link #getFileRegion()}.
+ */
+public interface FileRegionSource {
+
+    /**
+     * Returns the file region the remaining content of this stream is read
+     * from, positioned at the next byte this stream would return.
+     *
+     * @return the file region, or null if the content must be read through
+     *         the stream.
+     */
+    FileRegionInputStream getFileRegion();
+
+    /**
+     * Notifies this stream that the given number of bytes, starting at the
+     * current position of its file region, have been sent without being read
+     * through the stream. The stream, and the streams it wraps, advance as if
+     * the bytes had been read.
+     *
+     * @param count the number of bytes sent.
+     * @throws IOException if the stream can't account for the bytes.
+     */
+    void transferred(long count) throws IOException;
+}
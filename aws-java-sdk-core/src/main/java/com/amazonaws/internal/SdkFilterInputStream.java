@@ -61,6 +61,31 @@ public class SdkFilterInputStream extends FilterInputStream implements MetricAwa
         // override
     }
 
+    /**
+     * Returns the file region of the wrapped stream, for subclasses that
+     * implement {@link FileRegionSource} by accounting for the transferred
+     * bytes and passing them on with {@link #wrappedTransferred(long)}.
+     *
+     * @return the file region of the wrapped stream, or null if it has none.
+     */
+    protected final FileRegionInputStream getWrappedFileRegion() {
+        return in instanceof FileRegionSource ? ((FileRegionSource) in).getFileRegion() : null;
+    }
+
+    /**
+     * Notifies the wrapped stream of bytes of its file region sent without
+     * being read.
+     *
+     * @param count the number of bytes sent.
+     * @throws IOException if the wrapped stream can't account for the bytes.
+     */
+    protected final void wrappedTransferred(long count) throws IOException {
+        if (!(in instanceof FileRegionSource)) {
+            throw new IOException("The wrapped stream has no file region");
+        }
+        ((FileRegionSource) in).transferred(count);
+    }
+
     @Override
     public int read() throws IOException {
         abortIfNeeded();
@@ -16,6 +16,7 @@
 package com.amazonaws.metrics;
 
 import com.amazonaws.internal.MetricAware;
+import com.amazonaws.util.BufferPool;
 
 import org.apache.http.entity.InputStreamEntity;
 
@@ -30,7 +31,6 @@ import java.io.OutputStream;
  * not even be involved in the call stack to minimize runtime overhead.
  */
 public class MetricInputStreamEntity extends InputStreamEntity {
-    private static final int BUFFER_SIZE = 2048;
     private final ByteThroughputHelper helper;
 
     /**
@@ -72,8 +72,8 @@ public class MetricInputStreamEntity extends InputStreamEntity {
         final InputStream content = getContent();
         final long length = getContentLength();
         InputStream instream = content;
+        final byte[] buffer = BufferPool.getDefault().acquire();
         try {
-            byte[] buffer = new byte[BUFFER_SIZE];
             int l;
             if (length < 0) {
                 // consume until EOF
@@ -86,7 +86,7 @@ public class MetricInputStreamEntity extends InputStreamEntity {
                 // consume no more than length
                 long remaining = length;
                 while (remaining > 0) {
-                    l = instream.read(buffer, 0, (int) Math.min(BUFFER_SIZE, remaining));
+                    l = instream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
                     if (l == -1) {
                         break;
                     }
@@ -97,6 +97,7 @@ public class MetricInputStreamEntity extends InputStreamEntity {
                 }
             }
         } finally {
+            BufferPool.getDefault().release(buffer);
             helper.reportMetrics();
             instream.close();
         }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread safe pool of fixed size I/O buffers, so that copying
+ * request and response content doesn't allocate a new buffer every time. Heap
+ * arrays and direct {@link ByteBuffer}s are pooled separately; when a pool is
+ * empty a new buffer is allocated, and buffers released to a full pool are
+ * left to the garbage collector.
+ * <p>
+ * A buffer must not be used once released, and must be released at most once.
+ */
+public final class BufferPool {
+
+    /** The size of the buffers of the default pool. */
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    /** The number of buffers of each kind the default pool retains. */
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+
+    private static final BufferPool DEFAULT = new BufferPool(DEFAULT_BUFFER_SIZE,
+            DEFAULT_MAX_POOLED_BUFFERS);
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> heapBuffers;
+    private final BlockingQueue<ByteBuffer> directBuffers;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param bufferSize the size in bytes of the buffers.
+     * @param maxPooledBuffers the maximum number of released buffers of each
+     *            kind retained for reuse.
+     */
+    public BufferPool(int bufferSize, int maxPooledBuffers) {
+        if (bufferSize <= 0 || maxPooledBuffers <= 0) {
+            throw new IllegalArgumentException("Buffer size and pool size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.heapBuffers = new ArrayBlockingQueue<byte[]>(maxPooledBuffers);
+        this.directBuffers = new ArrayBlockingQueue<ByteBuffer>(maxPooledBuffers);
+    }
+
+    /**
+     * @return the pool shared by the HTTP transports and I/O utilities.
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the size in bytes of the buffers of this pool.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Takes a heap buffer from the pool, or allocates one.
+     *
+     * @return a buffer of {@link #getBufferSize()} bytes, with unspecified
+     *         content.
+     */
+    public byte[] acquire() {
+        final byte[] buffer = heapBuffers.poll();
+        if (buffer != null) {
+            hits.incrementAndGet();
+            return buffer;
+        }
+        misses.incrementAndGet();
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Returns a heap buffer to the pool. Null and buffers of another size are
+     * ignored.
+     *
+     * @param buffer the buffer obtained from {@link #acquire()}.
+     */
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize) {
+            heapBuffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Takes a direct buffer from the pool, or allocates one. Direct buffers
+     * save a copy when reading from or writing to channels.
+     *
+     * @return a cleared direct buffer of {@link #getBufferSize()} bytes.
+     */
+    public ByteBuffer acquireDirect() {
+        final ByteBuffer buffer = directBuffers.poll();
+        if (buffer != null) {
+            hits.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+        misses.incrementAndGet();
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns a direct buffer to the pool. Null, heap buffers and buffers of
+     * another capacity are ignored.
+     *
+     * @param buffer the buffer obtained from {@link #acquireDirect()}.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize) {
+            directBuffers.offer(buffer);
+        }
+    }
+
+    /**
+     * @return the number of buffers handed out from the pool.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of buffers allocated because the pool was empty.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of buffers currently available in the pool.
+     */
+    public int getPooledCount() {
+        return heapBuffers.size() + directBuffers.size();
+    }
+}
@@ -32,7 +32,6 @@ public enum IOUtils {
     ;
 
     private static final Log logger = LogFactory.getLog(IOUtils.class);
-    private static final int BUFFER_SIZE = 1024 * 4;
 
     /**
      * Reads and returns the rest of the given input stream as a byte array,
@@ -42,14 +41,15 @@ public enum IOUtils {
      */
     public static byte[] toByteArray(InputStream is) throws IOException {
         final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] b = BufferPool.getDefault().acquire();
         try {
-            final byte[] b = new byte[BUFFER_SIZE];
             int n = 0;
             while ((n = is.read(b)) != -1) {
                 output.write(b, 0, n);
             }
             return output.toByteArray();
         } finally {
+            BufferPool.getDefault().release(b);
             output.close();
         }
     }
@@ -114,13 +114,17 @@ public enum IOUtils {
      */
     public static long copy(InputStream in, OutputStream out)
             throws IOException {
-        final byte[] buf = new byte[BUFFER_SIZE];
-        long count = 0;
-        int n = 0;
-        while ((n = in.read(buf)) > -1) {
-            out.write(buf, 0, n);
-            count += n;
+        final byte[] buf = BufferPool.getDefault().acquire();
+        try {
+            long count = 0;
+            int n = 0;
+            while ((n = in.read(buf)) > -1) {
+                out.write(buf, 0, n);
+                count += n;
+            }
+            return count;
+        } finally {
+            BufferPool.getDefault().release(buf);
         }
-        return count;
     }
 }
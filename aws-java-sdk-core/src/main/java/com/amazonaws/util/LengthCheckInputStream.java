@@ -16,6 +16,8 @@
 package com.amazonaws.util;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.internal.FileRegionInputStream;
+import com.amazonaws.internal.FileRegionSource;
 import com.amazonaws.internal.SdkFilterInputStream;
 
 import java.io.IOException;
@@ -25,7 +27,7 @@ import java.io.InputStream;
  * Used to perform length check to ensure the number of bytes read from the
  * underlying input stream is the same as the expected total.
  */
-public class LengthCheckInputStream extends SdkFilterInputStream {
+public class LengthCheckInputStream extends SdkFilterInputStream implements FileRegionSource {
 
     /** Include skipped bytes. */
     public static final boolean INCLUDE_SKIPPED_BYTES = true;
@@ -102,6 +104,24 @@ public class LengthCheckInputStream extends SdkFilterInputStream {
         return readLen;
     }
 
+    @Override
+    public FileRegionInputStream getFileRegion() {
+        return getWrappedFileRegion();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws AmazonClientException if the data length transferred has
+     *             exceeded the expected total.
+     */
+    @Override
+    public void transferred(long count) throws IOException {
+        dataLength += count;
+        checkLength(false);
+        wrappedTransferred(count);
+    }
+
     @Override
     public void mark(int readlimit) {
         super.mark(readlimit);
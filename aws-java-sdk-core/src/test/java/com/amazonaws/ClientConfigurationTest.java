@@ -127,6 +127,19 @@ public class ClientConfigurationTest {
         assertSame(trustManager, c.getTrustManager());
         c.setTrustManager(null);
         assertNull(c.getTrustManager());
+
+        assertEquals(HttpVersion.HTTP_1_1, c.getHttpVersion());
+        c.withHttpVersion(HttpVersion.HTTP_2);
+        assertEquals(HttpVersion.HTTP_2, c.getHttpVersion());
+        c.setHttpVersion(HttpVersion.HTTP_1_1);
+        assertEquals(HttpVersion.HTTP_1_1, c.getHttpVersion());
+
+        assertEquals(ClientConfiguration.DEFAULT_MAX_CONCURRENT_STREAMS,
+                c.getMaxConcurrentStreams());
+        c.withMaxConcurrentStreams(1);
+        assertEquals(1, c.getMaxConcurrentStreams());
+        c.setMaxConcurrentStreams(2);
+        assertEquals(2, c.getMaxConcurrentStreams());
     }
 
     @Test
@@ -154,6 +167,8 @@ public class ClientConfigurationTest {
         TrustManager trustManager = new TrustManager() {
         };
         c.withTrustManager(trustManager);
+        c.withHttpVersion(HttpVersion.HTTP_2);
+        c.withMaxConcurrentStreams(7);
 
         ClientConfiguration n = new ClientConfiguration(c);
         assertEquals(c.getConnectionTimeout(), n.getConnectionTimeout());
@@ -173,6 +188,8 @@ public class ClientConfigurationTest {
         assertEquals(c.getSocketTimeout(), n.getSocketTimeout());
         assertEquals(c.getUserAgent(), n.getUserAgent());
         assertSame(c.getTrustManager(), n.getTrustManager());
+        assertEquals(c.getHttpVersion(), n.getHttpVersion());
+        assertEquals(c.getMaxConcurrentStreams(), n.getMaxConcurrentStreams());
     }
 
 }
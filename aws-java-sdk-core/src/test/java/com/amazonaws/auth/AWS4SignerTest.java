@@ -80,6 +80,65 @@ public class AWS4SignerTest {
                 request.getHeaders().get("Authorization"));
     }
 
+    @Test
+    public void testSigningKeyIsReused() throws Exception {
+        final String expected =
+                "AWS4-HMAC-SHA256 Credential=access/19810216/us-east-1/demo/aws4_request, SignedHeaders=host;x-amz-archive-description;x-amz-date, Signature=77fe7c02927966018667f21d1dc3dfad9057e58401cbb9ed64f1b7868288e35a";
+        final AWSCredentials credentials = new BasicAWSCredentials("access", "secret");
+        final Calendar c = new GregorianCalendar();
+        c.set(1981, 1, 16, 6, 30, 0);
+        c.setTimeZone(TimeZone.getTimeZone("UTC"));
+        signer.overrideDate(c.getTime());
+
+        signer.sign(generateBasicRequest(), credentials);
+        final long hits = AWS4Signer.SIGNING_KEY_CACHE.getHitCount();
+        final Request<?> request = generateBasicRequest();
+        signer.sign(request, credentials);
+        assertEquals(hits + 1, AWS4Signer.SIGNING_KEY_CACHE.getHitCount());
+        assertEquals(expected, request.getHeaders().get("Authorization"));
+    }
+
+    @Test
+    public void testRotatedSecretKeyIsNotSignedWithCachedKey() throws Exception {
+        final Calendar c = new GregorianCalendar();
+        c.set(1981, 1, 16, 6, 30, 0);
+        c.setTimeZone(TimeZone.getTimeZone("UTC"));
+        signer.overrideDate(c.getTime());
+
+        final String original = sign(new BasicAWSCredentials("rotated", "secret"));
+        final String rotated = sign(new BasicAWSCredentials("rotated", "new-secret"));
+        assertFalse(original.equals(rotated));
+        assertEquals(original, sign(new BasicAWSCredentials("rotated", "secret")));
+
+        // The next day is signed with a newly derived key
+        c.add(Calendar.DAY_OF_MONTH, 1);
+        signer.overrideDate(c.getTime());
+        final String nextDay = sign(new BasicAWSCredentials("rotated", "secret"));
+        assertTrue(nextDay.contains("/19810217/"));
+        assertFalse(original.substring(original.indexOf("Signature="))
+                .equals(nextDay.substring(nextDay.indexOf("Signature="))));
+    }
+
+    @Test
+    public void testSigningKeyCacheIsBounded() {
+        final SigningKeyCache cache = new SigningKeyCache(2);
+        cache.put("access", "secret", "scope1", new byte[] {1});
+        cache.put("access", "secret", "scope2", new byte[] {2});
+        // Touch scope1 so that scope2 is the least recently used
+        assertEquals(1, cache.get("access", "secret", "scope1")[0]);
+        cache.put("access", "secret", "scope3", new byte[] {3});
+        assertEquals(2, cache.size());
+        assertNull(cache.get("access", "secret", "scope2"));
+        assertEquals(1, cache.get("access", "secret", "scope1")[0]);
+        assertNull(cache.get("access", "other", "scope1"));
+    }
+
+    private String sign(AWSCredentials credentials) {
+        final Request<?> request = generateBasicRequest();
+        signer.sign(request, credentials);
+        return request.getHeaders().get("Authorization");
+    }
+
     @Test
     public void testPresigning() throws Exception {
         final String EXPECTED_AMZ_SIGNATURE = "909d8bc528fec51c0cc6daaa6c29291c519de10f77490d8af57872c29203ebdb";
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the retries, redirects and error handling of
+ * {@link AmazonHttpClient#executeAsync} with an {@link AsyncHttpClient} that
+ * replays canned outcomes.
+ */
+public class AmazonHttpClientAsyncTest {
+
+    private FakeAsyncHttpClient httpClient;
+    private AmazonHttpClient client;
+
+    @Before
+    public void setUp() {
+        httpClient = new FakeAsyncHttpClient();
+        client = new AmazonHttpClient(new ClientConfiguration(), httpClient);
+    }
+
+    private static Request<?> request() {
+        final Request<?> request = new DefaultRequest<String>(new AmazonWebServiceRequest() {
+        }, "TestService");
+        request.setHttpMethod(HttpMethodName.GET);
+        request.setEndpoint(URI.create("https://www.test.com"));
+        request.setResourcePath("/test/table");
+        return request;
+    }
+
+    private static HttpResponse response(int statusCode, String statusText) {
+        return HttpResponse.builder()
+                .statusCode(statusCode)
+                .statusText(statusText)
+                .content(new ByteArrayInputStream("body".getBytes(StringUtils.UTF8)))
+                .build();
+    }
+
+    private static final HttpResponseHandler<AmazonWebServiceResponse<String>> RESPONSE_HANDLER =
+            new HttpResponseHandler<AmazonWebServiceResponse<String>>() {
+                @Override
+                public AmazonWebServiceResponse<String> handle(HttpResponse response) {
+                    final AmazonWebServiceResponse<String> awsResponse =
+                            new AmazonWebServiceResponse<String>();
+                    awsResponse.setResult("Result " + response.getStatusCode());
+                    return awsResponse;
+                }
+
+                @Override
+                public boolean needsConnectionLeftOpen() {
+                    return false;
+                }
+            };
+
+    private static final HttpResponseHandler<AmazonServiceException> ERROR_RESPONSE_HANDLER =
+            new HttpResponseHandler<AmazonServiceException>() {
+                @Override
+                public AmazonServiceException handle(HttpResponse response) {
+                    final AmazonServiceException ase = new AmazonServiceException("Test");
+                    ase.setErrorCode("TestError");
+                    ase.setErrorType(response.getStatusCode() >= 500
+                            ? ErrorType.Service : ErrorType.Client);
+                    return ase;
+                }
+
+                @Override
+                public boolean needsConnectionLeftOpen() {
+                    return false;
+                }
+            };
+
+    private Future<Response<String>> executeAsync(Request<?> request) {
+        return client.executeAsync(request, RESPONSE_HANDLER, ERROR_RESPONSE_HANDLER,
+                new ExecutionContext());
+    }
+
+    @Test
+    public void testSucceeds() throws Exception {
+        httpClient.outcomes.add(response(200, "OK"));
+        final Response<String> response = executeAsync(request()).get(10, TimeUnit.SECONDS);
+        assertEquals("Result 200", response.getAwsResponse());
+        assertEquals(1, httpClient.requests.size());
+        assertEquals("https://www.test.com/test/table",
+                httpClient.requests.get(0).getUri().toString());
+    }
+
+    @Test
+    public void testRetriesIOException() throws Exception {
+        httpClient.outcomes.add(new IOException("BOOM"));
+        httpClient.outcomes.add(new IOException("BOOM"));
+        httpClient.outcomes.add(response(200, "OK"));
+        final Response<String> response = executeAsync(request()).get(10, TimeUnit.SECONDS);
+        assertEquals("Result 200", response.getAwsResponse());
+        assertEquals(3, httpClient.requests.size());
+        assertEquals("2/", httpClient.requests.get(2).getHeaders()
+                .get("aws-sdk-retry").substring(0, 2));
+    }
+
+    @Test
+    public void testFailsAfterMaxRetries() throws Exception {
+        final IOException exception = new IOException("BOOM");
+        for (int i = 0; i < 4; i++) {
+            httpClient.outcomes.add(exception);
+        }
+        try {
+            executeAsync(request()).get(10, TimeUnit.SECONDS);
+            fail("No exception when the request repeatedly fails");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof AmazonClientException);
+            assertSame(exception, e.getCause().getCause());
+        }
+        assertEquals(4, httpClient.requests.size());
+    }
+
+    @Test
+    public void testFollowsTemporaryRedirect() throws Exception {
+        httpClient.outcomes.add(HttpResponse.builder()
+                .statusCode(307)
+                .header("Location", "https://www.redirect.com/other")
+                .build());
+        httpClient.outcomes.add(response(200, "OK"));
+        final Response<String> response = executeAsync(request()).get(10, TimeUnit.SECONDS);
+        assertEquals("Result 200", response.getAwsResponse());
+        assertEquals(2, httpClient.requests.size());
+        assertEquals("https://www.redirect.com/other",
+                httpClient.requests.get(1).getUri().toString());
+    }
+
+    @Test
+    public void testClientErrorIsNotRetried() throws Exception {
+        httpClient.outcomes.add(response(400, "Bad Request"));
+        try {
+            executeAsync(request()).get(10, TimeUnit.SECONDS);
+            fail("No exception for an error response");
+        } catch (final ExecutionException e) {
+            final AmazonServiceException ase = (AmazonServiceException) e.getCause();
+            assertEquals(400, ase.getStatusCode());
+            assertEquals("TestError", ase.getErrorCode());
+            assertEquals("TestService", ase.getServiceName());
+        }
+        assertEquals(1, httpClient.requests.size());
+    }
+
+    @Test
+    public void testServiceErrorIsRetried() throws Exception {
+        httpClient.outcomes.add(response(503, "Service Unavailable"));
+        httpClient.outcomes.add(response(200, "OK"));
+        final Response<String> response = executeAsync(request()).get(10, TimeUnit.SECONDS);
+        assertEquals("Result 200", response.getAwsResponse());
+        assertEquals(2, httpClient.requests.size());
+    }
+
+    /**
+     * Completes each request with the next canned outcome, either a
+     * {@link HttpResponse} or an {@link IOException}.
+     */
+    private static final class FakeAsyncHttpClient implements AsyncHttpClient {
+        private final LinkedList<Object> outcomes = new LinkedList<Object>();
+        private final List<HttpRequest> requests = new ArrayList<HttpRequest>();
+
+        @Override
+        public synchronized Future<HttpResponse> executeAsync(HttpRequest request,
+                Callback callback) {
+            requests.add(request);
+            final CompletionFuture<HttpResponse> future = new CompletionFuture<HttpResponse>();
+            final Object outcome = outcomes.poll();
+            if (outcome instanceof HttpResponse) {
+                future.complete((HttpResponse) outcome);
+                callback.onResponse((HttpResponse) outcome);
+            } else {
+                final IOException e = outcome == null
+                        ? new IOException("No more canned outcomes") : (IOException) outcome;
+                future.fail(e);
+                callback.onFailure(e);
+            }
+            return future;
+        }
+
+        @Override
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+public class HpackTest {
+
+    private static byte[] hex(String hex) {
+        final String digits = hex.replace(" ", "");
+        final byte[] bytes = new byte[digits.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(digits.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static void assertHeaders(List<String[]> headers, String... expected) {
+        assertEquals(expected.length / 2, headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            assertArrayEquals(new String[] {
+                    expected[2 * i], expected[2 * i + 1]
+            }, headers.get(i));
+        }
+    }
+
+    /** Request examples with Huffman coding from RFC 7541, appendix C.4. */
+    @Test
+    public void testDecodeHuffmanRequests() throws IOException {
+        final Hpack.Decoder decoder = new Hpack.Decoder();
+        assertHeaders(decoder.decode(hex("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff")),
+                ":method", "GET", ":scheme", "http", ":path", "/",
+                ":authority", "www.example.com");
+        assertHeaders(decoder.decode(hex("8286 84be 5886 a8eb 1064 9cbf")),
+                ":method", "GET", ":scheme", "http", ":path", "/",
+                ":authority", "www.example.com", "cache-control", "no-cache");
+        assertHeaders(decoder.decode(hex("8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b "
+                + "b8e8 b4bf")),
+                ":method", "GET", ":scheme", "https", ":path", "/index.html",
+                ":authority", "www.example.com", "custom-key", "custom-value");
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidDynamicIndex() throws IOException {
+        new Hpack.Decoder().decode(hex("be"));
+    }
+
+    @Test
+    public void testEncodeDecode() throws IOException {
+        final Hpack.Encoder encoder = new Hpack.Encoder();
+        encoder.header(":method", "GET");
+        encoder.header(":path", "/bucket/key?uploads");
+        encoder.header("Content-Type", "application/octet-stream");
+        encoder.header("Authorization", "AWS4-HMAC-SHA256 Credential=x");
+        encoder.header("x-amz-meta-long", new String(new char[300]).replace('\0', 'a'));
+        assertHeaders(new Hpack.Decoder().decode(encoder.finish()),
+                ":method", "GET", ":path", "/bucket/key?uploads",
+                "content-type", "application/octet-stream",
+                "authorization", "AWS4-HMAC-SHA256 Credential=x",
+                "x-amz-meta-long", new String(new char[300]).replace('\0', 'a'));
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.HttpVersion;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Http2HttpClientTest {
+
+    private static final byte[] LARGE_CONTENT = new byte[3 * 1024 * 1024];
+
+    private StubServer server;
+    private Http2HttpClient client;
+    private ExecutorService executor;
+    private String endpoint;
+
+    @Before
+    public void setup() throws IOException {
+        new Random(1).nextBytes(LARGE_CONTENT);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    private void start(int serverMaxStreams, ClientConfiguration config) throws IOException {
+        server = new StubServer(serverMaxStreams);
+        endpoint = "http://localhost:" + server.getPort();
+        client = new Http2HttpClient(config.withHttpVersion(HttpVersion.HTTP_2));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        if (client != null) {
+            client.shutdown();
+        }
+        if (server != null) {
+            server.release();
+            server.close();
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return new HttpRequest("GET", URI.create(endpoint + path),
+                new HashMap<String, String>(), null);
+    }
+
+    @Test
+    public void testFactoryCreatesHttp2Transport() {
+        assertTrue(HttpClientFactory.createTransport(new ClientConfiguration()
+                .withHttpVersion(HttpVersion.HTTP_2)) instanceof Http2HttpClient);
+        assertTrue(HttpClientFactory.createTransport(
+                new ClientConfiguration()) instanceof UrlHttpClient);
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        start(100, new ClientConfiguration());
+        final HttpResponse response = client.execute(get("/path?a=b"));
+        assertEquals(200, response.getStatusCode());
+        assertEquals("text/plain", response.getHeaders().get("Content-Type"));
+        assertEquals("hello a=b", IOUtils.toString(response.getContent()));
+    }
+
+    @Test
+    public void testHead() throws IOException {
+        start(100, new ClientConfiguration());
+        final HttpResponse response = client.execute(new HttpRequest("HEAD",
+                URI.create(endpoint + "/path"), new HashMap<String, String>(), null));
+        assertEquals(200, response.getStatusCode());
+        assertNull(response.getContent());
+    }
+
+    @Test
+    public void testFixedLengthContentBeyondInitialWindow() throws IOException {
+        start(100, new ClientConfiguration());
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put(HttpHeader.CONTENT_LENGTH, String.valueOf(LARGE_CONTENT.length));
+        final HttpResponse response = client.execute(new HttpRequest("PUT",
+                URI.create(endpoint + "/echo"), headers,
+                new ByteArrayInputStream(LARGE_CONTENT)));
+        assertArrayEquals(LARGE_CONTENT, IOUtils.toByteArray(response.getContent()));
+    }
+
+    @Test
+    public void testStreamingContent() throws IOException {
+        start(100, new ClientConfiguration());
+        final HttpRequest request = new HttpRequest("POST", URI.create(endpoint + "/echo"),
+                new HashMap<String, String>(),
+                new ByteArrayInputStream("content".getBytes(StringUtils.UTF8)));
+        request.setStreaming(true);
+        assertEquals("content", IOUtils.toString(client.execute(request).getContent()));
+    }
+
+    @Test
+    public void testLargeResponseIsFlowControlled() throws Exception {
+        start(100, new ClientConfiguration());
+        final HttpResponse response = client.execute(get("/large"));
+        // Give the server time to fill the stream window
+        Thread.sleep(100);
+        assertTrue(response.getContent().available() <= Http2Connection.STREAM_WINDOW_SIZE);
+        assertArrayEquals(LARGE_CONTENT, IOUtils.toByteArray(response.getContent()));
+    }
+
+    @Test
+    public void testConcurrentRequestsAreMultiplexed() throws Exception {
+        start(100, new ClientConfiguration().withMaxConcurrentStreams(4).withMaxConnections(3));
+        final List<Future<String>> results = submit(10);
+        server.awaitActiveStreams(10);
+
+        final List<Integer> counts = client.getActiveStreamCounts().get(
+                "http://localhost:" + server.getPort());
+        assertEquals(3, counts.size());
+        int total = 0;
+        for (final int count : counts) {
+            assertTrue(count <= 4);
+            total += count;
+        }
+        assertEquals(10, total);
+        assertEquals(3, server.connections.get());
+
+        server.release();
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("hello i=" + i, results.get(i).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testServerStreamLimitIsHonored() throws Exception {
+        start(2, new ClientConfiguration().withMaxConnections(1));
+        final List<Future<String>> results = submit(6);
+        server.awaitActiveStreams(2);
+        Thread.sleep(100);
+        assertEquals(2, server.activeStreams.get());
+
+        server.release();
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("hello i=" + i, results.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(2, server.maxActiveStreams.get());
+        assertEquals(1, server.connections.get());
+    }
+
+    private List<Future<String>> submit(int count) {
+        final List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < count; i++) {
+            final HttpRequest request = get("/hold?i=" + i);
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return IOUtils.toString(client.execute(request).getContent());
+                }
+            }));
+        }
+        return results;
+    }
+
+    /**
+     * A minimal h2c server: answers each request once its stream is complete,
+     * honoring the client's flow control windows. Requests to /hold are only
+     * answered once {@link #release()} was called.
+     */
+    private static final class StubServer implements Runnable {
+        private final ServerSocket serverSocket;
+        private final int maxStreams;
+        private final CountDownLatch hold = new CountDownLatch(1);
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger activeStreams = new AtomicInteger();
+        private final AtomicInteger maxActiveStreams = new AtomicInteger();
+
+        StubServer(int maxStreams) throws IOException {
+            this.maxStreams = maxStreams;
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+            final Thread thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void release() {
+            hold.countDown();
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+
+        void awaitActiveStreams(int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (activeStreams.get() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(count, activeStreams.get());
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    final Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                new StubConnection(socket).serve();
+                            } catch (final IOException e) {
+                                // connection closed
+                            }
+                        }
+                    });
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (final IOException e) {
+                // server closed
+            }
+        }
+
+        private final class StubConnection {
+            private final DataInputStream in;
+            private final OutputStream out;
+            private final Hpack.Decoder decoder = new Hpack.Decoder();
+            private final Hpack.Encoder encoder = new Hpack.Encoder();
+            private final Map<Integer, List<String[]>> headers =
+                    new HashMap<Integer, List<String[]>>();
+            private final Map<Integer, ByteArrayOutputStream> bodies =
+                    new HashMap<Integer, ByteArrayOutputStream>();
+            // Guarded by this
+            private final Map<Integer, Long> windows = new HashMap<Integer, Long>();
+            private long connectionWindow = 65535;
+            private int initialWindow = 65535;
+
+            StubConnection(Socket socket) throws IOException {
+                in = new DataInputStream(socket.getInputStream());
+                out = socket.getOutputStream();
+            }
+
+            void serve() throws IOException {
+                in.readFully(new byte[24]);
+                writeFrame(0x4, 0, 0, new byte[] {
+                        0, 0x3, 0, 0, 0, (byte) maxStreams
+                });
+                final byte[] header = new byte[9];
+                while (true) {
+                    in.readFully(header);
+                    final int length = ((header[0] & 0xff) << 16) | ((header[1] & 0xff) << 8)
+                            | (header[2] & 0xff);
+                    final int type = header[3];
+                    final int flags = header[4];
+                    final int streamId = getInt(header, 5);
+                    final byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    if (type == 0x4 && (flags & 0x1) == 0) {
+                        for (int i = 0; i < length; i += 6) {
+                            if (payload[i + 1] == 0x4) {
+                                synchronized (this) {
+                                    initialWindow = getInt(payload, i + 2);
+                                }
+                            }
+                        }
+                        writeFrame(0x4, 0x1, 0, new byte[0]);
+                    } else if (type == 0x8) {
+                        synchronized (this) {
+                            if (streamId == 0) {
+                                connectionWindow += getInt(payload, 0);
+                            } else if (windows.containsKey(streamId)) {
+                                windows.put(streamId, windows.get(streamId)
+                                        + getInt(payload, 0));
+                            }
+                            notifyAll();
+                        }
+                    } else if (type == 0x1) {
+                        headers.put(streamId, decoder.decode(payload));
+                        bodies.put(streamId, new ByteArrayOutputStream());
+                        synchronized (this) {
+                            windows.put(streamId, (long) initialWindow);
+                        }
+                        if ((flags & 0x1) != 0) {
+                            respond(streamId);
+                        }
+                    } else if (type == 0x0) {
+                        bodies.get(streamId).write(payload);
+                        if (length > 0) {
+                            writeFrame(0x8, 0, 0, intBytes(length));
+                            writeFrame(0x8, 0, streamId, intBytes(length));
+                        }
+                        if ((flags & 0x1) != 0) {
+                            respond(streamId);
+                        }
+                    }
+                }
+            }
+
+            private void respond(final int streamId) {
+                String path = null;
+                for (final String[] field : headers.remove(streamId)) {
+                    if (field[0].equals(":path")) {
+                        path = field[1];
+                    }
+                }
+                final byte[] request = bodies.remove(streamId).toByteArray();
+                final String requestPath = path;
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            respond(streamId, requestPath, request);
+                        } catch (final Exception e) {
+                            // connection closed
+                        }
+                    }
+                });
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            private void respond(int streamId, String path, byte[] request) throws Exception {
+                final byte[] body;
+                if (path.startsWith("/echo")) {
+                    body = request;
+                } else if (path.startsWith("/large")) {
+                    body = LARGE_CONTENT;
+                } else {
+                    if (path.startsWith("/hold")) {
+                        final int active = activeStreams.incrementAndGet();
+                        synchronized (maxActiveStreams) {
+                            maxActiveStreams.set(Math.max(active, maxActiveStreams.get()));
+                        }
+                        hold.await();
+                        activeStreams.decrementAndGet();
+                    }
+                    body = ("hello " + path.substring(path.indexOf('?') + 1))
+                            .getBytes(StringUtils.UTF8);
+                }
+                final byte[] block;
+                synchronized (out) {
+                    encoder.header(":status", "200");
+                    encoder.header("content-type", "text/plain");
+                    encoder.header("content-length", String.valueOf(body.length));
+                    block = encoder.finish();
+                    writeFrame(0x1, 0x4 | (body.length == 0 ? 0x1 : 0), streamId, block);
+                }
+                int offset = 0;
+                while (offset < body.length) {
+                    int length;
+                    synchronized (this) {
+                        while (connectionWindow <= 0 || windows.get(streamId) <= 0) {
+                            wait();
+                        }
+                        length = (int) Math.min(Math.min(connectionWindow,
+                                windows.get(streamId)), Math.min(16384, body.length - offset));
+                        connectionWindow -= length;
+                        windows.put(streamId, windows.get(streamId) - length);
+                    }
+                    final byte[] chunk = new byte[length];
+                    System.arraycopy(body, offset, chunk, 0, length);
+                    offset += length;
+                    writeFrame(0x0, offset == body.length ? 0x1 : 0, streamId, chunk);
+                }
+            }
+
+            private void writeFrame(int type, int flags, int streamId, byte[] payload)
+                    throws IOException {
+                synchronized (out) {
+                    out.write(new byte[] {
+                            (byte) (payload.length >>> 16), (byte) (payload.length >>> 8),
+                            (byte) payload.length, (byte) type, (byte) flags
+                    });
+                    out.write(intBytes(streamId));
+                    out.write(payload);
+                    out.flush();
+                }
+            }
+        }
+
+        private static byte[] intBytes(int value) {
+            return new byte[] {
+                    (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8),
+                    (byte) value
+            };
+        }
+
+        private static int getInt(byte[] bytes, int offset) {
+            return ((bytes[offset] & 0x7f) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                    | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+        }
+    }
+}
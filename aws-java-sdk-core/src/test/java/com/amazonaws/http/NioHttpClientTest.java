@@ -0,0 +1,229 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.internal.FileRegionInputStream;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.LengthCheckInputStream;
+import com.amazonaws.util.StringUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class NioHttpClientTest {
+
+    private static final byte[] LARGE_CONTENT = new byte[1024 * 1024];
+
+    private HttpServer server;
+    private NioHttpClient client;
+    private String endpoint;
+    private Map<String, String> headers;
+
+    @Before
+    public void setup() throws IOException {
+        new Random(1).nextBytes(LARGE_CONTENT);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final byte[] request = IOUtils.toByteArray(exchange.getRequestBody());
+                final String path = exchange.getRequestURI().getPath();
+                byte[] response;
+                if ("/large".equals(path)) {
+                    response = LARGE_CONTENT;
+                } else if ("/echo".equals(path)) {
+                    response = request;
+                } else {
+                    response = ("hello " + exchange.getRequestURI().getQuery())
+                            .getBytes(StringUtils.UTF8);
+                }
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, response.length == 0 ? -1 : response.length);
+                    exchange.getResponseBody().write(response);
+                }
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(10));
+        server.start();
+        endpoint = "http://localhost:" + server.getAddress().getPort();
+        headers = new HashMap<String, String>();
+        headers.put(HttpHeader.HOST, "localhost:" + server.getAddress().getPort());
+        client = new NioHttpClient(new ClientConfiguration().withMaxConnections(5));
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        final HttpResponse response = client.execute(
+                new HttpRequest("GET", URI.create(endpoint + "/path?a=b"), headers, null));
+        assertEquals(200, response.getStatusCode());
+        assertEquals("hello a=b", IOUtils.toString(response.getContent()));
+    }
+
+    @Test
+    public void testHead() throws IOException {
+        final HttpResponse response = client.execute(
+                new HttpRequest("HEAD", URI.create(endpoint + "/path"), headers, null));
+        assertEquals(200, response.getStatusCode());
+        assertNull(response.getContent());
+    }
+
+    @Test
+    public void testFixedLengthContent() throws IOException {
+        final Map<String, String> postHeaders = new HashMap<String, String>(headers);
+        postHeaders.put(HttpHeader.CONTENT_LENGTH, "7");
+        final HttpResponse response = client.execute(new HttpRequest("POST",
+                URI.create(endpoint + "/echo"), postHeaders,
+                new ByteArrayInputStream("content".getBytes(StringUtils.UTF8))));
+        assertEquals("content", IOUtils.toString(response.getContent()));
+    }
+
+    @Test
+    public void testStreamingContent() throws IOException {
+        final HttpRequest request = new HttpRequest("PUT", URI.create(endpoint + "/echo"),
+                headers, new ByteArrayInputStream(LARGE_CONTENT));
+        request.setStreaming(true);
+        final HttpResponse response = client.execute(request);
+        assertArrayEquals(LARGE_CONTENT, IOUtils.toByteArray(response.getContent()));
+    }
+
+    @Test
+    public void testFileRegionContent() throws IOException {
+        final File file = File.createTempFile("NioHttpClientTest", ".tmp");
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write(LARGE_CONTENT);
+            out.close();
+            final Map<String, String> putHeaders = new HashMap<String, String>(headers);
+            putHeaders.put(HttpHeader.CONTENT_LENGTH, String.valueOf(LARGE_CONTENT.length - 100));
+            final FileRegionInputStream region = new FileRegionInputStream(file, 100, -1);
+            final LengthCheckInputStream content = new LengthCheckInputStream(region,
+                    LARGE_CONTENT.length - 100, LengthCheckInputStream.EXCLUDE_SKIPPED_BYTES);
+            final HttpResponse response = client.execute(new HttpRequest("PUT",
+                    URI.create(endpoint + "/echo"), putHeaders, content));
+            assertArrayEquals(Arrays.copyOfRange(LARGE_CONTENT, 100, LARGE_CONTENT.length),
+                    IOUtils.toByteArray(response.getContent()));
+            assertEquals(0, region.getRemaining());
+            region.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLargeResponseIsReadWithBoundedBuffering() throws Exception {
+        final HttpResponse response = client.execute(
+                new HttpRequest("GET", URI.create(endpoint + "/large"), headers, null));
+        // Give the I/O thread time to fill the response window
+        Thread.sleep(100);
+        assertTrue(response.getContent().available() < LARGE_CONTENT.length);
+        assertArrayEquals(LARGE_CONTENT, IOUtils.toByteArray(response.getContent()));
+    }
+
+    @Test
+    public void testSlowConsumerDoesNotTimeOut() throws Exception {
+        client.shutdown();
+        client = new NioHttpClient(new ClientConfiguration().withSocketTimeout(200));
+        final HttpResponse response = client.execute(
+                new HttpRequest("GET", URI.create(endpoint + "/large"), headers, null));
+        // Reading is paused while the response buffer is full, which must not
+        // count against the socket timeout
+        Thread.sleep(1000);
+        assertArrayEquals(LARGE_CONTENT, IOUtils.toByteArray(response.getContent()));
+    }
+
+    @Test
+    public void testConcurrentRequestsShareConnections() throws Exception {
+        final List<Future<HttpResponse>> futures = new ArrayList<Future<HttpResponse>>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(client.executeAsync(new HttpRequest("GET",
+                    URI.create(endpoint + "/path?i=" + i), headers, null), null));
+        }
+        for (int i = 0; i < 100; i++) {
+            final HttpResponse response = futures.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals("hello i=" + i, IOUtils.toString(response.getContent()));
+        }
+        assertTrue(client.getOpenConnectionCount() <= 5);
+    }
+
+    @Test
+    public void testUnresolvedHostFailsOnlyItsRequest() throws Exception {
+        final Future<HttpResponse> future = client.executeAsync(new HttpRequest("GET",
+                URI.create("http://unresolved.invalid/path"), null, null), null);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("The request should have failed");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnknownHostException);
+        }
+        assertEquals(0, client.getOpenConnectionCount());
+        testGet();
+    }
+
+    @Test
+    public void testInvalidRequestFailsOnlyItself() throws Exception {
+        final Map<String, String> postHeaders = new HashMap<String, String>(headers);
+        postHeaders.put(HttpHeader.CONTENT_LENGTH, "seven");
+        final Future<HttpResponse> future = client.executeAsync(new HttpRequest("POST",
+                URI.create(endpoint + "/echo"), postHeaders,
+                new ByteArrayInputStream("content".getBytes(StringUtils.UTF8))), null);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("The request should have failed");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        testGet();
+    }
+}
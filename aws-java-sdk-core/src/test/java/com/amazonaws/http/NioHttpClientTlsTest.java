@@ -0,0 +1,269 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.event.ProgressListenerCallbackExecutor;
+import com.amazonaws.event.ProgressReportingInputStream;
+import com.amazonaws.internal.FileRegionInputStream;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.StringUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Exercises the TLS path of {@link NioHttpClient} against a local HTTPS
+ * server with a self-signed certificate for localhost.
+ */
+public class NioHttpClientTlsTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    private static final byte[] LARGE_CONTENT = new byte[1024 * 1024];
+
+    private HttpsServer server;
+    private NioHttpClient client;
+    private String endpoint;
+    private Map<String, String> headers;
+    private KeyStore keyStore;
+    /** Holds the server back from reading the body of requests to /gated. */
+    private CountDownLatch gate;
+
+    @Before
+    public void setup() throws Exception {
+        new Random(1).nextBytes(LARGE_CONTENT);
+        gate = new CountDownLatch(0);
+        keyStore = KeyStore.getInstance("JKS");
+        final InputStream in = getClass().getResourceAsStream("localhost.jks");
+        try {
+            keyStore.load(in, PASSWORD);
+        } finally {
+            in.close();
+        }
+        final KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(
+                KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        final SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+        server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final String path = exchange.getRequestURI().getPath();
+                if ("/gated".equals(path)) {
+                    try {
+                        gate.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                final byte[] request = IOUtils.toByteArray(exchange.getRequestBody());
+                byte[] response;
+                if ("/large".equals(path)) {
+                    response = LARGE_CONTENT;
+                } else if ("/echo".equals(path) || "/gated".equals(path)) {
+                    response = request;
+                } else {
+                    response = ("hello " + exchange.getRequestURI().getQuery())
+                            .getBytes(StringUtils.UTF8);
+                }
+                exchange.sendResponseHeaders(200, response.length == 0 ? -1 : response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(10));
+        server.start();
+        endpoint = "https://localhost:" + server.getAddress().getPort();
+        headers = new HashMap<String, String>();
+        headers.put(HttpHeader.HOST, "localhost:" + server.getAddress().getPort());
+        client = new NioHttpClient(new ClientConfiguration()
+                .withMaxConnections(5)
+                .withTrustManager(trustManager()));
+    }
+
+    private TrustManager trustManager() throws GeneralSecurityException {
+        final TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(
+                TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        return trustManagers.getTrustManagers()[0];
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        final HttpResponse response = client.execute(
+                new HttpRequest("GET", URI.create(endpoint + "/path?a=b"), headers, null));
+        assertEquals(200, response.getStatusCode());
+        assertEquals("hello a=b", IOUtils.toString(response.getContent()));
+    }
+
+    @Test
+    public void testStreamingContent() throws IOException {
+        final HttpRequest request = new HttpRequest("PUT", URI.create(endpoint + "/echo"),
+                headers, new ByteArrayInputStream(LARGE_CONTENT));
+        request.setStreaming(true);
+        final HttpResponse response = client.execute(request);
+        assertArrayEquals(LARGE_CONTENT, IOUtils.toByteArray(response.getContent()));
+    }
+
+    @Test
+    public void testLargeResponseIsReadWithBoundedBuffering() throws Exception {
+        final HttpResponse response = client.execute(
+                new HttpRequest("GET", URI.create(endpoint + "/large"), headers, null));
+        Thread.sleep(100);
+        assertTrue(response.getContent().available() < LARGE_CONTENT.length);
+        assertArrayEquals(LARGE_CONTENT, IOUtils.toByteArray(response.getContent()));
+    }
+
+    @Test
+    public void testConcurrentRequestsReuseConnections() throws Exception {
+        final List<Future<HttpResponse>> futures = new ArrayList<Future<HttpResponse>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(client.executeAsync(new HttpRequest("GET",
+                    URI.create(endpoint + "/path?i=" + i), headers, null), null));
+        }
+        for (int i = 0; i < 20; i++) {
+            final HttpResponse response = futures.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals("hello i=" + i, IOUtils.toString(response.getContent()));
+        }
+        assertTrue(client.getOpenConnectionCount() <= 5);
+    }
+
+    @Test
+    public void testUntrustedCertificateFailsHandshake() throws Exception {
+        final NioHttpClient untrusting = new NioHttpClient(new ClientConfiguration());
+        try {
+            untrusting.executeAsync(new HttpRequest("GET", URI.create(endpoint + "/path"),
+                    headers, null), null).get(10, TimeUnit.SECONDS);
+            fail("The handshake should have failed");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof SSLException);
+        } finally {
+            untrusting.shutdown();
+        }
+    }
+
+    @Test
+    public void testFileRegionContentIsAccountedForOnceSent() throws Exception {
+        // Two full windows and part of a third, a whole number of KB
+        final int length = (int) (2 * NioHttpClient.FILE_REGION_WINDOW_SIZE + 512 * 1024);
+        final byte[] content = new byte[length];
+        new Random(2).nextBytes(content);
+        final File file = File.createTempFile("NioHttpClientTlsTest", ".tmp");
+        // Small socket buffers, so a window can't be flushed while the
+        // server isn't reading
+        final NioHttpClient smallBuffers = new NioHttpClient(new ClientConfiguration()
+                .withSocketBufferSizeHints(64 * 1024, 64 * 1024)
+                .withTrustManager(trustManager()));
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write(content);
+            out.close();
+
+            final AtomicLong transferred = new AtomicLong();
+            final FileRegionInputStream region = new FileRegionInputStream(file) {
+                @Override
+                public void transferred(long count) throws IOException {
+                    super.transferred(count);
+                    transferred.addAndGet(count);
+                }
+            };
+            final AtomicLong progress = new AtomicLong();
+            final ProgressReportingInputStream body = new ProgressReportingInputStream(region,
+                    new ProgressListenerCallbackExecutor(new ProgressListener() {
+                        @Override
+                        public void progressChanged(ProgressEvent progressEvent) {
+                            progress.addAndGet(progressEvent.getBytesTransferred());
+                        }
+                    }));
+            body.setNotificationThreshold(1);
+            final Map<String, String> putHeaders = new HashMap<String, String>(headers);
+            putHeaders.put(HttpHeader.CONTENT_LENGTH, String.valueOf(length));
+
+            gate = new CountDownLatch(1);
+            final Future<HttpResponse> future = smallBuffers.executeAsync(new HttpRequest("PUT",
+                    URI.create(endpoint + "/gated"), putHeaders, body), null);
+            Thread.sleep(500);
+            // Nothing has been flushed past the socket buffers, so the first
+            // window isn't accounted for yet
+            assertEquals(0, transferred.get());
+            assertEquals(0, progress.get());
+
+            gate.countDown();
+            final HttpResponse response = future.get(30, TimeUnit.SECONDS);
+            assertArrayEquals(content, IOUtils.toByteArray(response.getContent()));
+            assertEquals(length, transferred.get());
+            assertEquals(0, region.getRemaining());
+            for (int i = 0; i < 100 && progress.get() < length; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(length, progress.get());
+            body.close();
+        } finally {
+            gate.countDown();
+            smallBuffers.shutdown();
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.LengthCheckInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+public class FileRegionInputStreamTest {
+
+    private static final int FILE_SIZE = 100 * 1024;
+
+    private final byte[] content = new byte[FILE_SIZE];
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        new Random(1).nextBytes(content);
+        file = File.createTempFile("FileRegionInputStreamTest", ".tmp");
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testReadsWholeFile() throws IOException {
+        final FileRegionInputStream in = new FileRegionInputStream(file);
+        assertEquals(FILE_SIZE, in.available());
+        assertArrayEquals(content, IOUtils.toByteArray(in));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testReadsRegion() throws IOException {
+        final FileRegionInputStream in = new FileRegionInputStream(file, 1000, 5000);
+        assertEquals(content[1000] & 0xff, in.read());
+        assertEquals(10, in.skip(10));
+        assertEquals(1011, in.getFilePosition());
+        assertArrayEquals(Arrays.copyOfRange(content, 1011, 6000), IOUtils.toByteArray(in));
+    }
+
+    @Test
+    public void testRegionBeyondEndOfFileEndsEarly() throws IOException {
+        final FileRegionInputStream in = new FileRegionInputStream(file, FILE_SIZE - 10, 100);
+        assertEquals(10, in.getRemaining());
+        assertArrayEquals(Arrays.copyOfRange(content, FILE_SIZE - 10, FILE_SIZE),
+                IOUtils.toByteArray(in));
+    }
+
+    @Test
+    public void testMarkAndReset() throws IOException {
+        final FileRegionInputStream in = new FileRegionInputStream(file, 10, 100);
+        in.skip(20);
+        in.mark(0);
+        final byte[] first = new byte[30];
+        assertEquals(30, in.read(first));
+        in.reset();
+        final byte[] second = new byte[30];
+        assertEquals(30, in.read(second));
+        assertArrayEquals(Arrays.copyOfRange(content, 30, 60), first);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testTransferToDoesNotMoveUntilTransferred() throws IOException {
+        final FileRegionInputStream in = new FileRegionInputStream(file, 100, 50000);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long sent = in.transferTo(Channels.newChannel(out), 100000);
+        assertEquals(50000, sent);
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 50100), out.toByteArray());
+        assertEquals(50000, in.getRemaining());
+
+        in.transferred(sent);
+        assertEquals(0, in.getRemaining());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testMap() throws IOException {
+        final FileRegionInputStream in = new FileRegionInputStream(file, 10, 20);
+        final ByteBuffer mapped = in.map(1000);
+        assertEquals(20, mapped.remaining());
+        final byte[] bytes = new byte[20];
+        mapped.get(bytes);
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 30), bytes);
+    }
+
+    @Test
+    public void testWrappersPassThroughFileRegion() throws IOException {
+        final FileRegionInputStream region = new FileRegionInputStream(file);
+        final LengthCheckInputStream in = new LengthCheckInputStream(region, FILE_SIZE,
+                LengthCheckInputStream.EXCLUDE_SKIPPED_BYTES);
+        assertSame(region, in.getFileRegion());
+
+        in.transferred(FILE_SIZE - 1);
+        assertEquals(content[FILE_SIZE - 1] & 0xff, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testLengthCheckCoversTransferredBytes() throws IOException {
+        final LengthCheckInputStream in = new LengthCheckInputStream(
+                new FileRegionInputStream(file), 10,
+                LengthCheckInputStream.EXCLUDE_SKIPPED_BYTES);
+        try {
+            in.transferred(11);
+            fail("Expected AmazonClientException");
+        } catch (final AmazonClientException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testStreamsWithoutFileRegion() throws IOException {
+        final InputStream plain = new SdkFilterInputStream(new FileRegionInputStream(file));
+        final LengthCheckInputStream in = new LengthCheckInputStream(plain, FILE_SIZE,
+                LengthCheckInputStream.EXCLUDE_SKIPPED_BYTES);
+        assertNull(in.getFileRegion());
+    }
+}
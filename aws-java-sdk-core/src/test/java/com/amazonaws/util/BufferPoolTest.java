@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testHeapBuffersAreReused() {
+        final BufferPool pool = new BufferPool(16, 2);
+        final byte[] first = pool.acquire();
+        assertEquals(16, first.length);
+        assertEquals(0, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+
+        pool.release(first);
+        assertEquals(1, pool.getPooledCount());
+        assertSame(first, pool.acquire());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    public void testPoolIsBounded() {
+        final BufferPool pool = new BufferPool(16, 2);
+        pool.release(new byte[16]);
+        pool.release(new byte[16]);
+        pool.release(new byte[16]);
+        assertEquals(2, pool.getPooledCount());
+    }
+
+    @Test
+    public void testForeignBuffersAreIgnored() {
+        final BufferPool pool = new BufferPool(16, 2);
+        pool.release(new byte[8]);
+        pool.release((byte[]) null);
+        pool.release(ByteBuffer.allocate(16));
+        pool.release(ByteBuffer.allocateDirect(8));
+        pool.release((ByteBuffer) null);
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    public void testDirectBuffersAreReusedCleared() {
+        final BufferPool pool = new BufferPool(16, 2);
+        final ByteBuffer buffer = pool.acquireDirect();
+        assertTrue(buffer.isDirect());
+        assertEquals(16, buffer.capacity());
+        buffer.put((byte) 1).flip();
+        pool.release(buffer);
+
+        final ByteBuffer reused = pool.acquireDirect();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(16, reused.limit());
+        assertNotSame(reused, pool.acquireDirect());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+    }
+
+    @Test
+    public void testConcurrentUseNeverSharesBuffers() throws Exception {
+        final BufferPool pool = new BufferPool(64, 4);
+        final AtomicBoolean shared = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            final byte marker = (byte) t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        final byte[] buffer = pool.acquire();
+                        buffer[0] = marker;
+                        Thread.yield();
+                        if (buffer[0] != marker) {
+                            shared.set(true);
+                        }
+                        pool.release(buffer);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        assertEquals(false, shared.get());
+        assertEquals(80000, pool.getHitCount() + pool.getMissCount());
+        assertTrue(pool.getPooledCount() <= 4);
+    }
+}
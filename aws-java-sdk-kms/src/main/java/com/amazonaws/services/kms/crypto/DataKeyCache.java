@@ -0,0 +1,390 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kms.crypto;
+
+import static com.amazonaws.util.BinaryUtils.copyAllBytesFrom;
+
+import com.amazonaws.services.kms.AWSKMS;
+import com.amazonaws.services.kms.model.DecryptRequest;
+import com.amazonaws.services.kms.model.DecryptResult;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyResult;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache of the data keys generated and decrypted by AWS KMS for
+ * envelope encryption. Without a cache, every message encrypted costs a call
+ * to KMS to generate its data key, and every message decrypted costs a call to
+ * decrypt it.
+ * <p>
+ * A generated data key is reused to encrypt other messages with the same
+ * customer master key and encryption context until it reaches its maximum
+ * age, number of uses or number of bytes encrypted, after which a new one is
+ * generated. Each message still gets its own random IV. A decrypted data key
+ * is cached by its encrypted form and encryption context until it reaches its
+ * maximum age, so that decrypting the same messages again doesn't call KMS.
+ * <p>
+ * Caching trades some security for performance: the plaintext keys stay in
+ * memory while cached, and a key that's reused protects more data. Keep the
+ * limits as low as the workload allows. A cache may be shared by several
+ * clients, and is safe for use by multiple threads.
+ *
+ * @see EnvelopeEncryptor
+ */
+public class DataKeyCache {
+
+    /** The default maximum number of keys of each kind cached. */
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+    /** The default maximum age of a cached key, in milliseconds. */
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    /** The default maximum number of messages encrypted with a cached key. */
+    public static final long DEFAULT_MAX_USES = 1000;
+    /** The default maximum number of bytes encrypted with a cached key. */
+    public static final long DEFAULT_MAX_BYTES = Long.MAX_VALUE;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private long maxUses = DEFAULT_MAX_USES;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+
+    /** The generated keys by master key, key spec and encryption context. */
+    private final LinkedHashMap<List<Object>, EncryptionEntry> encryptionKeys =
+            new LinkedHashMap<List<Object>, EncryptionEntry>(16, 0.75f, true);
+    /** The decrypted keys by encrypted key and encryption context. */
+    private final LinkedHashMap<List<Object>, Entry> decryptionKeys =
+            new LinkedHashMap<List<Object>, Entry>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+
+    /**
+     * A cached plaintext key.
+     */
+    private static class Entry {
+        final byte[] plaintext;
+        final long createdNanos = System.nanoTime();
+
+        Entry(byte[] plaintext) {
+            this.plaintext = plaintext;
+        }
+
+        /**
+         * Wipes the key from memory once it's no longer cached.
+         */
+        void destroy() {
+            Arrays.fill(plaintext, (byte) 0);
+        }
+    }
+
+    /**
+     * A cached generated key and its usage so far.
+     */
+    private static final class EncryptionEntry extends Entry {
+        private final byte[] ciphertextBlob;
+        private final String keyId;
+        private long uses;
+        private long bytes;
+
+        private EncryptionEntry(byte[] plaintext, byte[] ciphertextBlob, String keyId) {
+            super(plaintext);
+            this.ciphertextBlob = ciphertextBlob;
+            this.keyId = keyId;
+        }
+    }
+
+    /**
+     * Returns the maximum number of generated keys, and separately of
+     * decrypted keys, that are cached. The least recently used keys are
+     * evicted first.
+     */
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of generated keys, and separately of decrypted
+     * keys, that are cached.
+     *
+     * @param maxEntries The maximum number of keys of each kind, or 0 to
+     *            disable caching.
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("The maximum number of entries can't be negative");
+        }
+        this.maxEntries = maxEntries;
+        evict(encryptionKeys);
+        evict(decryptionKeys);
+    }
+
+    /**
+     * Fluent API for {@link #setMaxEntries(int)}.
+     */
+    public DataKeyCache withMaxEntries(int maxEntries) {
+        setMaxEntries(maxEntries);
+        return this;
+    }
+
+    /**
+     * Returns the time in milliseconds after which a cached key is no longer
+     * used.
+     */
+    public synchronized long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a cached key is no longer
+     * used.
+     */
+    public synchronized void setMaxAgeMillis(long maxAgeMillis) {
+        if (maxAgeMillis <= 0) {
+            throw new IllegalArgumentException("The maximum age must be positive");
+        }
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Fluent API for {@link #setMaxAgeMillis(long)}.
+     */
+    public DataKeyCache withMaxAgeMillis(long maxAgeMillis) {
+        setMaxAgeMillis(maxAgeMillis);
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of messages encrypted with a generated key.
+     */
+    public synchronized long getMaxUses() {
+        return maxUses;
+    }
+
+    /**
+     * Sets the maximum number of messages encrypted with a generated key.
+     */
+    public synchronized void setMaxUses(long maxUses) {
+        if (maxUses <= 0) {
+            throw new IllegalArgumentException("The maximum number of uses must be positive");
+        }
+        this.maxUses = maxUses;
+    }
+
+    /**
+     * Fluent API for {@link #setMaxUses(long)}.
+     */
+    public DataKeyCache withMaxUses(long maxUses) {
+        setMaxUses(maxUses);
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of plaintext bytes encrypted with a
+     * generated key.
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum number of plaintext bytes encrypted with a generated
+     * key. If it's limited, the messages whose length isn't known in advance,
+     * such as those encrypted as streams, get keys of their own.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The maximum number of bytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Fluent API for {@link #setMaxBytes(long)}.
+     */
+    public DataKeyCache withMaxBytes(long maxBytes) {
+        setMaxBytes(maxBytes);
+        return this;
+    }
+
+    /**
+     * Returns the number of keys taken from the cache instead of KMS.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of keys that had to be generated or decrypted by KMS.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Evicts every key, wiping them from memory.
+     */
+    public synchronized void clear() {
+        for (final Entry entry : encryptionKeys.values()) {
+            entry.destroy();
+        }
+        for (final Entry entry : decryptionKeys.values()) {
+            entry.destroy();
+        }
+        encryptionKeys.clear();
+        decryptionKeys.clear();
+    }
+
+    /**
+     * Returns a data key to encrypt a message with, reusing a cached one if
+     * it's still within its limits, or generating one with KMS otherwise.
+     *
+     * @param kms The KMS client to generate keys with.
+     * @param request The request to generate a key with.
+     * @param plaintextLength The number of bytes the key will encrypt, or -1
+     *            if it's unknown.
+     * @return A result that the caller owns.
+     */
+    public GenerateDataKeyResult generateDataKey(AWSKMS kms,
+            GenerateDataKeyRequest request, long plaintextLength) {
+        final List<Object> cacheKey = Arrays.<Object> asList(request.getKeyId(),
+                request.getKeySpec(), request.getNumberOfBytes(),
+                copyOf(request.getEncryptionContext()));
+        synchronized (this) {
+            final EncryptionEntry entry = encryptionKeys.get(cacheKey);
+            if (entry != null) {
+                if (isUsable(entry, plaintextLength)) {
+                    entry.uses++;
+                    entry.bytes += Math.max(0, plaintextLength);
+                    hits++;
+                    return new GenerateDataKeyResult()
+                            .withKeyId(entry.keyId)
+                            .withPlaintext(ByteBuffer.wrap(entry.plaintext.clone()))
+                            .withCiphertextBlob(ByteBuffer.wrap(entry.ciphertextBlob.clone()));
+                }
+                encryptionKeys.remove(cacheKey);
+                entry.destroy();
+            }
+            misses++;
+        }
+
+        final GenerateDataKeyResult result = kms.generateDataKey(request);
+        final byte[] plaintext = copyAllBytesFrom(result.getPlaintext());
+        final byte[] ciphertextBlob = copyAllBytesFrom(result.getCiphertextBlob());
+        synchronized (this) {
+            if (plaintextLength >= 0 || maxBytes == Long.MAX_VALUE) {
+                final EncryptionEntry entry = new EncryptionEntry(plaintext.clone(),
+                        ciphertextBlob, result.getKeyId());
+                entry.uses = 1;
+                entry.bytes = Math.max(0, plaintextLength);
+                put(encryptionKeys, cacheKey, entry);
+            }
+            // The messages encrypted with the key are likely to be decrypted back
+            put(decryptionKeys, decryptionCacheKey(ciphertextBlob,
+                    request.getEncryptionContext()), new Entry(plaintext.clone()));
+        }
+        return new GenerateDataKeyResult()
+                .withKeyId(result.getKeyId())
+                .withPlaintext(ByteBuffer.wrap(plaintext))
+                .withCiphertextBlob(ByteBuffer.wrap(ciphertextBlob.clone()));
+    }
+
+    /**
+     * Returns the plaintext of an encrypted data key, from the cache if it's
+     * there, or decrypted by KMS otherwise.
+     *
+     * @param kms The KMS client to decrypt keys with.
+     * @param request The request to decrypt the key with.
+     * @return A result that the caller owns.
+     */
+    public DecryptResult decrypt(AWSKMS kms, DecryptRequest request) {
+        final byte[] ciphertextBlob = copyAllBytesFrom(request.getCiphertextBlob());
+        final List<Object> cacheKey = decryptionCacheKey(ciphertextBlob,
+                request.getEncryptionContext());
+        synchronized (this) {
+            final Entry entry = decryptionKeys.get(cacheKey);
+            if (entry != null) {
+                if (!isExpired(entry)) {
+                    hits++;
+                    return new DecryptResult()
+                            .withPlaintext(ByteBuffer.wrap(entry.plaintext.clone()));
+                }
+                decryptionKeys.remove(cacheKey);
+                entry.destroy();
+            }
+            misses++;
+        }
+
+        final DecryptResult result = kms.decrypt(request);
+        final byte[] plaintext = copyAllBytesFrom(result.getPlaintext());
+        synchronized (this) {
+            put(decryptionKeys, cacheKey, new Entry(plaintext.clone()));
+        }
+        return new DecryptResult()
+                .withKeyId(result.getKeyId())
+                .withPlaintext(ByteBuffer.wrap(plaintext));
+    }
+
+    private boolean isUsable(EncryptionEntry entry, long plaintextLength) {
+        if (isExpired(entry) || entry.uses >= maxUses) {
+            return false;
+        }
+        if (maxBytes == Long.MAX_VALUE) {
+            return true;
+        }
+        return plaintextLength >= 0 && entry.bytes + plaintextLength <= maxBytes;
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.nanoTime() - entry.createdNanos
+                >= TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    }
+
+    private <E extends Entry> void put(LinkedHashMap<List<Object>, E> keys,
+            List<Object> cacheKey, E entry) {
+        final E previous = keys.put(cacheKey, entry);
+        if (previous != null) {
+            previous.destroy();
+        }
+        evict(keys);
+    }
+
+    private void evict(LinkedHashMap<List<Object>, ? extends Entry> keys) {
+        final Iterator<? extends Entry> it = keys.values().iterator();
+        while (keys.size() > maxEntries && it.hasNext()) {
+            it.next().destroy();
+            it.remove();
+        }
+    }
+
+    private static List<Object> decryptionCacheKey(byte[] ciphertextBlob,
+            Map<String, String> encryptionContext) {
+        // The encryption context is part of the key since KMS refuses to
+        // decrypt a key with a different one
+        return Arrays.<Object> asList(ByteBuffer.wrap(ciphertextBlob.clone()),
+                copyOf(encryptionContext));
+    }
+
+    private static Map<String, String> copyOf(Map<String, String> map) {
+        return map == null ? new HashMap<String, String>() : new HashMap<String, String>(map);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kms.crypto;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Thrown when an envelope encrypted message fails to authenticate, because it
+ * has been tampered with, or wasn't encrypted with the data key in its header.
+ * No plaintext of the frame that failed is returned.
+ */
+public class EnvelopeAuthenticationException extends AmazonClientException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message The error message.
+     */
+    public EnvelopeAuthenticationException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param message The error message.
+     * @param cause The underlying failure.
+     */
+    public EnvelopeAuthenticationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
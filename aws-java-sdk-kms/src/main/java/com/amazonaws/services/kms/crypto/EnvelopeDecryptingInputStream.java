@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kms.crypto;
+
+import static com.amazonaws.services.kms.crypto.EnvelopeHeader.TAG_LENGTH;
+import static com.amazonaws.services.kms.crypto.FrameCipher.FINAL_FRAME;
+import static com.amazonaws.services.kms.crypto.FrameCipher.FRAME;
+
+import com.amazonaws.AmazonClientException;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * Input stream that reads the plaintext of an envelope encrypted message, as
+ * created by {@link EnvelopeEncryptor#newDecryptingStream(InputStream)}. The
+ * message is decrypted one frame at a time, and the plaintext of a frame is
+ * only returned once the frame has been authenticated, so only a frame of the
+ * message is held in memory whatever its length.
+ * <p>
+ * Reading a message that has been tampered with throws an
+ * {@link EnvelopeAuthenticationException}; reading one that has been
+ * truncated, or that is followed by more bytes, throws an {@link IOException}.
+ * The plaintext read before then is authentic, but may not be the whole
+ * message.
+ */
+public final class EnvelopeDecryptingInputStream extends FilterInputStream {
+    private final DataInputStream dataIn;
+    private final EnvelopeHeader header;
+    private final FrameCipher frameCipher;
+    private final byte[] ciphertext;
+    private final byte[] plaintext;
+    private int pos;
+    private int limit;
+    private int sequenceNumber;
+    private boolean isDone;
+
+    /**
+     * @param in The stream positioned after the header of the message.
+     * @param header The header of the message.
+     * @param key The data key of the message.
+     */
+    EnvelopeDecryptingInputStream(InputStream in, EnvelopeHeader header, SecretKey key) {
+        super(in);
+        this.dataIn = new DataInputStream(in);
+        this.header = header;
+        try {
+            this.frameCipher = new FrameCipher(key, Cipher.DECRYPT_MODE, header);
+        } catch (final GeneralSecurityException e) {
+            throw new AmazonClientException("Unable to build the cipher: " + e.getMessage(), e);
+        }
+        this.ciphertext = new byte[header.getFrameLength() + TAG_LENGTH];
+        this.plaintext = new byte[header.getFrameLength()];
+    }
+
+    /**
+     * Returns the encryption context the message was encrypted with, which is
+     * authenticated along with each frame.
+     */
+    public Map<String, String> getEncryptionContext() {
+        return header.getEncryptionContext();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        int count;
+        while ((count = read(b, 0, 1)) == 0) {
+            continue;
+        }
+        return count == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (pos == limit) {
+            if (isDone) {
+                return -1;
+            }
+            readFrame();
+        }
+        final int count = Math.min(len, limit - pos);
+        System.arraycopy(plaintext, pos, b, off, count);
+        pos += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            if (pos == limit) {
+                if (isDone) {
+                    break;
+                }
+                readFrame();
+                continue;
+            }
+            final int count = (int) Math.min(n - skipped, limit - pos);
+            pos += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - pos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void readFrame() throws IOException {
+        final int marker;
+        final int length;
+        try {
+            marker = dataIn.readUnsignedByte();
+            length = dataIn.readInt();
+        } catch (final EOFException e) {
+            throw new IOException("The message is truncated before its final frame", e);
+        }
+        if (marker != FRAME && marker != FINAL_FRAME) {
+            throw new EnvelopeAuthenticationException("Invalid marker of frame "
+                    + sequenceNumber + ": " + marker);
+        }
+        if (length < 0 || length > plaintext.length) {
+            throw new EnvelopeAuthenticationException("Invalid length of frame "
+                    + sequenceNumber + ": " + length);
+        }
+        try {
+            dataIn.readFully(ciphertext, 0, length + TAG_LENGTH);
+        } catch (final EOFException e) {
+            throw new IOException("Frame " + sequenceNumber + " of the message is truncated", e);
+        }
+        try {
+            limit = frameCipher.doFinal(sequenceNumber, marker, length,
+                    ciphertext, 0, length + TAG_LENGTH, plaintext, 0);
+        } catch (final AEADBadTagException e) {
+            throw new EnvelopeAuthenticationException("Frame " + sequenceNumber
+                    + " of the message failed to authenticate", e);
+        } catch (final GeneralSecurityException e) {
+            throw new AmazonClientException("Unable to decrypt frame " + sequenceNumber
+                    + ": " + e.getMessage(), e);
+        }
+        if (marker == FINAL_FRAME && dataIn.read() != -1) {
+            // The plaintext of the final frame is withheld, so that a reader
+            // never takes a message followed by unauthenticated bytes as whole
+            pos = 0;
+            limit = 0;
+            throw new IOException("Unexpected bytes after the final frame of the message");
+        }
+        pos = 0;
+        sequenceNumber++;
+        isDone = marker == FINAL_FRAME;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kms.crypto;
+
+import static com.amazonaws.services.kms.crypto.EnvelopeHeader.TAG_LENGTH;
+import static com.amazonaws.services.kms.crypto.FrameCipher.FINAL_FRAME;
+import static com.amazonaws.services.kms.crypto.FrameCipher.FRAME;
+
+import com.amazonaws.AmazonClientException;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * Output stream that writes an envelope encrypted message of the plaintext
+ * written to it, as created by
+ * {@link EnvelopeEncryptor#newEncryptingStream(OutputStream, java.util.Map)}.
+ * The plaintext is encrypted one frame at a time, so only a frame of it is
+ * held in memory whatever the length of the message.
+ * <p>
+ * The message is only complete once the stream is closed, which writes the
+ * final frame; a message whose stream isn't closed can't be decrypted.
+ */
+public final class EnvelopeEncryptingOutputStream extends FilterOutputStream {
+    private static final long MAX_FRAMES = 0xFFFFFFFFL;
+
+    private final DataOutputStream dataOut;
+    private final FrameCipher frameCipher;
+    private final byte[] plaintext;
+    private final byte[] ciphertext;
+    private int count;
+    private long sequenceNumber;
+    private boolean isClosed;
+
+    /**
+     * Writes the header of the message.
+     */
+    EnvelopeEncryptingOutputStream(OutputStream out, EnvelopeHeader header, SecretKey key)
+            throws IOException {
+        super(out);
+        this.dataOut = new DataOutputStream(out);
+        try {
+            this.frameCipher = new FrameCipher(key, Cipher.ENCRYPT_MODE, header);
+        } catch (final GeneralSecurityException e) {
+            throw new AmazonClientException("Unable to build the cipher: " + e.getMessage(), e);
+        }
+        this.plaintext = new byte[header.getFrameLength()];
+        this.ciphertext = new byte[header.getFrameLength() + TAG_LENGTH];
+        dataOut.write(header.toByteArray());
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {
+                (byte) b
+        }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (isClosed) {
+            throw new IOException("The stream is closed");
+        }
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        int pos = off;
+        final int end = off + len;
+        while (pos < end) {
+            // A full frame is only written once more plaintext follows it,
+            // since the last frame of the message is marked as such
+            if (count == plaintext.length) {
+                writeFrame(FRAME);
+            }
+            final int n = Math.min(end - pos, plaintext.length - count);
+            System.arraycopy(b, pos, plaintext, count, n);
+            count += n;
+            pos += n;
+        }
+    }
+
+    /**
+     * Flushes the frames written so far. The plaintext of the current frame
+     * is held back until the frame is full or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        dataOut.flush();
+    }
+
+    /**
+     * Writes the final frame of the message and closes the underlying
+     * stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            writeFrame(FINAL_FRAME);
+            dataOut.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeFrame(int marker) throws IOException {
+        if (sequenceNumber > MAX_FRAMES) {
+            throw new IOException("The message is too long for its frame length");
+        }
+        final int length;
+        try {
+            length = frameCipher.doFinal((int) sequenceNumber, marker, count,
+                    plaintext, 0, count, ciphertext, 0);
+        } catch (final GeneralSecurityException e) {
+            throw new AmazonClientException("Unable to encrypt frame " + sequenceNumber
+                    + ": " + e.getMessage(), e);
+        }
+        dataOut.writeByte(marker);
+        dataOut.writeInt(count);
+        dataOut.write(ciphertext, 0, length);
+        sequenceNumber++;
+        count = 0;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kms.crypto;
+
+import static com.amazonaws.services.kms.crypto.EnvelopeHeader.IV_LENGTH;
+import static com.amazonaws.services.kms.crypto.EnvelopeHeader.KEY_LENGTH;
+import static com.amazonaws.services.kms.crypto.EnvelopeHeader.MAX_FRAME_LENGTH;
+import static com.amazonaws.services.kms.crypto.EnvelopeHeader.TAG_LENGTH;
+import static com.amazonaws.services.kms.crypto.FrameCipher.FRAME_HEADER_LENGTH;
+import static com.amazonaws.util.BinaryUtils.copyAllBytesFrom;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.kms.AWSKMS;
+import com.amazonaws.services.kms.model.DataKeySpec;
+import com.amazonaws.services.kms.model.DecryptRequest;
+import com.amazonaws.services.kms.model.DecryptResult;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Envelope encryption with AWS KMS: each message is encrypted locally with
+ * AES-256/GCM under a data key generated by KMS, and carries the data key
+ * encrypted under a customer master key, so that only a call to KMS to
+ * decrypt the data key is needed to decrypt it. With a {@link DataKeyCache},
+ * data keys are reused across messages within the limits of the cache, and
+ * most messages don't cost a call to KMS at all.
+ * <p>
+ * A message is self-describing; all the numbers are big-endian:
+ *
+ * <pre>
+ * header:
+ *   version             1 byte, 1
+ *   algorithm           1 byte, 1 for AES-256/GCM with a 96-bit IV and a 128-bit tag
+ *   context entries     2 bytes, then for each entry, sorted by key:
+ *                       2 bytes of key length, UTF-8 key, 2 bytes of value length, UTF-8 value
+ *   encrypted key       2 bytes of length, then the encrypted data key
+ *   frame length        4 bytes, the length of the plaintext of a full frame
+ *   IV                  12 bytes, random for each message
+ * frames, until the final one:
+ *   marker              1 byte, 0 for a frame, 1 for the final frame
+ *   plaintext length    4 bytes, at most the frame length
+ *   ciphertext          the encrypted plaintext, then the 16 byte tag
+ * </pre>
+ *
+ * The plaintext is encrypted in frames so that messages of any length can be
+ * encrypted and decrypted in constant memory, with
+ * {@link #newEncryptingStream(OutputStream, Map)} and
+ * {@link #newDecryptingStream(InputStream)}; the plaintext of a frame is only
+ * returned once the frame has been authenticated. Each frame authenticates the
+ * header, its sequence number and whether it's the final frame, so that the
+ * encryption context can't be altered and frames can't be reordered or
+ * dropped.
+ * <p>
+ * Instances are safe for use by multiple threads once configured.
+ */
+public class EnvelopeEncryptor {
+
+    /** The default length of the plaintext of a frame, 64 KB. */
+    public static final int DEFAULT_FRAME_LENGTH = 64 * 1024;
+    /** The default largest frame length of the messages decrypted, 1 MB. */
+    public static final int DEFAULT_MAX_DECRYPTED_FRAME_LENGTH = 1024 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final AWSKMS kms;
+    private final String keyId;
+    private final SecureRandom random = new SecureRandom();
+    private DataKeyCache dataKeyCache;
+    private int frameLength = DEFAULT_FRAME_LENGTH;
+    private int maxDecryptedFrameLength = DEFAULT_MAX_DECRYPTED_FRAME_LENGTH;
+
+    /**
+     * @param kms The KMS client to generate and decrypt data keys with.
+     * @param keyId The ID or ARN, or alias, of the customer master key to
+     *            encrypt data keys under.
+     */
+    public EnvelopeEncryptor(AWSKMS kms, String keyId) {
+        if (kms == null) {
+            throw new IllegalArgumentException("The KMS client must be specified");
+        }
+        this.kms = kms;
+        this.keyId = keyId;
+    }
+
+    /**
+     * Returns the customer master key that data keys are encrypted under.
+     */
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * Returns the cache of data keys, or null if every message has its own
+     * data key.
+     */
+    public DataKeyCache getDataKeyCache() {
+        return dataKeyCache;
+    }
+
+    /**
+     * Sets the cache of data keys, which may be shared with other encryptors
+     * and clients.
+     *
+     * @param dataKeyCache The cache, or null to generate and decrypt the data
+     *            key of each message with KMS.
+     */
+    public void setDataKeyCache(DataKeyCache dataKeyCache) {
+        this.dataKeyCache = dataKeyCache;
+    }
+
+    /**
+     * Fluent API for {@link #setDataKeyCache(DataKeyCache)}.
+     */
+    public EnvelopeEncryptor withDataKeyCache(DataKeyCache dataKeyCache) {
+        setDataKeyCache(dataKeyCache);
+        return this;
+    }
+
+    /**
+     * Returns the length of the plaintext of a frame of the messages
+     * encrypted, which is also the memory used to encrypt or decrypt one.
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Sets the length of the plaintext of a frame of the messages encrypted.
+     * Each frame adds 5 bytes plus a 16 byte tag to the message.
+     *
+     * @param frameLength The length, from 1 byte to 16 MB.
+     */
+    public void setFrameLength(int frameLength) {
+        if (frameLength <= 0 || frameLength > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("The frame length must be between 1 and "
+                    + MAX_FRAME_LENGTH);
+        }
+        this.frameLength = frameLength;
+    }
+
+    /**
+     * Fluent API for {@link #setFrameLength(int)}.
+     */
+    public EnvelopeEncryptor withFrameLength(int frameLength) {
+        setFrameLength(frameLength);
+        return this;
+    }
+
+    /**
+     * Returns the largest frame length of the messages decrypted; a message
+     * whose header declares longer frames is rejected before any memory is
+     * allocated for them. Messages encrypted with the frame length of this
+     * encryptor are always accepted.
+     */
+    public int getMaxDecryptedFrameLength() {
+        return maxDecryptedFrameLength;
+    }
+
+    /**
+     * Sets the largest frame length of the messages decrypted, which bounds
+     * the memory a message read from an untrusted source can make a
+     * decrypting stream allocate.
+     *
+     * @param maxDecryptedFrameLength The length, from 1 byte to 16 MB.
+     */
+    public void setMaxDecryptedFrameLength(int maxDecryptedFrameLength) {
+        if (maxDecryptedFrameLength <= 0 || maxDecryptedFrameLength > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("The maximum frame length must be between 1 and "
+                    + MAX_FRAME_LENGTH);
+        }
+        this.maxDecryptedFrameLength = maxDecryptedFrameLength;
+    }
+
+    /**
+     * Fluent API for {@link #setMaxDecryptedFrameLength(int)}.
+     */
+    public EnvelopeEncryptor withMaxDecryptedFrameLength(int maxDecryptedFrameLength) {
+        setMaxDecryptedFrameLength(maxDecryptedFrameLength);
+        return this;
+    }
+
+    /**
+     * Encrypts a message with no encryption context.
+     *
+     * @see #encrypt(byte[], Map)
+     */
+    public byte[] encrypt(byte[] plaintext) {
+        return encrypt(plaintext, null);
+    }
+
+    /**
+     * Encrypts a message held in memory.
+     *
+     * @param plaintext The plaintext of the message.
+     * @param encryptionContext The encryption context to encrypt the data key
+     *            with, which is stored in the message in the clear; or null.
+     * @return The envelope encrypted message.
+     */
+    public byte[] encrypt(byte[] plaintext, Map<String, String> encryptionContext) {
+        final long frames = plaintext.length / frameLength + 1;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                (int) Math.min(Integer.MAX_VALUE, plaintext.length + 1024
+                        + frames * (FRAME_HEADER_LENGTH + TAG_LENGTH)));
+        try {
+            final OutputStream encrypting = newEncryptingStream(out, encryptionContext,
+                    plaintext.length);
+            encrypting.write(plaintext);
+            encrypting.close();
+        } catch (final IOException e) {
+            // Can't happen with a byte array
+            throw new AmazonClientException("Unable to encrypt the message: "
+                    + e.getMessage(), e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decrypts a message held in memory.
+     *
+     * @param ciphertext The envelope encrypted message.
+     * @return The plaintext of the message.
+     * @throws EnvelopeAuthenticationException if the message has been
+     *             tampered with.
+     * @throws AmazonClientException if the message is malformed or truncated.
+     */
+    public byte[] decrypt(byte[] ciphertext) {
+        final ByteArrayInputStream in = new ByteArrayInputStream(ciphertext);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(ciphertext.length);
+        try {
+            final InputStream decrypting = newDecryptingStream(in);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = decrypting.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to decrypt the message: "
+                    + e.getMessage(), e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a stream that writes the envelope encrypted message of the
+     * plaintext written to it to the given stream. The message is only
+     * complete once the returned stream is closed, which also closes the
+     * given stream.
+     *
+     * @param out The stream to write the message to.
+     * @param encryptionContext The encryption context to encrypt the data key
+     *            with, which is stored in the message in the clear; or null.
+     * @throws IOException if the header of the message can't be written.
+     */
+    public EnvelopeEncryptingOutputStream newEncryptingStream(OutputStream out,
+            Map<String, String> encryptionContext) throws IOException {
+        return newEncryptingStream(out, encryptionContext, -1);
+    }
+
+    /**
+     * @param plaintextLength The length of the plaintext, or -1 if it's
+     *            unknown, which counts towards the limits of a cached data
+     *            key.
+     */
+    private EnvelopeEncryptingOutputStream newEncryptingStream(OutputStream out,
+            Map<String, String> encryptionContext, long plaintextLength) throws IOException {
+        final Map<String, String> context = encryptionContext == null
+                ? Collections.<String, String> emptyMap()
+                : encryptionContext;
+        final GenerateDataKeyRequest request = new GenerateDataKeyRequest()
+                .withKeyId(keyId)
+                .withKeySpec(DataKeySpec.AES_256);
+        if (!context.isEmpty()) {
+            request.setEncryptionContext(context);
+        }
+        final GenerateDataKeyResult result = dataKeyCache == null
+                ? kms.generateDataKey(request)
+                : dataKeyCache.generateDataKey(kms, request, plaintextLength);
+        final SecretKey key = toSecretKey(result.getPlaintext());
+        final byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        final EnvelopeHeader header = new EnvelopeHeader(context,
+                copyAllBytesFrom(result.getCiphertextBlob()), frameLength, iv);
+        return new EnvelopeEncryptingOutputStream(out, header, key);
+    }
+
+    /**
+     * Returns a stream that reads the plaintext of the envelope encrypted
+     * message read from the given stream. The header of the message is read,
+     * and its data key decrypted, before this method returns.
+     *
+     * @param in The stream to read the message from, which must end with
+     *            the message.
+     * @throws IOException if the header of the message can't be read, isn't
+     *             one of a supported version, or declares frames longer than
+     *             {@link #getMaxDecryptedFrameLength()}.
+     */
+    public EnvelopeDecryptingInputStream newDecryptingStream(InputStream in) throws IOException {
+        final EnvelopeHeader header = EnvelopeHeader.read(in,
+                Math.max(maxDecryptedFrameLength, frameLength));
+        final DecryptRequest request = new DecryptRequest()
+                .withCiphertextBlob(ByteBuffer.wrap(header.getEncryptedKey()));
+        if (!header.getEncryptionContext().isEmpty()) {
+            request.setEncryptionContext(header.getEncryptionContext());
+        }
+        final DecryptResult result = dataKeyCache == null
+                ? kms.decrypt(request)
+                : dataKeyCache.decrypt(kms, request);
+        return new EnvelopeDecryptingInputStream(in, header, toSecretKey(result.getPlaintext()));
+    }
+
+    private static SecretKey toSecretKey(ByteBuffer plaintext) {
+        final byte[] bytes = copyAllBytesFrom(plaintext);
+        try {
+            if (bytes.length != KEY_LENGTH) {
+                throw new AmazonClientException("Unexpected data key length: " + bytes.length
+                        + " bytes instead of " + KEY_LENGTH);
+            }
+            return new SecretKeySpec(bytes, "AES");
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+}
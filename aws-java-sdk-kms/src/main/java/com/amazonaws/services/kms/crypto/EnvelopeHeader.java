@@ -0,0 +1,201 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kms.crypto;
+
+import com.amazonaws.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The header of an envelope encrypted message, which describes how to decrypt
+ * the frames that follow it. See {@link EnvelopeEncryptor} for the format.
+ */
+final class EnvelopeHeader {
+    static final int VERSION = 1;
+    /** AES-256/GCM with a 96-bit IV and a 128-bit tag, in frames. */
+    static final int ALGORITHM_AES_256_GCM = 1;
+    static final int KEY_LENGTH = 32;
+    static final int IV_LENGTH = 12;
+    static final int TAG_LENGTH = 16;
+    /** The largest frame allowed, which bounds the memory used to decrypt. */
+    static final int MAX_FRAME_LENGTH = 1 << 24;
+    /** The most bytes of encryption context allowed, keys and values together. */
+    static final int MAX_CONTEXT_LENGTH = 64 * 1024;
+    private static final int MAX_UNSIGNED_SHORT = 0xFFFF;
+
+    private final SortedMap<String, String> encryptionContext;
+    private final byte[] encryptedKey;
+    private final int frameLength;
+    private final byte[] iv;
+    /** The serialized header, which each frame authenticates. */
+    private final byte[] bytes;
+
+    EnvelopeHeader(Map<String, String> encryptionContext, byte[] encryptedKey,
+            int frameLength, byte[] iv) {
+        if (frameLength <= 0 || frameLength > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("The frame length must be between 1 and "
+                    + MAX_FRAME_LENGTH);
+        }
+        if (iv.length != IV_LENGTH) {
+            throw new IllegalArgumentException("The IV must be " + IV_LENGTH + " bytes");
+        }
+        this.encryptionContext = encryptionContext == null
+                ? new TreeMap<String, String>()
+                : new TreeMap<String, String>(encryptionContext);
+        this.encryptedKey = encryptedKey.clone();
+        this.frameLength = frameLength;
+        this.iv = iv.clone();
+        this.bytes = serialize();
+    }
+
+    Map<String, String> getEncryptionContext() {
+        return Collections.unmodifiableMap(encryptionContext);
+    }
+
+    byte[] getEncryptedKey() {
+        return encryptedKey.clone();
+    }
+
+    int getFrameLength() {
+        return frameLength;
+    }
+
+    byte[] getIV() {
+        return iv.clone();
+    }
+
+    byte[] toByteArray() {
+        return bytes.clone();
+    }
+
+    private byte[] serialize() {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bos);
+        try {
+            out.writeByte(VERSION);
+            out.writeByte(ALGORITHM_AES_256_GCM);
+            checkUnsignedShort(encryptionContext.size(), "encryption context entries");
+            out.writeShort(encryptionContext.size());
+            int contextLength = 0;
+            for (final Map.Entry<String, String> entry : encryptionContext.entrySet()) {
+                contextLength += writeString(out, entry.getKey());
+                contextLength += writeString(out, entry.getValue());
+            }
+            if (contextLength > MAX_CONTEXT_LENGTH) {
+                throw new IllegalArgumentException("The encryption context is longer than "
+                        + MAX_CONTEXT_LENGTH + " bytes");
+            }
+            checkUnsignedShort(encryptedKey.length, "bytes of the encrypted data key");
+            out.writeShort(encryptedKey.length);
+            out.write(encryptedKey);
+            out.writeInt(frameLength);
+            out.write(iv);
+            out.flush();
+        } catch (final IOException e) {
+            // Can't happen with a byte array
+            throw new IllegalStateException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Reads a header from the start of a message. Every length is checked
+     * before anything is allocated from it, so that a forged header can't
+     * exhaust memory.
+     *
+     * @param maxFrameLength The largest frame length accepted, which bounds
+     *            the buffers allocated to decrypt the message.
+     * @throws IOException if the header is truncated, or isn't one of a
+     *             supported version and algorithm.
+     */
+    static EnvelopeHeader read(InputStream is, int maxFrameLength) throws IOException {
+        final DataInputStream in = new DataInputStream(is);
+        try {
+            final int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported envelope version: " + version);
+            }
+            final int algorithm = in.readUnsignedByte();
+            if (algorithm != ALGORITHM_AES_256_GCM) {
+                throw new IOException("Unsupported envelope algorithm: " + algorithm);
+            }
+            final int entries = in.readUnsignedShort();
+            final Map<String, String> encryptionContext = new TreeMap<String, String>();
+            final int[] contextLength = new int[1];
+            for (int i = 0; i < entries; i++) {
+                final String key = readString(in, contextLength);
+                encryptionContext.put(key, readString(in, contextLength));
+            }
+            final byte[] encryptedKey = new byte[in.readUnsignedShort()];
+            in.readFully(encryptedKey);
+            final int frameLength = in.readInt();
+            if (frameLength <= 0 || frameLength > Math.min(maxFrameLength, MAX_FRAME_LENGTH)) {
+                throw new IOException("Invalid envelope frame length: " + frameLength
+                        + ", at most " + Math.min(maxFrameLength, MAX_FRAME_LENGTH)
+                        + " is accepted");
+            }
+            final byte[] iv = new byte[IV_LENGTH];
+            in.readFully(iv);
+            return new EnvelopeHeader(encryptionContext, encryptedKey, frameLength, iv);
+        } catch (final EOFException e) {
+            throw new IOException("The envelope header is truncated", e);
+        }
+    }
+
+    /**
+     * @return The number of bytes of the string.
+     */
+    private static int writeString(DataOutputStream out, String s) throws IOException {
+        final byte[] utf8 = s.getBytes(StringUtils.UTF8);
+        checkUnsignedShort(utf8.length, "bytes of an encryption context entry");
+        out.writeShort(utf8.length);
+        out.write(utf8);
+        return utf8.length;
+    }
+
+    /**
+     * @param contextLength The bytes of encryption context read so far, which
+     *            is updated.
+     */
+    private static String readString(DataInputStream in, int[] contextLength)
+            throws IOException {
+        final int length = in.readUnsignedShort();
+        contextLength[0] += length;
+        if (contextLength[0] > MAX_CONTEXT_LENGTH) {
+            throw new IOException("The envelope encryption context is longer than "
+                    + MAX_CONTEXT_LENGTH + " bytes");
+        }
+        final byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StringUtils.UTF8);
+    }
+
+    private static void checkUnsignedShort(int n, String what) {
+        if (n > MAX_UNSIGNED_SHORT) {
+            throw new IllegalArgumentException("Too many " + what + ": " + n
+                    + ", at most " + MAX_UNSIGNED_SHORT);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kms.crypto;
+
+import static com.amazonaws.services.kms.crypto.EnvelopeHeader.IV_LENGTH;
+import static com.amazonaws.services.kms.crypto.EnvelopeHeader.TAG_LENGTH;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Encrypts or decrypts the frames of an envelope encrypted message with
+ * AES/GCM. Each frame is encrypted with the IV of the message with its
+ * sequence number XORed into the last four bytes, and authenticates the
+ * header of the message, its sequence number, whether it's the final frame
+ * and its length, so that frames can't be altered, reordered, dropped or
+ * moved to another message.
+ */
+final class FrameCipher {
+    /** The marker of a frame followed by more frames. */
+    static final int FRAME = 0;
+    /** The marker of the last frame of a message. */
+    static final int FINAL_FRAME = 1;
+    /** The length of the marker and the plaintext length of a frame. */
+    static final int FRAME_HEADER_LENGTH = 5;
+
+    private final Cipher cipher;
+    private final SecretKey key;
+    private final int mode;
+    private final byte[] headerBytes;
+    private final byte[] iv;
+
+    /**
+     * @param key The data key of the message.
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param header The header of the message.
+     */
+    FrameCipher(SecretKey key, int mode, EnvelopeHeader header)
+            throws GeneralSecurityException {
+        this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        this.key = key;
+        this.mode = mode;
+        this.headerBytes = header.toByteArray();
+        this.iv = header.getIV();
+    }
+
+    /**
+     * Encrypts or decrypts a frame in one go.
+     *
+     * @param sequenceNumber The number of the frame in the message, from 0.
+     * @param marker {@link #FRAME} or {@link #FINAL_FRAME}.
+     * @param plaintextLength The length of the plaintext of the frame.
+     * @param in The buffer holding the input.
+     * @param inOff The offset of the input.
+     * @param inLen The length of the input, which includes the tag when
+     *            decrypting.
+     * @param out The buffer to write the output to.
+     * @param outOff The offset of the output.
+     * @return The length of the output.
+     * @throws GeneralSecurityException if the frame doesn't authenticate.
+     */
+    int doFinal(int sequenceNumber, int marker, int plaintextLength,
+            byte[] in, int inOff, int inLen, byte[] out, int outOff)
+            throws GeneralSecurityException {
+        final byte[] frameIV = iv.clone();
+        for (int i = 0; i < 4; i++) {
+            frameIV[IV_LENGTH - 1 - i] ^= (byte) (sequenceNumber >>> (8 * i));
+        }
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, frameIV));
+        cipher.updateAAD(headerBytes);
+        cipher.updateAAD(new byte[] {
+                (byte) (sequenceNumber >>> 24), (byte) (sequenceNumber >>> 16),
+                (byte) (sequenceNumber >>> 8), (byte) sequenceNumber,
+                (byte) marker,
+                (byte) (plaintextLength >>> 24), (byte) (plaintextLength >>> 16),
+                (byte) (plaintextLength >>> 8), (byte) plaintextLength
+        });
+        return cipher.doFinal(in, inOff, inLen, out, outOff);
+    }
+}
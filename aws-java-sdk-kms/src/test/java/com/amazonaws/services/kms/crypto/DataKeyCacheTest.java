@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kms.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+public class DataKeyCacheTest {
+
+    private static final Map<String, String> CONTEXT = Collections.singletonMap("purpose",
+            "test");
+    private static final Map<String, String> OTHER_CONTEXT = Collections.singletonMap(
+            "purpose", "other");
+
+    private FakeKMSClient kms;
+    private DataKeyCache cache;
+    private EnvelopeEncryptor encryptor;
+
+    @Before
+    public void setUp() {
+        kms = new FakeKMSClient();
+        cache = new DataKeyCache();
+        encryptor = new EnvelopeEncryptor(kms, "alias/test").withDataKeyCache(cache);
+    }
+
+    @Test
+    public void testReusesGeneratedKeyUpToMaxUses() {
+        cache.setMaxUses(3);
+        for (int i = 0; i < 10; i++) {
+            encryptor.encrypt(new byte[100], CONTEXT);
+        }
+        assertEquals(4, kms.getGenerateCalls());
+        assertEquals(6, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testDecryptsGeneratedKeysWithoutKMS() {
+        final byte[] plaintext = "plaintext".getBytes();
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(plaintext, encryptor.decrypt(encryptor.encrypt(plaintext, CONTEXT)));
+        }
+        assertEquals(1, kms.getGenerateCalls());
+        assertEquals(0, kms.getDecryptCalls());
+
+        // Another encryptor sharing nothing but KMS decrypts the key once
+        final EnvelopeEncryptor reader = new EnvelopeEncryptor(kms, "alias/test")
+                .withDataKeyCache(new DataKeyCache());
+        final byte[] message = encryptor.encrypt(plaintext, CONTEXT);
+        reader.decrypt(message);
+        reader.decrypt(message);
+        assertEquals(1, kms.getDecryptCalls());
+    }
+
+    @Test
+    public void testExpiredKeysAreNotReused() throws InterruptedException {
+        cache.setMaxAgeMillis(20);
+        final byte[] message = encryptor.encrypt(new byte[10], CONTEXT);
+        encryptor.encrypt(new byte[10], CONTEXT);
+        assertEquals(1, kms.getGenerateCalls());
+        Thread.sleep(50);
+
+        encryptor.encrypt(new byte[10], CONTEXT);
+        assertEquals(2, kms.getGenerateCalls());
+        encryptor.decrypt(message);
+        assertEquals(1, kms.getDecryptCalls());
+    }
+
+    @Test
+    public void testLimitsBytesEncryptedWithKey() throws IOException {
+        cache.setMaxBytes(250);
+        for (int i = 0; i < 4; i++) {
+            encryptor.encrypt(new byte[100], CONTEXT);
+        }
+        assertEquals(2, kms.getGenerateCalls());
+
+        // A stream of unknown length can't be counted, so it gets its own key
+        encryptor.newEncryptingStream(new ByteArrayOutputStream(), CONTEXT).close();
+        encryptor.newEncryptingStream(new ByteArrayOutputStream(), CONTEXT).close();
+        assertEquals(4, kms.getGenerateCalls());
+    }
+
+    @Test
+    public void testEncryptionContextsGetTheirOwnKeys() {
+        encryptor.encrypt(new byte[10], CONTEXT);
+        encryptor.encrypt(new byte[10], OTHER_CONTEXT);
+        encryptor.encrypt(new byte[10], CONTEXT);
+        encryptor.encrypt(new byte[10], null);
+        assertEquals(3, kms.getGenerateCalls());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedKeys() {
+        cache.setMaxEntries(1);
+        encryptor.encrypt(new byte[10], CONTEXT);
+        encryptor.encrypt(new byte[10], OTHER_CONTEXT);
+        encryptor.encrypt(new byte[10], CONTEXT);
+        assertEquals(3, kms.getGenerateCalls());
+
+        cache.clear();
+        encryptor.encrypt(new byte[10], CONTEXT);
+        assertEquals(4, kms.getGenerateCalls());
+    }
+
+    @Test
+    public void testDisabledCacheCallsKMSEveryTime() {
+        cache.setMaxEntries(0);
+        encryptor.decrypt(encryptor.encrypt(new byte[10], CONTEXT));
+        encryptor.decrypt(encryptor.encrypt(new byte[10], CONTEXT));
+        assertEquals(2, kms.getGenerateCalls());
+        assertEquals(2, kms.getDecryptCalls());
+    }
+}
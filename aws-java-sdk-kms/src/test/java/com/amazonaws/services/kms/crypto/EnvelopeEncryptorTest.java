@@ -0,0 +1,285 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kms.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.kms.model.InvalidCiphertextException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+public class EnvelopeEncryptorTest {
+
+    private static final int FRAME_LENGTH = 100;
+    /** The marker, plaintext length and tag of a frame. */
+    private static final int FRAME_OVERHEAD = FrameCipher.FRAME_HEADER_LENGTH
+            + EnvelopeHeader.TAG_LENGTH;
+    private static final Map<String, String> CONTEXT = Collections.singletonMap("purpose",
+            "test");
+
+    private FakeKMSClient kms;
+    private EnvelopeEncryptor encryptor;
+
+    @Before
+    public void setUp() {
+        kms = new FakeKMSClient();
+        encryptor = new EnvelopeEncryptor(kms, "alias/test").withFrameLength(FRAME_LENGTH);
+    }
+
+    private static byte[] plaintext(int length) {
+        final byte[] plaintext = new byte[length];
+        new Random(length).nextBytes(plaintext);
+        return plaintext;
+    }
+
+    private static int headerLength(byte[] message) throws IOException {
+        return EnvelopeHeader.read(new ByteArrayInputStream(message),
+                EnvelopeHeader.MAX_FRAME_LENGTH).toByteArray().length;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[37];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    private void assertFailsToAuthenticate(byte[] message) {
+        try {
+            encryptor.decrypt(message);
+            fail("The message should have failed to authenticate");
+        } catch (final EnvelopeAuthenticationException expected) {
+            // The plaintext is never returned
+        }
+    }
+
+    @Test
+    public void testRoundTripAcrossFrameBoundaries() throws IOException {
+        for (final int length : new int[] {
+                0, 1, FRAME_LENGTH - 1, FRAME_LENGTH, FRAME_LENGTH + 1, 3 * FRAME_LENGTH,
+                1234
+        }) {
+            final byte[] plaintext = plaintext(length);
+            final byte[] message = encryptor.encrypt(plaintext, CONTEXT);
+            assertArrayEquals("length " + length, plaintext, encryptor.decrypt(message));
+            // A full frame at the end of the message is the final frame
+            final int frames = Math.max(1, (length + FRAME_LENGTH - 1) / FRAME_LENGTH);
+            assertEquals("length " + length, headerLength(message) + length
+                    + frames * FRAME_OVERHEAD, message.length);
+
+            final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            final OutputStream encrypting = encryptor.newEncryptingStream(streamed, CONTEXT);
+            for (int i = 0; i < length; i += 7) {
+                encrypting.write(plaintext, i, Math.min(7, length - i));
+            }
+            encrypting.close();
+            final EnvelopeDecryptingInputStream decrypting = encryptor
+                    .newDecryptingStream(new ByteArrayInputStream(streamed.toByteArray()));
+            assertEquals(CONTEXT, decrypting.getEncryptionContext());
+            assertArrayEquals("length " + length, plaintext, readAll(decrypting));
+        }
+    }
+
+    @Test
+    public void testDecryptsMessagesWithOtherFrameLengths() {
+        final byte[] plaintext = plaintext(1000);
+        final byte[] message = new EnvelopeEncryptor(kms, "alias/test").withFrameLength(300)
+                .encrypt(plaintext);
+        assertArrayEquals(plaintext, encryptor.decrypt(message));
+    }
+
+    @Test
+    public void testTamperedFrameFailsToAuthenticate() throws IOException {
+        final byte[] message = encryptor.encrypt(plaintext(250), CONTEXT);
+        final int header = headerLength(message);
+        for (int i = header; i < message.length; i++) {
+            final byte[] tampered = message.clone();
+            tampered[i] ^= 1;
+            try {
+                encryptor.decrypt(tampered);
+                fail("The tampered frame byte " + i + " went undetected");
+            } catch (final EnvelopeAuthenticationException expected) {
+                // The frame failed to authenticate
+            } catch (final AmazonClientException expected) {
+                // A longer frame length runs past the end of the message
+                assertTrue(expected.getCause().getMessage().contains("truncated"));
+            }
+        }
+    }
+
+    @Test
+    public void testTamperedHeaderFails() throws IOException {
+        final byte[] message = encryptor.encrypt(plaintext(250), CONTEXT);
+        final int header = headerLength(message);
+
+        // The IV and the frame length are authenticated by every frame
+        for (int i = header - EnvelopeHeader.IV_LENGTH - 4; i < header; i++) {
+            final byte[] tampered = message.clone();
+            tampered[i] ^= 1;
+            try {
+                encryptor.decrypt(tampered);
+                fail("The tampered header byte " + i + " went undetected");
+            } catch (final EnvelopeAuthenticationException expected) {
+                // Caught by the frames
+            } catch (final AmazonClientException expected) {
+                // Rejected as a malformed header
+                assertTrue(expected.getCause() instanceof IOException);
+            }
+        }
+
+        // KMS refuses to decrypt the data key with another encryption context
+        // The version, algorithm, entry count, key length, key and value length
+        final int contextValue = 1 + 1 + 2 + 2 + "purpose".length() + 2;
+        final byte[] tampered = message.clone();
+        tampered[contextValue] ^= 1;
+        try {
+            encryptor.decrypt(tampered);
+            fail("The tampered encryption context went undetected");
+        } catch (final InvalidCiphertextException expected) {
+            // The data key can't be decrypted
+        }
+    }
+
+    @Test
+    public void testTruncatedMessageFails() {
+        final byte[] message = encryptor.encrypt(plaintext(250), CONTEXT);
+        for (int length = 0; length < message.length; length++) {
+            try {
+                encryptor.decrypt(Arrays.copyOf(message, length));
+                fail("The message truncated to " + length + " bytes was decrypted");
+            } catch (final EnvelopeAuthenticationException e) {
+                fail("Truncation isn't tampering with the frames: " + e);
+            } catch (final AmazonClientException expected) {
+                assertTrue(expected.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    @Test
+    public void testDroppedFinalFrameFails() throws IOException {
+        final byte[] message = encryptor.encrypt(plaintext(3 * FRAME_LENGTH), CONTEXT);
+        final byte[] dropped = Arrays.copyOf(message,
+                message.length - FRAME_LENGTH - FRAME_OVERHEAD);
+        final InputStream decrypting = encryptor.newDecryptingStream(
+                new ByteArrayInputStream(dropped));
+        final byte[] buffer = new byte[FRAME_LENGTH];
+        assertEquals(FRAME_LENGTH, decrypting.read(buffer));
+        assertEquals(FRAME_LENGTH, decrypting.read(buffer));
+        try {
+            decrypting.read(buffer);
+            fail("The message without its final frame was read to the end");
+        } catch (final IOException expected) {
+            assertTrue(expected.getMessage().contains("truncated"));
+        }
+    }
+
+    @Test
+    public void testReorderedFramesFailToAuthenticate() throws IOException {
+        final byte[] message = encryptor.encrypt(plaintext(3 * FRAME_LENGTH), CONTEXT);
+        final int header = headerLength(message);
+        final int frame = FRAME_LENGTH + FRAME_OVERHEAD;
+        final byte[] reordered = message.clone();
+        System.arraycopy(message, header, reordered, header + frame, frame);
+        System.arraycopy(message, header + frame, reordered, header, frame);
+        assertFailsToAuthenticate(reordered);
+
+        // Nor can a frame be replayed from another message with the same key
+        final byte[] other = encryptor.encrypt(plaintext(3 * FRAME_LENGTH), CONTEXT);
+        final byte[] spliced = message.clone();
+        System.arraycopy(other, header, spliced, header, frame);
+        assertFailsToAuthenticate(spliced);
+    }
+
+    @Test
+    public void testBytesAfterFinalFrameAreRejected() throws IOException {
+        final byte[] plaintext = plaintext(250);
+        final byte[] message = encryptor.encrypt(plaintext, CONTEXT);
+        final byte[] extended = Arrays.copyOf(message, message.length + 1);
+        try {
+            encryptor.decrypt(extended);
+            fail("The bytes after the message went undetected");
+        } catch (final EnvelopeAuthenticationException e) {
+            fail("The message itself is authentic: " + e);
+        } catch (final AmazonClientException expected) {
+            assertTrue(expected.getMessage().contains("after the final frame"));
+        }
+
+        final InputStream decrypting = encryptor.newDecryptingStream(
+                new ByteArrayInputStream(extended));
+        final byte[] buffer = new byte[plaintext.length];
+        assertEquals(FRAME_LENGTH, decrypting.read(buffer));
+        assertEquals(FRAME_LENGTH, decrypting.read(buffer));
+        try {
+            decrypting.read(buffer);
+            fail("The plaintext of the final frame was returned");
+        } catch (final IOException expected) {
+            assertEquals(0, decrypting.available());
+        }
+    }
+
+    @Test
+    public void testOversizedFrameLengthIsRejected() throws IOException {
+        final byte[] message = new EnvelopeEncryptor(kms, "alias/test")
+                .withFrameLength(4 * FRAME_LENGTH)
+                .encrypt(plaintext(250), CONTEXT);
+        encryptor.setMaxDecryptedFrameLength(2 * FRAME_LENGTH);
+        try {
+            encryptor.newDecryptingStream(new ByteArrayInputStream(message));
+            fail("The frame length went unchecked");
+        } catch (final IOException expected) {
+            assertTrue(expected.getMessage().contains("frame length"));
+        }
+        assertEquals(0, kms.getDecryptCalls());
+
+        // A forged header can't make the decryptor allocate 2 GB
+        final int header = headerLength(message);
+        final byte[] forged = message.clone();
+        forged[header - EnvelopeHeader.IV_LENGTH - 4] = 0x7F;
+        try {
+            encryptor.newDecryptingStream(new ByteArrayInputStream(forged));
+            fail("The frame length went unchecked");
+        } catch (final IOException expected) {
+            assertTrue(expected.getMessage().contains("frame length"));
+        }
+    }
+
+    @Test
+    public void testEncryptsWithoutContext() {
+        final byte[] plaintext = plaintext(10);
+        final byte[] message = encryptor.encrypt(plaintext);
+        assertArrayEquals(plaintext, encryptor.decrypt(message));
+        assertFalse(Arrays.equals(message, encryptor.encrypt(plaintext)));
+    }
+}
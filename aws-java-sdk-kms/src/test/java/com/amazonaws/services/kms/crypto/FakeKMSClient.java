@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.kms.crypto;
+
+import static com.amazonaws.util.BinaryUtils.copyAllBytesFrom;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.kms.AWSKMSClient;
+import com.amazonaws.services.kms.model.DecryptRequest;
+import com.amazonaws.services.kms.model.DecryptResult;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyResult;
+import com.amazonaws.services.kms.model.InvalidCiphertextException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * AWS KMS client stub that generates random data keys, and only decrypts
+ * them back with the encryption context they were generated with, like KMS.
+ */
+class FakeKMSClient extends AWSKMSClient {
+    private final Random random = new Random(1);
+    /** The plaintext keys by encrypted key and encryption context. */
+    private final Map<List<Object>, byte[]> keys = new HashMap<List<Object>, byte[]>();
+    private int generateCalls;
+    private int decryptCalls;
+
+    FakeKMSClient() {
+        super(new BasicAWSCredentials("access", "secret"));
+    }
+
+    synchronized int getGenerateCalls() {
+        return generateCalls;
+    }
+
+    synchronized int getDecryptCalls() {
+        return decryptCalls;
+    }
+
+    @Override
+    public synchronized GenerateDataKeyResult generateDataKey(GenerateDataKeyRequest request) {
+        generateCalls++;
+        final byte[] plaintext = new byte[EnvelopeHeader.KEY_LENGTH];
+        random.nextBytes(plaintext);
+        final byte[] ciphertextBlob = ("key-" + generateCalls + "-" + request.getKeyId())
+                .getBytes();
+        keys.put(cacheKey(ciphertextBlob, request.getEncryptionContext()), plaintext.clone());
+        return new GenerateDataKeyResult()
+                .withKeyId(request.getKeyId())
+                .withPlaintext(ByteBuffer.wrap(plaintext))
+                .withCiphertextBlob(ByteBuffer.wrap(ciphertextBlob));
+    }
+
+    @Override
+    public synchronized DecryptResult decrypt(DecryptRequest request) {
+        decryptCalls++;
+        final byte[] plaintext = keys.get(cacheKey(copyAllBytesFrom(request.getCiphertextBlob()),
+                request.getEncryptionContext()));
+        if (plaintext == null) {
+            throw new InvalidCiphertextException("Unknown data key or encryption context");
+        }
+        return new DecryptResult().withPlaintext(ByteBuffer.wrap(plaintext.clone()));
+    }
+
+    private static List<Object> cacheKey(byte[] ciphertextBlob, Map<String, String> context) {
+        return Arrays.<Object> asList(ByteBuffer.wrap(ciphertextBlob),
+                context == null || context.isEmpty() ? new HashMap<String, String>()
+                        : new HashMap<String, String>(context));
+    }
+}
@@ -26,6 +26,8 @@ import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * A wrapper class of InputStream that implements chunked-encoding.
@@ -42,7 +44,9 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
     private static final String CHUNK_STRING_TO_SIGN_PREFIX = "AWS4-HMAC-SHA256-PAYLOAD";
     private static final String CHUNK_SIGNATURE_HEADER = ";chunk-signature=";
     private static final int SIGNATURE_LENGTH = 64;
-    private static final byte[] FINAL_CHUNK = new byte[0];
+    /** The length of the header of a full chunk, the longest header. */
+    private static final int MAX_CHUNK_HEADER_SIZE = Integer.toHexString(DEFAULT_CHUNK_SIZE)
+            .length() + CHUNK_SIGNATURE_HEADER.length() + SIGNATURE_LENGTH + CLRF.length();
 
     private InputStream is = null;
     private final int maxBufferSize;
@@ -52,6 +56,13 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
     private final String headerSignature;
     private String priorChunkSignature;
     private final AWS4Signer aws4Signer;
+    private final MessageDigest sha256;
+
+    /**
+     * The signed chunk being read: its header, data and CRLF. Reused for every
+     * chunk, once the previous one has been read.
+     */
+    private byte[] chunkBuffer;
 
     /** Iterator on the current chunk that has been signed. */
     private ChunkContentIterator currentChunkIterator;
@@ -137,6 +148,11 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
         this.headerSignature = headerSignature;
         this.priorChunkSignature = headerSignature;
         this.aws4Signer = aws4Signer;
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new AmazonClientException("Unable to get SHA256 Function" + e.getMessage(), e);
+        }
     }
 
     @Override
@@ -300,26 +316,31 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
 
     /**
      * Read in the next chunk of data, and create the necessary chunk
-     * extensions.
+     * extensions. The chunk is read straight into the chunk buffer, after
+     * room for the longest chunk header, and signed and framed in place.
      *
      * @return Returns true if next chunk is the last empty chunk.
      */
     private boolean setUpNextChunk() throws IOException {
-        byte[] chunkData = new byte[DEFAULT_CHUNK_SIZE];
+        if (chunkBuffer == null) {
+            chunkBuffer = new byte[MAX_CHUNK_HEADER_SIZE + DEFAULT_CHUNK_SIZE + CLRF.length()];
+        }
         int chunkSizeInBytes = 0;
         while (chunkSizeInBytes < DEFAULT_CHUNK_SIZE) {
+            final int dataOffset = MAX_CHUNK_HEADER_SIZE + chunkSizeInBytes;
+            final int bytesToRead = DEFAULT_CHUNK_SIZE - chunkSizeInBytes;
             /** Read from the buffer of the decoded stream */
             if (null != decodedStreamBuffer
                     && decodedStreamBuffer.hasNext()) {
-                chunkData[chunkSizeInBytes++] = decodedStreamBuffer.next();
+                chunkSizeInBytes += decodedStreamBuffer.next(chunkBuffer, dataOffset,
+                        bytesToRead);
             }
             /** Read from the wrapped stream */
             else {
-                final int bytesToRead = DEFAULT_CHUNK_SIZE - chunkSizeInBytes;
-                final int count = is.read(chunkData, chunkSizeInBytes, bytesToRead);
+                final int count = is.read(chunkBuffer, dataOffset, bytesToRead);
                 if (count != -1) {
                     if (null != decodedStreamBuffer) {
-                        decodedStreamBuffer.buffer(chunkData, chunkSizeInBytes, count);
+                        decodedStreamBuffer.buffer(chunkBuffer, dataOffset, count);
                     }
                     chunkSizeInBytes += count;
                 } else {
@@ -327,55 +348,36 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
                 }
             }
         }
-        if (chunkSizeInBytes == 0) {
-            final byte[] signedFinalChunk = createSignedChunk(FINAL_CHUNK);
-            currentChunkIterator = new ChunkContentIterator(signedFinalChunk);
-            return true;
-        } else {
-            if (chunkSizeInBytes < chunkData.length) {
-                final byte[] temp = new byte[chunkSizeInBytes];
-                System.arraycopy(chunkData, 0, temp, 0, chunkSizeInBytes);
-                chunkData = temp;
-            }
-            final byte[] signedChunkContent = createSignedChunk(chunkData);
-            currentChunkIterator = new ChunkContentIterator(signedChunkContent);
-            return false;
-        }
+        currentChunkIterator = createSignedChunk(chunkSizeInBytes);
+        return chunkSizeInBytes == 0;
     }
 
-    private byte[] createSignedChunk(byte[] chunkData) {
-        final StringBuilder chunkHeader = new StringBuilder();
-        // chunk-size
-        chunkHeader.append(Integer.toHexString(chunkData.length));
-        // nonsig-extension
-        final String nonsigExtension = "";
-        // sig-extension
+    /**
+     * Signs the chunk data in the chunk buffer, and frames it with the chunk
+     * header before and the CRLF after it.
+     */
+    private ChunkContentIterator createSignedChunk(int chunkDataSize) {
+        sha256.update(chunkBuffer, MAX_CHUNK_HEADER_SIZE, chunkDataSize);
+        // The chunk has no nonsig-extension, so its hash is that of ""
         final String chunkStringToSign = CHUNK_STRING_TO_SIGN_PREFIX + "\n" +
                 dateTime + "\n" +
                 keyPath + "\n" +
                 priorChunkSignature + "\n" +
-                BinaryUtils.toHex(aws4Signer.hash(nonsigExtension)) + "\n" +
-                BinaryUtils.toHex(aws4Signer.hash(chunkData));
+                AbstractAWSSigner.EMPTY_STRING_SHA256_HEX + "\n" +
+                BinaryUtils.toHex(sha256.digest());
         final String chunkSignature = BinaryUtils.toHex(aws4Signer.sign(chunkStringToSign, kSigning,
                 SigningAlgorithm.HmacSHA256));
         priorChunkSignature = chunkSignature;
-        chunkHeader.append(nonsigExtension + CHUNK_SIGNATURE_HEADER + chunkSignature);
-        chunkHeader.append(CLRF);
 
-        try {
-            final byte[] header = chunkHeader.toString().getBytes(UTF8);
-            final byte[] trailer = CLRF.getBytes(UTF8);
-            final byte[] signedChunk = new byte[header.length + chunkData.length + trailer.length];
-            System.arraycopy(header, 0, signedChunk, 0, header.length);
-            System.arraycopy(chunkData, 0, signedChunk, header.length, chunkData.length);
-            System.arraycopy(trailer, 0,
-                    signedChunk, header.length + chunkData.length,
-                    trailer.length);
-            return signedChunk;
-        } catch (final Exception e) {
-            throw new AmazonClientException("Unable to sign the chunked data. " + e.getMessage(),
-                    e);
-        }
+        final byte[] header = (Integer.toHexString(chunkDataSize) + CHUNK_SIGNATURE_HEADER
+                + chunkSignature + CLRF).getBytes(UTF8);
+        final int start = MAX_CHUNK_HEADER_SIZE - header.length;
+        System.arraycopy(header, 0, chunkBuffer, start, header.length);
+        final int trailer = MAX_CHUNK_HEADER_SIZE + chunkDataSize;
+        chunkBuffer[trailer] = '\r';
+        chunkBuffer[trailer + 1] = '\n';
+        return new ChunkContentIterator(chunkBuffer, start,
+                header.length + chunkDataSize + CLRF.length());
     }
 
     @Override
@@ -18,14 +18,21 @@ package com.amazonaws.auth;
 class ChunkContentIterator {
 
     private final byte[] signedChunk;
+    private final int end;
     private int pos;
 
     public ChunkContentIterator(byte[] signedChunk) {
+        this(signedChunk, 0, signedChunk.length);
+    }
+
+    public ChunkContentIterator(byte[] signedChunk, int offset, int length) {
         this.signedChunk = signedChunk;
+        this.pos = offset;
+        this.end = offset + length;
     }
 
     public boolean hasNext() {
-        return pos < signedChunk.length;
+        return pos < end;
     }
 
     public int read(byte[] output, int offset, int length) {
@@ -33,7 +40,7 @@ class ChunkContentIterator {
             return 0;
         if (!hasNext())
             return -1;
-        int remaingBytesNum = signedChunk.length - pos;
+        int remaingBytesNum = end - pos;
         int bytesToRead = Math.min(remaingBytesNum, length);
         System.arraycopy(signedChunk, pos, output, offset, bytesToRead);
         pos += bytesToRead;
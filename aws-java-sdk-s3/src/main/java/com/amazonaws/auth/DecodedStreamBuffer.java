@@ -72,6 +72,13 @@ class DecodedStreamBuffer {
         return bufferArray[pos++];
     }
 
+    public int next(byte[] output, int offset, int length) {
+        final int count = Math.min(length, byteBuffered - pos);
+        System.arraycopy(bufferArray, pos, output, offset, count);
+        pos += count;
+        return count;
+    }
+
     public void startReadBuffer() {
         if (bufferSizeOverflow) {
             throw new AmazonClientException(
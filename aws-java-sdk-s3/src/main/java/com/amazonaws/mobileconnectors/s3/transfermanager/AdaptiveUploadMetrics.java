@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+/**
+ * A snapshot of the measurements and decisions of the adaptive tuning of
+ * multipart uploads, returned by
+ * {@link TransferManager#getAdaptiveUploadMetrics()}.
+ *
+ * @deprecated The Transfer Manager is now deprecated in favor of the
+ *             {@link com.amazonaws.mobileconnectors.s3.transferutility.TransferUtility}
+ */
+@Deprecated
+public final class AdaptiveUploadMetrics {
+    private final int concurrency;
+    private final long partSize;
+    private final double throughput;
+    private final double averagePartLatencyMillis;
+    private final long partsMeasured;
+    private final long bytesMeasured;
+    private final int decisions;
+    private final String lastDecision;
+
+    /**
+     * @param concurrency The number of parts currently uploaded at once.
+     * @param partSize The size of the parts currently uploaded.
+     * @param throughput The throughput measured over the last evaluation, in
+     *            bytes per second.
+     * @param averagePartLatencyMillis The moving average of the time taken to
+     *            upload a part.
+     * @param partsMeasured The number of parts measured.
+     * @param bytesMeasured The number of bytes in the parts measured.
+     * @param decisions The number of times the concurrency or part size was
+     *            changed.
+     * @param lastDecision A description of the last evaluation, or null.
+     */
+    public AdaptiveUploadMetrics(int concurrency, long partSize, double throughput,
+            double averagePartLatencyMillis, long partsMeasured, long bytesMeasured,
+            int decisions, String lastDecision) {
+        this.concurrency = concurrency;
+        this.partSize = partSize;
+        this.throughput = throughput;
+        this.averagePartLatencyMillis = averagePartLatencyMillis;
+        this.partsMeasured = partsMeasured;
+        this.bytesMeasured = bytesMeasured;
+        this.decisions = decisions;
+        this.lastDecision = lastDecision;
+    }
+
+    /**
+     * Returns the number of parts that are currently uploaded at once.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Returns the size in bytes of the parts that are currently uploaded.
+     */
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Returns the aggregate throughput of the parts measured over the last
+     * evaluation, in bytes per second, or 0 before the first evaluation.
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Returns the moving average of the time taken to upload a part, in
+     * milliseconds.
+     */
+    public double getAveragePartLatencyMillis() {
+        return averagePartLatencyMillis;
+    }
+
+    /**
+     * Returns the number of uploaded parts that have been measured.
+     */
+    public long getPartsMeasured() {
+        return partsMeasured;
+    }
+
+    /**
+     * Returns the number of bytes in the uploaded parts that have been
+     * measured.
+     */
+    public long getBytesMeasured() {
+        return bytesMeasured;
+    }
+
+    /**
+     * Returns the number of times the concurrency or the part size was
+     * changed.
+     */
+    public int getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Returns a description of the last evaluation of the measurements, or
+     * null before the first one.
+     */
+    public String getLastDecision() {
+        return lastDecision;
+    }
+
+    @Override
+    public String toString() {
+        return "{concurrency: " + concurrency + ", partSize: " + partSize
+                + ", throughput: " + (long) throughput + " B/s"
+                + ", averagePartLatency: " + (long) averagePartLatencyMillis + " ms"
+                + ", partsMeasured: " + partsMeasured + ", decisions: " + decisions
+                + ", lastDecision: " + lastDecision + "}";
+    }
+}
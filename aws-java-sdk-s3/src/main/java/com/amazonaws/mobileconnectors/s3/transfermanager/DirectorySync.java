@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.mobileconnectors.s3.transfermanager.model.SyncResult;
+
+import java.io.File;
+
+/**
+ * Sync of a local directory with an Amazon S3 key prefix, which transfers and
+ * deletes only the files and objects that differ.
+ *
+ * @deprecated The Transfer Manager is now deprecated in favor of the
+ *             {@link com.amazonaws.mobileconnectors.s3.transferutility.TransferUtility}
+ */
+@Deprecated
+public interface DirectorySync extends Transfer {
+
+    /**
+     * Returns the name of the bucket synced with.
+     */
+    public String getBucketName();
+
+    /**
+     * Returns the key prefix synced with.
+     */
+    public String getKeyPrefix();
+
+    /**
+     * Returns the local directory synced.
+     */
+    public File getDirectory();
+
+    /**
+     * Waits for the sync to complete and returns what it changed. If any
+     * transfer or deletion failed, the first failure is thrown once the other
+     * changes have been made.
+     *
+     * @return The result of the sync.
+     * @throws AmazonClientException If any errors were encountered in the
+     *             client while making the request or handling the response.
+     * @throws AmazonServiceException If any errors occurred in Amazon S3 while
+     *             processing the request.
+     * @throws InterruptedException If this thread is interrupted while waiting
+     *             for the sync to complete.
+     */
+    public SyncResult waitForSyncResult()
+            throws AmazonClientException, AmazonServiceException, InterruptedException;
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import java.io.File;
+
+/**
+ * Options of a sync between a local directory and a key prefix, started with
+ * {@link TransferManager#syncDirectory(String, String, File, DirectorySyncOptions)}.
+ *
+ * @deprecated The Transfer Manager is now deprecated in favor of the
+ *             {@link com.amazonaws.mobileconnectors.s3.transferutility.TransferUtility}
+ */
+@Deprecated
+public class DirectorySyncOptions {
+
+    /**
+     * The direction in which a directory and a key prefix are synced.
+     */
+    public static enum Direction {
+        /** Uploads the local changes to the key prefix. */
+        UPLOAD,
+        /** Downloads the changes under the key prefix to the directory. */
+        DOWNLOAD
+    }
+
+    private Direction direction = Direction.UPLOAD;
+    private boolean deleteRemoved;
+    private File manifestFile;
+    private ObjectMetadataProvider metadataProvider;
+
+    /**
+     * Returns the direction of the sync, {@link Direction#UPLOAD} by default.
+     *
+     * @return The direction of the sync.
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Sets the direction of the sync.
+     *
+     * @param direction The direction of the sync.
+     */
+    public void setDirection(Direction direction) {
+        if (direction == null) {
+            throw new IllegalArgumentException("The direction must be specified");
+        }
+        this.direction = direction;
+    }
+
+    /**
+     * Sets the direction of the sync, and returns this object so that
+     * method calls can be chained together.
+     *
+     * @param direction The direction of the sync.
+     * @return This object.
+     */
+    public DirectorySyncOptions withDirection(Direction direction) {
+        setDirection(direction);
+        return this;
+    }
+
+    /**
+     * Returns whether the objects or files that no longer exist on the side
+     * synced from are deleted from the side synced to.
+     *
+     * @return True if removed files or objects are deleted.
+     */
+    public boolean isDeleteRemoved() {
+        return deleteRemoved;
+    }
+
+    /**
+     * Sets whether the objects or files that no longer exist on the side
+     * synced from are deleted from the side synced to. False by default.
+     *
+     * @param deleteRemoved True to delete removed files or objects.
+     */
+    public void setDeleteRemoved(boolean deleteRemoved) {
+        this.deleteRemoved = deleteRemoved;
+    }
+
+    /**
+     * Sets whether removed files or objects are deleted, and returns this
+     * object so that method calls can be chained together.
+     *
+     * @param deleteRemoved True to delete removed files or objects.
+     * @return This object.
+     */
+    public DirectorySyncOptions withDeleteRemoved(boolean deleteRemoved) {
+        setDeleteRemoved(deleteRemoved);
+        return this;
+    }
+
+    /**
+     * Returns the local file where the state of the synced files is kept
+     * between syncs, or null.
+     *
+     * @return The manifest file, or null.
+     */
+    public File getManifestFile() {
+        return manifestFile;
+    }
+
+    /**
+     * Sets the local file where the size, modification time and ETag of every
+     * synced file is kept between syncs. A file whose size and modification
+     * time match its manifest entry is known to be unchanged without reading
+     * it. An upload sync with a manifest of the same bucket and key prefix
+     * doesn't list the key prefix at all, which assumes that the objects
+     * under the prefix are only changed by the syncs; a download sync always
+     * lists the key prefix to find the objects changed remotely.
+     *
+     * @param manifestFile The manifest file, or null to keep no manifest.
+     */
+    public void setManifestFile(File manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * Sets the manifest file, and returns this object so that method calls
+     * can be chained together.
+     *
+     * @param manifestFile The manifest file, or null to keep no manifest.
+     * @return This object.
+     */
+    public DirectorySyncOptions withManifestFile(File manifestFile) {
+        setManifestFile(manifestFile);
+        return this;
+    }
+
+    /**
+     * Returns the callback that provides the metadata of the uploaded files,
+     * or null.
+     *
+     * @return The metadata provider, or null.
+     */
+    public ObjectMetadataProvider getMetadataProvider() {
+        return metadataProvider;
+    }
+
+    /**
+     * Sets the callback that provides the metadata of the uploaded files.
+     *
+     * @param metadataProvider The metadata provider, or null.
+     */
+    public void setMetadataProvider(ObjectMetadataProvider metadataProvider) {
+        this.metadataProvider = metadataProvider;
+    }
+
+    /**
+     * Sets the metadata provider, and returns this object so that method
+     * calls can be chained together.
+     *
+     * @param metadataProvider The metadata provider, or null.
+     * @return This object.
+     */
+    public DirectorySyncOptions withMetadataProvider(ObjectMetadataProvider metadataProvider) {
+        setMetadataProvider(metadataProvider);
+        return this;
+    }
+}
@@ -76,4 +76,19 @@ public interface Download extends Transfer {
      *             pause the download.
      */
     public PersistableDownload pause() throws PauseException;
+
+    /**
+     * Limits the bandwidth of this download, within the limit set with
+     * {@link TransferManager#setBandwidthLimit(long)}. The limit can be changed
+     * while the download is in progress.
+     *
+     * @param bytesPerSecond The maximum rate, or 0 for no limit of its own.
+     */
+    public void setBandwidthLimit(long bytesPerSecond);
+
+    /**
+     * Returns the bandwidth limit of this download in bytes per second, or 0 if
+     * it has none of its own.
+     */
+    public long getBandwidthLimit();
 }
@@ -64,6 +64,30 @@ public final class PersistableDownload extends PersistableTransfer {
      */
     private final String file;
 
+    /**
+     * Size of each byte range of a parallel download; or -1 if the object is
+     * downloaded as a single stream.
+     */
+    private final long partSize;
+
+    /**
+     * Indexes of the byte ranges of a parallel download that have been
+     * written to the file.
+     */
+    private final int[] completedParts;
+
+    /**
+     * ETag of the object when the download was started, which must still
+     * match for the data in the file to be resumed from.
+     */
+    private final String eTag;
+
+    /**
+     * Version id of the object when the download was started, if the bucket
+     * is versioned; it must still match for the download to be resumed.
+     */
+    private final String objectVersionId;
+
     @Deprecated
     public PersistableDownload() {
         this(null, null, null, null, null, false, null);
@@ -77,6 +101,36 @@ public final class PersistableDownload extends PersistableTransfer {
             ResponseHeaderOverrides responseHeaders,
             boolean isRequesterPays,
             String file) {
+        this(bucketName, key, versionId, range, responseHeaders, isRequesterPays, file,
+                -1, null);
+    }
+
+    public PersistableDownload(
+            String bucketName,
+            String key,
+            String versionId,
+            long[] range,
+            ResponseHeaderOverrides responseHeaders,
+            boolean isRequesterPays,
+            String file,
+            long partSize,
+            int[] completedParts) {
+        this(bucketName, key, versionId, range, responseHeaders, isRequesterPays, file,
+                partSize, completedParts, null, null);
+    }
+
+    public PersistableDownload(
+            String bucketName,
+            String key,
+            String versionId,
+            long[] range,
+            ResponseHeaderOverrides responseHeaders,
+            boolean isRequesterPays,
+            String file,
+            long partSize,
+            int[] completedParts,
+            String eTag,
+            String objectVersionId) {
         this.bucketName = bucketName;
         this.key = key;
         this.versionId = versionId;
@@ -84,6 +138,10 @@ public final class PersistableDownload extends PersistableTransfer {
         this.responseHeaders = responseHeaders;
         this.isRequesterPays = isRequesterPays;
         this.file = file;
+        this.partSize = partSize;
+        this.completedParts = completedParts == null ? null : completedParts.clone();
+        this.eTag = eTag;
+        this.objectVersionId = objectVersionId;
     }
 
     /**
@@ -136,6 +194,38 @@ public final class PersistableDownload extends PersistableTransfer {
         return file;
     }
 
+    /**
+     * Returns the size of each part of a parallel download, or -1 if the
+     * object is downloaded as a single stream.
+     */
+    long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Returns the indexes of the parts of a parallel download that have been
+     * written to the file.
+     */
+    int[] getCompletedParts() {
+        return completedParts == null ? new int[0] : completedParts.clone();
+    }
+
+    /**
+     * Returns the ETag of the object when the download was started, or null
+     * if it isn't known.
+     */
+    String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Returns the version id of the object when the download was started, or
+     * null if the bucket isn't versioned or it isn't known.
+     */
+    String getObjectVersionId() {
+        return objectVersionId;
+    }
+
     String getPauseType() {
         return pauseType;
     }
@@ -152,6 +242,12 @@ public final class PersistableDownload extends PersistableTransfer {
                     .name("file").value(file)
                     .name("versionId").value(versionId)
                     .name("isRequesterPays").value(isRequesterPays);
+            if (eTag != null) {
+                writer.name("eTag").value(eTag);
+            }
+            if (objectVersionId != null) {
+                writer.name("objectVersionId").value(objectVersionId);
+            }
             if (range != null) {
                 writer.name("range").beginArray();
                 for (long r : range) {
@@ -159,6 +255,16 @@ public final class PersistableDownload extends PersistableTransfer {
                 }
                 writer.endArray();
             }
+            if (partSize > 0) {
+                writer.name("partSize").value(partSize);
+                writer.name("completedParts").beginArray();
+                if (completedParts != null) {
+                    for (int part : completedParts) {
+                        writer.value(part);
+                    }
+                }
+                writer.endArray();
+            }
             if (responseHeaders != null) {
                 writer.name("responseHeaders").beginObject()
                         .name("contentType").value(responseHeaders.getContentType())
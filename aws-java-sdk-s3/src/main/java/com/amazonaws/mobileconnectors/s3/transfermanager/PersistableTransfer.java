@@ -28,6 +28,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Abstract base class for the information of a pausible upload or download;
@@ -79,6 +81,9 @@ public abstract class PersistableTransfer {
         long[] range = null;
         ResponseHeaderOverrides responseHeaders = null;
         boolean isRequesterPays = false;
+        List<Integer> completedParts = null;
+        String eTag = null;
+        String objectVersionId = null;
 
         AwsJsonReader reader = JsonUtils
                 .getJsonReader(new BufferedReader(new InputStreamReader(in, StringUtils.UTF8)));
@@ -135,8 +140,19 @@ public abstract class PersistableTransfer {
                         }
                     }
                     reader.endObject();
+                } else if (name.equals("completedParts")) {
+                    completedParts = new ArrayList<Integer>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        completedParts.add(Integer.valueOf(reader.nextString()));
+                    }
+                    reader.endArray();
                 } else if (name.equals("isRequesterPays")) {
                     isRequesterPays = Boolean.parseBoolean(reader.nextString());
+                } else if (name.equals("eTag")) {
+                    eTag = reader.nextString();
+                } else if (name.equals("objectVersionId")) {
+                    objectVersionId = reader.nextString();
                 } else {
                     reader.skipValue();
                 }
@@ -147,8 +163,15 @@ public abstract class PersistableTransfer {
         }
 
         if (PersistableDownload.TYPE.equals(type)) {
+            int[] parts = null;
+            if (completedParts != null) {
+                parts = new int[completedParts.size()];
+                for (int i = 0; i < parts.length; i++) {
+                    parts[i] = completedParts.get(i);
+                }
+            }
             return (T) new PersistableDownload(bucketName, key, versionId, range, responseHeaders,
-                    isRequesterPays, file);
+                    isRequesterPays, file, partSize, parts, eTag, objectVersionId);
         } else if (PersistableUpload.TYPE.equals(type)) {
             return (T) new PersistableUpload(bucketName, key, file, multipartUploadId, partSize,
                     mutlipartUploadThreshold);
@@ -30,26 +30,33 @@ import com.amazonaws.event.ProgressListener;
 import com.amazonaws.event.ProgressListenerChain;
 import com.amazonaws.event.ProgressListenerChain.ProgressEventFilter;
 import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer.TransferState;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.AdaptiveUploadController;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.CopyCallable;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.CopyImpl;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.CopyMonitor;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.DirectorySyncCallable;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.DirectorySyncImpl;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.DownloadImpl;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.DownloadMonitor;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipartDownloadMonitor;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipleFileDownloadImpl;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipleFileTransferMonitor;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipleFileUploadImpl;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.S3ProgressListener;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.S3ProgressListenerChain;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.TransferManagerUtils;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.TransferMonitor;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.TransferProgressUpdatingListener;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.TransferStateChangeListener;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.UploadCallable;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.UploadImpl;
 import com.amazonaws.mobileconnectors.s3.transfermanager.internal.UploadMonitor;
+import com.amazonaws.mobileconnectors.s3.transfermanager.model.SyncResult;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.AmazonS3EncryptionClient;
 import com.amazonaws.services.s3.internal.ServiceUtils;
+import com.amazonaws.services.s3.internal.ThrottledInputStream;
 import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
@@ -63,6 +70,7 @@ import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.util.BandwidthLimiter;
 import com.amazonaws.services.s3.util.Mimetypes;
 import com.amazonaws.util.VersionInfoUtils;
 
@@ -80,9 +88,11 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -156,6 +166,18 @@ public class TransferManager {
     /** The thread pool in which transfers are uploaded or downloaded. */
     private final ExecutorService threadPool;
 
+    /**
+     * Tunes the multipart uploads of this transfer manager, created when
+     * adaptive upload tuning is first used.
+     */
+    private AdaptiveUploadController adaptiveUploadController;
+
+    /**
+     * Limits the bandwidth of all the uploads and downloads of this transfer
+     * manager together; each transfer has its own limiter under it.
+     */
+    private final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter();
+
     /**
      * Thread used for periodicially checking transfers and updating thier
      * state.
@@ -258,6 +280,9 @@ public class TransferManager {
      */
     public void setConfiguration(TransferManagerConfiguration configuration) {
         this.configuration = configuration;
+        synchronized (this) {
+            adaptiveUploadController = null;
+        }
     }
 
     /**
@@ -270,6 +295,76 @@ public class TransferManager {
         return configuration;
     }
 
+    /**
+     * Returns the measurements and decisions of the adaptive tuning of
+     * multipart uploads, or null if adaptive upload tuning isn't enabled or
+     * hasn't been used yet.
+     *
+     * @return A snapshot of the adaptive upload tuning metrics, or null.
+     * @see TransferManagerConfiguration#setAdaptiveUploadTuning(boolean)
+     */
+    public synchronized AdaptiveUploadMetrics getAdaptiveUploadMetrics() {
+        return adaptiveUploadController == null ? null : adaptiveUploadController.getMetrics();
+    }
+
+    /**
+     * Limits the combined bandwidth of all the uploads and downloads of this
+     * transfer manager, including those already in progress. Each transfer
+     * may also be limited on its own with
+     * {@link Upload#setBandwidthLimit(long)} or
+     * {@link Download#setBandwidthLimit(long)}.
+     *
+     * @param bytesPerSecond The maximum combined rate in bytes per second, or
+     *            0 for no limit.
+     */
+    public void setBandwidthLimit(long bytesPerSecond) {
+        bandwidthLimiter.setBytesPerSecond(bytesPerSecond);
+    }
+
+    /**
+     * Returns the maximum combined rate of all the uploads and downloads of
+     * this transfer manager in bytes per second, or 0 if it isn't limited.
+     *
+     * @return The bandwidth limit in bytes per second, or 0.
+     */
+    public long getBandwidthLimit() {
+        return bandwidthLimiter.getBytesPerSecond();
+    }
+
+    /**
+     * Returns the controller tuning multipart uploads, or null if adaptive
+     * upload tuning isn't enabled.
+     */
+    private synchronized AdaptiveUploadController getAdaptiveUploadController() {
+        if (!configuration.isAdaptiveUploadTuning()) {
+            return null;
+        }
+        if (adaptiveUploadController == null) {
+            final long minimumPartSize = configuration.getMinimumUploadPartSize();
+            adaptiveUploadController = new AdaptiveUploadController(minimumPartSize,
+                    Math.max(minimumPartSize, configuration.getMaximumUploadPartSize()),
+                    Math.min(configuration.getMaximumUploadConcurrency(),
+                            threadPoolSizeOf(threadPool)));
+        }
+        return adaptiveUploadController;
+    }
+
+    /**
+     * Returns the number of threads the given thread pool runs tasks on at
+     * most: a thread pool with an unbounded queue never grows past its core
+     * size. The size of a pool of another kind is unknown, and unbounded.
+     */
+    private static int threadPoolSizeOf(ExecutorService threadPool) {
+        if (!(threadPool instanceof ThreadPoolExecutor)) {
+            return Integer.MAX_VALUE;
+        }
+        final ThreadPoolExecutor executor = (ThreadPoolExecutor) threadPool;
+        final int size = executor.getQueue().remainingCapacity() == Integer.MAX_VALUE
+                ? executor.getCorePoolSize()
+                : executor.getMaximumPoolSize();
+        return Math.max(1, size);
+    }
+
     /**
      * Returns the underlying Amazon S3 client used to make requests to Amazon
      * S3.
@@ -426,6 +521,55 @@ public class TransferManager {
         return doUpload(putObjectRequest, null, progressListener, null);
     }
 
+    /**
+     * Opens an output stream that uploads the data written to it to a new
+     * object in Amazon S3. The data is uploaded in parts in the background
+     * while it's being written, and the upload is completed when the stream
+     * is closed.
+     *
+     * @param bucketName The name of the bucket to upload the new object to.
+     * @param key The key in the specified bucket by which to store the new
+     *            object.
+     * @param objectMetadata Additional information about the object being
+     *            uploaded, such as its content type and custom user metadata.
+     * @return An output stream to write the data of the object to.
+     * @see #openUploadStream(PutObjectRequest)
+     */
+    public UploadOutputStream openUploadStream(final String bucketName, final String key,
+            ObjectMetadata objectMetadata) {
+        return openUploadStream(new PutObjectRequest(bucketName, key, null, objectMetadata));
+    }
+
+    /**
+     * Opens an output stream that uploads the data written to it to Amazon
+     * S3, for data that is produced incrementally and whose length isn't
+     * known up front. The data is gathered into buffers of the minimum upload
+     * part size, and each full buffer is uploaded as a part on this transfer
+     * manager's thread pool while the next one is written. Writes block once
+     * {@link TransferManagerConfiguration#getStreamingUploadBufferCount()}
+     * parts are in flight, which bounds the memory used by the upload.
+     * <p>
+     * Closing the stream uploads the last part and completes the upload. If a
+     * part fails, the multipart upload is aborted and the failure is thrown
+     * by the next write or by close; a writer that fails itself should call
+     * {@link UploadOutputStream#abort()} instead of closing the stream.
+     *
+     * @param putObjectRequest The bucket, key, metadata and progress listener
+     *            of the upload; its input stream and file are ignored.
+     * @return An output stream to write the data of the object to.
+     * @throws IllegalArgumentException If this transfer manager uses the
+     *             Amazon S3 encryption client.
+     */
+    public UploadOutputStream openUploadStream(final PutObjectRequest putObjectRequest) {
+        appendSingleObjectUserAgent(putObjectRequest);
+        final long partSize = Math.min(configuration.getMinimumUploadPartSize(),
+                Integer.MAX_VALUE);
+        final UploadOutputStream stream = new UploadOutputStream(s3, threadPool,
+                putObjectRequest, (int) partSize, configuration.getStreamingUploadBufferCount());
+        stream.setBandwidthLimiter(bandwidthLimiter);
+        return stream;
+    }
+
     /**
      * <p>
      * Schedules a new transfer to upload data to Amazon S3. This method is
@@ -504,9 +648,11 @@ public class TransferManager {
 
         final UploadImpl upload = new UploadImpl(description, transferProgress,
                 listenerChain, stateListener);
+        upload.setBandwidthLimiter(new BandwidthLimiter(0, bandwidthLimiter));
 
         final UploadCallable uploadCallable = new UploadCallable(this, threadPool,
-                upload, putObjectRequest, listenerChain, multipartUploadId, transferProgress);
+                upload, putObjectRequest, listenerChain, multipartUploadId, transferProgress,
+                getAdaptiveUploadController());
         final UploadMonitor watcher = new UploadMonitor(this, upload, threadPool,
                 uploadCallable, putObjectRequest, listenerChain);
         watcher.setTimedThreadPool(timedThreadPool);
@@ -598,6 +744,19 @@ public class TransferManager {
             final File file, final TransferStateChangeListener stateListener,
             final S3ProgressListener s3progressListener,
             final boolean resumeExistingDownload) {
+        return doDownload(getObjectRequest, file, stateListener, s3progressListener,
+                resumeExistingDownload, null);
+    }
+
+    /**
+     * Same as above, but resumes the parts of a parallel download if the
+     * given persistable download has any.
+     */
+    private Download doDownload(final GetObjectRequest getObjectRequest,
+            final File file, final TransferStateChangeListener stateListener,
+            final S3ProgressListener s3progressListener,
+            final boolean resumeExistingDownload,
+            final PersistableDownload persistableDownload) {
 
         appendSingleObjectUserAgent(getObjectRequest);
 
@@ -636,18 +795,30 @@ public class TransferManager {
                 },
                 listenerChain);
         getObjectRequest.setGeneralProgressListener(listeners);
+        // The metadata of the version being downloaded, whose ETag every part
+        // of a parallel download must match
         final GetObjectMetadataRequest getObjectMetadataRequest = new GetObjectMetadataRequest(
-                getObjectRequest.getBucketName(), getObjectRequest.getKey());
+                getObjectRequest.getBucketName(), getObjectRequest.getKey(),
+                getObjectRequest.getVersionId());
 
         if (getObjectRequest.getSSECustomerKey() != null) {
             getObjectMetadataRequest.setSSECustomerKey(getObjectRequest.getSSECustomerKey());
         }
         final ObjectMetadata objectMetadata = s3.getObjectMetadata(getObjectMetadataRequest);
 
-        // We still pass the unfiltered listener chain into DownloadImpl
-        final DownloadImpl download = new DownloadImpl(description,
-                transferProgress, listenerChain, null, stateListener,
-                getObjectRequest, file);
+        // The data already in the file is only kept if the object is the one
+        // the download was started with; otherwise it starts over
+        boolean resumeFromFile = resumeExistingDownload;
+        int[] completedParts = persistableDownload == null ? null
+                : persistableDownload.getCompletedParts();
+        if (resumeFromFile && persistableDownload != null
+                && !isSameObject(persistableDownload, objectMetadata)) {
+            log.info("The object " + getObjectRequest.getBucketName() + "/"
+                    + getObjectRequest.getKey()
+                    + " may have changed since the download was paused; downloading it again");
+            resumeFromFile = false;
+            completedParts = null;
+        }
 
         long startingByte = 0;
         long lastByte = objectMetadata.getContentLength() - 1;
@@ -661,7 +832,42 @@ public class TransferManager {
         long totalBytesToDownload = lastByte - startingByte + 1;
         transferProgress.setTotalBytesToTransfer(totalBytesToDownload);
 
-        if (resumeExistingDownload) {
+        // Large downloads are split into byte ranges fetched in parallel. A
+        // resumed download keeps the parts it was started with, and one that
+        // was started as a single stream is resumed as one.
+        long partSize = -1;
+        if (persistableDownload != null) {
+            partSize = persistableDownload.getPartSize();
+        } else if (totalBytesToDownload > 0 && TransferManagerUtils.isDownloadParallelizable(
+                getObjectRequest, s3 instanceof AmazonS3EncryptionClient)) {
+            partSize = TransferManagerUtils.calculateOptimalPartSizeForDownload(
+                    totalBytesToDownload, configuration);
+        }
+
+        // The metadata of the object identifies it in the persistable
+        // download, until the download replaces it with the object it gets
+        final S3Object s3Object = new S3Object();
+        s3Object.setBucketName(getObjectRequest.getBucketName());
+        s3Object.setKey(getObjectRequest.getKey());
+        s3Object.setObjectMetadata(objectMetadata);
+
+        // We still pass the unfiltered listener chain into DownloadImpl
+        final DownloadImpl download = new DownloadImpl(description,
+                transferProgress, listenerChain, s3Object, stateListener,
+                getObjectRequest, file, partSize);
+        download.setBandwidthLimiter(new BandwidthLimiter(0, bandwidthLimiter));
+
+        if (partSize > 0) {
+            final MultipartDownloadMonitor monitor = new MultipartDownloadMonitor(s3,
+                    download, getObjectRequest, file, objectMetadata.getETag(), startingByte,
+                    lastByte, partSize, completedParts, resumeFromFile);
+            transferProgress.updateProgress(monitor.getCompletedBytes());
+            download.setMonitor(monitor);
+            monitor.start(threadPool);
+            return download;
+        }
+
+        if (resumeFromFile) {
             if (file.exists()) {
                 final long numberOfBytesRead = file.length();
                 startingByte = startingByte + numberOfBytesRead;
@@ -679,12 +885,28 @@ public class TransferManager {
 
         final CountDownLatch latch = new CountDownLatch(1);
         final Future<?> future = submitDownloadTask(getObjectRequest, file,
-                resumeExistingDownload, latch, download);
+                resumeFromFile, latch, download);
         download.setMonitor(new DownloadMonitor(download, future));
         latch.countDown();
         return download;
     }
 
+    /**
+     * Returns true if the object described by the given metadata is the one
+     * the persisted download was started with. A download persisted without
+     * the ETag of its object can't be checked, so it isn't considered the
+     * same.
+     */
+    private static boolean isSameObject(PersistableDownload persistableDownload,
+            ObjectMetadata objectMetadata) {
+        if (persistableDownload.getETag() == null
+                || !persistableDownload.getETag().equals(objectMetadata.getETag())) {
+            return false;
+        }
+        final String versionId = persistableDownload.getObjectVersionId();
+        return versionId == null || versionId.equals(objectMetadata.getVersionId());
+    }
+
     private Future<?> submitDownloadTask(
             final GetObjectRequest getObjectRequest, final File file,
             final boolean resumeExistingDownload,
@@ -701,7 +923,9 @@ public class TransferManager {
 
                                 @Override
                                 public S3Object getS3ObjectStream() {
-                                    final S3Object s3Object = s3.getObject(getObjectRequest);
+                                    final S3Object s3Object = ThrottledInputStream.throttle(
+                                            s3.getObject(getObjectRequest),
+                                            download.getBandwidthLimiter());
                                     download.setS3Object(s3Object);
                                     return s3Object;
                                 }
@@ -1054,6 +1278,86 @@ public class TransferManager {
         return multipleFileUpload;
     }
 
+    /**
+     * Uploads the files of the directory given, and those of its
+     * subdirectories, that differ from the objects under the key prefix.
+     *
+     * @param bucketName The name of the bucket to sync with.
+     * @param keyPrefix The key prefix of the virtual directory to sync with.
+     *            Use the null or empty string to sync with the root of the
+     *            bucket.
+     * @param directory The directory to sync.
+     * @see #syncDirectory(String, String, File, DirectorySyncOptions)
+     */
+    public DirectorySync syncDirectory(String bucketName, String keyPrefix, File directory) {
+        return syncDirectory(bucketName, keyPrefix, directory, new DirectorySyncOptions());
+    }
+
+    /**
+     * Syncs the directory given, including its subdirectories, with the
+     * objects under the key prefix. Only the files that differ from their
+     * objects are uploaded or downloaded, depending on the direction of the
+     * sync, and the files or objects that no longer exist on the other side
+     * may be deleted. This method is non-blocking and returns immediately.
+     * <p>
+     * Files are compared with objects by size and modification time, and by
+     * MD5 checksum when the modification times disagree and the object has a
+     * single-part ETag. If a manifest file is given, the state of the synced
+     * files is saved to it, and the next upload sync compares the files with
+     * the manifest instead of listing the objects again. The manifest is only
+     * accurate as long as no one else changes the objects under the prefix.
+     *
+     * @param bucketName The name of the bucket to sync with.
+     * @param keyPrefix The key prefix of the virtual directory to sync with.
+     *            Use the null or empty string to sync with the root of the
+     *            bucket.
+     * @param directory The directory to sync.
+     * @param options The direction and options of the sync.
+     * @return The sync, whose progress covers the bytes of every changed file.
+     */
+    public DirectorySync syncDirectory(String bucketName, String keyPrefix, File directory,
+            DirectorySyncOptions options) {
+        if (directory == null || !directory.isDirectory()) {
+            throw new IllegalArgumentException("Must provide a directory to sync");
+        }
+        if (options == null) {
+            options = new DirectorySyncOptions();
+        }
+        if (keyPrefix == null || keyPrefix.length() == 0) {
+            keyPrefix = "";
+        } else if (!keyPrefix.endsWith(DEFAULT_DELIMITER)) {
+            keyPrefix = keyPrefix + DEFAULT_DELIMITER;
+        }
+
+        final ProgressListenerChain additionalListeners = new ProgressListenerChain();
+        final TransferProgress progress = new TransferProgress();
+        final ProgressListener listener = new MultipleFileTransferProgressUpdatingListener(
+                progress, additionalListeners);
+        final String description = "Syncing " + directory
+                + (options.getDirection() == DirectorySyncOptions.Direction.UPLOAD ? " to "
+                        : " from ") + bucketName + "/" + keyPrefix;
+        final DirectorySyncImpl sync = new DirectorySyncImpl(description, progress,
+                additionalListeners, bucketName, keyPrefix, directory);
+
+        // The sync waits for the transfers it starts, so it runs on a thread
+        // of its own rather than taking one of the pool they run on
+        final FutureTask<SyncResult> task = new FutureTask<SyncResult>(
+                new DirectorySyncCallable(this, sync, options, listener, progress));
+        sync.setMonitor(new TransferMonitor() {
+            @Override
+            public Future<?> getFuture() {
+                return task;
+            }
+
+            @Override
+            public boolean isDone() {
+                return sync.isDone();
+            }
+        });
+        daemonThreadFactory.newThread(task).start();
+        return sync;
+    }
+
     /**
      * Lists files in the directory given and adds them to the result list
      * passed in, optionally adding subdirectories recursively.
@@ -1403,7 +1707,7 @@ public class TransferManager {
         request.setResponseHeaders(persistableDownload.getResponseHeaders());
 
         return doDownload(request, new File(persistableDownload.getFile()), null, null,
-                APPEND_MODE);
+                APPEND_MODE, persistableDownload);
     }
 
     /**
@@ -18,6 +18,8 @@ package com.amazonaws.mobileconnectors.s3.transfermanager;
 import static com.amazonaws.services.s3.internal.Constants.GB;
 import static com.amazonaws.services.s3.internal.Constants.MB;
 
+import java.io.File;
+
 /**
  * Configuration options for how {@link TransferManager} processes requests.
  * <p>
@@ -47,6 +49,21 @@ public class TransferManagerConfiguration {
     /** Default minimum size of each part for multi-part copy. */
     private static final long DEFAULT_MINIMUM_COPY_PART_SIZE = 100 * MB;
 
+    /** Default size threshold for when to use parallel ranged downloads. */
+    private static final long DEFAULT_MULTIPART_DOWNLOAD_THRESHOLD = 16 * MB;
+
+    /** Default minimum size of each byte range of a parallel download. */
+    private static final long DEFAULT_MINIMUM_DOWNLOAD_PART_SIZE = 8 * MB;
+
+    /** Default number of part buffers of a stream of unknown length. */
+    private static final int DEFAULT_STREAMING_UPLOAD_BUFFER_COUNT = 4;
+
+    /** Default largest part size chosen by adaptive upload tuning. */
+    private static final long DEFAULT_MAXIMUM_UPLOAD_PART_SIZE = 128 * MB;
+
+    /** Default largest number of parts uploaded at once by adaptive tuning. */
+    private static final int DEFAULT_MAXIMUM_UPLOAD_CONCURRENCY = 10;
+
     /**
      * The minimum part size for upload parts. Decreasing the minimum part size
      * will cause multipart uploads to be split into a larger number of smaller
@@ -85,6 +102,52 @@ public class TransferManagerConfiguration {
      */
     private long multipartCopyPartSize = DEFAULT_MINIMUM_COPY_PART_SIZE;
 
+    /**
+     * The size threshold, in bytes, for when to split a download into byte
+     * ranges that are fetched in parallel. Downloads over this size are
+     * written to the destination file part by part, each part at its own
+     * offset, while smaller downloads use a single connection.
+     */
+    private long multipartDownloadThreshold = DEFAULT_MULTIPART_DOWNLOAD_THRESHOLD;
+
+    /**
+     * The minimum size in bytes of each byte range of a parallel download.
+     * Setting this value too low can have a negative effect on transfer speeds
+     * since it will cause extra latency and network communication for each
+     * part.
+     */
+    private long minimumDownloadPartSize = DEFAULT_MINIMUM_DOWNLOAD_PART_SIZE;
+
+    /**
+     * The number of part-size buffers used to upload a stream whose length is
+     * unknown. The stream is read into these buffers and each full buffer is
+     * uploaded as a part while the next ones are filled, so an upload holds at
+     * most this many parts in memory.
+     */
+    private int streamingUploadBufferCount = DEFAULT_STREAMING_UPLOAD_BUFFER_COUNT;
+
+    /**
+     * Whether the part size and the number of parts uploaded at once are
+     * tuned from the throughput measured while uploading files in parts,
+     * instead of being fixed by the object size and the thread pool.
+     */
+    private boolean adaptiveUploadTuning;
+
+    /** The largest part size that adaptive upload tuning may choose. */
+    private long maximumUploadPartSize = DEFAULT_MAXIMUM_UPLOAD_PART_SIZE;
+
+    /**
+     * The largest number of parts that adaptive upload tuning may upload at
+     * once.
+     */
+    private int maximumUploadConcurrency = DEFAULT_MAXIMUM_UPLOAD_CONCURRENCY;
+
+    /**
+     * The directory of the journals of the parts uploaded by resumable
+     * uploads, or null if they aren't checkpointed.
+     */
+    private File uploadCheckpointDirectory;
+
     /**
      * Returns the minimum part size for upload parts. Decreasing the minimum
      * part size causes multipart uploads to be split into a larger number of
@@ -192,4 +255,172 @@ public class TransferManagerConfiguration {
     public void setMultipartCopyThreshold(long multipartCopyThreshold) {
         this.multipartCopyThreshold = multipartCopyThreshold;
     }
+
+    /**
+     * Returns the size threshold in bytes for when to use parallel ranged
+     * downloads. Downloads over this size are split into byte ranges that are
+     * fetched concurrently, while downloads smaller than this threshold use a
+     * single connection to download the whole object.
+     *
+     * @return The size threshold in bytes for when to use parallel ranged
+     *         downloads.
+     */
+    public long getMultipartDownloadThreshold() {
+        return multipartDownloadThreshold;
+    }
+
+    /**
+     * Sets the size threshold in bytes for when to use parallel ranged
+     * downloads. Downloads over this size are split into byte ranges that are
+     * fetched concurrently, while downloads smaller than this threshold use a
+     * single connection to download the whole object. Set it to
+     * {@link Long#MAX_VALUE} to always download with a single connection.
+     *
+     * @param multipartDownloadThreshold The size threshold in bytes for when
+     *            to use parallel ranged downloads.
+     */
+    public void setMultipartDownloadThreshold(long multipartDownloadThreshold) {
+        this.multipartDownloadThreshold = multipartDownloadThreshold;
+    }
+
+    /**
+     * Returns the minimum size in bytes of each byte range of a parallel
+     * download.
+     *
+     * @return The minimum size in bytes of each part of a parallel download.
+     */
+    public long getMinimumDownloadPartSize() {
+        return minimumDownloadPartSize;
+    }
+
+    /**
+     * Sets the minimum size in bytes of each byte range of a parallel
+     * download. Decreasing the part size splits downloads into a larger
+     * number of smaller range requests.
+     *
+     * @param minimumDownloadPartSize The minimum size in bytes of each part of
+     *            a parallel download.
+     */
+    public void setMinimumDownloadPartSize(long minimumDownloadPartSize) {
+        this.minimumDownloadPartSize = minimumDownloadPartSize;
+    }
+
+    /**
+     * Returns the number of part-size buffers used to upload a stream whose
+     * length is unknown.
+     *
+     * @return The number of part buffers of a stream of unknown length.
+     */
+    public int getStreamingUploadBufferCount() {
+        return streamingUploadBufferCount;
+    }
+
+    /**
+     * Sets the number of part-size buffers used to upload a stream whose
+     * length is unknown. The stream is read into these buffers, whose size is
+     * the minimum upload part size, and up to this many parts are uploaded
+     * concurrently. Increasing the count uses more memory for more concurrent
+     * part uploads.
+     *
+     * @param streamingUploadBufferCount The number of part buffers of a
+     *            stream of unknown length.
+     */
+    public void setStreamingUploadBufferCount(int streamingUploadBufferCount) {
+        this.streamingUploadBufferCount = streamingUploadBufferCount;
+    }
+
+    /**
+     * Returns whether the part size and the number of parts uploaded at once
+     * are tuned from the measured throughput of multipart file uploads.
+     *
+     * @return True if adaptive upload tuning is enabled.
+     */
+    public boolean isAdaptiveUploadTuning() {
+        return adaptiveUploadTuning;
+    }
+
+    /**
+     * Sets whether the part size and the number of parts uploaded at once are
+     * tuned from the measured throughput of multipart file uploads. When
+     * enabled, the transfer manager measures the latency and throughput of
+     * every part and adjusts the concurrency and the size of the remaining
+     * parts, starting from the minimum upload part size, between the minimum
+     * and maximum upload part sizes and up to the maximum upload concurrency.
+     * Its decisions are available from
+     * {@link TransferManager#getAdaptiveUploadMetrics()}. Uploads whose parts
+     * vary in size can't be paused and resumed.
+     *
+     * @param adaptiveUploadTuning True to enable adaptive upload tuning.
+     */
+    public void setAdaptiveUploadTuning(boolean adaptiveUploadTuning) {
+        this.adaptiveUploadTuning = adaptiveUploadTuning;
+    }
+
+    /**
+     * Returns the largest part size that adaptive upload tuning may choose.
+     *
+     * @return The largest part size in bytes of a tuned upload.
+     */
+    public long getMaximumUploadPartSize() {
+        return maximumUploadPartSize;
+    }
+
+    /**
+     * Sets the largest part size that adaptive upload tuning may choose.
+     *
+     * @param maximumUploadPartSize The largest part size in bytes of a tuned
+     *            upload.
+     */
+    public void setMaximumUploadPartSize(long maximumUploadPartSize) {
+        this.maximumUploadPartSize = maximumUploadPartSize;
+    }
+
+    /**
+     * Returns the largest number of parts that adaptive upload tuning may
+     * upload at once.
+     *
+     * @return The largest number of parts of a tuned upload in flight.
+     */
+    public int getMaximumUploadConcurrency() {
+        return maximumUploadConcurrency;
+    }
+
+    /**
+     * Sets the largest number of parts that adaptive upload tuning may upload
+     * at once. The size of the transfer manager's thread pool bounds the
+     * concurrency as well.
+     *
+     * @param maximumUploadConcurrency The largest number of parts of a tuned
+     *            upload in flight.
+     */
+    public void setMaximumUploadConcurrency(int maximumUploadConcurrency) {
+        this.maximumUploadConcurrency = maximumUploadConcurrency;
+    }
+
+    /**
+     * Returns the directory where the parts uploaded by resumable multipart
+     * uploads are checkpointed, or null if they aren't.
+     *
+     * @return The directory of the upload checkpoint journals, or null.
+     */
+    public File getUploadCheckpointDirectory() {
+        return uploadCheckpointDirectory;
+    }
+
+    /**
+     * Sets the directory where the parts uploaded by resumable multipart
+     * uploads are checkpointed. Each part is recorded in a journal in this
+     * directory, and synced to disk, as soon as it's uploaded. An upload
+     * resumed with {@link TransferManager#resumeUpload(PersistableUpload)},
+     * even after the process crashed, then skips the recorded parts without
+     * listing the parts of the upload, as long as the length and modification
+     * time of the file haven't changed. The journal of an upload is deleted
+     * once the upload is completed or aborted.
+     *
+     * @param uploadCheckpointDirectory The directory of the upload checkpoint
+     *            journals, or null to list the uploaded parts when resuming.
+     */
+    public void setUploadCheckpointDirectory(File uploadCheckpointDirectory) {
+        this.uploadCheckpointDirectory = uploadCheckpointDirectory;
+    }
 }
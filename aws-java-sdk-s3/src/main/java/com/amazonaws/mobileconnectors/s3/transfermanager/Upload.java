@@ -96,4 +96,18 @@ public interface Upload extends Transfer {
      */
     public void abort();
 
+    /**
+     * Limits the bandwidth of this upload, within the limit set with
+     * {@link TransferManager#setBandwidthLimit(long)}. The limit can be changed
+     * while the upload is in progress.
+     *
+     * @param bytesPerSecond The maximum rate, or 0 for no limit of its own.
+     */
+    public void setBandwidthLimit(long bytesPerSecond);
+
+    /**
+     * Returns the bandwidth limit of this upload in bytes per second, or 0 if
+     * it has none of its own.
+     */
+    public long getBandwidthLimit();
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.StreamingMultipartUpload;
+import com.amazonaws.mobileconnectors.s3.transfermanager.model.UploadResult;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3EncryptionClient;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.util.BandwidthLimiter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An output stream, and channel, that uploads the data written to it to an
+ * Amazon S3 object. The data is gathered into part-size buffers, and each
+ * full buffer is uploaded as a part of a multipart upload in the background
+ * while the writer goes on filling the next one. Once every buffer is in
+ * flight, writes block until the oldest part is uploaded, so a writer that
+ * produces data faster than it can be uploaded never holds more than
+ * <code>bufferCount * partSize</code> bytes in memory.
+ * <p>
+ * {@link #close()} uploads the last part and completes the upload; data that
+ * fits in a single part is sent with one put request. If a part fails to
+ * upload, the write or close that finds out throws and the multipart upload
+ * is aborted, as it is by {@link #abort()}. An upload that isn't closed is
+ * never completed, so a writer that fails should abort the stream rather
+ * than close it.
+ * <p>
+ * Instances are created by
+ * {@link TransferManager#openUploadStream(PutObjectRequest)}, or directly
+ * for an {@link AmazonS3} client and thread pool. They aren't safe for use
+ * by multiple writing threads, but {@link #abort()} may be called from any
+ * thread.
+ *
+ * @deprecated The Transfer Manager is now deprecated in favor of the
+ *             {@link com.amazonaws.mobileconnectors.s3.transferutility.TransferUtility}
+ */
+@Deprecated
+public class UploadOutputStream extends OutputStream implements WritableByteChannel {
+
+    private final StreamingMultipartUpload upload;
+
+    /** The buffer being filled, or null until the next byte is written. */
+    private byte[] buffer;
+    private int length;
+
+    private boolean closed;
+    private volatile boolean aborted;
+    private UploadResult uploadResult;
+
+    /**
+     * Creates a stream that uploads the data written to it to the bucket and
+     * key of the given request.
+     *
+     * @param s3 The client to upload the parts with. The Amazon S3 encryption
+     *            client isn't supported, since it has to upload the parts of
+     *            an object in series.
+     * @param threadPool The thread pool to upload the parts in.
+     * @param putObjectRequest The bucket, key, metadata and progress listener
+     *            of the upload; its input stream and file are ignored.
+     * @param partSize The size of each part but the last one; every part but
+     *            the last one must be at least 5 MB.
+     * @param bufferCount The maximum number of parts held in memory, and
+     *            uploaded concurrently.
+     */
+    public UploadOutputStream(AmazonS3 s3, ExecutorService threadPool,
+            PutObjectRequest putObjectRequest, int partSize, int bufferCount) {
+        if (s3 instanceof AmazonS3EncryptionClient) {
+            throw new IllegalArgumentException(
+                    "Uploading an output stream isn't supported with client-side encryption");
+        }
+        this.upload = new StreamingMultipartUpload(s3, threadPool, putObjectRequest, partSize,
+                bufferCount);
+    }
+
+    /**
+     * Sets the limiter that the parts are read through while they're sent.
+     *
+     * @param bandwidthLimiter The limiter, or null for no limit.
+     */
+    public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+        upload.setBandwidthLimiter(bandwidthLimiter);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureBuffer();
+        buffer[length++] = (byte) b;
+        if (length == buffer.length) {
+            uploadBuffer();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            ensureBuffer();
+            final int count = Math.min(len, buffer.length - length);
+            System.arraycopy(b, off, buffer, length, count);
+            length += count;
+            off += count;
+            len -= count;
+            if (length == buffer.length) {
+                uploadBuffer();
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        final int written = src.remaining();
+        while (src.hasRemaining()) {
+            ensureBuffer();
+            final int count = Math.min(src.remaining(), buffer.length - length);
+            src.get(buffer, length, count);
+            length += count;
+            if (length == buffer.length) {
+                uploadBuffer();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Does nothing: data is uploaded a part at a time, and the last part is
+     * only uploaded by {@link #close()}.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && !aborted;
+    }
+
+    /**
+     * Uploads the data left in the buffer, waits for every part and completes
+     * the upload. Does nothing if the stream is already closed or aborted.
+     *
+     * @throws IOException If the thread is interrupted while waiting for the
+     *             parts, in which case the upload is aborted.
+     * @throws com.amazonaws.AmazonClientException If the upload fails, in
+     *             which case it's aborted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!isOpen()) {
+            return;
+        }
+        closed = true;
+        try {
+            final byte[] last = buffer != null ? buffer : upload.nextBuffer();
+            uploadResult = upload.complete(last, length);
+            buffer = null;
+            length = 0;
+        } catch (final InterruptedException e) {
+            throw interrupted(e);
+        } catch (final RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the upload: cancels the parts being uploaded and aborts the
+     * multipart upload. Further writes fail, and closing the stream does
+     * nothing.
+     */
+    public void abort() {
+        aborted = true;
+        upload.abort();
+    }
+
+    /**
+     * Returns the result of the upload once the stream is closed, otherwise
+     * null.
+     */
+    public UploadResult getUploadResult() {
+        return uploadResult;
+    }
+
+    private void checkOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Takes a free buffer to write to, which waits for a part to be uploaded
+     * if every buffer is in flight.
+     */
+    private void ensureBuffer() throws IOException {
+        checkOpen();
+        if (buffer != null) {
+            return;
+        }
+        try {
+            buffer = upload.nextBuffer();
+            length = 0;
+        } catch (final InterruptedException e) {
+            throw interrupted(e);
+        } catch (final RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    private void uploadBuffer() {
+        try {
+            upload.uploadPart(buffer, length);
+            buffer = null;
+            length = 0;
+        } catch (final RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    private IOException interrupted(InterruptedException e) {
+        abort();
+        Thread.currentThread().interrupt();
+        final InterruptedIOException exception = new InterruptedIOException(
+                "Interrupted while waiting for a part to upload; the upload was aborted");
+        exception.initCause(e);
+        return exception;
+    }
+}
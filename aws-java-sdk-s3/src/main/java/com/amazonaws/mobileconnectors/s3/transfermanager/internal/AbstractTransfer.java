@@ -24,6 +24,7 @@ import com.amazonaws.event.ProgressListenerChain;
 import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer;
 import com.amazonaws.mobileconnectors.s3.transfermanager.TransferProgress;
 import com.amazonaws.services.s3.model.LegacyS3ProgressListener;
+import com.amazonaws.services.s3.util.BandwidthLimiter;
 
 import java.util.Collection;
 import java.util.LinkedList;
@@ -54,6 +55,9 @@ public abstract class AbstractTransfer implements Transfer {
      */
     protected final Collection<TransferStateChangeListener> stateChangeListeners = new LinkedList<TransferStateChangeListener>();
 
+    /** Limits the bandwidth of this transfer, within the limit of its parent. */
+    private volatile BandwidthLimiter bandwidthLimiter = new BandwidthLimiter();
+
     AbstractTransfer(String description, TransferProgress transferProgress,
             ProgressListenerChain progressListenerChain) {
         this(description, transferProgress, progressListenerChain, null);
@@ -253,6 +257,39 @@ public abstract class AbstractTransfer implements Transfer {
         return monitor;
     }
 
+    /**
+     * Returns the limiter of the bandwidth of this transfer.
+     */
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * Sets the limiter of the bandwidth of this transfer, which must be set
+     * before the transfer starts.
+     */
+    public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    /**
+     * Limits the bandwidth of this transfer, within the limit of its transfer
+     * manager. The limit applies to the bytes transferred from then on.
+     *
+     * @param bytesPerSecond The maximum rate, or 0 for no limit.
+     */
+    public void setBandwidthLimit(long bytesPerSecond) {
+        bandwidthLimiter.setBytesPerSecond(bytesPerSecond);
+    }
+
+    /**
+     * Returns the bandwidth limit of this transfer in bytes per second, or 0
+     * if it has none of its own.
+     */
+    public long getBandwidthLimit() {
+        return bandwidthLimiter.getBytesPerSecond();
+    }
+
     protected void fireProgressEvent(final int eventType) {
         ProgressListenerCallbackExecutor.progressChanged(
                 this.progressListenerChain, new ProgressEvent(eventType, 0));
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import static com.amazonaws.services.s3.internal.Constants.MAXIMUM_UPLOAD_PARTS;
+
+import com.amazonaws.mobileconnectors.s3.transfermanager.AdaptiveUploadMetrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Tunes the number of parts uploaded at once and the size of the parts from
+ * the throughput measured while uploading them. A transfer manager shares a
+ * single controller between its uploads, since what it measures is the
+ * capacity of the link rather than of one object.
+ * <p>
+ * The measurements are evaluated once enough parts have completed to cover
+ * every part in flight. The concurrency is tuned by hill climbing: it keeps
+ * moving one step in the same direction while the aggregate throughput
+ * improves or holds, and turns around when it drops, so it keeps probing and
+ * follows the link as its capacity changes. The part size is set so that a
+ * part takes about {@link #TARGET_PART_SECONDS} at the throughput of a single
+ * connection: small enough parts on a slow link to keep them retryable, and
+ * large enough ones on a fast link for the per-request latency not to
+ * dominate.
+ */
+public class AdaptiveUploadController {
+    private static final Log log = LogFactory.getLog(AdaptiveUploadController.class);
+
+    /** The time a part should take to upload on a single connection. */
+    static final double TARGET_PART_SECONDS = 2.0;
+
+    /** Relative change of throughput that is considered noise. */
+    private static final double TOLERANCE = 0.05;
+
+    /** Relative change of part size below which the size isn't changed. */
+    private static final double PART_SIZE_HYSTERESIS = 0.25;
+
+    /** Weight of the latest part in the moving average of part latencies. */
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final long minimumPartSize;
+    private final long maximumPartSize;
+    private final int maximumConcurrency;
+
+    private int concurrency;
+    private long partSize;
+    private int direction = 1;
+    private double previousThroughput;
+
+    /** Parts completed since the last evaluation. */
+    private int epochParts;
+    private long epochBytes;
+    private long epochStartNanos;
+    private long epochEndNanos;
+
+    private double throughput;
+    private double averagePartLatencyNanos;
+    private long partsMeasured;
+    private long bytesMeasured;
+    private int decisions;
+    private String lastDecision;
+
+    /**
+     * @param minimumPartSize The smallest part size to use, which is also the
+     *            initial one.
+     * @param maximumPartSize The largest part size to use.
+     * @param maximumConcurrency The largest number of parts to upload at once.
+     */
+    public AdaptiveUploadController(long minimumPartSize, long maximumPartSize,
+            int maximumConcurrency) {
+        if (minimumPartSize <= 0 || maximumPartSize < minimumPartSize) {
+            throw new IllegalArgumentException("Invalid part size range: " + minimumPartSize
+                    + " - " + maximumPartSize);
+        }
+        if (maximumConcurrency <= 0) {
+            throw new IllegalArgumentException("The maximum concurrency must be positive");
+        }
+        this.minimumPartSize = minimumPartSize;
+        this.maximumPartSize = maximumPartSize;
+        this.maximumConcurrency = maximumConcurrency;
+        this.partSize = minimumPartSize;
+        this.concurrency = Math.max(1, maximumConcurrency / 2);
+    }
+
+    /**
+     * Returns the number of parts to upload at once.
+     */
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Returns the size of the next part of an upload, which is the tuned part
+     * size unless the remaining parts have to be larger to fit in the
+     * maximum number of parts of a multipart upload.
+     *
+     * @param remainingBytes The number of bytes left to upload.
+     * @param nextPartNumber The number of the next part.
+     * @return The size of the next part.
+     */
+    public synchronized long getPartSize(long remainingBytes, int nextPartNumber) {
+        final int remainingParts = Math.max(1, MAXIMUM_UPLOAD_PARTS - nextPartNumber + 1);
+        final long smallestFittingSize = (remainingBytes + remainingParts - 1) / remainingParts;
+        return Math.max(partSize, smallestFittingSize);
+    }
+
+    /**
+     * Records the upload of a part, and re-evaluates the concurrency and part
+     * size once enough parts have been measured.
+     *
+     * @param bytes The size of the part.
+     * @param startNanos The value of {@link System#nanoTime()} when the upload
+     *            of the part started.
+     * @param endNanos The value of {@link System#nanoTime()} when the part was
+     *            uploaded.
+     */
+    public synchronized void recordPart(long bytes, long startNanos, long endNanos) {
+        final long latencyNanos = Math.max(1, endNanos - startNanos);
+        averagePartLatencyNanos = partsMeasured == 0 ? latencyNanos
+                : LATENCY_WEIGHT * latencyNanos
+                        + (1 - LATENCY_WEIGHT) * averagePartLatencyNanos;
+        partsMeasured++;
+        bytesMeasured += bytes;
+
+        if (epochParts == 0) {
+            epochStartNanos = startNanos;
+            epochEndNanos = endNanos;
+        } else {
+            epochStartNanos = Math.min(epochStartNanos, startNanos);
+            epochEndNanos = Math.max(epochEndNanos, endNanos);
+        }
+        epochParts++;
+        epochBytes += bytes;
+
+        if (epochParts >= Math.max(2, concurrency)) {
+            evaluate();
+        }
+    }
+
+    private void evaluate() {
+        final long elapsedNanos = Math.max(1, epochEndNanos - epochStartNanos);
+        throughput = epochBytes * NANOS_PER_SECOND / elapsedNanos;
+        final int measuredConcurrency = concurrency;
+
+        String trend = "first measurement";
+        if (previousThroughput > 0) {
+            if (throughput < previousThroughput * (1 - TOLERANCE)) {
+                direction = -direction;
+                trend = "throughput dropped";
+            } else if (throughput > previousThroughput * (1 + TOLERANCE)) {
+                trend = "throughput improved";
+            } else {
+                trend = "throughput held";
+            }
+        }
+        int nextConcurrency = Math.max(1, Math.min(maximumConcurrency,
+                concurrency + direction));
+        if (nextConcurrency == concurrency) {
+            // At a bound: probe the other way next time
+            direction = -direction;
+        }
+
+        final double connectionThroughput = throughput / measuredConcurrency;
+        long nextPartSize = Math.max(minimumPartSize, Math.min(maximumPartSize,
+                (long) (connectionThroughput * TARGET_PART_SECONDS)));
+        if (Math.abs(nextPartSize - partSize) < partSize * PART_SIZE_HYSTERESIS) {
+            nextPartSize = partSize;
+        }
+
+        if (nextConcurrency != concurrency || nextPartSize != partSize) {
+            decisions++;
+        }
+        lastDecision = trend + " to " + (long) throughput + " B/s at concurrency "
+                + measuredConcurrency + ": concurrency " + nextConcurrency + ", part size "
+                + nextPartSize;
+        log.debug("Adaptive upload tuning: " + lastDecision);
+
+        concurrency = nextConcurrency;
+        partSize = nextPartSize;
+        previousThroughput = throughput;
+        epochParts = 0;
+        epochBytes = 0;
+    }
+
+    /**
+     * Returns a snapshot of the measurements and decisions of the controller.
+     */
+    public synchronized AdaptiveUploadMetrics getMetrics() {
+        return new AdaptiveUploadMetrics(concurrency, partSize, throughput,
+                averagePartLatencyNanos / 1000000.0, partsMeasured, bytesMeasured,
+                decisions, lastDecision);
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.mobileconnectors.s3.transfermanager.DirectorySyncOptions;
+import com.amazonaws.mobileconnectors.s3.transfermanager.DirectorySyncOptions.Direction;
+import com.amazonaws.mobileconnectors.s3.transfermanager.Download;
+import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer.TransferState;
+import com.amazonaws.mobileconnectors.s3.transfermanager.TransferManager;
+import com.amazonaws.mobileconnectors.s3.transfermanager.TransferProgress;
+import com.amazonaws.mobileconnectors.s3.transfermanager.Upload;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.SyncManifest.Entry;
+import com.amazonaws.mobileconnectors.s3.transfermanager.model.SyncResult;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.internal.ServiceUtils;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.Md5Utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+/**
+ * Syncs a local directory with a key prefix. The local tree is compared with
+ * the objects under the prefix, or with the manifest of the previous sync,
+ * and only the files that differ are transferred, as many at a time as the
+ * transfer manager's thread pool runs. A file is unchanged if its size and
+ * modification time match its manifest entry; otherwise it's compared with
+ * its object by size, then modification time, then MD5 checksum when the
+ * object has a single-part ETag.
+ * <p>
+ * A failed transfer or deletion doesn't stop the others. The manifest is
+ * saved once every change has been attempted, keeping the previous state of
+ * the files whose changes failed, and the first failure is then thrown.
+ */
+public class DirectorySyncCallable implements Callable<SyncResult> {
+    private static final Log log = LogFactory.getLog(DirectorySyncCallable.class);
+
+    /**
+     * The largest number of transfers started and not yet waited for, which
+     * bounds the memory used by syncs with many changes.
+     */
+    private static final int MAX_TRANSFERS_IN_FLIGHT = 100;
+
+    /** The largest number of keys in a delete objects request. */
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+
+    private static final Pattern SINGLE_PART_ETAG = Pattern.compile("[0-9a-fA-F]{32}");
+
+    private final TransferManager transferManager;
+    private final AmazonS3 s3;
+    private final DirectorySyncImpl sync;
+    private final String bucketName;
+    private final String keyPrefix;
+    private final File directory;
+    private final DirectorySyncOptions options;
+    private final ProgressListener listener;
+    private final TransferProgress transferProgress;
+
+    /** The manifest entries of the files after the sync. */
+    private final Map<String, Entry> synced = new HashMap<String, Entry>();
+    private final SyncResult result = new SyncResult();
+    private Exception firstFailure;
+
+    /**
+     * @param transferManager The transfer manager to transfer the files with.
+     * @param sync The sync, whose key prefix ends with a delimiter unless
+     *            it's empty.
+     * @param options The options of the sync.
+     * @param listener The listener of the progress of every transfer.
+     * @param transferProgress The progress of the sync.
+     */
+    public DirectorySyncCallable(TransferManager transferManager, DirectorySyncImpl sync,
+            DirectorySyncOptions options, ProgressListener listener,
+            TransferProgress transferProgress) {
+        this.transferManager = transferManager;
+        this.s3 = transferManager.getAmazonS3Client();
+        this.sync = sync;
+        this.bucketName = sync.getBucketName();
+        this.keyPrefix = sync.getKeyPrefix();
+        this.directory = sync.getDirectory();
+        this.options = options;
+        this.listener = listener;
+        this.transferProgress = transferProgress;
+    }
+
+    /**
+     * The state of a local file when the directory was listed.
+     */
+    private static final class LocalFile {
+        private final File file;
+        private final long size;
+        private final long lastModified;
+
+        private LocalFile(File file) {
+            this.file = file;
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+        }
+    }
+
+    /**
+     * A transfer that has been started and not yet waited for.
+     */
+    private static final class PendingTransfer {
+        private final String path;
+        private final LocalFile localFile;
+        private final S3ObjectSummary object;
+        private final Upload upload;
+        private final Download download;
+
+        private PendingTransfer(String path, LocalFile localFile, S3ObjectSummary object,
+                Upload upload, Download download) {
+            this.path = path;
+            this.localFile = localFile;
+            this.object = object;
+            this.upload = upload;
+            this.download = download;
+        }
+    }
+
+    @Override
+    public SyncResult call() throws Exception {
+        sync.setState(TransferState.InProgress);
+        try {
+            sync();
+            sync.setState(TransferState.Completed);
+            return result;
+        } catch (final Exception e) {
+            sync.setState(TransferState.Failed);
+            throw e;
+        }
+    }
+
+    private void sync() throws Exception {
+        final File manifestFile = options.getManifestFile();
+        final Map<String, LocalFile> localFiles = new HashMap<String, LocalFile>();
+        listLocalFiles(directory, "", localFiles);
+
+        Map<String, Entry> manifest = manifestFile == null ? null
+                : SyncManifest.load(manifestFile, bucketName, keyPrefix);
+        final boolean isUpload = options.getDirection() == Direction.UPLOAD;
+        Map<String, S3ObjectSummary> objects = null;
+        if (!isUpload || manifest == null) {
+            objects = listObjects();
+            result.setRemoteListed(true);
+        }
+        if (manifest == null) {
+            manifest = Collections.emptyMap();
+        }
+
+        if (isUpload) {
+            syncUp(localFiles, objects, manifest);
+        } else {
+            syncDown(localFiles, objects, manifest);
+        }
+
+        if (manifestFile != null) {
+            try {
+                SyncManifest.save(manifestFile, bucketName, keyPrefix, synced);
+            } catch (final IOException e) {
+                log.warn("Unable to save the sync manifest " + manifestFile
+                        + ", the next sync will compare every file: " + e.getMessage(), e);
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+    }
+
+    /**
+     * Uploads the local files that differ from their objects, and deletes the
+     * objects of the files removed if requested.
+     *
+     * @param objects The objects by path, or null to rely on the manifest.
+     */
+    private void syncUp(Map<String, LocalFile> localFiles, Map<String, S3ObjectSummary> objects,
+            Map<String, Entry> manifest) throws InterruptedException {
+        final List<String> changed = new ArrayList<String>();
+        for (final Map.Entry<String, LocalFile> local : localFiles.entrySet()) {
+            final String path = local.getKey();
+            final LocalFile localFile = local.getValue();
+            final S3ObjectSummary object = objects == null ? null : objects.get(path);
+            final Entry entry = manifest.get(path);
+            if (isUnchangedSince(localFile, entry)
+                    && (objects == null || object != null
+                            && entry.getETag().equals(object.getETag()))) {
+                unchanged(path, entry);
+            } else if (object != null && isSameContent(localFile, object, true)) {
+                unchanged(path, new Entry(localFile.size, localFile.lastModified,
+                        object.getETag()));
+            } else {
+                changed.add(path);
+            }
+        }
+
+        final List<String> removed = new ArrayList<String>();
+        for (final String path : objects == null ? manifest.keySet() : objects.keySet()) {
+            if (!localFiles.containsKey(path)) {
+                if (options.isDeleteRemoved()) {
+                    removed.add(path);
+                } else if (manifest.containsKey(path)) {
+                    // Keep tracking the object until it's deleted
+                    synced.put(path, manifest.get(path));
+                }
+            }
+        }
+
+        long totalBytes = 0;
+        for (final String path : changed) {
+            totalBytes += localFiles.get(path).size;
+        }
+        transferProgress.setTotalBytesToTransfer(totalBytes);
+
+        final LinkedList<PendingTransfer> inFlight = new LinkedList<PendingTransfer>();
+        for (final String path : changed) {
+            final LocalFile localFile = localFiles.get(path);
+            final ObjectMetadata metadata = new ObjectMetadata();
+            if (options.getMetadataProvider() != null) {
+                options.getMetadataProvider().provideObjectMetadata(localFile.file, metadata);
+            }
+            final PutObjectRequest request = new PutObjectRequest(bucketName, keyPrefix + path,
+                    localFile.file).withMetadata(metadata);
+            request.setGeneralProgressListener(listener);
+            try {
+                inFlight.add(new PendingTransfer(path, localFile, null,
+                        transferManager.upload(request), null));
+            } catch (final AmazonClientException e) {
+                failed(path, manifest, e);
+            }
+            if (inFlight.size() >= MAX_TRANSFERS_IN_FLIGHT) {
+                finish(inFlight.removeFirst(), manifest);
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            finish(inFlight.removeFirst(), manifest);
+        }
+
+        deleteObjects(removed, manifest);
+    }
+
+    /**
+     * Downloads the objects that differ from their local files, and deletes
+     * the local files of the objects removed if requested.
+     */
+    private void syncDown(Map<String, LocalFile> localFiles,
+            Map<String, S3ObjectSummary> objects, Map<String, Entry> manifest)
+            throws InterruptedException {
+        final List<String> changed = new ArrayList<String>();
+        long totalBytes = 0;
+        for (final Map.Entry<String, S3ObjectSummary> remote : objects.entrySet()) {
+            final String path = remote.getKey();
+            final S3ObjectSummary object = remote.getValue();
+            final LocalFile localFile = localFiles.get(path);
+            final Entry entry = manifest.get(path);
+            if (localFile != null && isUnchangedSince(localFile, entry)
+                    && entry.getETag().equals(object.getETag())) {
+                unchanged(path, entry);
+            } else if (localFile != null && isSameContent(localFile, object, false)) {
+                unchanged(path, new Entry(localFile.size, localFile.lastModified,
+                        object.getETag()));
+            } else {
+                changed.add(path);
+                totalBytes += object.getSize();
+            }
+        }
+        transferProgress.setTotalBytesToTransfer(totalBytes);
+
+        final LinkedList<PendingTransfer> inFlight = new LinkedList<PendingTransfer>();
+        for (final String path : changed) {
+            final File file = new File(directory, path);
+            final File parent = file.getParentFile();
+            try {
+                if (!parent.isDirectory() && !parent.mkdirs()) {
+                    throw new AmazonClientException("Couldn't create parent directories for "
+                            + file.getAbsolutePath());
+                }
+                final GetObjectRequest request = new GetObjectRequest(bucketName,
+                        keyPrefix + path);
+                request.setGeneralProgressListener(listener);
+                inFlight.add(new PendingTransfer(path, null, objects.get(path), null,
+                        transferManager.download(request, file)));
+            } catch (final AmazonClientException e) {
+                failed(path, manifest, e);
+            }
+            if (inFlight.size() >= MAX_TRANSFERS_IN_FLIGHT) {
+                finish(inFlight.removeFirst(), manifest);
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            finish(inFlight.removeFirst(), manifest);
+        }
+
+        if (options.isDeleteRemoved()) {
+            for (final Map.Entry<String, LocalFile> local : localFiles.entrySet()) {
+                if (!objects.containsKey(local.getKey())) {
+                    if (local.getValue().file.delete()) {
+                        result.setDeletedFiles(result.getDeletedFiles() + 1);
+                    } else {
+                        failed(local.getKey(), manifest, new AmazonClientException(
+                                "Unable to delete " + local.getValue().file));
+                    }
+                }
+            }
+        }
+    }
+
+    private void finish(PendingTransfer transfer, Map<String, Entry> manifest)
+            throws InterruptedException {
+        try {
+            if (transfer.upload != null) {
+                final String eTag = transfer.upload.waitForUploadResult().getETag();
+                synced.put(transfer.path, new Entry(transfer.localFile.size,
+                        transfer.localFile.lastModified, eTag));
+                result.setUploadedFiles(result.getUploadedFiles() + 1);
+                result.setBytesTransferred(result.getBytesTransferred()
+                        + transfer.localFile.size);
+            } else {
+                transfer.download.waitForCompletion();
+                final File file = new File(directory, transfer.path);
+                final String eTag = transfer.download.getObjectMetadata() == null
+                        || transfer.download.getObjectMetadata().getETag() == null
+                        ? transfer.object.getETag()
+                        : ServiceUtils.removeQuotes(transfer.download.getObjectMetadata()
+                                .getETag());
+                synced.put(transfer.path, new Entry(file.length(), file.lastModified(), eTag));
+                result.setDownloadedFiles(result.getDownloadedFiles() + 1);
+                result.setBytesTransferred(result.getBytesTransferred() + file.length());
+            }
+        } catch (final AmazonClientException e) {
+            failed(transfer.path, manifest, e);
+        }
+    }
+
+    /**
+     * Deletes the objects of the given paths, in batches.
+     */
+    private void deleteObjects(List<String> paths, Map<String, Entry> manifest) {
+        for (int start = 0; start < paths.size(); start += MAX_KEYS_PER_DELETE) {
+            final List<String> batch = paths.subList(start,
+                    Math.min(paths.size(), start + MAX_KEYS_PER_DELETE));
+            final String[] keys = new String[batch.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = keyPrefix + batch.get(i);
+            }
+            final DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName)
+                    .withKeys(keys).withQuiet(true);
+            TransferManager.appendSingleObjectUserAgent(request);
+            try {
+                s3.deleteObjects(request);
+                result.setDeletedFiles(result.getDeletedFiles() + keys.length);
+            } catch (final MultiObjectDeleteException e) {
+                for (final MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                    failed(error.getKey().substring(keyPrefix.length()), manifest, e);
+                }
+                result.setDeletedFiles(result.getDeletedFiles() + keys.length
+                        - e.getErrors().size());
+            } catch (final AmazonClientException e) {
+                for (final String path : batch) {
+                    failed(path, manifest, e);
+                }
+            }
+        }
+    }
+
+    private void unchanged(String path, Entry entry) {
+        synced.put(path, entry);
+        result.setUnchangedFiles(result.getUnchangedFiles() + 1);
+    }
+
+    /**
+     * Records a change that failed, keeping the previous manifest entry of
+     * the file so that the change is retried by the next sync.
+     */
+    private void failed(String path, Map<String, Entry> manifest, Exception e) {
+        log.warn("Unable to sync " + path + ": " + e.getMessage());
+        if (firstFailure == null) {
+            firstFailure = e;
+        }
+        if (manifest.containsKey(path)) {
+            synced.put(path, manifest.get(path));
+        }
+    }
+
+    private static boolean isUnchangedSince(LocalFile localFile, Entry entry) {
+        return entry != null && entry.getSize() == localFile.size
+                && entry.getLastModified() == localFile.lastModified;
+    }
+
+    /**
+     * Returns true if a file and an object of the same size are taken to hold
+     * the same data: when the side synced to was modified after the side
+     * synced from, or failing that when the MD5 checksum of the file matches
+     * the single-part ETag of the object.
+     */
+    private static boolean isSameContent(LocalFile localFile, S3ObjectSummary object,
+            boolean isUpload) {
+        if (localFile.size != object.getSize()) {
+            return false;
+        }
+        if (object.getLastModified() != null) {
+            final long objectModified = object.getLastModified().getTime();
+            if (isUpload ? localFile.lastModified <= objectModified
+                    : localFile.lastModified >= objectModified) {
+                return true;
+            }
+        }
+        if (object.getETag() == null || !SINGLE_PART_ETAG.matcher(object.getETag()).matches()) {
+            return false;
+        }
+        try {
+            return BinaryUtils.toHex(Md5Utils.computeMD5Hash(localFile.file))
+                    .equalsIgnoreCase(object.getETag());
+        } catch (final IOException e) {
+            log.debug("Unable to checksum " + localFile.file + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Lists the files under a directory by path relative to the synced
+     * directory, leaving out the manifest.
+     */
+    private void listLocalFiles(File dir, String pathPrefix, Map<String, LocalFile> results) {
+        final File[] found = dir.listFiles();
+        if (found == null) {
+            return;
+        }
+        final File manifestFile = options.getManifestFile();
+        for (final File f : found) {
+            if (f.isDirectory()) {
+                listLocalFiles(f, pathPrefix + f.getName() + "/", results);
+            } else if (manifestFile == null || !isManifest(f, manifestFile)) {
+                results.put(pathPrefix + f.getName(), new LocalFile(f));
+            }
+        }
+    }
+
+    private static boolean isManifest(File file, File manifestFile) {
+        final File manifest = manifestFile.getAbsoluteFile();
+        return file.getAbsoluteFile().equals(manifest)
+                || file.getAbsolutePath().equals(manifest.getPath() + ".tmp");
+    }
+
+    /**
+     * Lists the objects under the key prefix by path relative to the prefix,
+     * leaving out directory placeholders and keys that would escape the
+     * directory.
+     */
+    private Map<String, S3ObjectSummary> listObjects() {
+        final Map<String, S3ObjectSummary> objects = new HashMap<String, S3ObjectSummary>();
+        final ListObjectsRequest request = new ListObjectsRequest()
+                .withBucketName(bucketName)
+                .withPrefix(keyPrefix);
+        TransferManager.appendSingleObjectUserAgent(request);
+        ObjectListing listing = s3.listObjects(request);
+        while (true) {
+            for (final S3ObjectSummary summary : listing.getObjectSummaries()) {
+                final String path = summary.getKey().substring(keyPrefix.length());
+                if (path.length() == 0 || path.endsWith("/")
+                        || ("/" + path + "/").contains("/../")) {
+                    log.debug("Skipping object " + summary.getKey());
+                    continue;
+                }
+                objects.put(path, summary);
+            }
+            if (!listing.isTruncated()) {
+                return objects;
+            }
+            listing = s3.listNextBatchOfObjects(listing);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.event.ProgressListenerChain;
+import com.amazonaws.mobileconnectors.s3.transfermanager.DirectorySync;
+import com.amazonaws.mobileconnectors.s3.transfermanager.TransferProgress;
+import com.amazonaws.mobileconnectors.s3.transfermanager.model.SyncResult;
+
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Sync of a local directory with a key prefix.
+ */
+public class DirectorySyncImpl extends AbstractTransfer implements DirectorySync {
+
+    private final String bucketName;
+    private final String keyPrefix;
+    private final File directory;
+
+    public DirectorySyncImpl(String description, TransferProgress transferProgress,
+            ProgressListenerChain progressListenerChain, String bucketName, String keyPrefix,
+            File directory) {
+        super(description, transferProgress, progressListenerChain);
+        this.bucketName = bucketName;
+        this.keyPrefix = keyPrefix;
+        this.directory = directory;
+    }
+
+    @Override
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    @Override
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public SyncResult waitForSyncResult()
+            throws AmazonClientException, AmazonServiceException, InterruptedException {
+        try {
+            SyncResult result = null;
+            while (!monitor.isDone() || result == null) {
+                Future<?> f = monitor.getFuture();
+                result = (SyncResult) f.get();
+            }
+            return result;
+        } catch (ExecutionException e) {
+            rethrowExecutionException(e);
+            return null;
+        }
+    }
+}
@@ -37,13 +37,32 @@ public class DownloadImpl extends AbstractTransfer implements Download {
      */
     private final PersistableDownload persistableDownload;
 
+    private final GetObjectRequest getObjectRequest;
+    private final File file;
+    private final long partSize;
+
     public DownloadImpl(String description, TransferProgress transferProgress,
             ProgressListenerChain progressListenerChain, S3Object s3Object,
             TransferStateChangeListener listener,
             GetObjectRequest getObjectRequest, File file) {
+        this(description, transferProgress, progressListenerChain, s3Object, listener,
+                getObjectRequest, file, -1);
+    }
+
+    /**
+     * @param partSize The size of each byte range of a parallel download; or
+     *            -1 if the object is downloaded as a single stream.
+     */
+    public DownloadImpl(String description, TransferProgress transferProgress,
+            ProgressListenerChain progressListenerChain, S3Object s3Object,
+            TransferStateChangeListener listener,
+            GetObjectRequest getObjectRequest, File file, long partSize) {
         super(description, transferProgress, progressListenerChain, listener);
         this.s3Object = s3Object;
-        this.persistableDownload = captureDownloadState(getObjectRequest, file);
+        this.getObjectRequest = getObjectRequest;
+        this.file = file;
+        this.partSize = partSize;
+        this.persistableDownload = captureDownloadState(getObjectRequest, file, partSize, null);
         S3ProgressPublisher.publishTransferPersistable(progressListenerChain,
                 persistableDownload);
     }
@@ -88,7 +107,7 @@ public class DownloadImpl extends AbstractTransfer implements Download {
 
         this.monitor.getFuture().cancel(true);
 
-        if (s3Object != null) {
+        if (s3Object != null && s3Object.getObjectContent() != null) {
             s3Object.getObjectContent().abort();
         }
         setState(TransferState.Canceled);
@@ -133,14 +152,22 @@ public class DownloadImpl extends AbstractTransfer implements Download {
      * captured (for security reason).
      */
     private PersistableDownload captureDownloadState(
-            final GetObjectRequest getObjectRequest, final File file) {
+            final GetObjectRequest getObjectRequest, final File file, final long partSize,
+            final int[] completedParts) {
         if (getObjectRequest.getSSECustomerKey() == null) {
+            // The object being downloaded, which a resumed download must
+            // still find for the data in the file to be kept
+            final ObjectMetadata metadata = s3Object == null ? null
+                    : s3Object.getObjectMetadata();
             return new PersistableDownload(
                     getObjectRequest.getBucketName(),
                     getObjectRequest.getKey(), getObjectRequest.getVersionId(),
                     getObjectRequest.getRange(),
                     getObjectRequest.getResponseHeaders(),
-                    getObjectRequest.isRequesterPays(), file.getAbsolutePath());
+                    getObjectRequest.isRequesterPays(), file.getAbsolutePath(),
+                    partSize, completedParts,
+                    metadata == null ? null : metadata.getETag(),
+                    metadata == null ? null : metadata.getVersionId());
         }
         return null;
     }
@@ -159,6 +186,11 @@ public class DownloadImpl extends AbstractTransfer implements Download {
             throw new PauseException(TransferManagerUtils.determinePauseStatus(
                     currentState, forceCancel));
         }
+        if (monitor instanceof MultipartDownloadMonitor) {
+            // Only the parts that have been written are skipped on resume
+            return captureDownloadState(getObjectRequest, file, partSize,
+                    ((MultipartDownloadMonitor) monitor).getCompletedParts());
+        }
         return persistableDownload;
     }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.internal.ThrottledInputStream;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.util.BandwidthLimiter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+
+/**
+ * Downloads one byte range of an object and writes it at its own offset in the
+ * destination file, so that the parts of a download can be written
+ * concurrently and in any order.
+ * <p>
+ * Like a download to a file in a single request, a part whose content fails
+ * partway through is retried once. The retry gets the rest of the range, from
+ * the first byte that wasn't written.
+ */
+public class DownloadPartCallable implements Callable<Long> {
+    private static final Log log = LogFactory.getLog(DownloadPartCallable.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RETRIES = 1;
+
+    private final AmazonS3 s3;
+    private final GetObjectRequest request;
+    private final File file;
+    private final long position;
+    private final int partIndex;
+    private final BandwidthLimiter bandwidthLimiter;
+
+    /** The object being read, so that the part can be aborted. */
+    private volatile S3Object s3Object;
+    private volatile boolean isAborted;
+    /** The number of bytes of the part written to the file so far. */
+    private long written;
+
+    /**
+     * @param s3 The client to download the part with.
+     * @param request The request for the byte range of the part.
+     * @param file The destination file.
+     * @param position The offset in the file where the part is written.
+     * @param partIndex The index of the part in the download.
+     */
+    public DownloadPartCallable(AmazonS3 s3, GetObjectRequest request, File file,
+            long position, int partIndex) {
+        this(s3, request, file, position, partIndex, null);
+    }
+
+    /**
+     * @param s3 The client to download the part with.
+     * @param request The request for the byte range of the part.
+     * @param file The destination file.
+     * @param position The offset in the file where the part is written.
+     * @param partIndex The index of the part in the download.
+     * @param bandwidthLimiter The limiter to read the part through, or null.
+     */
+    public DownloadPartCallable(AmazonS3 s3, GetObjectRequest request, File file,
+            long position, int partIndex, BandwidthLimiter bandwidthLimiter) {
+        this.s3 = s3;
+        this.request = request;
+        this.file = file;
+        this.position = position;
+        this.partIndex = partIndex;
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    /**
+     * Returns the index of the part in the download.
+     */
+    public int getPartIndex() {
+        return partIndex;
+    }
+
+    /**
+     * Returns the number of bytes in the part.
+     */
+    public long getPartSize() {
+        return request.getRange()[1] - request.getRange()[0] + 1;
+    }
+
+    /**
+     * Downloads the part and returns the number of bytes written to the file.
+     */
+    @Override
+    public Long call() throws Exception {
+        written = 0;
+        int retries = 0;
+        while (true) {
+            // Failures of the request itself are retried by the client
+            final S3Object object = getRest();
+            try {
+                writeContent(object);
+                break;
+            } catch (final AmazonClientException e) {
+                if (!e.isRetryable() || isAborted || Thread.currentThread().isInterrupted()
+                        || retries++ >= MAX_RETRIES) {
+                    throw e;
+                }
+                log.info("Retrying the download of part " + partIndex + " of object "
+                        + request.getKey() + " (bucket " + request.getBucketName()
+                        + ") from byte " + written + " of the part", e);
+            }
+        }
+
+        if (written != getPartSize()) {
+            throw new AmazonClientException("Unable to download part " + partIndex
+                    + ": expected " + getPartSize() + " bytes but received " + written);
+        }
+        return written;
+    }
+
+    /**
+     * Gets the bytes of the part that haven't been written to the file yet.
+     */
+    private S3Object getRest() {
+        GetObjectRequest rest = request;
+        if (written > 0) {
+            rest = (GetObjectRequest) request.clone();
+            rest.setRange(request.getRange()[0] + written, request.getRange()[1]);
+        }
+        final S3Object object = s3.getObject(rest);
+        if (object == null) {
+            // The only constraint of a part request is the ETag of the object
+            throw new AmazonClientException("The object " + request.getKey() + " (bucket "
+                    + request.getBucketName() + ") was modified during the download");
+        }
+        ThrottledInputStream.throttle(object, bandwidthLimiter);
+        return object;
+    }
+
+    /**
+     * Writes the content of the object to the file after the bytes already
+     * written, counting them as they are written.
+     */
+    private void writeContent(S3Object object) throws IOException {
+        s3Object = object;
+        final S3ObjectInputStream content = object.getObjectContent();
+        RandomAccessFile output = null;
+        try {
+            output = new RandomAccessFile(file, "rw");
+            final FileChannel channel = output.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            int bytesRead;
+            while ((bytesRead = content.read(buffer.array())) > -1) {
+                buffer.clear();
+                buffer.limit(bytesRead);
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer, position + written);
+                }
+            }
+        } catch (final IOException e) {
+            content.abort();
+            throw new AmazonClientException(
+                    "Unable to store object contents to disk: " + e.getMessage(), e);
+        } finally {
+            s3Object = null;
+            if (output != null) {
+                output.close();
+            }
+            content.close();
+        }
+        if (written < getPartSize()) {
+            throw new AmazonClientException("The content of part " + partIndex
+                    + " ended after " + written + " of " + getPartSize() + " bytes");
+        }
+    }
+
+    /**
+     * Aborts the download of the part if it is in progress.
+     */
+    public void abort() {
+        isAborted = true;
+        final S3Object object = s3Object;
+        if (object != null) {
+            try {
+                object.getObjectContent().abort();
+            } catch (final AbortedException e) {
+                // Thrown if the calling thread is interrupted; the stream is
+                // closed either way
+            }
+        }
+    }
+}
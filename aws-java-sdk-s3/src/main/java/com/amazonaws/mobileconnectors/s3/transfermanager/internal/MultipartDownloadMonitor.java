@@ -0,0 +1,277 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressListenerCallbackExecutor;
+import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer.TransferState;
+import com.amazonaws.mobileconnectors.s3.transfermanager.TransferManager;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Manages a download that is split into byte ranges. Each part is fetched by
+ * its own task on the transfer manager's thread pool and written at its own
+ * offset in the destination file. Nothing waits on the parts: the task that
+ * finishes the last part, or the first one to fail, completes the future
+ * returned by {@link #getFuture()}, so a download never holds a thread of the
+ * pool that its own parts may be queued behind.
+ */
+public class MultipartDownloadMonitor implements TransferMonitor {
+
+    private final DownloadImpl download;
+    private final File file;
+    private final long contentLength;
+    private final boolean resumeExistingDownload;
+    private final ProgressListenerCallbackExecutor progressListenerChainCallbackExecutor;
+
+    /** Parts that are yet to be downloaded. */
+    private final List<DownloadPartCallable> parts = new ArrayList<DownloadPartCallable>();
+    private final List<Future<Long>> futures = new ArrayList<Future<Long>>();
+
+    /** Indexes of the parts that have been written to the file. */
+    private final SortedSet<Integer> completedParts = new TreeSet<Integer>();
+
+    private final AtomicInteger remainingParts = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private final FutureTask<Boolean> completion;
+
+    /**
+     * Splits a download into parts.
+     *
+     * @param s3 The client to download the parts with.
+     * @param download The download being processed.
+     * @param getObjectRequest The original request, whose progress listener
+     *            is notified of the progress of every part.
+     * @param file The destination file.
+     * @param eTag The ETag of the object; every part must match it.
+     * @param startingByte The first byte of the object to download.
+     * @param lastByte The last byte of the object to download.
+     * @param partSize The size of each part but the last one.
+     * @param completedParts Indexes of the parts that are already in the file
+     *            of a resumed download.
+     * @param resumeExistingDownload True if the file holds the parts of a
+     *            resumed download.
+     */
+    public MultipartDownloadMonitor(AmazonS3 s3, DownloadImpl download,
+            GetObjectRequest getObjectRequest, File file, String eTag, long startingByte,
+            long lastByte, long partSize, int[] completedParts,
+            boolean resumeExistingDownload) {
+        this.download = download;
+        this.file = file;
+        this.contentLength = lastByte - startingByte + 1;
+        this.resumeExistingDownload = resumeExistingDownload && file.exists();
+        this.progressListenerChainCallbackExecutor = ProgressListenerCallbackExecutor
+                .wrapListener(getObjectRequest.getGeneralProgressListener());
+
+        if (this.resumeExistingDownload && completedParts != null) {
+            for (final int part : completedParts) {
+                this.completedParts.add(part);
+            }
+        }
+
+        int partIndex = 0;
+        for (long start = startingByte; start <= lastByte; start += partSize, partIndex++) {
+            if (this.completedParts.contains(partIndex)) {
+                continue;
+            }
+            final GetObjectRequest partRequest = new GetObjectRequest(
+                    getObjectRequest.getBucketName(), getObjectRequest.getKey(),
+                    getObjectRequest.getVersionId());
+            partRequest.setRange(start, Math.min(start + partSize, lastByte + 1) - 1);
+            partRequest.setResponseHeaders(getObjectRequest.getResponseHeaders());
+            partRequest.setRequesterPays(getObjectRequest.isRequesterPays());
+            partRequest.setSSECustomerKey(getObjectRequest.getSSECustomerKey());
+            partRequest.setGeneralProgressListener(getObjectRequest.getGeneralProgressListener());
+            if (eTag != null) {
+                partRequest.withMatchingETagConstraint(eTag);
+            }
+            TransferManager.appendMultipartUserAgent(partRequest);
+            parts.add(new DownloadPartCallable(s3, partRequest, file, start - startingByte,
+                    partIndex, download.getBandwidthLimiter()));
+        }
+        remainingParts.set(parts.size());
+
+        completion = new FutureTask<Boolean>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return complete();
+            }
+        }) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                final boolean canceled = super.cancel(mayInterruptIfRunning);
+                cancelParts();
+                return canceled;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of bytes of a resumed download that are already in
+     * the file.
+     */
+    public long getCompletedBytes() {
+        long remaining = 0;
+        for (final DownloadPartCallable part : parts) {
+            remaining += part.getPartSize();
+        }
+        return contentLength - remaining;
+    }
+
+    /**
+     * Returns the indexes of the parts that have been written to the file.
+     */
+    public synchronized int[] getCompletedParts() {
+        final int[] indexes = new int[completedParts.size()];
+        int i = 0;
+        for (final Integer part : completedParts) {
+            indexes[i++] = part;
+        }
+        return indexes;
+    }
+
+    /**
+     * Sizes the destination file and submits the parts to the thread pool.
+     *
+     * @param threadPool The thread pool to download the parts in.
+     */
+    public void start(ExecutorService threadPool) {
+        final File parentDirectory = file.getParentFile();
+        if (parentDirectory != null && !parentDirectory.exists()) {
+            parentDirectory.mkdirs();
+        }
+        try {
+            final RandomAccessFile output = new RandomAccessFile(file, "rw");
+            try {
+                if (!resumeExistingDownload || output.length() < contentLength) {
+                    output.setLength(contentLength);
+                }
+            } finally {
+                output.close();
+            }
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to create file "
+                    + file.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+
+        download.setState(TransferState.InProgress);
+        if (parts.isEmpty()) {
+            completion.run();
+            return;
+        }
+        synchronized (this) {
+            for (final DownloadPartCallable part : parts) {
+                futures.add(threadPool.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return downloadPart(part);
+                    }
+                }));
+            }
+        }
+    }
+
+    private Long downloadPart(DownloadPartCallable part) throws Exception {
+        try {
+            fireProgressEvent(ProgressEvent.PART_STARTED_EVENT_CODE);
+            final Long written = part.call();
+            synchronized (this) {
+                completedParts.add(part.getPartIndex());
+            }
+            fireProgressEvent(ProgressEvent.PART_COMPLETED_EVENT_CODE);
+            if (remainingParts.decrementAndGet() == 0) {
+                completion.run();
+            }
+            return written;
+        } catch (final Throwable t) {
+            fireProgressEvent(ProgressEvent.PART_FAILED_EVENT_CODE);
+            if (failure.compareAndSet(null, t)) {
+                cancelParts();
+                completion.run();
+            }
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            } else {
+                throw (Error) t;
+            }
+        }
+    }
+
+    /**
+     * Called once, by the task that completes the download.
+     */
+    private Boolean complete() throws Exception {
+        final Throwable t = failure.get();
+        if (t == null) {
+            download.setState(TransferState.Completed);
+            return true;
+        }
+        // Downloads aren't allowed to move from canceled to failed
+        if (download.getState() != TransferState.Canceled) {
+            download.setState(TransferState.Failed);
+        }
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        } else {
+            throw (Error) t;
+        }
+    }
+
+    private void cancelParts() {
+        for (final DownloadPartCallable part : parts) {
+            part.abort();
+        }
+        synchronized (this) {
+            for (final Future<Long> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void fireProgressEvent(final int eventType) {
+        if (progressListenerChainCallbackExecutor == null)
+            return;
+        final ProgressEvent event = new ProgressEvent(0);
+        event.setEventCode(eventType);
+        progressListenerChainCallbackExecutor.progressChanged(event);
+    }
+
+    @Override
+    public Future<Boolean> getFuture() {
+        return completion;
+    }
+
+    @Override
+    public boolean isDone() {
+        return download.isDone();
+    }
+}
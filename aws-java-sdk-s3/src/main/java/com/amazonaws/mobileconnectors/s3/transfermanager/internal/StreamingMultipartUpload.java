@@ -0,0 +1,444 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import static com.amazonaws.services.s3.internal.Constants.MAXIMUM_UPLOAD_PARTS;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.mobileconnectors.s3.transfermanager.TransferManager;
+import com.amazonaws.mobileconnectors.s3.transfermanager.model.UploadResult;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.internal.ThrottledInputStream;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.StorageClass;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.util.BandwidthLimiter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Uploads data of unknown length through a fixed number of part-size buffers.
+ * Each buffer that is filled is uploaded as a part on the transfer manager's
+ * thread pool while the next one is filled, and is reused once its part is
+ * uploaded, so an upload never holds more than
+ * <code>bufferCount * partSize</code> bytes in memory however long the data
+ * is. The multipart upload is only initiated once the first buffer is full;
+ * data that fits in a single buffer is sent with one put request.
+ * <p>
+ * The buffers are filled by a single producer thread, either from an input
+ * stream by {@link #upload(InputStream)} or by calling
+ * {@link #nextBuffer()}, {@link #uploadPart(byte[], int)} and
+ * {@link #complete(byte[], int)} directly. When every buffer is in flight the
+ * producer waits for the oldest part, and runs it itself if the thread pool
+ * hasn't started it yet, so an upload submitted from a thread of the pool
+ * can't wait on parts queued behind it.
+ */
+public class StreamingMultipartUpload {
+    private static final Log log = LogFactory.getLog(StreamingMultipartUpload.class);
+
+    private final AmazonS3 s3;
+    private final ExecutorService threadPool;
+    private final PutObjectRequest putObjectRequest;
+    private final int partSize;
+    private final int bufferCount;
+
+    /** Buffers whose part has been uploaded, ready to be filled again. */
+    private final BlockingQueue<byte[]> freeBuffers = new LinkedBlockingQueue<byte[]>();
+    private int allocatedBuffers;
+
+    /** Parts being uploaded, in part number order. */
+    private final LinkedList<FutureTask<PartETag>> inFlight = new LinkedList<FutureTask<PartETag>>();
+    private final List<PartETag> partETags = new ArrayList<PartETag>();
+    private int nextPartNumber = 1;
+
+    private volatile BandwidthLimiter bandwidthLimiter;
+    private volatile String uploadId;
+    private volatile boolean aborted;
+    private final AtomicBoolean uploadAborted = new AtomicBoolean();
+
+    /**
+     * @param s3 The client to upload the parts with.
+     * @param threadPool The thread pool to upload the parts in.
+     * @param putObjectRequest The original request, whose bucket, key,
+     *            metadata and progress listener apply to the upload.
+     * @param partSize The size of each part but the last one.
+     * @param bufferCount The maximum number of buffers, and so of parts held
+     *            in memory at once.
+     */
+    public StreamingMultipartUpload(AmazonS3 s3, ExecutorService threadPool,
+            PutObjectRequest putObjectRequest, int partSize, int bufferCount) {
+        if (partSize <= 0) {
+            throw new IllegalArgumentException("The part size must be positive");
+        }
+        if (bufferCount <= 0) {
+            throw new IllegalArgumentException("The buffer count must be positive");
+        }
+        this.s3 = s3;
+        this.threadPool = threadPool;
+        this.putObjectRequest = putObjectRequest;
+        this.partSize = partSize;
+        this.bufferCount = bufferCount;
+    }
+
+    /**
+     * Returns the id of the multipart upload, or null if no part has been
+     * uploaded yet.
+     */
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    /**
+     * Sets the limiter that the parts are read through while they're sent.
+     *
+     * @param bandwidthLimiter The limiter, or null for no limit.
+     */
+    public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    /**
+     * Returns true if the data didn't fit in a single buffer, and is being
+     * uploaded in parts.
+     */
+    public boolean isMultipartUpload() {
+        return uploadId != null;
+    }
+
+    /**
+     * Returns the size of each part but the last one.
+     */
+    public int getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Reads the given stream to its end, uploads it and returns the result.
+     * The upload is aborted if it fails.
+     *
+     * @param input The data to upload.
+     * @return The result of the upload.
+     */
+    public UploadResult upload(InputStream input) throws Exception {
+        try {
+            byte[] buffer = nextBuffer();
+            int length = fill(input, buffer);
+            while (length == buffer.length) {
+                uploadPart(buffer, length);
+                buffer = nextBuffer();
+                length = fill(input, buffer);
+            }
+            return complete(buffer, length);
+        } catch (final Exception e) {
+            abort();
+            throw e;
+        }
+    }
+
+    private static int fill(InputStream input, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            final int bytesRead = input.read(buffer, length, buffer.length - length);
+            if (bytesRead == -1) {
+                break;
+            }
+            length += bytesRead;
+        }
+        return length;
+    }
+
+    /**
+     * Returns an empty buffer of the part size. A new buffer is allocated
+     * until there are as many as the buffer count; after that this waits
+     * for the oldest part being uploaded to release its buffer.
+     *
+     * @return A buffer to fill with the next part.
+     * @throws AmazonClientException If a part failed to upload.
+     */
+    public byte[] nextBuffer() throws InterruptedException {
+        while (true) {
+            checkNotAborted();
+            collectCompletedParts();
+            final byte[] buffer = freeBuffers.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+            if (allocatedBuffers < bufferCount) {
+                allocatedBuffers++;
+                return new byte[partSize];
+            }
+            final FutureTask<PartETag> oldest;
+            synchronized (inFlight) {
+                oldest = inFlight.poll();
+            }
+            if (oldest == null) {
+                throw new IllegalStateException("Every buffer is held by the caller");
+            }
+            partETags.add(waitForPart(oldest));
+        }
+    }
+
+    /**
+     * Uploads the first bytes of the given buffer as the next part, in the
+     * background. The multipart upload is initiated with the first part. The
+     * buffer must not be modified until it is returned by
+     * {@link #nextBuffer()} again.
+     *
+     * @param buffer A buffer returned by {@link #nextBuffer()}.
+     * @param length The number of bytes of the part; every part but the last
+     *            one must fill its buffer.
+     */
+    public void uploadPart(final byte[] buffer, int length) {
+        checkNotAborted();
+        if (nextPartNumber > MAXIMUM_UPLOAD_PARTS) {
+            throw new AmazonClientException("Unable to upload more than "
+                    + MAXIMUM_UPLOAD_PARTS + " parts of " + partSize
+                    + " bytes; increase the minimum upload part size to upload larger streams");
+        }
+        if (uploadId == null) {
+            uploadId = initiateMultipartUpload();
+            // Abort the upload if it was canceled while being initiated
+            checkNotAborted();
+        }
+
+        final UploadPartRequest request = new UploadPartRequest()
+                .withBucketName(putObjectRequest.getBucketName())
+                .withKey(putObjectRequest.getKey())
+                .withUploadId(uploadId)
+                .withInputStream(new ByteArrayInputStream(buffer, 0, length))
+                .withPartNumber(nextPartNumber++)
+                .withPartSize(length);
+        if (putObjectRequest.getSSECustomerKey() != null) {
+            request.setSSECustomerKey(putObjectRequest.getSSECustomerKey());
+        }
+        request.setGeneralProgressListener(putObjectRequest.getGeneralProgressListener());
+        TransferManager.appendMultipartUserAgent(request);
+
+        final FutureTask<PartETag> part = new FutureTask<PartETag>(new Callable<PartETag>() {
+            @Override
+            public PartETag call() throws Exception {
+                try {
+                    return s3.uploadPart(ThrottledInputStream.throttle(request,
+                            bandwidthLimiter)).getPartETag();
+                } finally {
+                    freeBuffers.add(buffer);
+                }
+            }
+        });
+        synchronized (inFlight) {
+            inFlight.add(part);
+        }
+        try {
+            threadPool.execute(part);
+        } catch (final RejectedExecutionException e) {
+            throw new CancellationException("TransferManager has been shutdown");
+        }
+    }
+
+    /**
+     * Uploads the first bytes of the given buffer as the last of the data,
+     * waits for every part and completes the upload. If no part was uploaded
+     * before, the data is sent with a single put request instead.
+     *
+     * @param buffer A buffer returned by {@link #nextBuffer()}.
+     * @param length The number of bytes left in the data.
+     * @return The result of the upload.
+     */
+    public UploadResult complete(byte[] buffer, int length) throws InterruptedException {
+        checkNotAborted();
+        if (uploadId == null) {
+            return putObject(buffer, length);
+        }
+
+        if (length > 0) {
+            uploadPart(buffer, length);
+        } else {
+            freeBuffers.add(buffer);
+        }
+        while (true) {
+            final FutureTask<PartETag> part;
+            synchronized (inFlight) {
+                part = inFlight.poll();
+            }
+            if (part == null) {
+                break;
+            }
+            partETags.add(waitForPart(part));
+        }
+        checkNotAborted();
+
+        final CompleteMultipartUploadResult completeMultipartUploadResult = s3
+                .completeMultipartUpload(new CompleteMultipartUploadRequest(
+                        putObjectRequest.getBucketName(), putObjectRequest.getKey(), uploadId,
+                        partETags));
+
+        final UploadResult uploadResult = new UploadResult();
+        uploadResult.setBucketName(completeMultipartUploadResult.getBucketName());
+        uploadResult.setKey(completeMultipartUploadResult.getKey());
+        uploadResult.setETag(completeMultipartUploadResult.getETag());
+        uploadResult.setVersionId(completeMultipartUploadResult.getVersionId());
+        return uploadResult;
+    }
+
+    /**
+     * Cancels the parts being uploaded and aborts the multipart upload, if
+     * one was initiated. It's safe to call this more than once, and from any
+     * thread.
+     */
+    public void abort() {
+        aborted = true;
+        synchronized (inFlight) {
+            for (final FutureTask<PartETag> part : inFlight) {
+                part.cancel(true);
+            }
+            inFlight.clear();
+        }
+        final String id = uploadId;
+        if (id != null && uploadAborted.compareAndSet(false, true)) {
+            try {
+                s3.abortMultipartUpload(new AbortMultipartUploadRequest(
+                        putObjectRequest.getBucketName(), putObjectRequest.getKey(), id));
+            } catch (final Exception e) {
+                log.info("Unable to abort multipart upload, you may need to manually remove "
+                        + "uploaded parts: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void checkNotAborted() {
+        if (aborted) {
+            abort();
+            throw new CancellationException("The upload of " + putObjectRequest.getKey()
+                    + " was aborted");
+        }
+    }
+
+    /**
+     * Collects the ETags of the oldest parts that are done, so that a failed
+     * part stops the upload before more data is read.
+     */
+    private void collectCompletedParts() throws InterruptedException {
+        while (true) {
+            final FutureTask<PartETag> part;
+            synchronized (inFlight) {
+                if (inFlight.isEmpty() || !inFlight.getFirst().isDone()) {
+                    return;
+                }
+                part = inFlight.removeFirst();
+            }
+            partETags.add(waitForPart(part));
+        }
+    }
+
+    /**
+     * Waits for the given part, running it in this thread if the thread pool
+     * hasn't started it yet, and returns its ETag.
+     */
+    private PartETag waitForPart(FutureTask<PartETag> part) throws InterruptedException {
+        part.run();
+        try {
+            return part.get();
+        } catch (final CancellationException e) {
+            checkNotAborted();
+            throw e;
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new AmazonClientException("Unable to upload part: " + cause.getMessage(),
+                    cause);
+        }
+    }
+
+    private String initiateMultipartUpload() {
+        final InitiateMultipartUploadRequest initiateMultipartUploadRequest =
+                new InitiateMultipartUploadRequest(putObjectRequest.getBucketName(),
+                        putObjectRequest.getKey())
+                        .withCannedACL(putObjectRequest.getCannedAcl())
+                        .withObjectMetadata(putObjectRequest.getMetadata());
+        TransferManager.appendMultipartUserAgent(initiateMultipartUploadRequest);
+
+        if (putObjectRequest.getStorageClass() != null) {
+            initiateMultipartUploadRequest.setStorageClass(
+                    StorageClass.fromValue(putObjectRequest.getStorageClass()));
+        }
+        if (putObjectRequest.getRedirectLocation() != null) {
+            initiateMultipartUploadRequest.setRedirectLocation(putObjectRequest
+                    .getRedirectLocation());
+        }
+        if (putObjectRequest.getSSECustomerKey() != null) {
+            initiateMultipartUploadRequest.setSSECustomerKey(putObjectRequest.getSSECustomerKey());
+        }
+
+        final String id = s3.initiateMultipartUpload(initiateMultipartUploadRequest)
+                .getUploadId();
+        log.debug("Initiated new multipart upload for a stream: " + id);
+        return id;
+    }
+
+    /**
+     * Sends data that fits in a single buffer with one put request, now that
+     * its length is known.
+     */
+    private UploadResult putObject(byte[] buffer, int length) {
+        final PutObjectRequest request = putObjectRequest.clone();
+        final ObjectMetadata metadata = request.getMetadata() == null ? new ObjectMetadata()
+                : request.getMetadata().clone();
+        metadata.setContentLength(length);
+        request.setMetadata(metadata);
+        request.setInputStream(new ByteArrayInputStream(buffer, 0, length));
+
+        try {
+            final PutObjectResult putObjectResult = s3.putObject(ThrottledInputStream
+                    .throttle(request, bandwidthLimiter));
+            final UploadResult uploadResult = new UploadResult();
+            uploadResult.setBucketName(putObjectRequest.getBucketName());
+            uploadResult.setKey(putObjectRequest.getKey());
+            uploadResult.setETag(putObjectResult.getETag());
+            uploadResult.setVersionId(putObjectResult.getVersionId());
+            return uploadResult;
+        } finally {
+            freeBuffers.add(buffer);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import com.amazonaws.util.StringUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The state of the files of a directory synced with a key prefix, kept in a
+ * local file between syncs. Each entry holds the size and modification time
+ * of a file when it was last synced, and the ETag of its object.
+ * <p>
+ * The manifest is a text file whose first line names the bucket and key
+ * prefix, followed by a line per file. It's written to a temporary file that
+ * replaces it, so a sync interrupted while saving it leaves the previous one.
+ */
+public class SyncManifest {
+    private static final Log log = LogFactory.getLog(SyncManifest.class);
+
+    private static final String FORMAT = "s3-sync-manifest-1";
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * The state of a synced file.
+     */
+    public static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String eTag;
+
+        /**
+         * @param size The size of the file.
+         * @param lastModified The modification time of the file.
+         * @param eTag The ETag of the object.
+         */
+        public Entry(long size, long lastModified, String eTag) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.eTag = eTag;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+    }
+
+    private SyncManifest() {
+    }
+
+    /**
+     * Reads the entries of a manifest, by path relative to the directory.
+     *
+     * @param file The manifest file.
+     * @param bucketName The bucket synced with.
+     * @param keyPrefix The key prefix synced with.
+     * @return The entries, or null if the manifest doesn't exist, can't be
+     *         read, or belongs to another bucket or key prefix.
+     */
+    public static Map<String, Entry> load(File file, String bucketName, String keyPrefix) {
+        if (!file.isFile()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                    StringUtils.UTF8));
+            if (!header(bucketName, keyPrefix).equals(reader.readLine())) {
+                log.info("Ignoring the sync manifest " + file
+                        + ", which belongs to another bucket or key prefix");
+                return null;
+            }
+            final Map<String, Entry> entries = new HashMap<String, Entry>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(String.valueOf(SEPARATOR), 4);
+                if (fields.length != 4) {
+                    return corrupt(file);
+                }
+                try {
+                    entries.put(fields[3], new Entry(Long.parseLong(fields[0]),
+                            Long.parseLong(fields[1]), fields[2]));
+                } catch (final NumberFormatException e) {
+                    return corrupt(file);
+                }
+            }
+            return entries;
+        } catch (final IOException e) {
+            log.warn("Unable to read the sync manifest " + file + ": " + e.getMessage(), e);
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    log.debug("Unable to close " + file, e);
+                }
+            }
+        }
+    }
+
+    private static Map<String, Entry> corrupt(File file) {
+        log.warn("Ignoring the corrupt sync manifest " + file);
+        return null;
+    }
+
+    /**
+     * Replaces a manifest with the given entries.
+     *
+     * @param file The manifest file.
+     * @param bucketName The bucket synced with.
+     * @param keyPrefix The key prefix synced with.
+     * @param entries The entries, by path relative to the directory.
+     * @throws IOException If the manifest can't be written.
+     */
+    public static void save(File file, String bucketName, String keyPrefix,
+            Map<String, Entry> entries) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create the directory of " + file);
+        }
+        final File temporary = new File(file.getPath() + ".tmp");
+        final FileOutputStream out = new FileOutputStream(temporary);
+        try {
+            final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out,
+                    StringUtils.UTF8));
+            writer.write(header(bucketName, keyPrefix));
+            writer.write('\n');
+            for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+                final String path = entry.getKey();
+                if (path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+                    // Such files are compared again on the next sync
+                    continue;
+                }
+                final Entry state = entry.getValue();
+                writer.write(state.getSize() + "" + SEPARATOR + state.getLastModified()
+                        + SEPARATOR + state.getETag() + SEPARATOR + path);
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            // Renaming over an existing file fails on some platforms
+            if (!file.delete() || !temporary.renameTo(file)) {
+                throw new IOException("Unable to replace the sync manifest " + file);
+            }
+        }
+    }
+
+    private static String header(String bucketName, String keyPrefix) {
+        return FORMAT + SEPARATOR + bucketName + SEPARATOR + keyPrefix;
+    }
+}
@@ -20,7 +20,10 @@ import static com.amazonaws.services.s3.internal.Constants.MAXIMUM_UPLOAD_PARTS;
 import com.amazonaws.mobileconnectors.s3.transfermanager.PauseStatus;
 import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer.TransferState;
 import com.amazonaws.mobileconnectors.s3.transfermanager.TransferManagerConfiguration;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3EncryptionClient;
 import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 
 import java.io.File;
@@ -33,6 +36,9 @@ import java.util.concurrent.ThreadPoolExecutor;
  */
 public class TransferManagerUtils {
 
+    /** Maximum number of byte ranges a parallel download is split into. */
+    private static final int MAXIMUM_DOWNLOAD_PARTS = MAXIMUM_UPLOAD_PARTS;
+
     /**
      * Returns a new thread pool configured with the default settings.
      *
@@ -76,6 +82,46 @@ public class TransferManagerUtils {
         return (getRequestFile(putObjectRequest) != null);
     }
 
+    /**
+     * Returns true if the parts of the specified upload request can be
+     * encrypted independently of each other and uploaded in parallel, which
+     * is the case for a file uploaded with an encryption client in
+     * authenticated encryption mode.
+     *
+     * @param putObjectRequest The request to check.
+     * @param s3 The client the request is uploaded with.
+     * @return True if the parts of the request can be encrypted and uploaded
+     *         in parallel.
+     */
+    public static boolean isEncryptedUploadParallelizable(
+            final PutObjectRequest putObjectRequest, final AmazonS3 s3) {
+        return s3 instanceof AmazonS3EncryptionClient
+                && ((AmazonS3EncryptionClient) s3).isParallelPartUploadSupported()
+                && getRequestFile(putObjectRequest) != null;
+    }
+
+    /**
+     * Returns true if the specified upload request is a stream of unknown
+     * length, which is read part by part into buffers instead of being held
+     * in memory whole before it is sent.
+     *
+     * @param putObjectRequest The request to check.
+     * @param isUsingEncryption True if the upload is an encrypted upload,
+     *            otherwise false.
+     * @return True if the request should be uploaded as a stream of
+     *         buffered parts.
+     */
+    public static boolean isUploadStreamable(final PutObjectRequest putObjectRequest,
+            final boolean isUsingEncryption) {
+        // Encrypted parts are uploaded in series by the encryption client
+        if (isUsingEncryption)
+            return false;
+
+        return getRequestFile(putObjectRequest) == null
+                && putObjectRequest.getInputStream() != null
+                && getContentLength(putObjectRequest) < 0;
+    }
+
     /**
      * Returns the size of the data in this request, otherwise -1 if the content
      * length is unknown.
@@ -164,6 +210,52 @@ public class TransferManagerUtils {
                 configuration.getMultipartCopyPartSize());
     }
 
+    /**
+     * Returns true if the specified download request can be split into byte
+     * ranges that are fetched in parallel.
+     *
+     * @param getObjectRequest The request to check.
+     * @param isUsingEncryption True if the download is decrypted on the client
+     *            side, otherwise false.
+     * @return True if this request can use parallel ranged downloads.
+     */
+    public static boolean isDownloadParallelizable(final GetObjectRequest getObjectRequest,
+            final boolean isUsingEncryption) {
+        // Decrypting a range of an object depends on the content that
+        // precedes it, so encrypted objects are downloaded as one stream
+        if (isUsingEncryption)
+            return false;
+
+        // A range request that fails a constraint has no content, which
+        // can't be told apart from a single stream download being skipped
+        return getObjectRequest.getPartNumber() == null
+                && getObjectRequest.getMatchingETagConstraints().isEmpty()
+                && getObjectRequest.getNonmatchingETagConstraints().isEmpty()
+                && getObjectRequest.getModifiedSinceConstraint() == null
+                && getObjectRequest.getUnmodifiedSinceConstraint() == null;
+    }
+
+    /**
+     * Returns the optimal part size, in bytes, of each byte range of a
+     * parallel download, or -1 if the download should use a single connection.
+     *
+     * @param contentLength The number of bytes to download.
+     * @param configuration Configuration values to use when calculating size.
+     * @return The optimal part size, in bytes, or -1.
+     */
+    public static long calculateOptimalPartSizeForDownload(long contentLength,
+            TransferManagerConfiguration configuration) {
+        if (contentLength <= configuration.getMultipartDownloadThreshold()) {
+            return -1;
+        }
+        double optimalPartSize = (double) contentLength
+                / (double) MAXIMUM_DOWNLOAD_PARTS;
+        // round up so we don't split the download into more parts than that
+        optimalPartSize = Math.ceil(optimalPartSize);
+        return (long) Math.max(optimalPartSize,
+                configuration.getMinimumDownloadPartSize());
+    }
+
     /**
      * Determines the pause status based on the current state of transfer.
      */
@@ -26,6 +26,7 @@ import com.amazonaws.mobileconnectors.s3.transfermanager.TransferProgress;
 import com.amazonaws.mobileconnectors.s3.transfermanager.model.UploadResult;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3EncryptionClient;
+import com.amazonaws.services.s3.internal.ThrottledInputStream;
 import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
@@ -44,15 +45,20 @@ import com.amazonaws.services.s3.model.UploadPartRequest;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class UploadCallable implements Callable<UploadResult> {
     private final AmazonS3 s3;
@@ -75,11 +81,33 @@ public class UploadCallable implements Callable<UploadResult> {
 
     private PersistableUpload persistableUpload;
 
+    /** Tunes the concurrency and part size of parallel uploads, or null. */
+    private final AdaptiveUploadController adaptiveUploadController;
+
+    /** Parts of an adaptively tuned or encrypted parallel upload that are in flight. */
+    private final List<Future<PartETag>> partsInFlight = new ArrayList<Future<PartETag>>();
+
+    /** The checkpoints of the parts of a resumable upload, or null. */
+    private volatile UploadCheckpointJournal checkpointJournal;
+
+    /** The upload of a stream of unknown length, read into part buffers. */
+    private volatile StreamingMultipartUpload streamingUpload;
+
     public UploadCallable(TransferManager transferManager,
             ExecutorService threadPool, UploadImpl upload,
             PutObjectRequest putObjectRequest,
             ProgressListenerChain progressListenerChain, String uploadId,
             TransferProgress transferProgress) {
+        this(transferManager, threadPool, upload, putObjectRequest, progressListenerChain,
+                uploadId, transferProgress, null);
+    }
+
+    public UploadCallable(TransferManager transferManager,
+            ExecutorService threadPool, UploadImpl upload,
+            PutObjectRequest putObjectRequest,
+            ProgressListenerChain progressListenerChain, String uploadId,
+            TransferProgress transferProgress,
+            AdaptiveUploadController adaptiveUploadController) {
         this.s3 = transferManager.getAmazonS3Client();
         this.configuration = transferManager.getConfiguration();
 
@@ -89,6 +117,7 @@ public class UploadCallable implements Callable<UploadResult> {
         this.upload = upload;
         this.multipartUploadId = uploadId;
         this.transferProgress = transferProgress;
+        this.adaptiveUploadController = adaptiveUploadController;
     }
 
     List<Future<PartETag>> getFutures() {
@@ -113,6 +142,10 @@ public class UploadCallable implements Callable<UploadResult> {
      * @return True if this UploadCallable is processing a multipart upload.
      */
     public boolean isMultipartUpload() {
+        final StreamingMultipartUpload streaming = streamingUpload;
+        if (streaming != null) {
+            return streaming.isMultipartUpload();
+        }
         return TransferManagerUtils.shouldUseMultipartUpload(putObjectRequest, configuration);
     }
 
@@ -122,6 +155,9 @@ public class UploadCallable implements Callable<UploadResult> {
         if (isMultipartUpload()) {
             fireProgressEvent(ProgressEvent.STARTED_EVENT_CODE);
             return uploadInParts();
+        } else if (TransferManagerUtils.isUploadStreamable(putObjectRequest,
+                s3 instanceof AmazonS3EncryptionClient)) {
+            return uploadFromStream();
         } else {
             return uploadInOneChunk();
         }
@@ -131,7 +167,8 @@ public class UploadCallable implements Callable<UploadResult> {
      * Uploads the given request in a single chunk and returns the result.
      */
     private UploadResult uploadInOneChunk() {
-        PutObjectResult putObjectResult = s3.putObject(putObjectRequest);
+        PutObjectResult putObjectResult = s3.putObject(ThrottledInputStream.throttle(
+                putObjectRequest, upload.getBandwidthLimiter()));
 
         UploadResult uploadResult = new UploadResult();
         uploadResult.setBucketName(putObjectRequest.getBucketName());
@@ -141,6 +178,30 @@ public class UploadCallable implements Callable<UploadResult> {
         return uploadResult;
     }
 
+    /**
+     * Uploads a stream of unknown length through a bounded number of part
+     * buffers, in parts if it doesn't fit in one, and returns the result.
+     */
+    private UploadResult uploadFromStream() throws Exception {
+        final long partSize = Math.min(configuration.getMinimumUploadPartSize(),
+                Integer.MAX_VALUE);
+        streamingUpload = new StreamingMultipartUpload(s3, threadPool, putObjectRequest,
+                (int) partSize, configuration.getStreamingUploadBufferCount());
+        streamingUpload.setBandwidthLimiter(upload.getBandwidthLimiter());
+        try {
+            return streamingUpload.upload(putObjectRequest.getInputStream());
+        } catch (Exception e) {
+            fireProgressEvent(ProgressEvent.FAILED_EVENT_CODE);
+            throw e;
+        } finally {
+            try {
+                putObjectRequest.getInputStream().close();
+            } catch (Exception e) {
+                log.warn("Unable to cleanly close input stream: " + e.getMessage(), e);
+            }
+        }
+    }
+
     /**
      * Captures the state of the upload.
      */
@@ -176,18 +237,31 @@ public class UploadCallable implements Callable<UploadResult> {
         boolean isUsingEncryption = s3 instanceof AmazonS3EncryptionClient;
         long optimalPartSize = getOptimalPartSize(isUsingEncryption);
 
+        final boolean isResuming = multipartUploadId != null;
+        // The parts of a resumed upload have no encryption context to be
+        // encrypted in parallel with
+        final boolean isEncryptingInParallel = !isResuming
+                && TransferManagerUtils.isEncryptedUploadParallelizable(putObjectRequest, s3);
         if (multipartUploadId == null) {
             multipartUploadId = initiateMultipartUpload(putObjectRequest,
-                    isUsingEncryption);
+                    isUsingEncryption, isEncryptingInParallel ? optimalPartSize : 0);
         }
 
         try {
             UploadPartRequestFactory requestFactory = new UploadPartRequestFactory(
                     putObjectRequest, multipartUploadId, optimalPartSize);
 
-            if (TransferManagerUtils.isUploadParallelizable(putObjectRequest, isUsingEncryption)) {
+            if (isEncryptingInParallel) {
+                return uploadEncryptedPartsInParallel(requestFactory);
+            } else if (TransferManagerUtils.isUploadParallelizable(putObjectRequest,
+                    isUsingEncryption) && adaptiveUploadController != null && !isResuming) {
+                // Parts of varying size can't be resumed, so no state is captured
+                return uploadPartsAdaptively(requestFactory);
+            } else if (TransferManagerUtils.isUploadParallelizable(putObjectRequest,
+                    isUsingEncryption)) {
                 captureUploadStateIfPossible();
-                uploadPartsInParallel(requestFactory, multipartUploadId);
+                uploadPartsInParallel(requestFactory, multipartUploadId, optimalPartSize,
+                        isResuming);
                 return null;
             } else {
                 return uploadPartsInSeries(requestFactory);
@@ -213,6 +287,16 @@ public class UploadCallable implements Callable<UploadResult> {
      * operation for the given multi-part upload.
      */
     void performAbortMultipartUpload() {
+        final StreamingMultipartUpload streaming = streamingUpload;
+        if (streaming != null) {
+            streaming.abort();
+            return;
+        }
+        cancelPartsInFlight();
+        final UploadCheckpointJournal journal = checkpointJournal;
+        if (journal != null) {
+            journal.delete();
+        }
         try {
             if (multipartUploadId != null)
                 s3.abortMultipartUpload(new AbortMultipartUploadRequest(
@@ -261,7 +345,8 @@ public class UploadCallable implements Callable<UploadResult> {
                     inputStream.mark((int) uploadPartRequest.getPartSize());
                 }
             }
-            partETags.add(s3.uploadPart(uploadPartRequest).getPartETag());
+            partETags.add(s3.uploadPart(ThrottledInputStream.throttle(uploadPartRequest,
+                    upload.getBandwidthLimiter())).getPartETag());
         }
 
         CompleteMultipartUploadResult completeMultipartUploadResult = s3
@@ -277,27 +362,236 @@ public class UploadCallable implements Callable<UploadResult> {
         return uploadResult;
     }
 
+    /**
+     * Uploads the parts on the thread pool, with as many in flight and of the
+     * size the adaptive upload controller chooses as the upload goes, then
+     * completes the upload and returns the result. When the concurrency is
+     * reached this waits for the oldest part, and runs it in this thread if
+     * the thread pool hasn't started it, since this thread is one of the
+     * pool's.
+     */
+    private UploadResult uploadPartsAdaptively(UploadPartRequestFactory requestFactory)
+            throws Exception {
+        final List<PartETag> partETags = new ArrayList<PartETag>();
+        final LinkedList<FutureTask<PartETag>> inFlight = new LinkedList<FutureTask<PartETag>>();
+        try {
+            while (requestFactory.hasMoreRequests()) {
+                if (threadPool.isShutdown())
+                    throw new CancellationException("TransferManager has been shutdown");
+                while (!inFlight.isEmpty() && (inFlight.getFirst().isDone()
+                        || inFlight.size() >= adaptiveUploadController.getConcurrency())) {
+                    partETags.add(waitForPart(inFlight.removeFirst()));
+                }
+
+                requestFactory.setPartSize(adaptiveUploadController.getPartSize(
+                        requestFactory.getRemainingBytes(), requestFactory.getNextPartNumber()));
+                final UploadPartRequest request = requestFactory.getNextUploadPartRequest();
+                final FutureTask<PartETag> part = new FutureTask<PartETag>(
+                        new Callable<PartETag>() {
+                            @Override
+                            public PartETag call() throws Exception {
+                                final long startNanos = System.nanoTime();
+                                final PartETag partETag = s3.uploadPart(
+                                        ThrottledInputStream.throttle(request,
+                                                upload.getBandwidthLimiter())).getPartETag();
+                                adaptiveUploadController.recordPart(request.getPartSize(),
+                                        startNanos, System.nanoTime());
+                                return partETag;
+                            }
+                        });
+                inFlight.add(part);
+                synchronized (partsInFlight) {
+                    partsInFlight.add(part);
+                }
+                threadPool.execute(part);
+            }
+            while (!inFlight.isEmpty()) {
+                partETags.add(waitForPart(inFlight.removeFirst()));
+            }
+        } finally {
+            cancelPartsInFlight();
+        }
+
+        final CompleteMultipartUploadResult completeMultipartUploadResult = s3
+                .completeMultipartUpload(new CompleteMultipartUploadRequest(putObjectRequest
+                        .getBucketName(), putObjectRequest.getKey(), multipartUploadId,
+                        partETags));
+
+        final UploadResult uploadResult = new UploadResult();
+        uploadResult.setBucketName(completeMultipartUploadResult.getBucketName());
+        uploadResult.setKey(completeMultipartUploadResult.getKey());
+        uploadResult.setETag(completeMultipartUploadResult.getETag());
+        uploadResult.setVersionId(completeMultipartUploadResult.getVersionId());
+        return uploadResult;
+    }
+
+    /**
+     * Uploads all the parts but the last of an encrypted upload on the thread
+     * pool, then the last part, whose encryption depends on all the others,
+     * once they are done, and completes the upload and returns the result.
+     * Waiting for a part runs it in this thread if the thread pool hasn't
+     * started it, since this thread is one of the pool's.
+     */
+    private UploadResult uploadEncryptedPartsInParallel(UploadPartRequestFactory requestFactory)
+            throws Exception {
+        final List<PartETag> partETags = new ArrayList<PartETag>();
+        final List<FutureTask<PartETag>> parts = new ArrayList<FutureTask<PartETag>>();
+        UploadPartRequest lastPart = null;
+        try {
+            while (requestFactory.hasMoreRequests()) {
+                if (threadPool.isShutdown())
+                    throw new CancellationException("TransferManager has been shutdown");
+                final UploadPartRequest request = requestFactory.getNextUploadPartRequest();
+                if (request.isLastPart()) {
+                    lastPart = request;
+                    break;
+                }
+                final FutureTask<PartETag> part = new FutureTask<PartETag>(
+                        new UploadPartCallable(s3, request, upload.getBandwidthLimiter()));
+                parts.add(part);
+                synchronized (partsInFlight) {
+                    partsInFlight.add(part);
+                }
+                threadPool.execute(part);
+            }
+            for (FutureTask<PartETag> part : parts) {
+                partETags.add(waitForPart(part));
+            }
+            if (lastPart != null) {
+                partETags.add(s3.uploadPart(ThrottledInputStream.throttle(lastPart,
+                        upload.getBandwidthLimiter())).getPartETag());
+            }
+        } finally {
+            cancelPartsInFlight();
+        }
+
+        final CompleteMultipartUploadResult completeMultipartUploadResult = s3
+                .completeMultipartUpload(new CompleteMultipartUploadRequest(putObjectRequest
+                        .getBucketName(), putObjectRequest.getKey(), multipartUploadId,
+                        partETags));
+
+        final UploadResult uploadResult = new UploadResult();
+        uploadResult.setBucketName(completeMultipartUploadResult.getBucketName());
+        uploadResult.setKey(completeMultipartUploadResult.getKey());
+        uploadResult.setETag(completeMultipartUploadResult.getETag());
+        uploadResult.setVersionId(completeMultipartUploadResult.getVersionId());
+        return uploadResult;
+    }
+
+    /**
+     * Waits for the given part, running it in this thread if the thread pool
+     * hasn't started it yet, and returns its ETag.
+     */
+    private static PartETag waitForPart(FutureTask<PartETag> part) throws Exception {
+        part.run();
+        try {
+            return part.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private void cancelPartsInFlight() {
+        synchronized (partsInFlight) {
+            for (Future<PartETag> part : partsInFlight) {
+                part.cancel(true);
+            }
+            partsInFlight.clear();
+        }
+    }
+
     /**
      * Submits a callable for each part to upload to our thread pool and records
-     * its corresponding Future.
+     * its corresponding Future. The parts already uploaded are taken from the
+     * checkpoint journal of the upload if it has one, and listed otherwise; a
+     * checkpointed part whose bytes have changed since is uploaded again.
      */
     private void uploadPartsInParallel(UploadPartRequestFactory requestFactory,
-            String uploadId) {
-
-        Map<Integer, PartSummary> partNumbers = identifyExistingPartsForResume(uploadId);
+            String uploadId, long partSize, boolean isResuming) {
+
+        checkpointJournal = openCheckpointJournal(uploadId, partSize);
+        final boolean isCheckpointed = checkpointJournal != null
+                && (checkpointJournal.isRestored() || !isResuming);
+        Map<Integer, PartSummary> partNumbers;
+        if (isCheckpointed) {
+            partNumbers = checkpointJournal.getRestoredParts();
+        } else {
+            partNumbers = identifyExistingPartsForResume(uploadId);
+        }
 
         while (requestFactory.hasMoreRequests()) {
             if (threadPool.isShutdown())
                 throw new CancellationException("TransferManager has been shutdown");
             UploadPartRequest request = requestFactory.getNextUploadPartRequest();
-            if (partNumbers.containsKey(request.getPartNumber())) {
+            if (partNumbers.containsKey(request.getPartNumber())
+                    && (!isCheckpointed || isRestoredPartUnchanged(request))) {
                 PartSummary summary = partNumbers.get(request.getPartNumber());
                 eTagsToSkip.add(new PartETag(request.getPartNumber(), summary
                         .getETag()));
                 transferProgress.updateProgress(summary.getSize());
                 continue;
             }
-            futures.add(threadPool.submit(new UploadPartCallable(s3, request)));
+            futures.add(threadPool.submit(new UploadPartCallable(s3, request,
+                    upload.getBandwidthLimiter(), checkpointJournal)));
+        }
+    }
+
+    /**
+     * Returns true if a part restored from the checkpoint journal still has
+     * the bytes it was uploaded with, and logs that it's uploaded again
+     * otherwise.
+     */
+    private boolean isRestoredPartUnchanged(UploadPartRequest request) {
+        if (checkpointJournal.isRestoredPartUnchanged(request)) {
+            return true;
+        }
+        log.info("Part " + request.getPartNumber() + " of " + putObjectRequest.getFile()
+                + " has changed since it was checkpointed, uploading it again");
+        return false;
+    }
+
+    /**
+     * Opens the checkpoint journal of the upload, or returns null if uploads
+     * aren't checkpointed or the journal can't be opened.
+     */
+    private UploadCheckpointJournal openCheckpointJournal(String uploadId, long partSize) {
+        final File directory = configuration.getUploadCheckpointDirectory();
+        if (directory == null || putObjectRequest.getFile() == null) {
+            return null;
+        }
+        try {
+            return UploadCheckpointJournal.open(directory, uploadId, putObjectRequest.getFile(),
+                    partSize);
+        } catch (IOException e) {
+            log.warn("Unable to open the checkpoint journal of upload " + uploadId
+                    + ", its parts won't be checkpointed: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Closes the checkpoint journal of the upload, if any, keeping it for
+     * the upload to be resumed.
+     */
+    void closeCheckpointJournal() {
+        final UploadCheckpointJournal journal = checkpointJournal;
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Deletes the checkpoint journal of the upload, if any, once the upload
+     * is completed.
+     */
+    void deleteCheckpointJournal() {
+        final UploadCheckpointJournal journal = checkpointJournal;
+        if (journal != null) {
+            journal.delete();
         }
     }
 
@@ -328,19 +622,26 @@ public class UploadCallable implements Callable<UploadResult> {
      * Initiates a multipart upload and returns the upload id
      *
      * @param isUsingEncryption
+     * @param encryptedPartSize The size of the parts to encrypt independently
+     *            of each other, or 0 to encrypt them in series.
      */
     private String initiateMultipartUpload(PutObjectRequest putObjectRequest,
-            boolean isUsingEncryption) {
+            boolean isUsingEncryption, long encryptedPartSize) {
 
         InitiateMultipartUploadRequest initiateMultipartUploadRequest = null;
-        if (isUsingEncryption && putObjectRequest instanceof EncryptedPutObjectRequest) {
-            initiateMultipartUploadRequest = new EncryptedInitiateMultipartUploadRequest(
-                    putObjectRequest.getBucketName(), putObjectRequest.getKey()).withCannedACL(
-                    putObjectRequest.getCannedAcl()).withObjectMetadata(
-                    putObjectRequest.getMetadata());
-            ((EncryptedInitiateMultipartUploadRequest) initiateMultipartUploadRequest)
-                    .setMaterialsDescription(((EncryptedPutObjectRequest) putObjectRequest)
-                            .getMaterialsDescription());
+        if (isUsingEncryption && (putObjectRequest instanceof EncryptedPutObjectRequest
+                || encryptedPartSize > 0)) {
+            final EncryptedInitiateMultipartUploadRequest encryptedRequest =
+                    new EncryptedInitiateMultipartUploadRequest(
+                            putObjectRequest.getBucketName(), putObjectRequest.getKey())
+                            .withPartSize(encryptedPartSize);
+            encryptedRequest.withCannedACL(putObjectRequest.getCannedAcl())
+                    .withObjectMetadata(putObjectRequest.getMetadata());
+            if (putObjectRequest instanceof EncryptedPutObjectRequest) {
+                encryptedRequest.setMaterialsDescription(
+                        ((EncryptedPutObjectRequest) putObjectRequest).getMaterialsDescription());
+            }
+            initiateMultipartUploadRequest = encryptedRequest;
         } else {
             initiateMultipartUploadRequest = new InitiateMultipartUploadRequest(
                     putObjectRequest.getBucketName(), putObjectRequest.getKey())
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.Md5Utils;
+import com.amazonaws.util.StringUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A local, durable record of the parts of a multipart file upload that have
+ * been uploaded. Each part is appended to the journal and synced to disk as
+ * soon as it completes, so an upload resumed after the process stopped, even
+ * abruptly, can skip those parts without listing them.
+ * <p>
+ * Every line of the journal ends with a CRC32 checksum of the line; a line
+ * torn by a crash is dropped, along with anything written after it. The first
+ * line identifies the upload, its part size, and the length and modification
+ * time of the source file. When a journal is opened for a different upload,
+ * part size or version of the file, its checkpoints are discarded.
+ * <p>
+ * Each part is recorded with a CRC32 checksum of its bytes in the source file,
+ * so that a part changed in place without changing the length or modification
+ * time of the file isn't skipped when the upload is resumed.
+ */
+public class UploadCheckpointJournal implements Closeable {
+    private static final Log log = LogFactory.getLog(UploadCheckpointJournal.class);
+
+    private static final String FORMAT = "s3-upload-checkpoint-2";
+    private static final String SUFFIX = ".checkpoint";
+
+    private final File file;
+    private final RandomAccessFile output;
+    private final Map<Integer, PartSummary> restoredParts = new TreeMap<Integer, PartSummary>();
+    private final Map<Integer, Long> restoredChecksums = new HashMap<Integer, Long>();
+    private boolean restored;
+    private boolean closed;
+
+    private UploadCheckpointJournal(File file, RandomAccessFile output) {
+        this.file = file;
+        this.output = output;
+    }
+
+    /**
+     * Returns the journal file of an upload in the given directory.
+     *
+     * @param directory The directory of the checkpoint journals.
+     * @param uploadId The id of the multipart upload.
+     */
+    public static File getJournalFile(File directory, String uploadId) {
+        return new File(directory, BinaryUtils.toHex(Md5Utils.computeMD5Hash(uploadId
+                .getBytes(StringUtils.UTF8))) + SUFFIX);
+    }
+
+    /**
+     * Opens the journal of an upload, restoring the parts it holds if it was
+     * written for the same upload of the same version of the source file, and
+     * starting it afresh otherwise.
+     *
+     * @param directory The directory of the checkpoint journals, which is
+     *            created if needed.
+     * @param uploadId The id of the multipart upload.
+     * @param source The file being uploaded.
+     * @param partSize The size of every part but the last one.
+     * @return The open journal.
+     * @throws IOException If the journal can't be read or written.
+     */
+    public static UploadCheckpointJournal open(File directory, String uploadId, File source,
+            long partSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the checkpoint directory " + directory);
+        }
+        final File file = getJournalFile(directory, uploadId);
+        final RandomAccessFile output = new RandomAccessFile(file, "rw");
+        boolean isOpen = false;
+        try {
+            final UploadCheckpointJournal journal = new UploadCheckpointJournal(file, output);
+            journal.load(withChecksum(FORMAT + " " + uploadId + " " + source.length() + " "
+                    + source.lastModified() + " " + partSize));
+            isOpen = true;
+            return journal;
+        } finally {
+            if (!isOpen) {
+                output.close();
+            }
+        }
+    }
+
+    private void load(String header) throws IOException {
+        final byte[] contents = new byte[(int) output.length()];
+        output.readFully(contents);
+
+        int start = 0;
+        int end = indexOf(contents, '\n', start);
+        if (end < 0 || !header.equals(new String(contents, start, end - start,
+                StringUtils.UTF8))) {
+            if (contents.length > 0) {
+                log.info("Discarding the checkpoints in " + file
+                        + ", which belong to another upload or version of the file");
+            }
+            output.setLength(0);
+            append(header);
+            return;
+        }
+
+        restored = true;
+        start = end + 1;
+        while ((end = indexOf(contents, '\n', start)) >= 0) {
+            if (!restorePart(new String(contents, start, end - start, StringUtils.UTF8))) {
+                break;
+            }
+            start = end + 1;
+        }
+        if (start < contents.length) {
+            log.info("Dropping a torn checkpoint from " + file);
+            output.setLength(start);
+            output.getFD().sync();
+        }
+    }
+
+    private static int indexOf(byte[] contents, char c, int start) {
+        for (int i = start; i < contents.length; i++) {
+            if (contents[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Restores the part recorded by a line, returning false if the line is
+     * torn or malformed.
+     */
+    private boolean restorePart(String line) {
+        final String content = withoutChecksum(line);
+        if (content == null) {
+            return false;
+        }
+        final String[] fields = content.split(" ");
+        if (fields.length != 4) {
+            return false;
+        }
+        try {
+            final PartSummary part = new PartSummary();
+            part.setPartNumber(Integer.parseInt(fields[0]));
+            part.setSize(Long.parseLong(fields[1]));
+            part.setETag(fields[2]);
+            restoredChecksums.put(part.getPartNumber(), Long.parseLong(fields[3], 16));
+            restoredParts.put(part.getPartNumber(), part);
+            return true;
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static String withChecksum(String content) {
+        return content + " " + Long.toHexString(checksum(content));
+    }
+
+    /**
+     * Returns the content of a line whose checksum matches, or null.
+     */
+    private static String withoutChecksum(String line) {
+        final int separator = line.lastIndexOf(' ');
+        if (separator < 0) {
+            return null;
+        }
+        final String content = line.substring(0, separator);
+        return Long.toHexString(checksum(content)).equals(line.substring(separator + 1))
+                ? content : null;
+    }
+
+    private static long checksum(String content) {
+        final CRC32 crc = new CRC32();
+        crc.update(content.getBytes(StringUtils.UTF8));
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the CRC32 checksum of a part of a file.
+     *
+     * @param file The file.
+     * @param offset The offset of the part in the file.
+     * @param length The length of the part.
+     * @return The checksum of the bytes of the part.
+     * @throws IOException If the file can't be read, or is shorter than the
+     *             part.
+     */
+    public static long checksumOf(File file, long offset, long length) throws IOException {
+        final CRC32 crc = new CRC32();
+        final InputStream in = new FileInputStream(file);
+        try {
+            long skipped = 0;
+            while (skipped < offset) {
+                final long n = in.skip(offset - skipped);
+                if (n <= 0) {
+                    throw new IOException("Unable to skip to offset " + offset + " of " + file);
+                }
+                skipped += n;
+            }
+            final byte[] buffer = new byte[(int) Math.min(length, 64 * 1024)];
+            long remaining = length;
+            while (remaining > 0) {
+                final int count = in.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+                if (count < 0) {
+                    throw new IOException(file + " ends before the part at offset " + offset);
+                }
+                crc.update(buffer, 0, count);
+                remaining -= count;
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    private void append(String line) throws IOException {
+        output.seek(output.length());
+        output.write((line + "\n").getBytes(StringUtils.UTF8));
+        output.getFD().sync();
+    }
+
+    /**
+     * Returns true if the journal held checkpoints of this upload of the
+     * same version of the source file when it was opened.
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * Returns the parts recorded by the journal when it was opened, by part
+     * number.
+     */
+    public Map<Integer, PartSummary> getRestoredParts() {
+        return Collections.unmodifiableMap(restoredParts);
+    }
+
+    /**
+     * Returns true if a part restored from the journal still has the same
+     * bytes in the source file, so that it can be skipped. A part that can't
+     * be read is treated as changed.
+     *
+     * @param request The request that would upload the part from the file.
+     */
+    public boolean isRestoredPartUnchanged(UploadPartRequest request) {
+        final Long checksum = restoredChecksums.get(request.getPartNumber());
+        if (checksum == null || request.getFile() == null) {
+            return false;
+        }
+        try {
+            return checksum.longValue() == checksumOf(request.getFile(),
+                    request.getFileOffset(), request.getPartSize());
+        } catch (final IOException e) {
+            log.info("Unable to verify part " + request.getPartNumber() + " of "
+                    + request.getFile() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Records that a part has been uploaded. A failure to write the
+     * checkpoint is logged rather than thrown, since the part itself has been
+     * uploaded; it's uploaded again if the upload is resumed.
+     *
+     * @param partNumber The number of the part.
+     * @param size The size of the part.
+     * @param eTag The ETag of the part.
+     * @param checksum The CRC32 checksum of the bytes uploaded for the
+     *            part.
+     */
+    public synchronized void recordPart(int partNumber, long size, String eTag,
+            long checksum) {
+        if (closed) {
+            return;
+        }
+        try {
+            append(withChecksum(partNumber + " " + size + " " + eTag + " "
+                    + Long.toHexString(checksum)));
+        } catch (final IOException e) {
+            log.warn("Unable to checkpoint part " + partNumber + " in " + file + ": "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Closes the journal, keeping its file so that the upload can be resumed.
+     * Parts recorded afterwards are ignored.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            output.close();
+        } catch (final IOException e) {
+            log.debug("Unable to close " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Closes the journal and deletes its file, once the upload is completed or
+     * aborted.
+     */
+    public synchronized void delete() {
+        close();
+        if (!file.delete() && file.exists()) {
+            log.warn("Unable to delete the checkpoint journal " + file);
+        }
+    }
+}
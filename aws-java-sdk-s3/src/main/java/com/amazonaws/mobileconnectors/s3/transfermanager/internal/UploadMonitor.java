@@ -142,10 +142,12 @@ public class UploadMonitor implements Callable<UploadResult>, TransferMonitor {
                 return poll();
             }
         } catch (CancellationException e) {
+            multipartUploadCallable.closeCheckpointJournal();
             transfer.setState(TransferState.Canceled);
             fireProgressEvent(ProgressEvent.CANCELED_EVENT_CODE);
             throw new AmazonClientException("Upload canceled");
         } catch (Exception e) {
+            multipartUploadCallable.closeCheckpointJournal();
             transfer.setState(TransferState.Failed);
             fireProgressEvent(ProgressEvent.FAILED_EVENT_CODE);
             throw e;
@@ -229,6 +231,7 @@ public class UploadMonitor implements Callable<UploadResult>, TransferMonitor {
                 .completeMultipartUpload(new CompleteMultipartUploadRequest(putObjectRequest
                         .getBucketName(),
                         putObjectRequest.getKey(), uploadId, collectPartETags()));
+        multipartUploadCallable.deleteCheckpointJournal();
 
         uploadComplete();
 
@@ -277,6 +280,7 @@ public class UploadMonitor implements Callable<UploadResult>, TransferMonitor {
             return new PauseResult<PersistableUpload>(pauseStatus);
         }
         cancelFutures();
+        multipartUploadCallable.closeCheckpointJournal();
         return new PauseResult<PersistableUpload>(PauseStatus.SUCCESS,
                 persistableUpload);
     }
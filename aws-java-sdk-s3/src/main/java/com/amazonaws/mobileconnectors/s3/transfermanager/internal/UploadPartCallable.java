@@ -15,23 +15,171 @@
 
 package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.internal.FileRegionInputStream;
+import com.amazonaws.internal.SdkFilterInputStream;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.internal.ThrottledInputStream;
 import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.util.BandwidthLimiter;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
 
 public class UploadPartCallable implements Callable<PartETag> {
     private final AmazonS3 s3;
     private final UploadPartRequest request;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final UploadCheckpointJournal checkpointJournal;
 
     public UploadPartCallable(AmazonS3 s3, UploadPartRequest request) {
+        this(s3, request, null);
+    }
+
+    /**
+     * @param s3 The client to upload the part with.
+     * @param request The request of the part.
+     * @param bandwidthLimiter The limiter of the rate at which the part is
+     *            read, or null.
+     */
+    public UploadPartCallable(AmazonS3 s3, UploadPartRequest request,
+            BandwidthLimiter bandwidthLimiter) {
+        this(s3, request, bandwidthLimiter, null);
+    }
+
+    /**
+     * @param s3 The client to upload the part with.
+     * @param request The request of the part.
+     * @param bandwidthLimiter The limiter of the rate at which the part is
+     *            read, or null.
+     * @param checkpointJournal The journal to record the part in once it's
+     *            uploaded, or null.
+     */
+    public UploadPartCallable(AmazonS3 s3, UploadPartRequest request,
+            BandwidthLimiter bandwidthLimiter, UploadCheckpointJournal checkpointJournal) {
         this.s3 = s3;
         this.request = request;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.checkpointJournal = checkpointJournal;
     }
 
     @Override
     public PartETag call() throws Exception {
-        return s3.uploadPart(request).getPartETag();
+        final ChecksumInputStream checksummed = checksumPart();
+        final PartETag partETag = s3.uploadPart(ThrottledInputStream.throttle(request,
+                bandwidthLimiter)).getPartETag();
+        if (checksummed != null && checksummed.hasChecksummed(request.getPartSize())) {
+            checkpointJournal.recordPart(request.getPartNumber(), request.getPartSize(),
+                    partETag.getETag(), checksummed.getChecksum());
+        }
+        return partETag;
+    }
+
+    /**
+     * Makes a part to be checkpointed read its bytes from the file through a
+     * stream that checksums them as they are sent, so that the journal records
+     * the checksum of the bytes actually uploaded.
+     *
+     * @return The checksumming stream, or null if the part isn't
+     *         checkpointed.
+     */
+    private ChecksumInputStream checksumPart() {
+        if (checkpointJournal == null || request.getFile() == null) {
+            return null;
+        }
+        final ChecksumInputStream checksummed;
+        try {
+            checksummed = new ChecksumInputStream(new FileRegionInputStream(request.getFile(),
+                    request.getFileOffset(), request.getPartSize()));
+        } catch (final FileNotFoundException e) {
+            throw new AmazonClientException("Unable to find file to upload: "
+                    + e.getMessage(), e);
+        }
+        request.setInputStream(checksummed);
+        request.setFile(null);
+        request.setFileOffset(0);
+        return checksummed;
+    }
+
+    /**
+     * Calculates the CRC32 checksum of the bytes read through it. A reset to
+     * the start of the stream, as when a request is retried, starts the
+     * checksum over; skipping bytes, or a reset anywhere else, leaves the
+     * stream without a checksum of the part.
+     */
+    private static final class ChecksumInputStream extends SdkFilterInputStream {
+        private CRC32 crc = new CRC32();
+        private long count;
+        private long markedCount;
+        private boolean isValid = true;
+        private boolean isMarkedValid = true;
+
+        ChecksumInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getChecksum() {
+            return crc.getValue();
+        }
+
+        /**
+         * Returns true if the checksum covers exactly the given number of
+         * bytes from the start of the stream.
+         */
+        boolean hasChecksummed(long length) {
+            return isValid && count == length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                crc.update(b);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                crc.update(b, off, read);
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            if (skipped > 0) {
+                isValid = false;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+            super.mark(readlimit);
+            markedCount = count;
+            isMarkedValid = isValid;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            if (isMarkedValid && markedCount == 0) {
+                crc = new CRC32();
+                count = 0;
+                isValid = true;
+            } else {
+                isValid = false;
+            }
+        }
     }
 }
@@ -35,7 +35,7 @@ public class UploadPartRequestFactory {
     private final String bucketName;
     private final String key;
     private final String uploadId;
-    private final long optimalPartSize;
+    private long optimalPartSize;
     private final File file;
     private final PutObjectRequest putObjectRequest;
     private int partNumber = 1;
@@ -55,6 +55,21 @@ public class UploadPartRequestFactory {
         this.sseCustomerKey = putObjectRequest.getSSECustomerKey();
     }
 
+    /**
+     * Changes the size of the remaining parts.
+     */
+    public synchronized void setPartSize(long partSize) {
+        this.optimalPartSize = partSize;
+    }
+
+    public synchronized long getRemainingBytes() {
+        return remainingBytes;
+    }
+
+    public synchronized int getNextPartNumber() {
+        return partNumber;
+    }
+
     public synchronized boolean hasMoreRequests() {
         return (remainingBytes > 0);
     }
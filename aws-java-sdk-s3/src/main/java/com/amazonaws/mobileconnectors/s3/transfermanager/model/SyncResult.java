@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.model;
+
+import com.amazonaws.mobileconnectors.s3.transfermanager.TransferManager;
+
+/**
+ * Contains what a completed sync of a directory with a key prefix changed.
+ *
+ * @see TransferManager#syncDirectory(String, String, java.io.File,
+ *      com.amazonaws.mobileconnectors.s3.transfermanager.DirectorySyncOptions)
+ * @deprecated The Transfer Manager is now deprecated in favor of the
+ *             {@link com.amazonaws.mobileconnectors.s3.transferutility.TransferUtility}
+ */
+@Deprecated
+public class SyncResult {
+
+    private int uploadedFiles;
+    private int downloadedFiles;
+    private int deletedFiles;
+    private int unchangedFiles;
+    private long bytesTransferred;
+    private boolean remoteListed;
+
+    /**
+     * Returns the number of files uploaded.
+     */
+    public int getUploadedFiles() {
+        return uploadedFiles;
+    }
+
+    /**
+     * Sets the number of files uploaded.
+     */
+    public void setUploadedFiles(int uploadedFiles) {
+        this.uploadedFiles = uploadedFiles;
+    }
+
+    /**
+     * Returns the number of files downloaded.
+     */
+    public int getDownloadedFiles() {
+        return downloadedFiles;
+    }
+
+    /**
+     * Sets the number of files downloaded.
+     */
+    public void setDownloadedFiles(int downloadedFiles) {
+        this.downloadedFiles = downloadedFiles;
+    }
+
+    /**
+     * Returns the number of objects or local files deleted.
+     */
+    public int getDeletedFiles() {
+        return deletedFiles;
+    }
+
+    /**
+     * Sets the number of objects or local files deleted.
+     */
+    public void setDeletedFiles(int deletedFiles) {
+        this.deletedFiles = deletedFiles;
+    }
+
+    /**
+     * Returns the number of files found unchanged.
+     */
+    public int getUnchangedFiles() {
+        return unchangedFiles;
+    }
+
+    /**
+     * Sets the number of files found unchanged.
+     */
+    public void setUnchangedFiles(int unchangedFiles) {
+        this.unchangedFiles = unchangedFiles;
+    }
+
+    /**
+     * Returns the number of bytes uploaded or downloaded.
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * Sets the number of bytes uploaded or downloaded.
+     */
+    public void setBytesTransferred(long bytesTransferred) {
+        this.bytesTransferred = bytesTransferred;
+    }
+
+    /**
+     * Returns true if the key prefix was listed, and false if its state was
+     * taken from the manifest.
+     */
+    public boolean isRemoteListed() {
+        return remoteListed;
+    }
+
+    /**
+     * Sets whether the key prefix was listed.
+     */
+    public void setRemoteListed(boolean remoteListed) {
+        this.remoteListed = remoteListed;
+    }
+
+    @Override
+    public String toString() {
+        return "{uploaded: " + uploadedFiles + ", downloaded: " + downloadedFiles
+                + ", deleted: " + deletedFiles + ", unchanged: " + unchangedFiles
+                + ", bytesTransferred: " + bytesTransferred + ", remoteListed: "
+                + remoteListed + "}";
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2015-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import com.amazonaws.services.s3.util.BandwidthLimiter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A holder of the bandwidth limiters of the transfers, which
+ * {@link TransferUtility} registers under its own limiter, and the tasks run
+ * by {@link TransferService} read their data through. Like
+ * {@link S3ClientReference}, it passes the limiters to the service by
+ * transfer id.
+ */
+class BandwidthLimiterReference {
+
+    private static Map<Integer, BandwidthLimiter> map =
+            new ConcurrentHashMap<Integer, BandwidthLimiter>();
+
+    /**
+     * Retrieves the limiter of a transfer, creating one with no limit of its
+     * own under the given parent if the transfer doesn't have one yet.
+     *
+     * @param transferId the id for the transfer record
+     * @param parent the limiter shared by the transfers of a transfer utility
+     * @return the limiter of the transfer
+     */
+    public static synchronized BandwidthLimiter getOrCreate(final Integer transferId,
+            BandwidthLimiter parent) {
+        BandwidthLimiter limiter = map.get(transferId);
+        if (limiter == null) {
+            limiter = new BandwidthLimiter(0, parent);
+            map.put(transferId, limiter);
+        }
+        return limiter;
+    }
+
+    /**
+     * Retrieves the limiter of a transfer.
+     *
+     * @param transferId the id for the transfer record
+     * @return the limiter, or null if the transfer doesn't have one
+     */
+    public static BandwidthLimiter get(final Integer transferId) {
+        return map.get(transferId);
+    }
+
+    /**
+     * Removes the limiter of a transfer.
+     *
+     * @param transferId the id for the transfer record
+     */
+    public static void remove(final Integer transferId) {
+        map.remove(transferId);
+    }
+
+    /**
+     * Clears all references.
+     */
+    public static void clear() {
+        map.clear();
+    }
+}
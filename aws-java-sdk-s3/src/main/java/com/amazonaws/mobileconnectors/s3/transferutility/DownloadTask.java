@@ -20,6 +20,7 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.mobileconnectors.s3.transferutility.TransferService.NetworkInfoReceiver;
 import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.internal.ThrottledInputStream;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 
@@ -39,7 +40,7 @@ import java.util.concurrent.Callable;
  * Performs download operation and returns a Boolean value indicating whether
  * the file has been downloaded successfully.
  */
-class DownloadTask implements Callable<Boolean> {
+class DownloadTask implements Callable<Boolean>, TransferScheduler.TransferTask {
 
     private static final Log LOGGER = LogFactory.getLog(DownloadTask.class);
     private static final int SIXTEEN_KB = 1024 * 16;
@@ -66,6 +67,16 @@ class DownloadTask implements Callable<Boolean> {
         this.networkInfo = networkInfo;
     }
 
+    @Override
+    public int getTransferId() {
+        return download.getRecord().getId();
+    }
+
+    @Override
+    public int getPriority() {
+        return download.getRecord().getPriority();
+    }
+
     /**
      * Runs download task and returns whether successfully downloaded.
      */
@@ -104,6 +115,8 @@ class DownloadTask implements Callable<Boolean> {
 
             final long bytesTotal = object.getObjectMetadata().getInstanceLength();
             updater.updateProgress(download.getRecord().getId(), bytesCurrent, bytesTotal);
+            ThrottledInputStream.throttle(object,
+                    BandwidthLimiterReference.get(download.getRecord().getId()));
             saveToFile(object.getObjectContent(), file);
             updater.updateProgress(download.getRecord().getId(), bytesTotal, bytesTotal);
             updater.updateState(download.getRecord().getId(), TransferState.COMPLETED);
@@ -40,6 +40,7 @@ public class Record {
     private String sseKMSKey;
     private String md5;
     private String cannedAcl;
+    private int priority;
     
     public Record() {
     }
@@ -316,9 +317,17 @@ public class Record {
         this.cannedAcl = cannedAcl;
     }
 
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
     @Override
     public String toString() {
-        return "Record{" + "id=" + id + ", mainUploadId=" + mainUploadId + ", isRequesterPays=" + isRequesterPays + ", isMultipart=" + isMultipart + ", isLastPart=" + isLastPart + ", isEncrypted=" + isEncrypted + ", partNumber=" + partNumber + ", bytesTotal=" + bytesTotal + ", bytesCurrent=" + bytesCurrent + ", speed=" + speed + ", rangeStart=" + rangeStart + ", rangeLast=" + rangeLast + ", fileOffset=" + fileOffset + ", type=" + type + ", state=" + state + ", bucketName=" + bucketName + ", key=" + key + ", versionId=" + versionId + ", file=" + file + ", multipartId=" + multipartId + ", eTag=" + eTag + ", headerContentType=" + headerContentType + ", headerContentLanguage=" + headerContentLanguage + ", headerContentDisposition=" + headerContentDisposition + ", headerContentEncoding=" + headerContentEncoding + ", headerCacheControl=" + headerCacheControl + ", headerExpire=" + headerExpire + ", userMetadata=" + userMetadata + ", expirationTimeRuleId=" + expirationTimeRuleId + ", httpExpires=" + httpExpires + ", sseAlgorithm=" + sseAlgorithm + ", sseKMSKey=" + sseKMSKey + ", md5=" + md5 + ", cannedAcl=" + cannedAcl + '}';
+        return "Record{" + "id=" + id + ", mainUploadId=" + mainUploadId + ", isRequesterPays=" + isRequesterPays + ", isMultipart=" + isMultipart + ", isLastPart=" + isLastPart + ", isEncrypted=" + isEncrypted + ", partNumber=" + partNumber + ", bytesTotal=" + bytesTotal + ", bytesCurrent=" + bytesCurrent + ", speed=" + speed + ", rangeStart=" + rangeStart + ", rangeLast=" + rangeLast + ", fileOffset=" + fileOffset + ", type=" + type + ", state=" + state + ", bucketName=" + bucketName + ", key=" + key + ", versionId=" + versionId + ", file=" + file + ", multipartId=" + multipartId + ", eTag=" + eTag + ", headerContentType=" + headerContentType + ", headerContentLanguage=" + headerContentLanguage + ", headerContentDisposition=" + headerContentDisposition + ", headerContentEncoding=" + headerContentEncoding + ", headerCacheControl=" + headerCacheControl + ", headerExpire=" + headerExpire + ", userMetadata=" + userMetadata + ", expirationTimeRuleId=" + expirationTimeRuleId + ", httpExpires=" + httpExpires + ", sseAlgorithm=" + sseAlgorithm + ", sseKMSKey=" + sseKMSKey + ", md5=" + md5 + ", cannedAcl=" + cannedAcl + ", priority=" + priority + '}';
     }
 
 }
@@ -0,0 +1,537 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.StringUtils;
+import com.amazonaws.util.json.AwsJsonReader;
+import com.amazonaws.util.json.AwsJsonToken;
+import com.amazonaws.util.json.AwsJsonWriter;
+import com.amazonaws.util.json.JsonUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Stores the transfer records, indexed by id and by state, type and main
+ * upload id, and persists them in an append-only journal. Adding, updating
+ * or removing a record appends a single line to the journal, instead of
+ * rewriting every record, and the journal is compacted to the live records
+ * once most of its lines are superseded. A line that was cut short by a
+ * crash is skipped when the journal is loaded.
+ * <p>
+ * The records returned are the stored instances, so a record that is changed
+ * must be put back for its indexes and the journal to be updated. The keys a
+ * record is indexed under are remembered when it's put, so that the record
+ * may be changed in place before it's put back.
+ */
+public class RecordStore {
+    private static final Log LOGGER = LogFactory.getLog(RecordStore.class);
+
+    /** Marker of a line of the journal recording the removal of a record. */
+    private static final String DELETED = "deleted";
+
+    /** Number of superseded lines the journal may hold before compaction. */
+    private static final int MIN_GARBAGE_BEFORE_COMPACTION = 1000;
+
+    private static final List<Field> FIELDS = recordFields();
+
+    private final File journal;
+    private Writer writer;
+
+    private final Map<Integer, Record> records = new TreeMap<Integer, Record>();
+    private final Map<TransferState, Set<Integer>> byState =
+            new EnumMap<TransferState, Set<Integer>>(TransferState.class);
+    private final Map<TransferType, Set<Integer>> byType =
+            new EnumMap<TransferType, Set<Integer>>(TransferType.class);
+    private final Map<Integer, Set<Integer>> byMainUploadId = new HashMap<Integer, Set<Integer>>();
+    /** The keys each record was last indexed under, by id. */
+    private final Map<Integer, IndexKeys> indexKeys = new HashMap<Integer, IndexKeys>();
+
+    private int nextId = 1;
+    private int journalLines;
+
+    /**
+     * Opens the store persisted in the given journal, which is created if it
+     * doesn't exist.
+     *
+     * @param journal The journal file.
+     */
+    public RecordStore(File journal) {
+        this.journal = journal;
+        final File parent = journal.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        if (journal.exists()) {
+            load();
+        }
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(journal, true), StringUtils.UTF8));
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to open the transfer record journal "
+                    + journal + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns true if the journal of the store has no records, for instance
+     * because it was just created.
+     */
+    public synchronized boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * Returns the number of records in the store.
+     */
+    public synchronized int size() {
+        return records.size();
+    }
+
+    /**
+     * Returns the record with the given id, or null if there is none.
+     */
+    public synchronized Record get(int id) {
+        return records.get(id);
+    }
+
+    /**
+     * Returns a snapshot of every record, ordered by id.
+     */
+    public synchronized List<Record> getAll() {
+        return new ArrayList<Record>(records.values());
+    }
+
+    /**
+     * Returns a snapshot of the records in any of the given states, ordered
+     * by id.
+     */
+    public synchronized List<Record> getByState(TransferState... states) {
+        final Set<Integer> ids = new TreeSet<Integer>();
+        for (final TransferState state : states) {
+            final Set<Integer> inState = byState.get(state);
+            if (inState != null) {
+                ids.addAll(inState);
+            }
+        }
+        return lookup(ids);
+    }
+
+    /**
+     * Returns a snapshot of the records of the given type, or of every record
+     * for {@link TransferType#ANY}, ordered by id.
+     */
+    public synchronized List<Record> getByType(TransferType type) {
+        if (type == TransferType.ANY) {
+            return getAll();
+        }
+        return lookup(byType.get(type));
+    }
+
+    /**
+     * Returns a snapshot of the part records of the given multipart upload,
+     * ordered by id.
+     */
+    public synchronized List<Record> getByMainUploadId(int mainUploadId) {
+        return lookup(byMainUploadId.get(mainUploadId));
+    }
+
+    private List<Record> lookup(Collection<Integer> ids) {
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        final List<Record> result = new ArrayList<Record>(ids.size());
+        for (final Integer id : ids) {
+            result.add(records.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given record, or replaces the record with the same id, and
+     * appends it to the journal. A record without an id is given the next
+     * free one.
+     *
+     * @param record The record to store.
+     * @return The id of the record.
+     */
+    public synchronized int put(Record record) {
+        if (record.getId() <= 0) {
+            record.setId(nextId);
+        }
+        index(record);
+        append(toJson(record));
+        return record.getId();
+    }
+
+    /**
+     * Adds or replaces the given records, like {@link #put(Record)}, and
+     * appends them to the journal with a single write.
+     *
+     * @param batch The records to store.
+     */
+    public synchronized void putAll(Collection<Record> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final StringBuilder lines = new StringBuilder();
+        for (final Record record : batch) {
+            if (record.getId() <= 0) {
+                record.setId(nextId);
+            }
+            index(record);
+            lines.append(toJson(record)).append('\n');
+        }
+        write(lines.toString(), batch.size());
+    }
+
+    /**
+     * Removes the record with the given id, if any, and records the removal
+     * in the journal.
+     *
+     * @param id The id of the record to remove.
+     * @return True if there was a record with the id.
+     */
+    public synchronized boolean remove(int id) {
+        if (!unindex(id)) {
+            return false;
+        }
+        final StringWriter out = new StringWriter();
+        try {
+            final AwsJsonWriter json = JsonUtils.getJsonWriter(out);
+            json.beginObject().name("id").value(id).name(DELETED).value(true).endObject();
+            json.close();
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to serialize the removal of record " + id,
+                    e);
+        }
+        append(out.toString());
+        return true;
+    }
+
+    /**
+     * Closes the journal. The store can't be changed afterwards.
+     */
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to close the transfer record journal: " + e.getMessage(), e);
+        }
+        writer = null;
+    }
+
+    private void index(Record record) {
+        unindex(record.getId());
+        final int id = record.getId();
+        final IndexKeys keys = new IndexKeys(record);
+        records.put(id, record);
+        indexKeys.put(id, keys);
+        nextId = Math.max(nextId, id + 1);
+        if (keys.state != null) {
+            indexEntry(byState, keys.state, id);
+        }
+        if (keys.type != null) {
+            indexEntry(byType, keys.type, id);
+        }
+        if (keys.mainUploadId > 0) {
+            indexEntry(byMainUploadId, keys.mainUploadId, id);
+        }
+    }
+
+    private boolean unindex(int id) {
+        if (records.remove(id) == null) {
+            return false;
+        }
+        // The stored record may have been changed in place since it was
+        // indexed, so its entries are found with the keys it was indexed under
+        final IndexKeys previous = indexKeys.remove(id);
+        removeEntry(byState, previous.state, id);
+        removeEntry(byType, previous.type, id);
+        removeEntry(byMainUploadId, previous.mainUploadId, id);
+        return true;
+    }
+
+    private static <K> void indexEntry(Map<K, Set<Integer>> index, K key, int id) {
+        Set<Integer> ids = index.get(key);
+        if (ids == null) {
+            ids = new TreeSet<Integer>();
+            index.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    private static <K> void removeEntry(Map<K, Set<Integer>> index, K key, int id) {
+        final Set<Integer> ids = key == null ? null : index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private void append(String line) {
+        write(line + '\n', 1);
+    }
+
+    private void write(String lines, int count) {
+        if (writer == null) {
+            throw new IllegalStateException("The record store is closed");
+        }
+        try {
+            writer.write(lines);
+            writer.flush();
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to write the transfer record journal "
+                    + journal + ": " + e.getMessage(), e);
+        }
+        journalLines += count;
+        final int garbage = journalLines - records.size();
+        if (garbage > MIN_GARBAGE_BEFORE_COMPACTION && garbage > records.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the journal with one line per live record, into a new file
+     * that replaces the journal once it's complete.
+     */
+    private void compact() {
+        final File compacted = new File(journal.getPath() + ".compact");
+        try {
+            final Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(compacted), StringUtils.UTF8));
+            try {
+                for (final Record record : records.values()) {
+                    out.write(toJson(record));
+                    out.write('\n');
+                }
+            } finally {
+                out.close();
+            }
+            writer.close();
+            if (!compacted.renameTo(journal)) {
+                // Some platforms can't rename over an existing file
+                if (!journal.delete() || !compacted.renameTo(journal)) {
+                    throw new IOException("Unable to replace " + journal);
+                }
+            }
+            journalLines = records.size();
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to compact the transfer record journal: " + e.getMessage(), e);
+            compacted.delete();
+        } finally {
+            try {
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(journal, true), StringUtils.UTF8));
+            } catch (final IOException e) {
+                writer = null;
+                LOGGER.error("Unable to reopen the transfer record journal: " + e.getMessage(),
+                        e);
+            }
+        }
+    }
+
+    private void load() {
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(journal),
+                    StringUtils.UTF8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                journalLines++;
+                try {
+                    final Record record = fromJson(line);
+                    if (record == null) {
+                        continue;
+                    }
+                    index(record);
+                } catch (final Exception e) {
+                    // A line cut short by a crash while it was appended
+                    LOGGER.warn("Skipping unreadable transfer record: " + e.getMessage());
+                }
+            }
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to read the transfer record journal "
+                    + journal + ": " + e.getMessage(), e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException e) {
+                    LOGGER.debug("Unable to close the transfer record journal", e);
+                }
+            }
+        }
+    }
+
+    private static List<Field> recordFields() {
+        final List<Field> fields = new ArrayList<Field>();
+        for (final Field field : Record.class.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())
+                    && !Modifier.isTransient(field.getModifiers())) {
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Serializes every field of a record into a single line of JSON.
+     */
+    static String toJson(Record record) {
+        final StringWriter out = new StringWriter();
+        try {
+            final AwsJsonWriter json = JsonUtils.getJsonWriter(out);
+            json.beginObject();
+            for (final Field field : FIELDS) {
+                final Object value = field.get(record);
+                if (value == null) {
+                    continue;
+                }
+                json.name(field.getName());
+                if (value instanceof Number) {
+                    json.value((Number) value);
+                } else if (value instanceof Enum) {
+                    json.value(((Enum<?>) value).name());
+                } else if (value instanceof Map) {
+                    json.beginObject();
+                    for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                        json.name(String.valueOf(entry.getKey()))
+                                .value(String.valueOf(entry.getValue()));
+                    }
+                    json.endObject();
+                } else {
+                    json.value(value.toString());
+                }
+            }
+            json.endObject();
+            json.close();
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to serialize record " + record.getId(), e);
+        } catch (final IllegalAccessException e) {
+            throw new AmazonClientException("Unable to serialize record " + record.getId(), e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Deserializes a line of the journal into a record, or applies a removal
+     * and returns null.
+     */
+    private Record fromJson(String line) throws IOException, IllegalAccessException {
+        final Map<String, Field> fieldsByName = new HashMap<String, Field>();
+        for (final Field field : FIELDS) {
+            fieldsByName.put(field.getName(), field);
+        }
+
+        final Record record = new Record();
+        boolean deleted = false;
+        final AwsJsonReader json = JsonUtils.getJsonReader(new StringReader(line));
+        json.beginObject();
+        while (json.hasNext()) {
+            final String name = json.nextName();
+            final Field field = fieldsByName.get(name);
+            if (DELETED.equals(name)) {
+                deleted = true;
+                json.skipValue();
+            } else if (field == null || json.peek() == AwsJsonToken.VALUE_NULL) {
+                json.skipValue();
+            } else if (field.getType() == Map.class) {
+                final Map<String, String> map = new HashMap<String, String>();
+                json.beginObject();
+                while (json.hasNext()) {
+                    map.put(json.nextName(), json.nextString());
+                }
+                json.endObject();
+                field.set(record, map);
+            } else {
+                field.set(record, parse(field.getType(), json.nextString()));
+            }
+        }
+        json.endObject();
+        json.close();
+
+        if (deleted) {
+            unindex(record.getId());
+            return null;
+        }
+        return record;
+    }
+
+    @SuppressWarnings({
+            "unchecked", "rawtypes"
+    })
+    private static Object parse(Class<?> type, String value) {
+        if (type == int.class || type == Integer.class) {
+            return Integer.valueOf(value);
+        } else if (type == long.class || type == Long.class) {
+            return Long.valueOf(value);
+        } else if (type.isEnum()) {
+            return Enum.valueOf((Class<Enum>) type, value);
+        }
+        return value;
+    }
+
+    /**
+     * The keys a record is indexed under, as of when it was put.
+     */
+    private static final class IndexKeys {
+        private final TransferState state;
+        private final TransferType type;
+        private final int mainUploadId;
+
+        IndexKeys(Record record) {
+            this.state = record.getState();
+            this.type = record.getType();
+            this.mainUploadId = record.getMainUploadId();
+        }
+    }
+}
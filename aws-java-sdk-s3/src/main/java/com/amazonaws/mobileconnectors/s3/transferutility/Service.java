@@ -3,94 +3,178 @@ package com.amazonaws.mobileconnectors.s3.transferutility;
 import com.gluonhq.cloudlink.client.data.DataClient;
 import com.gluonhq.cloudlink.client.data.DataClientBuilder;
 import com.gluonhq.cloudlink.client.data.OperationMode;
-import com.gluonhq.cloudlink.client.data.SyncFlag;
 import com.gluonhq.connect.ConnectState;
 import com.gluonhq.connect.GluonObservableList;
 import com.gluonhq.connect.provider.DataProvider;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.ObservableList;
 
 public class Service {
 
     private static final Logger LOG = Logger.getLogger(Service.class.getName());
-    
+
     private static final String DATABASE_NAME = "AWS_LOCAL_DATABASE";
-    
-    private final DataClient dataClient;
 
-    private GluonObservableList<Record> records;
-    
+    /** System property to set the directory of the transfer record journal. */
+    public static final String STORAGE_DIRECTORY_PROPERTY = "aws.transferutility.storageDirectory";
+
+    private static final String JOURNAL_NAME = "transfer-records.journal";
+
+    /** Created once every record of the data client has been migrated. */
+    private static final String MIGRATED_MARKER_NAME = "transfer-records.migrated";
+
+    private final RecordStore store;
+
     private static Service instance;
-    
-    public static Service getInstance() {
+
+    public static synchronized Service getInstance() {
         if (instance == null) {
             instance = new Service();
         }
         return instance;
     }
-    
+
     private Service() {
-        dataClient = DataClientBuilder.create()
+        final File directory = getStorageDirectory();
+        final File journal = new File(directory, JOURNAL_NAME);
+        store = new RecordStore(journal);
+        LOG.log(Level.INFO, "Loaded " + store.size() + " transfer records from " + journal);
+        final File migratedMarker = new File(directory, MIGRATED_MARKER_NAME);
+        if (!migratedMarker.exists()) {
+            migrateRecords(DATABASE_NAME, migratedMarker);
+        }
+    }
+
+    private static File getStorageDirectory() {
+        final String directory = System.getProperty(STORAGE_DIRECTORY_PROPERTY);
+        if (directory != null) {
+            return new File(directory);
+        }
+        return new File(new File(System.getProperty("user.home"), ".aws"), "transferutility");
+    }
+
+    /**
+     * Imports the records that were persisted as a single list with the local
+     * data client before they were kept in the record store. The marker is
+     * only created once every record has been imported, so a migration that
+     * failed or was interrupted is tried again the next time the service
+     * starts; records already in the store are left as they are.
+     */
+    private void migrateRecords(String databaseName, final File migratedMarker) {
+        final DataClient dataClient = DataClientBuilder.create()
                 .operationMode(OperationMode.LOCAL_ONLY)
                 .build();
-        
-        retrieveRecords(DATABASE_NAME);
-    }
-    
-    private void retrieveRecords(String databaseName) {
-        records = DataProvider.retrieveList(dataClient.createListDataReader(databaseName, 
-                Record.class,
-                SyncFlag.LIST_WRITE_THROUGH, SyncFlag.OBJECT_WRITE_THROUGH));
-        records.exceptionProperty().addListener(new ChangeListener<Throwable>() {
-            @Override
-            public void changed(ObservableValue<? extends Throwable> observable, Throwable oldValue, Throwable newValue) {
-                LOG.log(Level.WARNING, "Exception dataClient", newValue);
-            }
-        });
+        final GluonObservableList<Record> records = DataProvider.retrieveList(
+                dataClient.createListDataReader(databaseName, Record.class));
+        final AtomicBoolean migrated = new AtomicBoolean();
         records.stateProperty().addListener(new ChangeListener<ConnectState>() {
             @Override
             public void changed(ObservableValue<? extends ConnectState> observable, ConnectState oldValue, ConnectState newValue) {
-                LOG.log(Level.INFO, "State dataClient: " + newValue);
+                if (newValue == ConnectState.SUCCEEDED && migrated.compareAndSet(false, true)) {
+                    importRecords(records, migratedMarker);
+                } else if (newValue == ConnectState.FAILED) {
+                    LOG.log(Level.WARNING, "Unable to read the records to migrate", records.getException());
+                }
             }
         });
-        LOG.log(Level.INFO, "Initial state dataClient: " + records.getState());
-    }
-    
-    public ObservableList<Record> getRecords() {
-        return records;
+        if (records.getState() == ConnectState.SUCCEEDED && migrated.compareAndSet(false, true)) {
+            importRecords(records, migratedMarker);
+        }
     }
-    
-    public Record getRecord(int id) {
+
+    private void importRecords(List<Record> records, File migratedMarker) {
+        int count = 0;
         for (Record record : records) {
-            if (record.getId() == id) {
-                return record;
+            if (store.get(record.getId()) == null) {
+                store.put(record);
+                count++;
             }
         }
-        return new Record();
+        LOG.log(Level.INFO, "Migrated " + count + " transfer records");
+        try {
+            migratedMarker.createNewFile();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to mark the transfer records as migrated: "
+                    + migratedMarker, e);
+        }
+    }
+
+    /**
+     * Returns a snapshot of every record, ordered by id.
+     */
+    public List<Record> getRecords() {
+        return store.getAll();
+    }
+
+    /**
+     * Returns a snapshot of the records in any of the given states.
+     */
+    public List<Record> getRecords(TransferState... states) {
+        return store.getByState(states);
+    }
+
+    /**
+     * Returns a snapshot of the records of the given type.
+     */
+    public List<Record> getRecords(TransferType type) {
+        return store.getByType(type);
+    }
+
+    /**
+     * Returns a snapshot of the part records of a multipart upload.
+     */
+    public List<Record> getPartRecords(int mainUploadId) {
+        return store.getByMainUploadId(mainUploadId);
     }
-    
+
+    /**
+     * Returns the record with the given id, or an empty record if there is
+     * none.
+     */
+    public Record getRecord(int id) {
+        final Record record = store.get(id);
+        return record != null ? record : new Record();
+    }
+
+    /**
+     * Returns the record with the given id, or null if there is none.
+     */
+    public Record findRecord(int id) {
+        return store.get(id);
+    }
+
+    /**
+     * Replaces a stored record, which appends only the new record to the
+     * journal.
+     */
     public void updateRecord(Record oldRecord, Record newRecord) {
-        Record r = getRecord(oldRecord.getId());
-        if (r.getId() == oldRecord.getId()) {
-            removeRecord(oldRecord);
-            addRecord(newRecord);
-            dataClient.push(records);
+        if (store.get(oldRecord.getId()) != null) {
+            newRecord.setId(oldRecord.getId());
+            store.put(newRecord);
         }
     }
-    
+
+    /**
+     * Stores a batch of changed records with a single write of the journal.
+     */
+    public void updateRecords(Collection<Record> records) {
+        store.putAll(records);
+    }
+
     public void addRecord(Record record) {
-        LOG.log(Level.INFO, "Adding record " + record);
-        records.add(record);
-        LOG.log(Level.INFO, "Push records");
-        dataClient.push(records);
+        LOG.log(Level.FINE, "Adding record " + record);
+        store.put(record);
     }
-    
+
     public void removeRecord(Record record) {
-        LOG.log(Level.INFO, "Removing record " + record);
-        records.remove(record);
-        dataClient.push(records);
+        LOG.log(Level.FINE, "Removing record " + record);
+        store.remove(record.getId());
     }
 }
@@ -27,6 +27,7 @@ import org.apache.commons.logging.LogFactory;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides methods to conveniently perform database operations.
@@ -156,6 +157,24 @@ class TransferDBUtil {
         return record.getId();
     }
 
+    /**
+     * Updates the current bytes of a batch of transfer records with a single
+     * write.
+     *
+     * @param bytesById The bytes currently transferred, by transfer id.
+     */
+    public void updateBytesTransferred(Map<Integer, Long> bytesById) {
+        final List<Record> records = new ArrayList<Record>(bytesById.size());
+        for (final Map.Entry<Integer, Long> entry : bytesById.entrySet()) {
+            final Record record = Service.getInstance().findRecord(entry.getKey());
+            if (record != null) {
+                record.setBytesCurrent(entry.getValue());
+                records.add(record);
+            }
+        }
+        Service.getInstance().updateRecords(records);
+    }
+
     /**
      * Updates the total bytes of a download record.
      *
@@ -216,6 +235,27 @@ class TransferDBUtil {
         return record.getId();
     }
 
+    /**
+     * Updates the priority of a transfer record and of its part records.
+     *
+     * @param id The id of the transfer.
+     * @param priority The new priority of the transfer.
+     * @return The number of records updated.
+     */
+    public int updatePriority(int id, int priority) {
+        final Record record = Service.getInstance().findRecord(id);
+        if (record == null) {
+            return 0;
+        }
+        final List<Record> records = new ArrayList<Record>(Service.getInstance().getPartRecords(id));
+        records.add(record);
+        for (final Record r : records) {
+            r.setPriority(priority);
+        }
+        Service.getInstance().updateRecords(records);
+        return records.size();
+    }
+
     /**
      * Updates the Etag of the transfer record.
      *
@@ -235,14 +275,11 @@ class TransferDBUtil {
      *
      */
     public void updateNetworkDisconnected() {
-        for (Record record : Service.getInstance().getRecords()) {
-            if (record.getState().equals(TransferState.IN_PROGRESS) || 
-                    record.getState().equals(TransferState.RESUMED_WAITING) || 
-                    record.getState().equals(TransferState.WAITING)) {
-                Record newRecord = record;
-                newRecord.setState(TransferState.PENDING_NETWORK_DISCONNECT);
-                Service.getInstance().updateRecord(record, newRecord);
-            }
+        for (Record record : Service.getInstance().getRecords(TransferState.IN_PROGRESS,
+                TransferState.RESUMED_WAITING, TransferState.WAITING)) {
+            Record newRecord = record;
+            newRecord.setState(TransferState.PENDING_NETWORK_DISCONNECT);
+            Service.getInstance().updateRecord(record, newRecord);
         }
     }
 
@@ -252,13 +289,11 @@ class TransferDBUtil {
      *
      */
     public void updateNetworkConnected() {
-        for (Record record : Service.getInstance().getRecords()) {
-            if (record.getState().equals(TransferState.PENDING_NETWORK_DISCONNECT) || 
-                    record.getState().equals(TransferState.WAITING_FOR_NETWORK)) {
-                Record newRecord = record;
-                newRecord.setState(TransferState.RESUMED_WAITING);
-                Service.getInstance().updateRecord(record, newRecord);
-            }
+        for (Record record : Service.getInstance().getRecords(
+                TransferState.PENDING_NETWORK_DISCONNECT, TransferState.WAITING_FOR_NETWORK)) {
+            Record newRecord = record;
+            newRecord.setState(TransferState.RESUMED_WAITING);
+            Service.getInstance().updateRecord(record, newRecord);
         }
     }
 
@@ -269,15 +304,12 @@ class TransferDBUtil {
      * @return Number of rows updated.
      */
     public void setAllRunningRecordsToPausedBeforeShutdownService() {
-        for (Record record : Service.getInstance().getRecords()) {
-            if (record.getState().equals(TransferState.IN_PROGRESS) || 
-                    record.getState().equals(TransferState.PENDING_PAUSE) || 
-                    record.getState().equals(TransferState.RESUMED_WAITING) || 
-                    record.getState().equals(TransferState.WAITING)) {
-                Record newRecord = record;
-                newRecord.setState(TransferState.PAUSED);
-                Service.getInstance().updateRecord(record, newRecord);
-            }
+        for (Record record : Service.getInstance().getRecords(TransferState.IN_PROGRESS,
+                TransferState.PENDING_PAUSE, TransferState.RESUMED_WAITING,
+                TransferState.WAITING)) {
+            Record newRecord = record;
+            newRecord.setState(TransferState.PAUSED);
+            Service.getInstance().updateRecord(record, newRecord);
         }
     }
 
@@ -519,13 +551,7 @@ class TransferDBUtil {
      *         mainUploadId value.
      */
     public List<Record> getPartRecord(int mainUploadId) {
-        List<Record> records = new ArrayList<Record>();
-        for (Record r : Service.getInstance().getRecords()) {
-            if (r.getMultipartId().equals(mainUploadId)) {
-                records.add(r);
-            }
-        }
-        return records;
+        return Service.getInstance().getPartRecords(mainUploadId);
     }
 
     /**
@@ -110,11 +110,9 @@ public class TransferObserver {
      * TransferListener is set, then there's no need to call this method.
      */
     public void refresh() {
-        for (Record record : Service.getInstance().getRecords()) {
-            if (record.getId() == id) {
-                updateFromDB(record);
-                break;
-            }
+        final Record record = Service.getInstance().findRecord(id);
+        if (record != null) {
+            updateFromDB(record);
         }
     }
 
@@ -26,6 +26,7 @@ import org.apache.commons.logging.LogFactory;
 import java.io.File;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
@@ -73,14 +74,21 @@ class TransferRecord {
     public boolean start(AmazonS3 s3, TransferDBUtil dbUtil, TransferStatusUpdater updater,
             NetworkInfoReceiver networkInfo) {
         if (!isRunning() && checkIsReadyToRun()) {
-            if (TransferType.DOWNLOAD.equals(record.getType())) {
-                LOGGER.info("Task Download ");
-                submittedTask = TransferThreadPool
-                        .submitTask(new DownloadTask(this, s3, updater, networkInfo));
-            } else {
-                LOGGER.info("Task Upload ");
-                submittedTask = TransferThreadPool
-                        .submitTask(new UploadTask(this, s3, dbUtil, updater, networkInfo));
+            try {
+                if (TransferType.DOWNLOAD.equals(record.getType())) {
+                    LOGGER.info("Task Download ");
+                    submittedTask = TransferThreadPool
+                            .submitTask(new DownloadTask(this, s3, updater, networkInfo));
+                } else {
+                    LOGGER.info("Task Upload ");
+                    submittedTask = TransferThreadPool
+                            .submitTask(new UploadTask(this, s3, dbUtil, updater, networkInfo));
+                }
+            } catch (final RejectedExecutionException e) {
+                // The thread pool is closing; the record is recovered on the
+                // next database scan.
+                LOGGER.warn("Unable to start transfer " + record.getId() + ": " + e.getMessage());
+                return false;
             }
             return true;
         }
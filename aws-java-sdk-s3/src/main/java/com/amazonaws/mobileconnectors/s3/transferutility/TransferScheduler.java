@@ -0,0 +1,442 @@
+/**
+ * Copyright 2015-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An executor that runs the tasks of transfers on a bounded number of
+ * threads. The transfers with the highest priority are served first, and the
+ * transfers of the same priority are served round robin, one task each, so a
+ * transfer with thousands of queued parts doesn't hold back the others.
+ * <p>
+ * Each transfer may have a bounded number of queued tasks. Submitting a task
+ * to a transfer whose queue is full blocks until a task of the transfer is
+ * taken, so tasks are never discarded. A submission interrupted while it's
+ * blocked, or made after shutdown, is rejected with a
+ * {@link RejectedExecutionException}.
+ */
+class TransferScheduler extends AbstractExecutorService {
+    private static final Log LOGGER = LogFactory.getLog(TransferScheduler.class);
+
+    /**
+     * A task of a transfer.
+     */
+    interface TransferTask {
+        /**
+         * Returns the id of the transfer the task belongs to.
+         */
+        int getTransferId();
+
+        /**
+         * Returns the priority of the transfer; higher priorities run first.
+         */
+        int getPriority();
+    }
+
+    /**
+     * The time an idle thread waits for a task before it exits.
+     */
+    private static final long KEEP_ALIVE_MS = 10 * 1000;
+
+    /**
+     * The transfer id of the tasks that don't belong to a transfer.
+     */
+    private static final int NO_TRANSFER = 0;
+
+    private final String name;
+    private final int poolSize;
+    private final int maxQueuedTasksPerTransfer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+
+    /**
+     * The transfers with queued tasks, by priority from the highest; each
+     * level is served round robin.
+     */
+    private final TreeMap<Integer, ArrayDeque<TransferQueue>> ready =
+            new TreeMap<Integer, ArrayDeque<TransferQueue>>(Collections.<Integer> reverseOrder());
+    /**
+     * The transfers with queued tasks, by id.
+     */
+    private final Map<Integer, TransferQueue> queues = new HashMap<Integer, TransferQueue>();
+    private final Set<Thread> workers = new HashSet<Thread>();
+    private int idleWorkers;
+    private boolean isShutdown;
+
+    private int queuedTasks;
+    private int peakQueuedTasks;
+    private int activeTasks;
+    private long completedTasks;
+    private long backpressureWaits;
+
+    /**
+     * @param name The name of the threads of the scheduler.
+     * @param poolSize The number of threads.
+     * @param maxQueuedTasksPerTransfer The number of tasks a transfer can
+     *            have queued before its submissions block.
+     */
+    TransferScheduler(String name, int poolSize, int maxQueuedTasksPerTransfer) {
+        if (poolSize <= 0 || maxQueuedTasksPerTransfer <= 0) {
+            throw new IllegalArgumentException("The pool size and queue bound must be positive");
+        }
+        this.name = name;
+        this.poolSize = poolSize;
+        this.maxQueuedTasksPerTransfer = maxQueuedTasksPerTransfer;
+    }
+
+    /**
+     * The queued tasks of a transfer.
+     */
+    private static final class TransferQueue {
+        private final int transferId;
+        private int priority;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+
+        private TransferQueue(int transferId, int priority) {
+            this.transferId = transferId;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * A future that remembers the transfer of its task.
+     */
+    private static final class TransferFutureTask<T> extends FutureTask<T> {
+        private final int transferId;
+        private final int priority;
+
+        private TransferFutureTask(Callable<T> callable) {
+            super(callable);
+            if (callable instanceof TransferTask) {
+                transferId = ((TransferTask) callable).getTransferId();
+                priority = ((TransferTask) callable).getPriority();
+            } else {
+                transferId = NO_TRANSFER;
+                priority = 0;
+            }
+        }
+
+        private TransferFutureTask(Runnable runnable, T value) {
+            super(runnable, value);
+            transferId = NO_TRANSFER;
+            priority = 0;
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new TransferFutureTask<T>(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new TransferFutureTask<T>(runnable, value);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        int transferId = NO_TRANSFER;
+        int priority = 0;
+        if (task instanceof TransferFutureTask) {
+            transferId = ((TransferFutureTask<?>) task).transferId;
+            priority = ((TransferFutureTask<?>) task).priority;
+        }
+
+        lock.lock();
+        try {
+            TransferQueue queue = queues.get(transferId);
+            boolean hasWaited = false;
+            while (!isShutdown && queue != null
+                    && queue.tasks.size() >= maxQueuedTasksPerTransfer) {
+                if (!hasWaited) {
+                    hasWaited = true;
+                    backpressureWaits++;
+                }
+                try {
+                    notFull.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException(
+                            "Interrupted while waiting to queue a task of transfer " + transferId,
+                            e);
+                }
+                queue = queues.get(transferId);
+            }
+            if (isShutdown) {
+                throw new RejectedExecutionException("The " + name + " scheduler is shut down");
+            }
+
+            if (queue == null) {
+                queue = new TransferQueue(transferId, priority);
+                queues.put(transferId, queue);
+                level(priority).add(queue);
+            }
+            queue.tasks.add(task);
+            queuedTasks++;
+            peakQueuedTasks = Math.max(peakQueuedTasks, queuedTasks);
+
+            if (idleWorkers > 0) {
+                notEmpty.signal();
+            } else if (workers.size() < poolSize) {
+                startWorker();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the priority of the tasks of a transfer that are queued, and of
+     * those queued while any remain.
+     *
+     * @param transferId The id of the transfer.
+     * @param priority The new priority.
+     */
+    void setPriority(int transferId, int priority) {
+        lock.lock();
+        try {
+            final TransferQueue queue = queues.get(transferId);
+            if (queue == null || queue.priority == priority) {
+                return;
+            }
+            final ArrayDeque<TransferQueue> previousLevel = ready.get(queue.priority);
+            previousLevel.remove(queue);
+            if (previousLevel.isEmpty()) {
+                ready.remove(queue.priority);
+            }
+            queue.priority = priority;
+            level(priority).add(queue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ArrayDeque<TransferQueue> level(int priority) {
+        ArrayDeque<TransferQueue> level = ready.get(priority);
+        if (level == null) {
+            level = new ArrayDeque<TransferQueue>();
+            ready.put(priority, level);
+        }
+        return level;
+    }
+
+    private void startWorker() {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runTasks();
+            }
+        }, name + "-" + (workers.size() + 1));
+        workers.add(thread);
+        thread.start();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = nextTask()) != null) {
+            try {
+                task.run();
+            } catch (final Throwable t) {
+                // A task submitted with execute() may throw; the worker keeps
+                // serving the queue rather than dying with the pool counting it
+                LOGGER.warn("A task of the " + name + " scheduler failed: " + t, t);
+            } finally {
+                // Don't let the interruption of a canceled task leak into the
+                // next one
+                Thread.interrupted();
+                lock.lock();
+                try {
+                    activeTasks--;
+                    completedTasks++;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the next task to run, or returns null once the calling worker
+     * should exit, in which case it's no longer counted as a worker.
+     */
+    private Runnable nextTask() {
+        lock.lock();
+        try {
+            while (queuedTasks == 0) {
+                if (isShutdown) {
+                    return exitWorker();
+                }
+                idleWorkers++;
+                boolean hasTimedOut;
+                try {
+                    hasTimedOut = !notEmpty.await(KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException e) {
+                    hasTimedOut = false;
+                } finally {
+                    idleWorkers--;
+                }
+                if (hasTimedOut && queuedTasks == 0) {
+                    return exitWorker();
+                }
+            }
+
+            final Map.Entry<Integer, ArrayDeque<TransferQueue>> level = ready.firstEntry();
+            final TransferQueue queue = level.getValue().poll();
+            final Runnable task = queue.tasks.poll();
+            if (queue.tasks.isEmpty()) {
+                queues.remove(queue.transferId);
+            } else {
+                level.getValue().add(queue);
+            }
+            if (level.getValue().isEmpty()) {
+                ready.remove(level.getKey());
+            }
+            queuedTasks--;
+            activeTasks++;
+            notFull.signalAll();
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Runnable exitWorker() {
+        workers.remove(Thread.currentThread());
+        if (isShutdown && workers.isEmpty()) {
+            terminated.signalAll();
+        }
+        return null;
+    }
+
+    /**
+     * Returns a snapshot of the queue depths and counters of the scheduler.
+     */
+    TransferSchedulerMetrics getMetrics() {
+        lock.lock();
+        try {
+            final Map<Integer, Integer> queuedTasksByTransfer = new TreeMap<Integer, Integer>();
+            for (final TransferQueue queue : queues.values()) {
+                queuedTasksByTransfer.put(queue.transferId, queue.tasks.size());
+            }
+            return new TransferSchedulerMetrics(poolSize, workers.size(), activeTasks,
+                    queuedTasks, peakQueuedTasks, completedTasks, backpressureWaits,
+                    queuedTasksByTransfer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            isShutdown = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+            if (workers.isEmpty()) {
+                terminated.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        lock.lock();
+        try {
+            shutdown();
+            final List<Runnable> pending = new ArrayList<Runnable>(queuedTasks);
+            for (final ArrayDeque<TransferQueue> level : ready.values()) {
+                for (final TransferQueue queue : level) {
+                    pending.addAll(queue.tasks);
+                }
+            }
+            ready.clear();
+            queues.clear();
+            queuedTasks = 0;
+            for (final Thread worker : workers) {
+                worker.interrupt();
+            }
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return isShutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return isShutdown && workers.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!(isShutdown && workers.isEmpty())) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
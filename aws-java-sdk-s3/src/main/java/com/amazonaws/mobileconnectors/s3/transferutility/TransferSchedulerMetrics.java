@@ -0,0 +1,115 @@
+/**
+ * Copyright 2015-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of the queue depths and counters of the scheduler that runs
+ * either the transfers or the parts of multipart uploads, returned by
+ * {@link TransferUtility#getTransferSchedulerMetrics()} and
+ * {@link TransferUtility#getPartSchedulerMetrics()}.
+ */
+public final class TransferSchedulerMetrics {
+    private final int poolSize;
+    private final int threads;
+    private final int activeTasks;
+    private final int queuedTasks;
+    private final int peakQueuedTasks;
+    private final long completedTasks;
+    private final long backpressureWaits;
+    private final Map<Integer, Integer> queuedTasksByTransfer;
+
+    TransferSchedulerMetrics(int poolSize, int threads, int activeTasks, int queuedTasks,
+            int peakQueuedTasks, long completedTasks, long backpressureWaits,
+            Map<Integer, Integer> queuedTasksByTransfer) {
+        this.poolSize = poolSize;
+        this.threads = threads;
+        this.activeTasks = activeTasks;
+        this.queuedTasks = queuedTasks;
+        this.peakQueuedTasks = peakQueuedTasks;
+        this.completedTasks = completedTasks;
+        this.backpressureWaits = backpressureWaits;
+        this.queuedTasksByTransfer = Collections.unmodifiableMap(queuedTasksByTransfer);
+    }
+
+    /**
+     * Returns the largest number of threads running tasks.
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Returns the number of threads currently started.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Returns the number of tasks running.
+     */
+    public int getActiveTasks() {
+        return activeTasks;
+    }
+
+    /**
+     * Returns the number of tasks waiting for a thread.
+     */
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    /**
+     * Returns the largest number of tasks that have been waiting at once.
+     */
+    public int getPeakQueuedTasks() {
+        return peakQueuedTasks;
+    }
+
+    /**
+     * Returns the number of tasks that have run.
+     */
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    /**
+     * Returns the number of submissions that had to wait because their
+     * transfer had too many tasks queued.
+     */
+    public long getBackpressureWaits() {
+        return backpressureWaits;
+    }
+
+    /**
+     * Returns the number of tasks waiting for a thread, by transfer id.
+     */
+    public Map<Integer, Integer> getQueuedTasksByTransfer() {
+        return queuedTasksByTransfer;
+    }
+
+    @Override
+    public String toString() {
+        return "{poolSize: " + poolSize + ", threads: " + threads + ", activeTasks: "
+                + activeTasks + ", queuedTasks: " + queuedTasks + ", peakQueuedTasks: "
+                + peakQueuedTasks + ", completedTasks: " + completedTasks
+                + ", backpressureWaits: " + backpressureWaits + ", queuedTasksByTransfer: "
+                + queuedTasksByTransfer + "}";
+    }
+}
@@ -237,7 +237,9 @@ public class TransferService {
 
         pauseAll();
         TransferThreadPool.closeThreadPool();
+        updater.close();
         S3ClientReference.clear();
+        BandwidthLimiterReference.clear();
 
         LOGGER.info("Closing the database.");
     }
@@ -27,12 +27,25 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import javafx.application.Platform;
 
 /**
  * A class that tracks active transfers. It has a static map that holds weak
  * references of {@link TransferListener}.
+ * <p>
+ * Progress is coalesced: listeners are notified of it at most once per
+ * {@link #UPDATE_THRESHOLD_MS} and {@link #UPDATE_THRESHOLD_BYTES}, with at
+ * most one notification of a transfer queued on the main thread, and it is
+ * persisted in batches by a single thread every {@link #PERSIST_INTERVAL_MS}.
+ * States are persisted as they change, and a final state is delivered to the
+ * listeners exactly once.
  */
 class TransferStatusUpdater {
     private static final Log LOGGER = LogFactory.getLog(TransferStatusUpdater.class);
@@ -48,6 +61,33 @@ class TransferStatusUpdater {
      * listeners too often.
      */
     private static final int UPDATE_THRESHOLD_MS = 1000;
+    /**
+     * The number of bytes a transfer has to progress by before its listeners
+     * are notified again, so that a trickle of small reads doesn't wake them
+     * up.
+     */
+    private static final long UPDATE_THRESHOLD_BYTES = 64 * 1024;
+    /**
+     * The interval in milliseconds at which the progress of the transfers is
+     * persisted.
+     */
+    private static final long PERSIST_INTERVAL_MS = 1000;
+    /**
+     * The states a transfer ends in, which are delivered only once.
+     */
+    private static final HashSet<TransferState> FINAL_STATES = new HashSet<TransferState>(
+            Arrays.asList(TransferState.COMPLETED, TransferState.FAILED,
+                    TransferState.CANCELED));
+
+    /**
+     * Runs the notifications of the listeners on the main thread.
+     */
+    private static final Executor MAIN_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            Platform.runLater(command);
+        }
+    };
 
     /**
      * A map of listeners.
@@ -63,17 +103,56 @@ class TransferStatusUpdater {
      * fired too often.
      */
     private final Map<Integer, Long> lastUpdateTime;
+    /**
+     * A map of transfer to the progress its listeners were last notified of.
+     */
+    private final Map<Integer, Long> lastUpdateBytes;
+    /**
+     * A map of transfer to the latest progress not yet delivered by the
+     * notification queued on the main thread.
+     */
+    private final Map<Integer, long[]> undeliveredProgress;
+    /**
+     * A map of transfer to the latest progress not yet persisted.
+     */
+    private final Map<Integer, Long> unpersistedProgress;
+    /**
+     * The transfers whose final state has been delivered.
+     */
+    private final Set<Integer> finalStateDelivered;
+    /**
+     * The thread that persists the progress, started with the first update.
+     */
+    private ScheduledExecutorService persister;
     /**
      * Database util to update transfer status.
      */
     private final TransferDBUtil dbUtil;
+    /**
+     * The thread the listeners are notified on.
+     */
+    private final Executor mainThread;
+
     /**
      * This class is instantiated by TransferService.
      */
     TransferStatusUpdater(TransferDBUtil dbUtil) {
+        this(dbUtil, MAIN_THREAD);
+    }
+
+    /**
+     * Constructs an updater that notifies the listeners with the given
+     * executor instead of the main thread.
+     */
+    TransferStatusUpdater(TransferDBUtil dbUtil, Executor mainThread) {
         this.dbUtil = dbUtil;
+        this.mainThread = mainThread;
         transfers = new HashMap<Integer, TransferRecord>();
         lastUpdateTime = new HashMap<Integer, Long>();
+        lastUpdateBytes = new HashMap<Integer, Long>();
+        undeliveredProgress = new HashMap<Integer, long[]>();
+        unpersistedProgress = new HashMap<Integer, Long>();
+        finalStateDelivered = new HashSet<Integer>();
     }
 
     /**
@@ -109,10 +188,13 @@ class TransferStatusUpdater {
      *
      * @param id id of the transfer to remove
      */
-    void removeTransfer(int id) {
+    synchronized void removeTransfer(int id) {
         transfers.remove(id);
         LISTENERS.remove(id);
         lastUpdateTime.remove(id);
+        lastUpdateBytes.remove(id);
+        undeliveredProgress.remove(id);
+        finalStateDelivered.remove(id);
     }
     
     /**
@@ -122,6 +204,7 @@ class TransferStatusUpdater {
      */
     void removeTransferRecordFromDB(final int id) {
         S3ClientReference.remove(id);
+        BandwidthLimiterReference.remove(id);
         dbUtil.deleteTransferRecords(id);
     }
 
@@ -136,7 +219,8 @@ class TransferStatusUpdater {
      * Note that when the newState is CANCELED, COMPLETED, or FAILED, associated
      * LISTENERS will be removed after being invoked. Make sure you call
      * throwError before changing the state to one of these, or else LISTENERS
-     * won't be invoked.
+     * won't be invoked. A final state is only delivered once, until the
+     * transfer is restarted.
      *
      * @param id id of the transfer to update
      * @param newState new state
@@ -144,14 +228,25 @@ class TransferStatusUpdater {
     void updateState(final int id, final TransferState newState) {
         boolean shouldNotNotify = STATES_NOT_TO_NOTIFY.contains(newState);
         final TransferRecord transfer = transfers.get(id);
-        if (transfer == null) {
-            // still wants to save state
-            dbUtil.updateState(id, newState);
-        } else {
-            shouldNotNotify |= newState.equals(transfer.getRecord().getState());
-            transfer.getRecord().setState(newState);
-            // save to database
-            dbUtil.updateTransferRecord(transfer);
+        synchronized (this) {
+            if (transfer == null) {
+                // still wants to save state
+                dbUtil.updateState(id, newState);
+            } else {
+                if (!FINAL_STATES.contains(newState)) {
+                    shouldNotNotify |= newState.equals(transfer.getRecord().getState());
+                }
+                transfer.getRecord().setState(newState);
+                // save to database, along with the progress not yet persisted
+                unpersistedProgress.remove(id);
+                dbUtil.updateTransferRecord(transfer);
+            }
+
+            if (FINAL_STATES.contains(newState)) {
+                shouldNotNotify |= !finalStateDelivered.add(id);
+            } else if (!shouldNotNotify) {
+                finalStateDelivered.remove(id);
+            }
         }
 
         if (shouldNotNotify) {
@@ -168,7 +263,7 @@ class TransferStatusUpdater {
         }
 
         // invoke on main thread
-        Platform.runLater(new Runnable() {
+        mainThread.execute(new Runnable() {
             @Override
             public void run() {
                 for (final TransferListener l : list) {
@@ -192,7 +287,9 @@ class TransferStatusUpdater {
     /**
      * Updates the transfer progress of a transfer. It will trigger
      * {@link TransferListener#onProgressChanged(int, long, long)} of associated
-     * LISTENERS if the update exceeds either time threshold.
+     * LISTENERS if the update exceeds both the time and bytes thresholds, or
+     * reaches the last byte. The progress is persisted by the persister
+     * thread.
      *
      * @param id id of the transfer
      * @param bytesCurrent current transferred bytes
@@ -205,36 +302,116 @@ class TransferStatusUpdater {
             transfer.getRecord().setBytesTotal(bytesTotal);
         }
 
-        // Don't fire off the update too frequently, but still fire when it
-        // comes to the last byte.
         final long timeInMillis = System.currentTimeMillis();
+        final List<TransferListener> list;
+        synchronized (this) {
+            // update bytes transfered so that the transfer observer may pick
+            // it up.
+            unpersistedProgress.put(id, bytesCurrent);
+            startPersister();
 
-        // update bytes transfered so that the transfer observer may pick it
-        // up.
-        dbUtil.updateBytesTransferred(id, bytesCurrent);
+            // invoke LISTENERS
+            list = LISTENERS.get(id);
+            if (list == null || list.isEmpty()) {
+                return;
+            }
 
-        // invoke LISTENERS
-        final List<TransferListener> list = LISTENERS.get(id);
-        if (list == null || list.isEmpty()) {
-            return;
+            // Don't fire off the update too frequently, but still fire when
+            // it comes to the last byte.
+            final Long lastTime = lastUpdateTime.get(id);
+            if (lastTime != null) {
+                final long bytesSinceLast = Math.abs(bytesCurrent - lastUpdateBytes.get(id));
+                final boolean shouldNotify = bytesCurrent == bytesTotal
+                        ? bytesSinceLast > 0
+                        : timeInMillis - lastTime > UPDATE_THRESHOLD_MS
+                                && bytesSinceLast >= UPDATE_THRESHOLD_BYTES;
+                if (!shouldNotify) {
+                    return;
+                }
+            }
+            lastUpdateTime.put(id, timeInMillis);
+            lastUpdateBytes.put(id, bytesCurrent);
+
+            // a notification still queued will deliver this progress instead
+            if (undeliveredProgress.put(id, new long[] {
+                    bytesCurrent, bytesTotal
+            }) != null) {
+                return;
+            }
         }
 
+        // invoke on main thread
+        mainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long[] progress;
+                synchronized (TransferStatusUpdater.this) {
+                    progress = undeliveredProgress.remove(id);
+                }
+                if (progress == null) {
+                    return;
+                }
+                for (final TransferListener l : list) {
+                    l.onProgressChanged(id, progress[0], progress[1]);
+                }
+            }
+        });
+    }
 
-        if (!lastUpdateTime.containsKey(id)
-                || timeInMillis - lastUpdateTime.get(id) > UPDATE_THRESHOLD_MS
-                || bytesCurrent == bytesTotal) {
-            lastUpdateTime.put(id, timeInMillis);
+    /**
+     * Starts the thread that persists the progress, if it isn't running.
+     */
+    private void startPersister() {
+        if (persister != null) {
+            return;
+        }
+        persister = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "TransferStatusUpdater-persister");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        persister.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                persistProgress();
+            }
+        }, PERSIST_INTERVAL_MS, PERSIST_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
 
-            // invoke on main thread
-            Platform.runLater(new Runnable() {
-                @Override
-                public void run() {
-                    for (final TransferListener l : list) {
-                        l.onProgressChanged(id, bytesCurrent, bytesTotal);
-                    }
-                }
-            });
+    /**
+     * Writes the progress not yet persisted into database, in a single batch.
+     * The lock is held while writing so that a state written meanwhile isn't
+     * overwritten with older progress.
+     */
+    synchronized void persistProgress() {
+        if (unpersistedProgress.isEmpty()) {
+            return;
+        }
+        final Map<Integer, Long> batch = new HashMap<Integer, Long>(unpersistedProgress);
+        unpersistedProgress.clear();
+        try {
+            dbUtil.updateBytesTransferred(batch);
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Unable to persist the progress of " + batch.size() + " transfers", e);
+        }
+    }
+
+    /**
+     * Persists the pending progress and stops the persister thread.
+     */
+    void close() {
+        final ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = persister;
+            persister = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
         }
+        persistProgress();
     }
 
     /**
@@ -251,7 +428,7 @@ class TransferStatusUpdater {
             return;
         }
         // invoke on main thread
-        Platform.runLater(new Runnable() {
+        mainThread.execute(new Runnable() {
             @Override
             public void run() {
                 for (final TransferListener l : list) {
@@ -264,10 +441,14 @@ class TransferStatusUpdater {
     /**
      * Clears all transfers, LISTENERS, etc.
      */
-    void clear() {
+    synchronized void clear() {
         LISTENERS.clear();
         transfers.clear();
         lastUpdateTime.clear();
+        lastUpdateBytes.clear();
+        undeliveredProgress.clear();
+        unpersistedProgress.clear();
+        finalStateDelivered.clear();
     }
 
     /**
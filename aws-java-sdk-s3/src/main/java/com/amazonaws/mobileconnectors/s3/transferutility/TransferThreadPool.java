@@ -15,11 +15,9 @@
 
 package com.amazonaws.mobileconnectors.s3.transferutility;
 
+import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
@@ -29,8 +27,14 @@ class TransferThreadPool {
     
     private static final Log LOGGER = LogFactory.getLog(TransferService.class);
 
-    private static ExecutorService executorMainTask;
-    private static ExecutorService executorPartTask;
+    /**
+     * The least number of tasks a transfer can have queued before its
+     * submissions block.
+     */
+    private static final int MIN_QUEUED_TASKS_PER_TRANSFER = 16;
+
+    private static TransferScheduler executorMainTask;
+    private static TransferScheduler executorPartTask;
 
     static synchronized void init(final int transferThreadPoolSize) {
         LOGGER.debug("Initializing the thread pool of size: " + transferThreadPoolSize);
@@ -38,13 +42,20 @@ class TransferThreadPool {
         final int poolSize = Math.max((int) (Math.ceil((double) transferThreadPoolSize / 2)), 1);
         
         if (executorMainTask == null) {
-            executorMainTask = buildExecutor(poolSize);
+            executorMainTask = buildExecutor("TransferTask", poolSize);
         }
         if (executorPartTask == null) {
-            executorPartTask = buildExecutor(poolSize);
+            executorPartTask = buildExecutor("TransferPartTask", poolSize);
         }
     }
 
+    /**
+     * Submits a task. If its transfer has too many tasks queued already, it
+     * blocks until one of them is taken.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if interrupted
+     *             while blocked, or if the thread pool is closed meanwhile.
+     */
     public static <T> Future<T> submitTask(Callable<T> c) {
         init(TransferUtilityOptions.getDefaultThreadPoolSize());
         if (c instanceof UploadPartTask) {
@@ -54,7 +65,31 @@ class TransferThreadPool {
         }
     }
 
-    public static void closeThreadPool() {
+    /**
+     * Changes the priority of the queued tasks of a transfer.
+     *
+     * @param id id of the transfer
+     * @param priority the new priority
+     */
+    static synchronized void setPriority(int id, int priority) {
+        if (executorMainTask != null) {
+            executorMainTask.setPriority(id, priority);
+        }
+        if (executorPartTask != null) {
+            executorPartTask.setPriority(id, priority);
+        }
+    }
+
+    /**
+     * Returns the metrics of the scheduler of the transfers, or of the parts of
+     * multipart uploads, or null if the thread pool isn't running.
+     */
+    static synchronized TransferSchedulerMetrics getMetrics(boolean isPartTask) {
+        final TransferScheduler scheduler = isPartTask ? executorPartTask : executorMainTask;
+        return scheduler == null ? null : scheduler.getMetrics();
+    }
+
+    public static synchronized void closeThreadPool() {
         if (executorPartTask != null) {
             shutdown(executorPartTask);
             executorPartTask = null;
@@ -67,7 +102,7 @@ class TransferThreadPool {
 
     private static final int WAIT_TIME = 250;
 
-    private static void shutdown(ExecutorService executor) {
+    private static void shutdown(TransferScheduler executor) {
         if (executor == null) {
             return;
         }
@@ -77,28 +112,34 @@ class TransferThreadPool {
             // Wait for existing tasks
             if (!executor.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS)) {
                 // Cancel tasks in execution
-                executor.shutdownNow();
+                cancel(executor.shutdownNow());
             }
         } catch (final InterruptedException ie) {
-            executor.shutdownNow();
+            cancel(executor.shutdownNow());
             Thread.currentThread().interrupt();
         }
     }
 
-    private static ExecutorService buildExecutor(int maxThreadsAllowed) {
+    /**
+     * Cancels the tasks that never ran, so that nothing waits for them. They
+     * are saved in database and will be recovered on next database scan.
+     */
+    private static void cancel(List<Runnable> tasks) {
+        for (final Runnable task : tasks) {
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+        }
+    }
+
+    private static TransferScheduler buildExecutor(String name, int maxThreadsAllowed) {
         /*
          * Create a bounded thread pool for executing transfers; it creates
          * threads as needed (up to maximum) and reclaims them when finished.
+         * Tasks are never discarded: a transfer with too many tasks queued
+         * waits for some of them to run.
          */
-        final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreadsAllowed,
-                maxThreadsAllowed, 10, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>());
-        /*
-         * It's safe to discard tasks, as they are saved in database and will be
-         * recovered on next database scan.
-         */
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
-        executor.allowCoreThreadTimeOut(true);
-        return executor;
+        return new TransferScheduler(name, maxThreadsAllowed,
+                Math.max(MIN_QUEUED_TASKS_PER_TRANSFER, 2 * maxThreadsAllowed));
     }
 }
@@ -26,6 +26,7 @@ import com.amazonaws.regions.Region;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.CannedAccessControlList;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.util.BandwidthLimiter;
 import com.amazonaws.util.VersionInfoUtils;
 
 import java.io.File;
@@ -123,6 +124,12 @@ public class TransferUtility {
     private final String defaultBucket;
     private final TransferUtilityOptions transferUtilityOptions;
 
+    /**
+     * Limits the bandwidth of all the transfers of this transfer utility
+     * together; each transfer has its own limiter under it.
+     */
+    private final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter();
+
     /**
      * Builder class for TransferUtility
      */
@@ -540,14 +547,13 @@ public class TransferUtility {
      * @return The TransferObserver instance which is observing the record.
      */
     public TransferObserver getTransferById(int id) {
-        for (Record r : Service.getInstance().getRecords()) {
-            if (r.getId() == id) {
-                final TransferObserver to = new TransferObserver(id);
-                to.updateFromDB(r);
-                return to;
-            }
+        final Record r = Service.getInstance().findRecord(id);
+        if (r == null) {
+            return null;
         }
-        return null;
+        final TransferObserver to = new TransferObserver(id);
+        to.updateFromDB(r);
+        return to;
     }
 
     /**
@@ -559,12 +565,10 @@ public class TransferUtility {
      */
     public List<TransferObserver> getTransfersWithType(TransferType type) {
         final List<TransferObserver> transferObservers = new ArrayList<TransferObserver>();
-        for (Record record : Service.getInstance().getRecords()) {
-            if (record.getType().equals(type)) {
-                final TransferObserver to = new TransferObserver(record.getId());
-                to.updateFromDB(record);
-                transferObservers.add(to);
-            }
+        for (Record record : Service.getInstance().getRecords(type)) {
+            final TransferObserver to = new TransferObserver(record.getId());
+            to.updateFromDB(record);
+            transferObservers.add(to);
         }
         
         return transferObservers;
@@ -598,17 +602,13 @@ public class TransferUtility {
     public List<TransferObserver> getTransfersWithTypeAndStates(TransferType type,
                                                                 TransferState[] states) {
         final List<TransferObserver> transferObservers = new ArrayList<TransferObserver>();
-        for (Record record : Service.getInstance().getRecords()) {
-                    // skip parts of a multipart upload
-            if (record.getType().equals(type) && ! record.getMultipartId().equals("0")) {
-                for (TransferState state : states) {
-                    if (record.getState().equals(state)) {
-                        final TransferObserver to = new TransferObserver(record.getId());
-                        to.updateFromDB(record);
+        for (Record record : Service.getInstance().getRecords(states)) {
+            // skip parts of a multipart upload
+            if ((type == TransferType.ANY || record.getType().equals(type))
+                    && ! record.getMultipartId().equals("0")) {
+                final TransferObserver to = new TransferObserver(record.getId());
+                to.updateFromDB(record);
                 transferObservers.add(to);
-                        break;
-                    }
-                }
             }
         }
         return transferObservers;
@@ -625,17 +625,11 @@ public class TransferUtility {
     private List<Integer> getTransferIdsWithTypeAndStates(TransferType type,
                                                           TransferState[] states) {
         List<Integer> transferIds = new ArrayList<Integer>();
-        for (Record record : Service.getInstance().getRecords()) {
-                    // skip parts of a multipart upload
-            if (record.getType().equals(type) && ! record.getMultipartId().equals("0")) {
-                for (TransferState state : states) {
-                    if (record.getState().equals(state)) {
-                        final TransferObserver to = new TransferObserver(record.getId());
-                        to.updateFromDB(record);
-                        transferIds.add(to.getId());
-                        break;
-                    }
-                }
+        for (Record record : Service.getInstance().getRecords(states)) {
+            // skip parts of a multipart upload
+            if ((type == TransferType.ANY || record.getType().equals(type))
+                    && ! record.getMultipartId().equals("0")) {
+                transferIds.add(record.getId());
             }
         }
         return transferIds;
@@ -700,10 +694,8 @@ public class TransferUtility {
      * @param type The type of transfers
      */
     public void pauseAllWithType(TransferType type) {
-        for (Record record : Service.getInstance().getRecords()) {
-            if (record.getType().equals(type)) {
-                pause(record.getId());
-            }
+        for (Record record : Service.getInstance().getRecords(type)) {
+            pause(record.getId());
         }
     }
 
@@ -770,11 +762,94 @@ public class TransferUtility {
      * @param type The type of transfers
      */
     public void cancelAllWithType(TransferType type) {
-        for (Record record : Service.getInstance().getRecords()) {
-            if (record.getType().equals(type)) {
-                cancel(record.getId());
-            }
+        for (Record record : Service.getInstance().getRecords(type)) {
+            cancel(record.getId());
+        }
+    }
+
+    /**
+     * Sets the priority of a transfer. The tasks of the transfers with the
+     * highest priority run first, and transfers of the same priority share
+     * the threads evenly. The default priority is 0.
+     *
+     * @param id A transfer id specifying the transfer
+     * @param priority The new priority of the transfer
+     * @return Whether the transfer exists
+     */
+    public boolean setPriority(int id, int priority) {
+        if (dbUtil.updatePriority(id, priority) == 0) {
+            return false;
         }
+        TransferThreadPool.setPriority(id, priority);
+        return true;
+    }
+
+    /**
+     * Returns the queue depths and counters of the scheduler that runs the
+     * transfers, or null if no transfer has run yet.
+     *
+     * @return the metrics of the transfer scheduler
+     */
+    public TransferSchedulerMetrics getTransferSchedulerMetrics() {
+        return TransferThreadPool.getMetrics(false);
+    }
+
+    /**
+     * Returns the queue depths and counters of the scheduler that runs the
+     * parts of multipart uploads, or null if no transfer has run yet.
+     *
+     * @return the metrics of the part scheduler
+     */
+    public TransferSchedulerMetrics getPartSchedulerMetrics() {
+        return TransferThreadPool.getMetrics(true);
+    }
+
+    /**
+     * Limits the combined bandwidth of all the uploads and downloads of this
+     * transfer utility, including those in progress. The limit applies to
+     * the bytes transferred from then on.
+     *
+     * @param bytesPerSecond The maximum combined rate in bytes per second, or
+     *            0 for no limit
+     */
+    public void setBandwidthLimit(long bytesPerSecond) {
+        bandwidthLimiter.setBytesPerSecond(bytesPerSecond);
+    }
+
+    /**
+     * Returns the maximum combined rate of the transfers of this transfer
+     * utility in bytes per second, or 0 if it isn't limited.
+     *
+     * @return the bandwidth limit in bytes per second, or 0
+     */
+    public long getBandwidthLimit() {
+        return bandwidthLimiter.getBytesPerSecond();
+    }
+
+    /**
+     * Limits the bandwidth of a transfer, within the limit of this transfer
+     * utility. The limit applies to the bytes transferred from then on, and
+     * lasts until the transfer service is destroyed.
+     *
+     * @param id A transfer id specifying the transfer
+     * @param bytesPerSecond The maximum rate in bytes per second, or 0 for no
+     *            limit of its own
+     */
+    public void setBandwidthLimit(int id, long bytesPerSecond) {
+        BandwidthLimiterReference.getOrCreate(id, bandwidthLimiter)
+                .setBytesPerSecond(bytesPerSecond);
+    }
+
+    /**
+     * Returns the maximum rate of a transfer in bytes per second, or 0 if it
+     * has no limit of its own.
+     *
+     * @param id A transfer id specifying the transfer
+     * @return the bandwidth limit of the transfer in bytes per second, or 0
+     */
+    public long getBandwidthLimit(int id) {
+        final BandwidthLimiter limiter = BandwidthLimiterReference.get(id);
+        return limiter == null ? 0 : limiter.getBytesPerSecond();
     }
 
     /**
@@ -798,6 +873,7 @@ public class TransferUtility {
      */
     private synchronized void sendIntent(String action, int id) {
         S3ClientReference.put(id, s3);
+        BandwidthLimiterReference.getOrCreate(id, bandwidthLimiter);
         TransferService service = new TransferService();
         LOGGER.log(Level.INFO, "Sending action intent: " + action + " for id " + id);
         service.onStartCommand(action, id, transferUtilityOptions, id, id);
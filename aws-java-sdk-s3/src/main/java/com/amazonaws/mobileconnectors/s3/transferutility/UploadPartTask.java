@@ -19,6 +19,7 @@ package com.amazonaws.mobileconnectors.s3.transferutility;
 import com.amazonaws.mobileconnectors.s3.transferutility.TransferService.NetworkInfoReceiver;
 import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.internal.ThrottledInputStream;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.services.s3.model.UploadPartResult;
 
@@ -27,7 +28,7 @@ import org.apache.commons.logging.LogFactory;
 
 import java.util.concurrent.Callable;
 
-class UploadPartTask implements Callable<Boolean> {
+class UploadPartTask implements Callable<Boolean>, TransferScheduler.TransferTask {
     private static final Log LOGGER = LogFactory.getLog(UploadPartTask.class);
 
 
@@ -35,6 +36,7 @@ class UploadPartTask implements Callable<Boolean> {
     private final AmazonS3 s3;
     private final TransferDBUtil dbUtil;
     private final NetworkInfoReceiver networkInfoReceiver;
+    private final int priority;
 
     public UploadPartTask(UploadPartRequest request,
                           AmazonS3 s3,
@@ -43,16 +45,39 @@ class UploadPartTask implements Callable<Boolean> {
         this.s3 = s3;
         this.dbUtil = dbUtil;
         this.networkInfoReceiver = null;
+        this.priority = 0;
     }
 
     public UploadPartTask(UploadPartRequest request,
                           AmazonS3 s3,
                           TransferDBUtil dbUtil,
                           NetworkInfoReceiver networkInfoReceiver) {
+        this(request, s3, dbUtil, networkInfoReceiver, 0);
+    }
+
+    public UploadPartTask(UploadPartRequest request,
+                          AmazonS3 s3,
+                          TransferDBUtil dbUtil,
+                          NetworkInfoReceiver networkInfoReceiver,
+                          int priority) {
         this.request = request;
         this.s3 = s3;
         this.dbUtil = dbUtil;
         this.networkInfoReceiver = networkInfoReceiver;
+        this.priority = priority;
+    }
+
+    /*
+     * The parts are scheduled as tasks of their multipart upload.
+     */
+    @Override
+    public int getTransferId() {
+        return request.getMainUploadId();
+    }
+
+    @Override
+    public int getPriority() {
+        return priority;
     }
 
     /*
@@ -61,7 +86,8 @@ class UploadPartTask implements Callable<Boolean> {
     @Override
     public Boolean call() throws Exception {
         try {
-            final UploadPartResult putPartResult = s3.uploadPart(request);
+            final UploadPartResult putPartResult = s3.uploadPart(ThrottledInputStream.throttle(
+                    request, BandwidthLimiterReference.get(request.getMainUploadId())));
             dbUtil.updateState(request.getId(), TransferState.PART_COMPLETED);
             dbUtil.updateETag(request.getId(), putPartResult.getETag());
             return true;
@@ -20,6 +20,7 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.mobileconnectors.s3.transferutility.TransferService.NetworkInfoReceiver;
 import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.internal.ThrottledInputStream;
 import com.amazonaws.services.s3.model.CannedAccessControlList;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
@@ -43,8 +44,9 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
-class UploadTask implements Callable<Boolean> {
+class UploadTask implements Callable<Boolean>, TransferScheduler.TransferTask {
 
     private static final Log LOGGER = LogFactory.getLog(UploadTask.class);
 
@@ -63,6 +65,16 @@ class UploadTask implements Callable<Boolean> {
         this.networkInfo = networkInfo;
     }
 
+    @Override
+    public int getTransferId() {
+        return upload.getRecord().getId();
+    }
+
+    @Override
+    public int getPriority() {
+        return upload.getRecord().getPriority();
+    }
+
     /*
      * Runs upload task and returns whether successfully uploaded.
      */
@@ -130,12 +142,17 @@ class UploadTask implements Callable<Boolean> {
                 upload.getRecord().getMultipartId());
         LOGGER.debug("multipart upload " + upload.getRecord().getId() + " in " + requestList.size() + " parts.");
         final ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
-        for (final UploadPartRequest request : requestList) {
-            TransferUtility.appendMultipartTransferServiceUserAgentString(request);
-            request.setGeneralProgressListener(updater.newProgressListener(upload.getRecord().getId()));
-            futures.add(TransferThreadPool.submitTask(new UploadPartTask(request, s3, dbUtil, networkInfo)));
-        }
         try {
+            /*
+             * Submitting blocks while the upload has too many parts queued,
+             * until the scheduler takes some.
+             */
+            for (final UploadPartRequest request : requestList) {
+                TransferUtility.appendMultipartTransferServiceUserAgentString(request);
+                request.setGeneralProgressListener(updater.newProgressListener(upload.getRecord().getId()));
+                futures.add(TransferThreadPool.submitTask(new UploadPartTask(request, s3, dbUtil,
+                        networkInfo, upload.getRecord().getPriority())));
+            }
             boolean isSuccess = true;
             /*
              * Future.get() will block the current thread until the method
@@ -150,6 +167,17 @@ class UploadTask implements Callable<Boolean> {
             if (!isSuccess) {
                 return false;
             }
+        } catch (final RejectedExecutionException e) {
+            /*
+             * The submission of a part was interrupted, or the thread pool is
+             * closing. Like an interruption, it's not a failure: the parts
+             * are saved in database.
+             */
+            for (final Future<?> f : futures) {
+                f.cancel(true);
+            }
+            LOGGER.debug("Transfer " + upload.getRecord().getId() + " is interrupted while queuing its parts");
+            return false;
         } catch (final InterruptedException e) {
             /*
              * Future.get() will catch InterruptedException, but it's not a
@@ -217,7 +245,8 @@ class UploadTask implements Callable<Boolean> {
         putObjectRequest.setGeneralProgressListener(updater.newProgressListener(upload.getRecord().getId()));
 
         try {
-            s3.putObject(putObjectRequest);
+            s3.putObject(ThrottledInputStream.throttle(putObjectRequest,
+                    BandwidthLimiterReference.get(upload.getRecord().getId())));
             updater.updateProgress(upload.getRecord().getId(), length, length);
             updater.updateState(upload.getRecord().getId(), TransferState.COMPLETED);
             return true;
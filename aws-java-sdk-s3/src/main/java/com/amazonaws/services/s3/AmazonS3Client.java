@@ -50,6 +50,7 @@ import com.amazonaws.http.HttpClient;
 import com.amazonaws.http.HttpMethodName;
 import com.amazonaws.http.HttpResponseHandler;
 import com.amazonaws.http.UrlHttpClient;
+import com.amazonaws.internal.FileRegionInputStream;
 import com.amazonaws.internal.StaticCredentialsProvider;
 import com.amazonaws.metrics.AwsSdkMetrics;
 import com.amazonaws.metrics.RequestMetricCollector;
@@ -64,10 +65,8 @@ import com.amazonaws.services.s3.internal.DeleteObjectTaggingHeaderHandler;
 import com.amazonaws.services.s3.internal.DeleteObjectsResponse;
 import com.amazonaws.services.s3.internal.DigestValidationInputStream;
 import com.amazonaws.services.s3.internal.GetObjectTaggingResponseHeaderHandler;
-import com.amazonaws.services.s3.internal.InputSubstream;
 import com.amazonaws.services.s3.internal.MD5DigestCalculatingInputStream;
 import com.amazonaws.services.s3.internal.ObjectExpirationHeaderHandler;
-import com.amazonaws.services.s3.internal.RepeatableFileInputStream;
 import com.amazonaws.services.s3.internal.ResponseHeaderHandlerChain;
 import com.amazonaws.services.s3.internal.S3ErrorResponseHandler;
 import com.amazonaws.services.s3.internal.S3ExecutionContext;
@@ -1629,7 +1628,7 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
             }
 
             try {
-                input = new RepeatableFileInputStream(file);
+                input = new FileRegionInputStream(file);
             } catch (final FileNotFoundException fnfe) {
                 throw new AmazonClientException("Unable to find file to upload", fnfe);
             }
@@ -1672,7 +1671,8 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
             if (!input.markSupported()) {
                 log.warn("No content length specified for stream data.  " +
                         "Stream contents will be buffered in memory and could result in " +
-                        "out of memory errors.");
+                        "out of memory errors.  Upload streams of unknown length " +
+                        "with TransferManager to send them in bounded parts.");
                 final ByteArrayInputStream bais = toByteArray(input);
                 request.addHeader(Headers.CONTENT_LENGTH, String.valueOf(bais.available()));
                 request.setStreaming(true);
@@ -3628,9 +3628,8 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
             inputStream = uploadPartRequest.getInputStream();
         } else if (uploadPartRequest.getFile() != null) {
             try {
-                inputStream = new InputSubstream(new RepeatableFileInputStream(
-                        uploadPartRequest.getFile()),
-                        uploadPartRequest.getFileOffset(), partSize, true);
+                inputStream = new FileRegionInputStream(uploadPartRequest.getFile(),
+                        uploadPartRequest.getFileOffset(), partSize);
             } catch (final FileNotFoundException e) {
                 throw new IllegalArgumentException("The specified file doesn't exist", e);
             }
@@ -37,7 +37,9 @@ import com.amazonaws.services.s3.model.CopyPartRequest;
 import com.amazonaws.services.s3.model.CopyPartResult;
 import com.amazonaws.services.s3.model.CryptoConfiguration;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.EncryptedGetObjectRequest;
 import com.amazonaws.services.s3.model.EncryptedInitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.EncryptedObjectReader;
 import com.amazonaws.services.s3.model.EncryptedPutObjectRequest;
 import com.amazonaws.services.s3.model.EncryptionMaterials;
 import com.amazonaws.services.s3.model.EncryptionMaterialsProvider;
@@ -546,6 +548,14 @@ public class AmazonS3EncryptionClient extends AmazonS3Client implements
      * AmazonS3EncryptionClient (as opposed to the normal AmazonS3Client) must
      * be uploaded serially, and in order. Otherwise, the previous encryption
      * context isn't available to use when encrypting the current part.
+     * <p>
+     * The exception is an upload initiated in authenticated encryption mode
+     * with an {@link EncryptedInitiateMultipartUploadRequest} that specifies
+     * the part size: each of its parts is encrypted from its own offset, so
+     * all the parts but the last can be uploaded in parallel and in any
+     * order, and the last part must be uploaded after all the others.
+     *
+     * @see #isParallelPartUploadSupported()
      */
     @Override
     public UploadPartResult uploadPart(UploadPartRequest uploadPartRequest)
@@ -563,6 +573,49 @@ public class AmazonS3EncryptionClient extends AmazonS3Client implements
         crypto.abortMultipartUploadSecurely(req);
     }
 
+    /**
+     * Returns true if the parts of a multipart upload initiated with an
+     * {@link EncryptedInitiateMultipartUploadRequest} that specifies the part
+     * size can be uploaded in parallel, which is the case in authenticated
+     * encryption mode; false if the parts must be uploaded in series, as in
+     * encryption only mode.
+     */
+    public boolean isParallelPartUploadSupported() {
+        return crypto.isParallelPartUploadSupported();
+    }
+
+    /**
+     * Opens an object encrypted with AES/GCM for random access to its
+     * plaintext. The content encrypting key of the object is unwrapped once,
+     * here, and each read of the returned reader fetches only the cipher
+     * blocks that hold the bytes read, so many small reads of a large object
+     * stay cheap.
+     * <p>
+     * Like a range get, a read doesn't verify the GCM tag of the object, and
+     * so isn't allowed in strict authenticated encryption mode. Objects
+     * encrypted with AES/CBC, in encryption only mode, can't be opened for
+     * random access.
+     *
+     * @param req the request of the object to open, without a range or part
+     *            number; it may be an {@link EncryptedGetObjectRequest}.
+     * @return a reader of the plaintext of the object, or null if the object
+     *         doesn't meet the constraints of the request.
+     * @throws SecurityException in strict authenticated encryption mode.
+     */
+    public EncryptedObjectReader openEncryptedObject(GetObjectRequest req) {
+        return crypto.openObjectSecurely(req);
+    }
+
+    /**
+     * Opens an object encrypted with AES/GCM for random access to its
+     * plaintext.
+     *
+     * @see #openEncryptedObject(GetObjectRequest)
+     */
+    public EncryptedObjectReader openEncryptedObject(String bucketName, String key) {
+        return openEncryptedObject(new GetObjectRequest(bucketName, key));
+    }
+
     /**
      * Creates a new crypto instruction file by re-encrypting the CEK of an
      * existing encrypted S3 object with a new encryption material identifiable
@@ -15,10 +15,13 @@
 
 package com.amazonaws.services.s3.internal;
 
+import com.amazonaws.internal.FileRegionInputStream;
+import com.amazonaws.internal.FileRegionSource;
 import com.amazonaws.internal.SdkFilterInputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -26,7 +29,11 @@ import java.security.NoSuchAlgorithmException;
  * Simple InputStream wrapper that examines the wrapped stream's contents as
  * they are read and calculates and MD5 digest.
  */
-public class MD5DigestCalculatingInputStream extends SdkFilterInputStream {
+public class MD5DigestCalculatingInputStream extends SdkFilterInputStream
+        implements FileRegionSource {
+    /** The size of the windows of a file region mapped to digest it. */
+    private static final long DIGEST_WINDOW_SIZE = 8 * 1024 * 1024;
+
     /** The MD5 message digest being calculated by this input stream */
     private MessageDigest digest;
     /**
@@ -34,6 +41,13 @@ public class MD5DigestCalculatingInputStream extends SdkFilterInputStream {
      * operation was called; always null if mark is not supported.
      */
     private MessageDigest digestLastMarked;
+    /**
+     * The window of the file region last mapped to digest transferred bytes,
+     * and the position in the file where it starts; null until bytes are
+     * transferred.
+     */
+    private ByteBuffer window;
+    private long windowPosition;
 
     /**
      * Constructor.
@@ -89,6 +103,51 @@ public class MD5DigestCalculatingInputStream extends SdkFilterInputStream {
         }
     }
 
+    @Override
+    public FileRegionInputStream getFileRegion() {
+        return getWrappedFileRegion();
+    }
+
+    /**
+     * Digests the transferred bytes from the file region, which are still in
+     * the page cache as they have just been sent. The region is mapped a
+     * window at a time rather than for every transfer, since a socket
+     * typically accepts far fewer bytes per write than a window holds.
+     */
+    @Override
+    public void transferred(long count) throws IOException {
+        final FileRegionInputStream region = getWrappedFileRegion();
+        if (region == null) {
+            throw new IOException("The wrapped stream has no file region");
+        }
+        while (count > 0) {
+            final long position = region.getFilePosition();
+            if (window == null || position < windowPosition
+                    || position >= windowPosition + window.capacity()) {
+                window = region.map(DIGEST_WINDOW_SIZE);
+                windowPosition = position;
+                if (window.capacity() == 0) {
+                    window = null;
+                    throw new IOException("Transferred " + count
+                            + " bytes past the end of the file region");
+                }
+            }
+            final int start = (int) (position - windowPosition);
+            final int length = (int) Math.min(count, window.capacity() - start);
+            final ByteBuffer bytes = window.duplicate();
+            bytes.limit(start + length).position(start);
+            digest.update(bytes);
+            wrappedTransferred(length);
+            count -= length;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        super.close();
+    }
+
     @Override
     public int read() throws IOException {
         int ch = super.read();
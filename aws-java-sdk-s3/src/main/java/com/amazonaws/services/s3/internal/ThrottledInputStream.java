@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.internal.FileRegionInputStream;
+import com.amazonaws.internal.SdkFilterInputStream;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.util.BandwidthLimiter;
+import com.amazonaws.services.s3.util.Mimetypes;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Filtered input stream that limits the rate at which it's read with a
+ * {@link BandwidthLimiter}. Reads are cut to the burst size of the limiter,
+ * and block after reading until the limiter lets the bytes through. If the
+ * thread is interrupted while blocked, the read is aborted.
+ * <p>
+ * The stream deliberately doesn't expose the file region of the stream it
+ * wraps, so that the bytes can't be sent without going through it.
+ */
+public class ThrottledInputStream extends SdkFilterInputStream {
+    private final BandwidthLimiter limiter;
+
+    /**
+     * @param in The input stream to wrap.
+     * @param limiter The limiter to acquire the bytes read from.
+     */
+    public ThrottledInputStream(InputStream in, BandwidthLimiter limiter) {
+        super(in);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b != -1) {
+            acquire(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int count = super.read(b, off, (int) Math.min(len, limiter.getMaxBurstSize()));
+        if (count > 0) {
+            acquire(count);
+        }
+        return count;
+    }
+
+    private void acquire(int bytes) {
+        try {
+            limiter.acquire(bytes);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortIfNeeded();
+        }
+    }
+
+    /**
+     * Makes a part request read its data through a throttled stream if the
+     * limiter limits the rate. A part to be read from a file is read from a
+     * stream over its region of the file instead.
+     *
+     * @param request The part request, which is changed.
+     * @param limiter The limiter, or null.
+     * @return The part request.
+     */
+    public static UploadPartRequest throttle(UploadPartRequest request,
+            BandwidthLimiter limiter) {
+        if (limiter == null || !limiter.isLimited()
+                || request.getInputStream() instanceof ThrottledInputStream) {
+            return request;
+        }
+        InputStream in = request.getInputStream();
+        if (in == null && request.getFile() != null) {
+            in = openRegion(request.getFile(), request.getFileOffset(), request.getPartSize());
+            request.setFile(null);
+            request.setFileOffset(0);
+        }
+        if (in != null) {
+            request.setInputStream(new ThrottledInputStream(in, limiter));
+        }
+        return request;
+    }
+
+    /**
+     * Returns a copy of an object request that reads its data through a
+     * throttled stream if the limiter limits the rate, or the request itself
+     * otherwise. An object to be read from a file is read from a stream over
+     * the file instead, with the length and content type that would be taken
+     * from the file.
+     *
+     * @param request The object request, which isn't changed.
+     * @param limiter The limiter, or null.
+     * @return The request to send.
+     */
+    public static PutObjectRequest throttle(PutObjectRequest request, BandwidthLimiter limiter) {
+        if (limiter == null || !limiter.isLimited()
+                || request.getInputStream() instanceof ThrottledInputStream) {
+            return request;
+        }
+        final PutObjectRequest throttled = request.clone();
+        InputStream in = request.getInputStream();
+        final File file = request.getFile();
+        if (in == null && file != null) {
+            final ObjectMetadata metadata = request.getMetadata() == null ? new ObjectMetadata()
+                    : request.getMetadata().clone();
+            metadata.setContentLength(file.length());
+            if (metadata.getContentType() == null) {
+                metadata.setContentType(Mimetypes.getInstance().getMimetype(file));
+            }
+            throttled.setMetadata(metadata);
+            throttled.setFile(null);
+            in = openRegion(file, 0, file.length());
+        }
+        if (in != null) {
+            throttled.setInputStream(new ThrottledInputStream(in, limiter));
+        }
+        return throttled;
+    }
+
+    /**
+     * Makes the content of a downloaded object read through a throttled
+     * stream. The content is wrapped even if the limiter doesn't limit the
+     * rate yet, so that a limit set during the download applies to it.
+     *
+     * @param object The object, whose content is changed, or null.
+     * @param limiter The limiter, or null.
+     * @return The object.
+     */
+    public static S3Object throttle(S3Object object, BandwidthLimiter limiter) {
+        if (object != null && limiter != null && object.getObjectContent() != null) {
+            object.setObjectContent(new ThrottledInputStream(object.getObjectContent(),
+                    limiter));
+        }
+        return object;
+    }
+
+    private static InputStream openRegion(File file, long offset, long length) {
+        try {
+            return new FileRegionInputStream(file, offset, length);
+        } catch (final FileNotFoundException e) {
+            throw new AmazonClientException("Unable to find file to upload: "
+                    + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal;
+
+import com.amazonaws.internal.SdkFilterInputStream;
+import com.amazonaws.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream wrapper that replaces carriage return (\r) characters in a
+ * UTF-8 XML document with explicit XML character entities as the document is
+ * read, to prevent the SAX parser from misinterpreting 0x0D characters as
+ * 0x0A. Amazon S3 returns object keys verbatim in listings, so keys containing
+ * a carriage return would otherwise come back altered.
+ * <p>
+ * The byte 0x0D never occurs within a multi-byte UTF-8 sequence, so the
+ * document is rewritten without being decoded, and only holds a small buffer
+ * of it at a time.
+ */
+public class XmlSanitizingInputStream extends SdkFilterInputStream {
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte[] CARRIAGE_RETURN_ENTITY = "&#013;".getBytes(StringUtils.UTF8);
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition = 0;
+    private int bufferLimit = 0;
+    /**
+     * The index of the next byte of the entity to return, or the length of
+     * the entity if none is pending.
+     */
+    private int entityPosition = CARRIAGE_RETURN_ENTITY.length;
+
+    /**
+     * Constructor.
+     * @param in the UTF-8 encoded XML document to sanitize.
+     */
+    public XmlSanitizingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        final int read = read(b, 0, 1);
+        return read == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        abortIfNeeded();
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        while (count < len) {
+            if (entityPosition < CARRIAGE_RETURN_ENTITY.length) {
+                b[off + count++] = CARRIAGE_RETURN_ENTITY[entityPosition++];
+                continue;
+            }
+            if (bufferPosition == bufferLimit) {
+                // Don't block for more input once some is available
+                if (count > 0) {
+                    break;
+                }
+                final int read = in.read(buffer, 0, buffer.length);
+                if (read == -1) {
+                    break;
+                }
+                bufferPosition = 0;
+                bufferLimit = read;
+                continue;
+            }
+            final int max = Math.min(bufferLimit, bufferPosition + len - count);
+            int end = bufferPosition;
+            while (end < max && buffer[end] != CARRIAGE_RETURN) {
+                end++;
+            }
+            System.arraycopy(buffer, bufferPosition, b, off + count, end - bufferPosition);
+            count += end - bufferPosition;
+            bufferPosition = end;
+            if (end < max) {
+                bufferPosition++;
+                entityPosition = 0;
+            }
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        final byte[] skipped = new byte[(int) Math.min(BUFFER_SIZE, n)];
+        long count = 0;
+        while (count < n) {
+            final int read = read(skipped, 0, (int) Math.min(skipped.length, n - count));
+            if (read == -1) {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        abortIfNeeded();
+        return CARRIAGE_RETURN_ENTITY.length - entityPosition + bufferLimit - bufferPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        // Not supported
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
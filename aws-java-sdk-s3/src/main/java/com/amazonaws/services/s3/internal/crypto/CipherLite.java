@@ -15,6 +15,7 @@
 
 package com.amazonaws.services.s3.internal.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -27,6 +28,7 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.NullCipher;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 
 /**
  * Functions like a {@link Cipher} but provides only a subset of all the
@@ -268,6 +270,30 @@ class CipherLite {
         return cipher.update(input, inputOffset, inputLen);
     }
 
+    /**
+     * Continues a multiple-part encryption or decryption operation (depending
+     * on how the underlying cipher was initialized), processing the remaining
+     * bytes of the input buffer into the output buffer without allocating a
+     * new array.
+     * <p>
+     * If the output buffer is too small to hold the result, a
+     * {@link ShortBufferException} is thrown and neither the buffers nor the
+     * state of the cipher are changed, so the call can be repeated with a
+     * larger output buffer.
+     *
+     * @param input the input buffer, whose position is advanced to its limit
+     * @param output the output buffer, whose position is advanced by the
+     *            number of bytes stored
+     * @return the number of bytes stored in <code>output</code>
+     * @exception ShortBufferException if there is insufficient space in the
+     *                output buffer
+     * @exception IllegalStateException if the underlying cipher is in a wrong
+     *                state (e.g., has not been initialized)
+     */
+    int update(ByteBuffer input, ByteBuffer output) throws ShortBufferException {
+        return cipher.update(input, output);
+    }
+
     /**
      * Returns the algorithm name of the underlying cipher.
      */
@@ -294,6 +320,13 @@ class CipherLite {
         return secreteKey.getAlgorithm();
     }
 
+    /**
+     * Returns the secret key of this cipher lite, or null for the null cipher.
+     */
+    final SecretKey getSecretKey() {
+        return secreteKey;
+    }
+
     /**
      * This method is provided only for testing purposes. The {@link CipherLite}
      * is intended to be used in lieu of the underlying Cipher.
@@ -19,11 +19,19 @@ import com.amazonaws.internal.SdkFilterInputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
 
 /**
+ * FilterInputStream that encrypts or decrypts the wrapped stream with a
+ * {@link CipherLite}. The input is read in chunks of the buffer size, filled
+ * as far as the wrapped stream allows, and processed into a reusable output
+ * buffer, so that the cipher works on large blocks without an array being
+ * allocated for each chunk.
+ *
  * @see CipherLite
  * @see GCMCipherLite
  */
@@ -49,7 +57,21 @@ public class CipherLiteInputStream extends SdkFilterInputStream {
     private final boolean lastMultiPart;
     private boolean eof = false;
     private final byte[] bufin;
+    /**
+     * The input buffer as a byte buffer, reused for each chunk.
+     */
+    private final ByteBuffer inBuffer;
+    /**
+     * The output of the chunk being read, which is either {@link #updateOut}
+     * or the final bytes of the cipher.
+     */
     private byte[] bufout;
+    /**
+     * The reusable output buffer of the updates of the cipher, grown as
+     * needed, and as a byte buffer.
+     */
+    private byte[] updateOut;
+    private ByteBuffer updateOutBuffer;
     private int currPos = 0;
     private int maxPos = 0;
 
@@ -96,6 +118,10 @@ public class CipherLiteInputStream extends SdkFilterInputStream {
                     + DEFAULT_IN_BUFFER_SIZE);
         }
         this.bufin = new byte[buffsize];
+        this.inBuffer = ByteBuffer.wrap(bufin);
+        // Room for the input and what a block cipher may hold back
+        this.updateOut = new byte[buffsize + 2 * DEFAULT_IN_BUFFER_SIZE];
+        this.updateOutBuffer = ByteBuffer.wrap(updateOut);
     }
 
     /**
@@ -257,7 +283,7 @@ public class CipherLiteInputStream extends SdkFilterInputStream {
             return -1;
         }
         bufout = null;
-        final int len = in.read(bufin);
+        final int len = fillInputBuffer();
         if (len == -1) {
             eof = true;
             // Skip doFinal if it's a multi-part upload but not the last part
@@ -282,12 +308,48 @@ public class CipherLiteInputStream extends SdkFilterInputStream {
             }
             return -1;
         }
-        bufout = cipherLite.update(bufin, 0, len);
+        inBuffer.clear();
+        inBuffer.limit(len);
+        updateOutBuffer.clear();
+        int count;
+        try {
+            count = cipherLite.update(inBuffer, updateOutBuffer);
+        } catch (final ShortBufferException e) {
+            // Nothing has been processed; retry with the size the cipher
+            // asks for
+            updateOut = new byte[Math.max(cipherLite.getOutputSize(len), updateOut.length * 2)];
+            updateOutBuffer = ByteBuffer.wrap(updateOut);
+            try {
+                count = cipherLite.update(inBuffer, updateOutBuffer);
+            } catch (final ShortBufferException e2) {
+                throw new IllegalStateException(e2);
+            }
+        }
+        bufout = updateOut;
         currPos = 0;
-        maxPos = (bufout == null ? 0 : bufout.length);
+        maxPos = count;
         return maxPos;
     }
 
+    /**
+     * Reads as much of the input buffer as the underlying stream provides
+     * before its end, so that the cipher processes large blocks at a time.
+     *
+     * @return the number of bytes read, or -1 if the end of the underlying
+     *         stream has been reached.
+     */
+    private int fillInputBuffer() throws IOException {
+        int len = in.read(bufin, 0, bufin.length);
+        while (len > 0 && len < bufin.length) {
+            final int count = in.read(bufin, len, bufin.length - len);
+            if (count == -1) {
+                break;
+            }
+            len += count;
+        }
+        return len;
+    }
+
     void renewCipherLite() {
         cipherLite = cipherLite.recreate();
     }
@@ -31,6 +31,7 @@ import com.amazonaws.services.s3.model.CryptoMode;
 import com.amazonaws.services.s3.model.EncryptionMaterials;
 import com.amazonaws.services.s3.model.EncryptionMaterialsAccessor;
 import com.amazonaws.services.s3.model.ExtraMaterialsDescription;
+import com.amazonaws.services.s3.model.KMSDataKeyCache;
 import com.amazonaws.services.s3.model.KMSEncryptionMaterials;
 import com.amazonaws.services.s3.model.MaterialsDescriptionProvider;
 import com.amazonaws.services.s3.model.ObjectMetadata;
@@ -260,9 +261,11 @@ final class ContentCryptoMaterial {
      */
     private static SecretKey cek(byte[] cekSecured, String keyWrapAlgo,
             EncryptionMaterials materials, Provider securityProvider,
-            ContentCryptoScheme contentCryptoScheme, AWSKMSClient kms) {
+            ContentCryptoScheme contentCryptoScheme, AWSKMSClient kms,
+            KMSDataKeyCache kmsCache) {
         if (isKMSKeyWrapped(keyWrapAlgo)) {
-            return cekByKMS(cekSecured, keyWrapAlgo, materials, contentCryptoScheme, kms);
+            return cekByKMS(cekSecured, keyWrapAlgo, materials, contentCryptoScheme, kms,
+                    kmsCache);
         }
         Key kek;
         if (materials.getKeyPair() != null) {
@@ -308,17 +311,22 @@ final class ContentCryptoMaterial {
     }
 
     /**
-     * Decrypts the secured CEK via KMS; involves network calls.
+     * Decrypts the secured CEK via KMS; involves network calls unless the CEK
+     * is cached.
      *
+     * @param kmsCache the cache of decrypted keys, or null
      * @return the CEK (in plaintext).
      */
     private static SecretKey cekByKMS(byte[] cekSecured, String keyWrapAlgo,
             EncryptionMaterials materials,
-            ContentCryptoScheme contentCryptoScheme, AWSKMSClient kms) {
+            ContentCryptoScheme contentCryptoScheme, AWSKMSClient kms,
+            KMSDataKeyCache kmsCache) {
         final DecryptRequest kmsreq = new DecryptRequest()
             .withEncryptionContext(materials.getMaterialsDescription())
             .withCiphertextBlob(ByteBuffer.wrap(cekSecured));
-        final DecryptResult result = kms.decrypt(kmsreq);
+        final DecryptResult result = kmsCache == null
+                ? kms.decrypt(kmsreq)
+                : kmsCache.decrypt(kms, kmsreq);
         return new SecretKeySpec(copyAllBytesFrom(result.getPlaintext()),
                 contentCryptoScheme.getKeyGeneratorAlgorithm());
     }
@@ -331,9 +339,11 @@ final class ContentCryptoMaterial {
             EncryptionMaterialsAccessor kekMaterialAccessor,
             Provider securityProvider,
             boolean keyWrapExpected,
-            AWSKMSClient kms) {
+            AWSKMSClient kms,
+            KMSDataKeyCache kmsCache) {
         return fromObjectMetadata0(metadata, kekMaterialAccessor,
-                securityProvider, null, ExtraMaterialsDescription.NONE, keyWrapExpected, kms);
+                securityProvider, null, ExtraMaterialsDescription.NONE, keyWrapExpected, kms,
+                kmsCache);
     }
 
     /**
@@ -350,9 +360,10 @@ final class ContentCryptoMaterial {
             long[] range,
             ExtraMaterialsDescription extra,
             boolean keyWrapExpected,
-            AWSKMSClient kms) {
+            AWSKMSClient kms,
+            KMSDataKeyCache kmsCache) {
         return fromObjectMetadata0(metadata, kekMaterialAccessor,
-                securityProvider, range, extra, keyWrapExpected, kms);
+                securityProvider, range, extra, keyWrapExpected, kms, kmsCache);
     }
 
     /**
@@ -365,7 +376,8 @@ final class ContentCryptoMaterial {
             long[] range,
             ExtraMaterialsDescription extra,
             boolean keyWrapExpected,
-            AWSKMSClient kms) {
+            AWSKMSClient kms,
+            KMSDataKeyCache kmsCache) {
         // CEK and IV
         final Map<String, String> userMeta = metadata.getUserMetadata();
         String b64key = userMeta.get(Headers.CRYPTO_KEY_V2);
@@ -430,7 +442,7 @@ final class ContentCryptoMaterial {
             throw newKeyWrapException();
         }
         final SecretKey cek = cek(cekWrapped, keyWrapAlgo, materials,
-                securityProvider, contentCryptoScheme, kms);
+                securityProvider, contentCryptoScheme, kms, kmsCache);
         return new ContentCryptoMaterial(merged, cekWrapped, keyWrapAlgo,
                 contentCryptoScheme.createCipherLite(cek, iv,
                         Cipher.DECRYPT_MODE, securityProvider));
@@ -449,9 +461,11 @@ final class ContentCryptoMaterial {
             EncryptionMaterialsAccessor kekMaterialAccessor,
             Provider securityProvider,
             boolean keyWrapExpected,
-            AWSKMSClient kms) {
+            AWSKMSClient kms,
+            KMSDataKeyCache kmsCache) {
         return fromInstructionFile0(instFile, kekMaterialAccessor,
-                securityProvider, null, ExtraMaterialsDescription.NONE, keyWrapExpected, kms);
+                securityProvider, null, ExtraMaterialsDescription.NONE, keyWrapExpected, kms,
+                kmsCache);
     }
 
     /**
@@ -468,9 +482,10 @@ final class ContentCryptoMaterial {
             long[] range,
             ExtraMaterialsDescription extra,
             boolean keyWrapExpected,
-            AWSKMSClient kms) {
+            AWSKMSClient kms,
+            KMSDataKeyCache kmsCache) {
         return fromInstructionFile0(instFile, kekMaterialAccessor,
-                securityProvider, range, extra, keyWrapExpected, kms);
+                securityProvider, range, extra, keyWrapExpected, kms, kmsCache);
     }
 
     /**
@@ -483,7 +498,8 @@ final class ContentCryptoMaterial {
             long[] range,
             ExtraMaterialsDescription extra,
             boolean keyWrapExpected,
-            AWSKMSClient kms) {
+            AWSKMSClient kms,
+            KMSDataKeyCache kmsCache) {
         // CEK and IV
         String b64key = instFile.get(Headers.CRYPTO_KEY_V2);
         if (b64key == null) {
@@ -550,7 +566,7 @@ final class ContentCryptoMaterial {
             throw newKeyWrapException();
         }
         final SecretKey cek = cek(cekWrapped, keyWrapAlgo, materials,
-                securityProvider, contentCryptoScheme, kms);
+                securityProvider, contentCryptoScheme, kms, kmsCache);
         return new ContentCryptoMaterial(merged, cekWrapped, keyWrapAlgo,
                 contentCryptoScheme.createCipherLite(cek, iv,
                         Cipher.DECRYPT_MODE, securityProvider));
@@ -661,7 +677,7 @@ final class ContentCryptoMaterial {
                     + " from the encryption material provider");
         }
         final SecretKey cek = cek(encryptedCEK, keyWrappingAlgorithm, origKEK, p,
-                getContentCryptoScheme(), kms);
+                getContentCryptoScheme(), kms, null);
         final ContentCryptoMaterial output = create(cek, cipherLite.getIV(), newKEK,
                 getContentCryptoScheme(),  // must use same content crypto scheme
                 targetScheme,
@@ -711,7 +727,7 @@ final class ContentCryptoMaterial {
             origKEK = accessor.getEncryptionMaterials(kekMaterialsDescription);
         }
         final SecretKey cek = cek(encryptedCEK, keyWrappingAlgorithm, origKEK, p,
-                getContentCryptoScheme(), kms);
+                getContentCryptoScheme(), kms, null);
         final ContentCryptoMaterial output =
             create(cek, cipherLite.getIV(), newKEK,
                    getContentCryptoScheme(),  // must use same content crypto scheme
@@ -28,6 +28,7 @@ import com.amazonaws.services.s3.model.CopyPartRequest;
 import com.amazonaws.services.s3.model.CopyPartResult;
 import com.amazonaws.services.s3.model.CryptoConfiguration;
 import com.amazonaws.services.s3.model.CryptoMode;
+import com.amazonaws.services.s3.model.EncryptedObjectReader;
 import com.amazonaws.services.s3.model.EncryptionMaterialsProvider;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
@@ -155,6 +156,19 @@ public class CryptoModuleDispatcher extends S3CryptoModule<MultipartUploadContex
              : ae.initiateMultipartUploadSecurely(req);
     }
 
+    @Override
+    public boolean isParallelPartUploadSupported() {
+        return defaultCryptoMode == EncryptionOnly
+             ? eo.isParallelPartUploadSupported()
+             : ae.isParallelPartUploadSupported();
+    }
+
+    @Override
+    public EncryptedObjectReader openObjectSecurely(GetObjectRequest req) {
+        // AE module can handle S3 objects encrypted in either AE or EO format
+        return ae.openObjectSecurely(req);
+    }
+
     /**
      * {@inheritDoc}
      *
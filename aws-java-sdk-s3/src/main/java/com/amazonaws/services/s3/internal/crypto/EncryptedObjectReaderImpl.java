@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import static com.amazonaws.services.s3.AmazonS3EncryptionClient.USER_AGENT;
+import static com.amazonaws.services.s3.internal.crypto.ContentCryptoScheme.AES_CTR;
+import static com.amazonaws.services.s3.internal.crypto.ContentCryptoScheme.AES_GCM;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.internal.S3Direct;
+import com.amazonaws.services.s3.model.EncryptedObjectReader;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reader of an object encrypted with AES/GCM that decrypts each range read
+ * with AES/CTR from the counter block of its first cipher block, which is
+ * what AES/GCM encrypted it with. Only the cipher blocks that hold the bytes
+ * read are fetched, since no block is needed to decrypt another.
+ */
+class EncryptedObjectReaderImpl implements EncryptedObjectReader {
+    private static final int BLOCK_SIZE = AES_GCM.getBlockSizeInBytes();
+    private static final int TAG_LENGTH = AES_GCM.getTagLengthInBits() / 8;
+
+    private final S3Direct s3;
+    private final String bucketName;
+    private final String key;
+    private final String versionId;
+    private final String eTag;
+    private final GetObjectRequest origRequest;
+    /**
+     * The AES/CTR cipher from the start of the object, which holds the
+     * content encrypting key and the counter block of the first cipher block.
+     */
+    private final CipherLite cipherLite;
+    private final long contentLength;
+
+    /**
+     * @param s3 The client to fetch the ranges of the object with.
+     * @param req The request the object was opened with.
+     * @param cekMaterial The content crypto material of the object, for a
+     *            range get from the start of the object.
+     * @param versionId The version of the object opened, or null if the bucket
+     *            isn't versioned.
+     * @param eTag The ETag of the object opened, which the object must still
+     *            have when it's read.
+     * @param instanceLength The length of the ciphertext of the object,
+     *            including the tag.
+     */
+    EncryptedObjectReaderImpl(S3Direct s3, GetObjectRequest req,
+            ContentCryptoMaterial cekMaterial, String versionId, String eTag,
+            long instanceLength) {
+        if (cekMaterial.getContentCryptoScheme() != AES_CTR) {
+            throw new AmazonClientException("Random access is only supported for objects "
+                    + "encrypted with " + AES_GCM.getCipherAlgorithm() + "; use a range get of "
+                    + req.getKey() + " instead");
+        }
+        if (instanceLength < TAG_LENGTH) {
+            throw new AmazonClientException("The ciphertext of " + req.getKey()
+                    + " is shorter than the tag of " + TAG_LENGTH + " bytes");
+        }
+        this.s3 = s3;
+        this.bucketName = req.getBucketName();
+        this.key = req.getKey();
+        this.versionId = versionId;
+        this.eTag = eTag;
+        this.origRequest = req;
+        this.cipherLite = cekMaterial.getCipherLite();
+        this.contentLength = instanceLength - TAG_LENGTH;
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public int read(long position, byte[] b, int off, int len) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("position must not be negative");
+        }
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (position >= contentLength) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        final long start = position - position % BLOCK_SIZE;
+        final int count = (int) Math.min(len, contentLength - position);
+        final S3Object retrieved = s3.getObject(newRangeRequest(start, position + count - 1));
+        if (retrieved == null) {
+            throw new AmazonClientException("The object " + key + " in bucket " + bucketName
+                    + " has changed since it was opened");
+        }
+        final S3ObjectInputStream content = retrieved.getObjectContent();
+        boolean isDrained = false;
+        try {
+            final InputStream in = new CipherLiteInputStream(content,
+                    cipherLiteAt(start), S3CryptoModuleBase.DEFAULT_BUFFER_SIZE);
+            readFully(in, new byte[BLOCK_SIZE], 0, (int) (position - start));
+            readFully(in, b, off, count);
+            isDrained = true;
+        } finally {
+            if (isDrained) {
+                content.close();
+            } else {
+                content.abort();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a request for the given range of the ciphertext of the version
+     * of the object that was opened.
+     */
+    private GetObjectRequest newRangeRequest(long start, long end) {
+        final GetObjectRequest req = new GetObjectRequest(bucketName, key, versionId)
+                .withRange(start, end)
+                .withRequesterPays(origRequest.isRequesterPays())
+                .withSSECustomerKey(origRequest.getSSECustomerKey());
+        if (eTag != null) {
+            req.withMatchingETagConstraint(eTag);
+        }
+        req.getRequestClientOptions().appendUserAgent(USER_AGENT);
+        return req;
+    }
+
+    /**
+     * Returns a new AES/CTR cipher that decrypts from the given block aligned
+     * position, by moving the counter of the first cipher block forward.
+     */
+    private CipherLite cipherLiteAt(long start) {
+        return cipherLite.createUsingIV(ContentCryptoScheme.incrementBlocks(
+                cipherLite.getIV(), start / BLOCK_SIZE));
+    }
+
+    private void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            final int count = in.read(b, off + total, len - total);
+            if (count == -1) {
+                throw new IOException("Unexpected end of the content of " + key
+                        + ": expected " + (len - total) + " more bytes");
+            }
+            total += count;
+        }
+    }
+}
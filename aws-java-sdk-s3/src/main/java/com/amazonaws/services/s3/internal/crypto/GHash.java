@@ -0,0 +1,180 @@
+/*
+ * Copyright 2013-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+/**
+ * The GHASH function of AES/GCM for a given hash subkey H, as defined in <a
+ * href="http://csrc.nist.gov/publications/nistpubs/800-38D/SP-800-38D.pdf">
+ * NIST Special Publication 800-38D</a>. A 128-bit block is held as two longs,
+ * the high one taking the first 8 bytes of the block in big-endian order.
+ * <p>
+ * Since GHASH is linear, the hash of a ciphertext can be put together from
+ * the hashes of its parts, each computed from a zero state:
+ * {@code hash(A || B) = hash(A) * H^n + hash(B)}, where n is the number of
+ * blocks of B. This is what lets the parts of a multipart upload be encrypted
+ * independently while still producing a single GCM tag.
+ * <p>
+ * Multiplication by H uses 8-bit tables, of 64 KB per instance.
+ */
+final class GHash {
+    static final int BLOCK_SIZE = 16;
+    /**
+     * The reduction polynomial of GCM, as the high long of a block.
+     */
+    private static final long R = 0xE100000000000000L;
+
+    /**
+     * The products of H with each byte value at each position of a block,
+     * high and low longs.
+     */
+    private final long[][] tableHi = new long[BLOCK_SIZE][256];
+    private final long[][] tableLo = new long[BLOCK_SIZE][256];
+    private final long hHi;
+    private final long hLo;
+
+    /**
+     * @param h The hash subkey, which is the encryption of the zero block
+     *            with the content encrypting key.
+     */
+    GHash(byte[] h) {
+        if (h.length != BLOCK_SIZE) {
+            throw new IllegalArgumentException("The hash subkey must be 16 bytes");
+        }
+        this.hHi = toLong(h, 0);
+        this.hLo = toLong(h, 8);
+        // The product of H with each single bit, from the most significant
+        // bit of the block, is H times the matching power of x
+        final long[] bitHi = new long[BLOCK_SIZE * 8];
+        final long[] bitLo = new long[BLOCK_SIZE * 8];
+        bitHi[0] = hHi;
+        bitLo[0] = hLo;
+        for (int i = 1; i < bitHi.length; i++) {
+            final boolean carry = (bitLo[i - 1] & 1) != 0;
+            bitLo[i] = (bitLo[i - 1] >>> 1) | (bitHi[i - 1] << 63);
+            bitHi[i] = (bitHi[i - 1] >>> 1) ^ (carry ? R : 0);
+        }
+        for (int pos = 0; pos < BLOCK_SIZE; pos++) {
+            for (int b = 1; b < 256; b++) {
+                final int lowestBit = Integer.numberOfTrailingZeros(b);
+                final int bit = pos * 8 + 7 - lowestBit;
+                tableHi[pos][b] = tableHi[pos][b & (b - 1)] ^ bitHi[bit];
+                tableLo[pos][b] = tableLo[pos][b & (b - 1)] ^ bitLo[bit];
+            }
+        }
+    }
+
+    /**
+     * Updates a hash state with the given block: {@code y = (y + x) * H}.
+     *
+     * @param y The state, high and low longs, which is changed.
+     * @param x The buffer holding the block.
+     * @param off The offset of the block in the buffer.
+     */
+    void update(long[] y, byte[] x, int off) {
+        y[0] ^= toLong(x, off);
+        y[1] ^= toLong(x, off + 8);
+        multiplyH(y);
+    }
+
+    /**
+     * Updates a hash state with the block of the bit lengths of the
+     * additional authenticated data, which is always empty here, and of the
+     * ciphertext.
+     */
+    void updateLengths(long[] y, long ciphertextBytes) {
+        y[1] ^= ciphertextBytes * 8;
+        multiplyH(y);
+    }
+
+    /**
+     * Multiplies a block by H in place.
+     */
+    void multiplyH(long[] y) {
+        long zHi = 0;
+        long zLo = 0;
+        for (int pos = 0; pos < 8; pos++) {
+            final int b = (int) (y[0] >>> (56 - pos * 8)) & 0xFF;
+            zHi ^= tableHi[pos][b];
+            zLo ^= tableLo[pos][b];
+        }
+        for (int pos = 0; pos < 8; pos++) {
+            final int b = (int) (y[1] >>> (56 - pos * 8)) & 0xFF;
+            zHi ^= tableHi[pos + 8][b];
+            zLo ^= tableLo[pos + 8][b];
+        }
+        y[0] = zHi;
+        y[1] = zLo;
+    }
+
+    /**
+     * Returns H to the given power.
+     *
+     * @param n The number of blocks, at least 0.
+     */
+    long[] powerOfH(long n) {
+        long[] result = {
+                0x8000000000000000L, 0
+        }; // the multiplicative identity
+        long[] square = {
+                hHi, hLo
+        };
+        for (long e = n; e > 0; e >>>= 1) {
+            if ((e & 1) != 0) {
+                result = multiply(result, square);
+            }
+            square = multiply(square, square);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the product of two blocks, bit by bit.
+     */
+    static long[] multiply(long[] x, long[] y) {
+        long zHi = 0;
+        long zLo = 0;
+        long vHi = y[0];
+        long vLo = y[1];
+        for (int i = 0; i < 128; i++) {
+            final long word = i < 64 ? x[0] : x[1];
+            if (((word >>> (63 - (i & 63))) & 1) != 0) {
+                zHi ^= vHi;
+                zLo ^= vLo;
+            }
+            final boolean carry = (vLo & 1) != 0;
+            vLo = (vLo >>> 1) | (vHi << 63);
+            vHi = (vHi >>> 1) ^ (carry ? R : 0);
+        }
+        return new long[] {
+                zHi, zLo
+        };
+    }
+
+    static long toLong(byte[] b, int off) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (b[off + i] & 0xFF);
+        }
+        return value;
+    }
+
+    static void toBytes(long[] y, byte[] b, int off) {
+        for (int i = 0; i < 8; i++) {
+            b[off + i] = (byte) (y[0] >>> (56 - i * 8));
+            b[off + 8 + i] = (byte) (y[1] >>> (56 - i * 8));
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.internal.SdkFilterInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * FilterInputStream that hashes the ciphertext of a part of a
+ * {@link MultipartUploadGcmContext} upload as it's read. The hash of a part
+ * other than the last is recorded in the context once the part has been read
+ * whole; the last part continues the hash of the preceding parts and is
+ * followed by the GCM tag.
+ * <p>
+ * Mark and reset are supported if the wrapped stream supports them, in which
+ * case the hash is restored along with the stream.
+ */
+final class GcmPartInputStream extends SdkFilterInputStream {
+    private static final int BLOCK_SIZE = GHash.BLOCK_SIZE;
+    private static final int SKIP_BUFFER_SIZE = 2048;
+
+    private final MultipartUploadGcmContext uploadContext;
+    private final int partNumber;
+    private final boolean isLastPart;
+    /**
+     * The length of the ciphertext of the parts that precede this one.
+     */
+    private final long precedingBytes;
+
+    private long[] hash;
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockPosition;
+    private long bytesRead;
+    /**
+     * The tag appended to the last part once it has been read, or null.
+     */
+    private byte[] tag;
+    private int tagPosition;
+    private boolean isDone;
+
+    private long[] markedHash;
+    private byte[] markedBlock;
+    private int markedBlockPosition;
+    private long markedBytesRead;
+
+    /**
+     * @param in The ciphertext of the part.
+     * @param uploadContext The context of the upload.
+     * @param partNumber The number of the part.
+     * @param isLastPart True if this is the last part of the upload, in which
+     *            case all the preceding parts must have been uploaded.
+     * @throws AmazonClientException if this is the last part and a preceding
+     *             part hasn't been uploaded.
+     */
+    GcmPartInputStream(InputStream in, MultipartUploadGcmContext uploadContext,
+            int partNumber, boolean isLastPart) {
+        super(in);
+        this.uploadContext = uploadContext;
+        this.partNumber = partNumber;
+        this.isLastPart = isLastPart;
+        this.precedingBytes = (partNumber - 1) * uploadContext.getPartSize();
+        this.hash = isLastPart ? uploadContext.hashOfPartsBefore(partNumber) : new long[2];
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        int count;
+        while ((count = read(b, 0, 1)) == 0) {
+            continue;
+        }
+        return count == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        abortIfNeeded();
+        if (len == 0) {
+            return 0;
+        }
+        if (tag == null) {
+            final int count = in.read(b, off, len);
+            if (count != -1) {
+                hash(b, off, count);
+                return count;
+            }
+            finish();
+            if (tag == null) {
+                return -1;
+            }
+        }
+        if (tagPosition == tag.length) {
+            return -1;
+        }
+        final int count = Math.min(len, tag.length - tagPosition);
+        System.arraycopy(tag, tagPosition, b, off, count);
+        tagPosition += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // The skipped bytes must be hashed all the same
+        final byte[] buffer = new byte[SKIP_BUFFER_SIZE];
+        long skipped = 0;
+        while (skipped < n) {
+            final int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (count == -1) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return tag == null ? in.available() : tag.length - tagPosition;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        abortIfNeeded();
+        in.mark(readlimit);
+        markedHash = hash.clone();
+        markedBlock = block.clone();
+        markedBlockPosition = blockPosition;
+        markedBytesRead = bytesRead;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        abortIfNeeded();
+        if (markedHash == null) {
+            throw new IOException("The stream hasn't been marked");
+        }
+        in.reset();
+        hash = markedHash.clone();
+        block = markedBlock.clone();
+        blockPosition = markedBlockPosition;
+        bytesRead = markedBytesRead;
+        tag = null;
+        tagPosition = 0;
+        isDone = false;
+    }
+
+    private void hash(byte[] b, int off, int len) {
+        bytesRead += len;
+        int pos = off;
+        final int end = off + len;
+        if (blockPosition > 0) {
+            final int count = Math.min(BLOCK_SIZE - blockPosition, len);
+            System.arraycopy(b, pos, block, blockPosition, count);
+            blockPosition += count;
+            pos += count;
+            if (blockPosition < BLOCK_SIZE) {
+                return;
+            }
+            uploadContext.getGHash().update(hash, block, 0);
+            blockPosition = 0;
+        }
+        for (; end - pos >= BLOCK_SIZE; pos += BLOCK_SIZE) {
+            uploadContext.getGHash().update(hash, b, pos);
+        }
+        if (pos < end) {
+            System.arraycopy(b, pos, block, 0, end - pos);
+            blockPosition = end - pos;
+        }
+    }
+
+    /**
+     * Records the hash of the part, or computes the tag if this is the last
+     * part, once the ciphertext has been read whole.
+     */
+    private void finish() {
+        if (isDone) {
+            return;
+        }
+        isDone = true;
+        if (!isLastPart) {
+            if (bytesRead != uploadContext.getPartSize()) {
+                throw new AmazonClientException("Part " + partNumber + " has " + bytesRead
+                        + " bytes instead of the part size of the upload, "
+                        + uploadContext.getPartSize());
+            }
+            uploadContext.recordPartHash(partNumber, hash);
+            return;
+        }
+        if (blockPosition > 0) {
+            for (int i = blockPosition; i < BLOCK_SIZE; i++) {
+                block[i] = 0;
+            }
+            uploadContext.getGHash().update(hash, block, 0);
+            blockPosition = 0;
+        }
+        uploadContext.getGHash().updateLengths(hash, precedingBytes + bytesRead);
+        tag = uploadContext.tagOf(hash);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import static com.amazonaws.services.s3.internal.crypto.ContentCryptoScheme.AES_CTR;
+
+import com.amazonaws.AmazonClientException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * The context of an AES/GCM multipart upload whose parts are encrypted
+ * independently, and so may be uploaded in parallel and in any order.
+ * <p>
+ * All the parts but the last are of the same, block aligned size. Each of them
+ * is encrypted with AES/CTR from its offset in the ciphertext, which is what
+ * AES/GCM would output for it, and its ciphertext is hashed with GHASH from a
+ * zero state. The last part, which must be uploaded after all the others,
+ * continues the hash of the preceding parts and is followed by the GCM tag, so
+ * that the object is the same as if it had been encrypted in series.
+ */
+class MultipartUploadGcmContext extends MultipartUploadCryptoContext {
+    private static final int BLOCK_SIZE = GHash.BLOCK_SIZE;
+
+    private final long partSize;
+    private final GHash ghash;
+    /**
+     * The encryption of the pre-counter block J0, which masks the hash into the
+     * tag.
+     */
+    private final byte[] encryptedJ0;
+    /**
+     * The hashes of the parts uploaded, other than the last, by part number.
+     */
+    private final Map<Integer, long[]> partHashes = new HashMap<Integer, long[]>();
+
+    MultipartUploadGcmContext(String bucketName, String key,
+            ContentCryptoMaterial cekMaterial, long partSize) {
+        super(bucketName, key, cekMaterial);
+        if (partSize <= 0 || partSize % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException(
+                    "The part size must be a positive multiple of " + BLOCK_SIZE);
+        }
+        this.partSize = partSize;
+        final CipherLite cipherLite = cekMaterial.getCipherLite();
+        final SecretKey cek = cipherLite.getSecretKey();
+        this.ghash = new GHash(encryptBlock(cipherLite, cek, new byte[BLOCK_SIZE]));
+        final byte[] j0 = new byte[BLOCK_SIZE];
+        final byte[] iv = cipherLite.getIV();
+        System.arraycopy(iv, 0, j0, 0, iv.length);
+        j0[BLOCK_SIZE - 1] = 1;
+        this.encryptedJ0 = encryptBlock(cipherLite, cek, j0);
+    }
+
+    /**
+     * Returns the encryption of a single block with the content encrypting
+     * key, as the first block of AES/CTR keystream from it.
+     */
+    private static byte[] encryptBlock(CipherLite cipherLite, SecretKey cek, byte[] block) {
+        try {
+            return AES_CTR.createCipherLite(cek, block, Cipher.ENCRYPT_MODE,
+                    cipherLite.getCipherProvider()).doFinal(new byte[BLOCK_SIZE]);
+        } catch (final Exception e) {
+            throw new AmazonClientException("Unable to derive the GCM hash subkey", e);
+        }
+    }
+
+    /**
+     * Returns the size of all the parts but the last.
+     */
+    long getPartSize() {
+        return partSize;
+    }
+
+    GHash getGHash() {
+        return ghash;
+    }
+
+    /**
+     * Parts are allowed to be uploaded in any order and concurrently, so this
+     * only checks the part number.
+     */
+    @Override
+    void beginPartUpload(final int nextPartNumber) {
+        if (nextPartNumber < 1) {
+            throw new IllegalArgumentException("part number must be at least 1");
+        }
+    }
+
+    @Override
+    void endPartUpload() {
+    }
+
+    /**
+     * Returns a new cipher that encrypts the given part from its offset in the
+     * ciphertext.
+     */
+    CipherLite newPartCipherLite(int partNumber) {
+        try {
+            return getCipherLite().createAuxiliary((partNumber - 1) * partSize);
+        } catch (final Exception e) {
+            throw new AmazonClientException(
+                    "Unable to create the cipher of part " + partNumber, e);
+        }
+    }
+
+    /**
+     * Records the hash of the ciphertext of a part other than the last, once
+     * it has been read whole.
+     */
+    synchronized void recordPartHash(int partNumber, long[] hash) {
+        partHashes.put(partNumber, hash.clone());
+    }
+
+    /**
+     * Returns the hash of the ciphertext of the parts that precede the given
+     * last part, as the state to continue hashing the last part from.
+     *
+     * @throws AmazonClientException if any of the preceding parts hasn't been
+     *             uploaded.
+     */
+    synchronized long[] hashOfPartsBefore(int lastPartNumber) {
+        final long[] shift = ghash.powerOfH(partSize / BLOCK_SIZE);
+        long[] y = {
+                0, 0
+        };
+        for (int partNumber = 1; partNumber < lastPartNumber; partNumber++) {
+            final long[] partHash = partHashes.get(partNumber);
+            if (partHash == null) {
+                throw new AmazonClientException("Part " + partNumber
+                        + " must be uploaded before the last part " + lastPartNumber);
+            }
+            y = GHash.multiply(y, shift);
+            y[0] ^= partHash[0];
+            y[1] ^= partHash[1];
+        }
+        return y;
+    }
+
+    /**
+     * Returns the GCM tag given the hash of the whole ciphertext, including
+     * the final lengths block.
+     */
+    byte[] tagOf(long[] hash) {
+        final byte[] tag = new byte[BLOCK_SIZE];
+        GHash.toBytes(hash, tag, 0);
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            tag[i] ^= encryptedJ0[i];
+        }
+        return tag;
+    }
+}
@@ -22,6 +22,7 @@ import com.amazonaws.services.s3.model.CopyPartRequest;
 import com.amazonaws.services.s3.model.CopyPartResult;
 import com.amazonaws.services.s3.model.CryptoMode;
 import com.amazonaws.services.s3.model.EncryptedGetObjectRequest;
+import com.amazonaws.services.s3.model.EncryptedObjectReader;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
@@ -123,4 +124,23 @@ public abstract class S3CryptoModule<T extends MultipartUploadContext> {
      */
     public abstract void putLocalObjectSecurely(UploadObjectRequest req,
             String uploadId, OutputStream os) throws IOException;
+
+    /**
+     * @return true if the parts of a multipart upload initiated with an
+     *         {@link com.amazonaws.services.s3.model.EncryptedInitiateMultipartUploadRequest}
+     *         that specifies the part size can be uploaded in parallel;
+     *         false if parts are always uploaded in series.
+     */
+    public boolean isParallelPartUploadSupported() {
+        return false;
+    }
+
+    /**
+     * @param req the GetObjectRequest of the object to open.
+     * @return a reader for random access to the plaintext of the object.
+     * @throws UnsupportedOperationException if random access isn't supported.
+     */
+    public EncryptedObjectReader openObjectSecurely(GetObjectRequest req) {
+        throw new UnsupportedOperationException();
+    }
 }
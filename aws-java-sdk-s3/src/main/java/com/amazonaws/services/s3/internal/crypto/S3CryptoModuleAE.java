@@ -29,6 +29,8 @@ import com.amazonaws.services.s3.internal.S3Direct;
 import com.amazonaws.services.s3.model.CryptoConfiguration;
 import com.amazonaws.services.s3.model.CryptoMode;
 import com.amazonaws.services.s3.model.EncryptedGetObjectRequest;
+import com.amazonaws.services.s3.model.EncryptedInitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.EncryptedObjectReader;
 import com.amazonaws.services.s3.model.EncryptionMaterialsProvider;
 import com.amazonaws.services.s3.model.ExtraMaterialsDescription;
 import com.amazonaws.services.s3.model.GetObjectRequest;
@@ -151,19 +153,13 @@ class S3CryptoModuleAE extends S3CryptoModuleBase<MultipartUploadCryptoContext>
         final S3ObjectWrapper wrapped = new S3ObjectWrapper(retrieved, req.getS3ObjectId());
         // Check if encryption info is in object metadata
         if (wrapped.hasEncryptionInfo()) {
-            return decipherWithMetadata(req, desiredRange, cryptoRange, wrapped);
+            return decipherWithMaterial(req, desiredRange, cryptoRange, wrapped, null);
         }
         // Check if encrypted info is in an instruction file
-        final S3ObjectWrapper ifile = fetchInstructionFile(req.getS3ObjectId(), null);
-        if (ifile != null) {
-            try {
-                if (ifile.isInstructionFile()) {
-                    return decipherWithInstructionFile(req, desiredRange,
-                            cryptoRange, wrapped, ifile);
-                }
-            } finally {
-                closeQuietly(ifile, log);
-            }
+        final Map<String, String> matdesc = instructionFileOf(req.getS3ObjectId(), retrieved,
+                null);
+        if (matdesc != null) {
+            return decipherWithMaterial(req, desiredRange, cryptoRange, wrapped, matdesc);
         }
 
         if (isStrict() || !cryptoConfig.isIgnoreMissingInstructionFile()) {
@@ -194,63 +190,78 @@ class S3CryptoModuleAE extends S3CryptoModuleBase<MultipartUploadCryptoContext>
             long[] desiredRange, long[] cryptoRange, S3Object retrieved,
             String instFileSuffix) {
         final S3ObjectId id = req.getS3ObjectId();
-        // Check if encrypted info is in an instruction file
+        final Map<String, String> matdesc = instructionFileOf(id, retrieved, instFileSuffix);
+        return decipherWithMaterial(req, desiredRange, cryptoRange,
+                new S3ObjectWrapper(retrieved, id), matdesc);
+    }
+
+    /**
+     * Decrypts the retrieved object with the content crypto material from its
+     * metadata, or from the given instruction file.
+     *
+     * @param matdesc the material description in the instruction file of the
+     *            object, or null if the encryption info is in its metadata.
+     */
+    private S3Object decipherWithMaterial(GetObjectRequest req,
+            long[] desiredRange, long[] cryptoRange, S3ObjectWrapper retrieved,
+            Map<String, String> matdesc) {
+        // range is sometimes necessary to compute the adjusted IV
+        final ContentCryptoMaterial cekMaterial = cekMaterialOf(req, retrieved, matdesc,
+                cryptoRange);
+        final S3ObjectWrapper decrypted = decrypt(retrieved, cekMaterial, cryptoRange);
+        // Adjust the output to the desired range of bytes.
+        final S3ObjectWrapper adjusted = adjustToDesiredRange(
+                decrypted, desiredRange, matdesc);
+        return adjusted.getS3Object();
+    }
+
+    /**
+     * Returns the material description in the instruction file of an object.
+     *
+     * @param instFileSuffix the suffix of the instruction file, or null for
+     *            the default instruction file.
+     * @return the material description, or null if the object has no
+     *         default instruction file.
+     * @throws AmazonClientException if the instruction file with the given
+     *             suffix is missing or invalid.
+     */
+    private Map<String, String> instructionFileOf(S3ObjectId id, S3Object retrieved,
+            String instFileSuffix) {
         final S3ObjectWrapper ifile = fetchInstructionFile(id, instFileSuffix);
         if (ifile == null) {
+            if (instFileSuffix == null) {
+                return null;
+            }
             throw new AmazonClientException("Instruction file with suffix "
                     + instFileSuffix + " is not found for " + retrieved);
         }
         try {
             if (ifile.isInstructionFile()) {
-                return decipherWithInstructionFile(req, desiredRange,
-                        cryptoRange, new S3ObjectWrapper(retrieved, id), ifile);
-            } else {
-                throw new AmazonClientException(
-                        "Invalid Instruction file with suffix "
-                                + instFileSuffix + " detected for " + retrieved);
+                @SuppressWarnings("unchecked")
+                final Map<String, String> matdesc =
+                        Collections.unmodifiableMap(JsonUtils.jsonToMap(ifile.toJsonString()));
+                return matdesc;
             }
+            if (instFileSuffix == null) {
+                return null;
+            }
+            throw new AmazonClientException(
+                    "Invalid Instruction file with suffix "
+                            + instFileSuffix + " detected for " + retrieved);
         } finally {
             closeQuietly(ifile, log);
         }
     }
 
-    private S3Object decipherWithInstructionFile(GetObjectRequest req,
-            long[] desiredRange, long[] cryptoRange, S3ObjectWrapper retrieved,
-            S3ObjectWrapper instructionFile) {
-        ExtraMaterialsDescription extraMatDesc = NONE;
-        boolean keyWrapExpected = isStrict();
-        if (req instanceof EncryptedGetObjectRequest) {
-            final EncryptedGetObjectRequest ereq = (EncryptedGetObjectRequest) req;
-            extraMatDesc = ereq.getExtraMaterialDescription();
-            if (!keyWrapExpected) {
-                keyWrapExpected = ereq.isKeyWrapExpected();
-            }
-        }
-        final String json = instructionFile.toJsonString();
-        @SuppressWarnings("unchecked")
-        final Map<String, String> matdesc =
-                Collections.unmodifiableMap(JsonUtils.jsonToMap(json));
-        final ContentCryptoMaterial cekMaterial =
-                ContentCryptoMaterial.fromInstructionFile(
-                    matdesc,
-                    kekMaterialsProvider,
-                    cryptoConfig.getCryptoProvider(),
-                    cryptoRange,   // range is sometimes necessary to compute the adjusted IV
-                    extraMatDesc,
-                    keyWrapExpected,
-                    kms
-            );
-        securityCheck(cekMaterial, retrieved);
-        final S3ObjectWrapper decrypted = decrypt(retrieved, cekMaterial, cryptoRange);
-        // Adjust the output to the desired range of bytes.
-        final S3ObjectWrapper adjusted = adjustToDesiredRange(
-                decrypted, desiredRange, matdesc);
-        return adjusted.getS3Object();
-    }
-
-    private S3Object decipherWithMetadata(GetObjectRequest req,
-            long[] desiredRange,
-            long[] cryptoRange, S3ObjectWrapper retrieved) {
+    /**
+     * Returns the content crypto material of an object for the given crypto
+     * range, from either its metadata or its instruction file.
+     *
+     * @param matdesc the material description in the instruction file of the
+     *            object, or null if the encryption info is in its metadata.
+     */
+    private ContentCryptoMaterial cekMaterialOf(GetObjectRequest req,
+            S3ObjectWrapper retrieved, Map<String, String> matdesc, long[] cryptoRange) {
         ExtraMaterialsDescription extraMatDesc = NONE;
         boolean keyWrapExpected = isStrict();
         if (req instanceof EncryptedGetObjectRequest) {
@@ -260,22 +271,27 @@ class S3CryptoModuleAE extends S3CryptoModuleBase<MultipartUploadCryptoContext>
                 keyWrapExpected = ereq.isKeyWrapExpected();
             }
         }
-        final ContentCryptoMaterial cekMaterial = ContentCryptoMaterial
-            .fromObjectMetadata(retrieved.getObjectMetadata(),
-                kekMaterialsProvider,
-                cryptoConfig.getCryptoProvider(),
-                // range is sometimes necessary to compute the adjusted IV
-                cryptoRange,
-                extraMatDesc,
-                keyWrapExpected,
-                kms
-            );
+        final ContentCryptoMaterial cekMaterial = matdesc == null
+                ? ContentCryptoMaterial.fromObjectMetadata(
+                        retrieved.getObjectMetadata(),
+                        kekMaterialsProvider,
+                        cryptoConfig.getCryptoProvider(),
+                        cryptoRange,
+                        extraMatDesc,
+                        keyWrapExpected,
+                        kms,
+                        cryptoConfig.getKMSDataKeyCache())
+                : ContentCryptoMaterial.fromInstructionFile(
+                        matdesc,
+                        kekMaterialsProvider,
+                        cryptoConfig.getCryptoProvider(),
+                        cryptoRange,
+                        extraMatDesc,
+                        keyWrapExpected,
+                        kms,
+                        cryptoConfig.getKMSDataKeyCache());
         securityCheck(cekMaterial, retrieved);
-        final S3ObjectWrapper decrypted = decrypt(retrieved, cekMaterial, cryptoRange);
-        // Adjust the output to the desired range of bytes.
-        final S3ObjectWrapper adjusted = adjustToDesiredRange(
-                decrypted, desiredRange, null);
-        return adjusted.getS3Object();
+        return cekMaterial;
     }
 
     /**
@@ -332,6 +348,66 @@ class S3CryptoModuleAE extends S3CryptoModuleBase<MultipartUploadCryptoContext>
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The first cipher block of the object is fetched along with its metadata,
+     * and its content crypto material is set up once, for AES/CTR from the
+     * start of the object; the reader then moves the counter forward to the
+     * start of each range read.
+     */
+    @Override
+    public EncryptedObjectReader openObjectSecurely(GetObjectRequest req) {
+        appendUserAgent(req, USER_AGENT);
+        if (isStrict()) {
+            throw new SecurityException("Random access is not allowed in strict crypto mode");
+        }
+        if (req.getRange() != null || req.getPartNumber() != null) {
+            throw new IllegalArgumentException(
+                    "The range to read is given to the reader of the object, not the request");
+        }
+        final long[] firstBlock = {
+                0, ContentCryptoScheme.AES_GCM.getBlockSizeInBytes() - 1
+        };
+        // The caller's request is kept as it is, for the reader
+        final GetObjectRequest firstBlockRequest = (GetObjectRequest) req.clone();
+        firstBlockRequest.setRange(firstBlock[0], firstBlock[1]);
+        final S3Object retrieved = s3.getObject(firstBlockRequest);
+        // The object doesn't meet the constraints of the request
+        if (retrieved == null) {
+            return null;
+        }
+        try {
+            final S3ObjectId id = req.getS3ObjectId();
+            final S3ObjectWrapper wrapped = new S3ObjectWrapper(retrieved, id);
+            final String suffix = req instanceof EncryptedGetObjectRequest
+                    ? ((EncryptedGetObjectRequest) req).getInstructionFileSuffix()
+                    : null;
+            final Map<String, String> matdesc;
+            if (suffix != null && !suffix.trim().isEmpty()) {
+                matdesc = instructionFileOf(id, retrieved, suffix);
+            } else if (wrapped.hasEncryptionInfo()) {
+                matdesc = null;
+            } else {
+                matdesc = instructionFileOf(id, retrieved, null);
+                if (matdesc == null) {
+                    throw new SecurityException("Instruction file not found for S3 object with bucket name: "
+                            + req.getBucketName() + ", key: " + req.getKey());
+                }
+            }
+            final ContentCryptoMaterial cekMaterial = cekMaterialOf(req, wrapped, matdesc,
+                    firstBlock);
+            final ObjectMetadata metadata = retrieved.getObjectMetadata();
+            final String versionId = req.getVersionId() == null
+                    ? metadata.getVersionId()
+                    : req.getVersionId();
+            return new EncryptedObjectReaderImpl(s3, req, cekMaterial, versionId,
+                    metadata.getETag(), metadata.getInstanceLength());
+        } finally {
+            closeQuietly(retrieved, log);
+        }
+    }
+
     @Override
     public ObjectMetadata getObjectSecurely(GetObjectRequest getObjectRequest,
             File destinationFile) {
@@ -372,19 +448,46 @@ class S3CryptoModuleAE extends S3CryptoModuleBase<MultipartUploadCryptoContext>
     @Override
     final MultipartUploadCryptoContext newUploadContext(
             InitiateMultipartUploadRequest req, ContentCryptoMaterial cekMaterial) {
+        if (req instanceof EncryptedInitiateMultipartUploadRequest) {
+            final long partSize = ((EncryptedInitiateMultipartUploadRequest) req).getPartSize();
+            if (partSize > 0) {
+                // The parts are encrypted independently of each other
+                return new MultipartUploadGcmContext(
+                        req.getBucketName(), req.getKey(), cekMaterial, partSize);
+            }
+        }
         return new MultipartUploadCryptoContext(
                 req.getBucketName(), req.getKey(), cekMaterial);
     }
 
+    @Override
+    public boolean isParallelPartUploadSupported() {
+        return true;
+    }
+
     //// specific overrides for uploading parts.
     @Override
     final CipherLite cipherLiteForNextPart(
-            MultipartUploadCryptoContext uploadContext) {
+            MultipartUploadCryptoContext uploadContext, UploadPartRequest req) {
+        if (uploadContext instanceof MultipartUploadGcmContext) {
+            final MultipartUploadGcmContext gcmContext = (MultipartUploadGcmContext) uploadContext;
+            if (!req.isLastPart() && req.getPartSize() != gcmContext.getPartSize()) {
+                throw new AmazonClientException("Invalid part size: all the parts but the last "
+                        + "must be of the part size of the upload (" + gcmContext.getPartSize()
+                        + "), but part " + req.getPartNumber() + " is of " + req.getPartSize());
+            }
+            return gcmContext.newPartCipherLite(req.getPartNumber());
+        }
         return uploadContext.getCipherLite();
     }
     @Override
     final SdkFilterInputStream wrapForMultipart(
+            MultipartUploadCryptoContext uploadContext, UploadPartRequest req,
             CipherLiteInputStream  is, long partSize) {
+        if (uploadContext instanceof MultipartUploadGcmContext) {
+            return new GcmPartInputStream(is, (MultipartUploadGcmContext) uploadContext,
+                    req.getPartNumber(), req.isLastPart());
+        }
         return is;
     }
     @Override
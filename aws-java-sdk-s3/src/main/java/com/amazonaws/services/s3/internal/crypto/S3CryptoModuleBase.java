@@ -47,6 +47,7 @@ import com.amazonaws.services.s3.model.CopyPartRequest;
 import com.amazonaws.services.s3.model.CopyPartResult;
 import com.amazonaws.services.s3.model.CryptoConfiguration;
 import com.amazonaws.services.s3.model.CryptoMode;
+import com.amazonaws.services.s3.model.EncryptedInitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.EncryptionMaterials;
 import com.amazonaws.services.s3.model.EncryptionMaterialsFactory;
 import com.amazonaws.services.s3.model.EncryptionMaterialsProvider;
@@ -54,6 +55,7 @@ import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
 import com.amazonaws.services.s3.model.InstructionFileId;
+import com.amazonaws.services.s3.model.KMSDataKeyCache;
 import com.amazonaws.services.s3.model.MaterialsDescriptionProvider;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutInstructionFileRequest;
@@ -95,7 +97,7 @@ import javax.crypto.spec.SecretKeySpec;
 public abstract class S3CryptoModuleBase<T extends MultipartUploadCryptoContext>
         extends S3CryptoModule<T> {
     private static final boolean IS_MULTI_PART = true;
-    protected static final int DEFAULT_BUFFER_SIZE = 1024 * 2;    // 2K
+    protected static final int DEFAULT_BUFFER_SIZE = 1024 * 16;    // 16K
     private static final int MAX_RETRY_COUNT = 9;
     protected final EncryptionMaterialsProvider kekMaterialsProvider;
     protected final Log log = LogFactory.getLog(getClass());
@@ -268,10 +270,10 @@ public abstract class S3CryptoModuleBase<T extends MultipartUploadCryptoContext>
     }
 
     //// specific crypto module behavior for uploading parts.
-    abstract CipherLite cipherLiteForNextPart(T uploadContext);
+    abstract CipherLite cipherLiteForNextPart(T uploadContext, UploadPartRequest req);
     abstract long computeLastPartSize(UploadPartRequest req);
     abstract <I extends CipherLiteInputStream> SdkFilterInputStream wrapForMultipart(
-            I is, long partSize);
+            T uploadContext, UploadPartRequest req, I is, long partSize);
     abstract void updateUploadContext(T uploadContext, SdkFilterInputStream is);
     /**
      * {@inheritDoc}
@@ -281,7 +283,10 @@ public abstract class S3CryptoModuleBase<T extends MultipartUploadCryptoContext>
      * previous blocks, parts uploaded with the AmazonS3EncryptionClient (as
      * opposed to the normal AmazonS3Client) must be uploaded serially, and in
      * order. Otherwise, the previous encryption context isn't available to use
-     * when encrypting the current part.
+     * when encrypting the current part. The exception is an upload initiated
+     * in authenticated encryption mode with an
+     * {@link EncryptedInitiateMultipartUploadRequest} that specifies the part
+     * size, whose parts but the last can be uploaded in parallel.
      */
     @Override
     public UploadPartResult uploadPartSecurely(UploadPartRequest req) {
@@ -306,7 +311,7 @@ public abstract class S3CryptoModuleBase<T extends MultipartUploadCryptoContext>
         final UploadPartResult result;
         // Checks the parts are uploaded in series
         uploadContext.beginPartUpload(req.getPartNumber());
-        final CipherLite cipherLite = cipherLiteForNextPart(uploadContext);
+        final CipherLite cipherLite = cipherLiteForNextPart(uploadContext, req);
         final File fileOrig = req.getFile();
         final InputStream isOrig = req.getInputStream();
         SdkFilterInputStream isCurr = null;
@@ -314,7 +319,7 @@ public abstract class S3CryptoModuleBase<T extends MultipartUploadCryptoContext>
             final CipherLiteInputStream clis = newMultipartS3CipherInputStream(req, cipherLite);
             isCurr = clis; // so the clis will be closed (in the finally block below) upon
                        // unexpected failure should we opened a file undereath
-            isCurr = wrapForMultipart(clis, partSize);
+            isCurr = wrapForMultipart(uploadContext, req, clis, partSize);
             req.setInputStream(isCurr);
             // Treat all encryption requests as input stream upload requests,
             // not as file upload requests.
@@ -544,7 +549,10 @@ public abstract class S3CryptoModuleBase<T extends MultipartUploadCryptoContext>
             keyGenReq
                 .withGeneralProgressListener(req.getGeneralProgressListener())
                 .withRequestMetricCollector(req.getRequestMetricCollector());
-            final GenerateDataKeyResult keyGenRes = kms.generateDataKey(keyGenReq);
+            final KMSDataKeyCache kmsCache = cryptoConfig.getKMSDataKeyCache();
+            final GenerateDataKeyResult keyGenRes = kmsCache == null
+                    ? kms.generateDataKey(keyGenReq)
+                    : kmsCache.generateDataKey(kms, keyGenReq, plaintextLengthOf(req));
             final SecretKey cek =
                 new SecretKeySpec(copyAllBytesFrom(keyGenRes.getPlaintext()),
                         contentCryptoScheme.getKeyGeneratorAlgorithm());
@@ -560,6 +568,19 @@ public abstract class S3CryptoModuleBase<T extends MultipartUploadCryptoContext>
         }
     }
 
+    /**
+     * Returns the length of the plaintext an object request will encrypt, or
+     * -1 if it's unknown, as it is for multipart uploads.
+     */
+    private long plaintextLengthOf(AmazonWebServiceRequest req) {
+        if (req instanceof AbstractPutObjectRequest) {
+            final AbstractPutObjectRequest putReq = (AbstractPutObjectRequest) req;
+            return plaintextLength(putReq, putReq.getMetadata() == null
+                    ? new ObjectMetadata() : putReq.getMetadata());
+        }
+        return -1;
+    }
+
     /**
      * @param kekMaterials non-null encryption materials
      */
@@ -870,7 +891,8 @@ public abstract class S3CryptoModuleBase<T extends MultipartUploadCryptoContext>
                     kekMaterialsProvider,
                     cryptoConfig.getCryptoProvider(),
                     false,   // existing CEK not necessarily key-wrapped
-                    kms
+                    kms,
+                    cryptoConfig.getKMSDataKeyCache()
                 );
         }
         final S3ObjectWrapper origIfile =
@@ -896,7 +918,8 @@ public abstract class S3CryptoModuleBase<T extends MultipartUploadCryptoContext>
             kekMaterialsProvider,
             cryptoConfig.getCryptoProvider(),
             false,   // existing CEK not necessarily key-wrapped
-            kms
+            kms,
+            cryptoConfig.getKMSDataKeyCache()
         );
     }
 
@@ -105,6 +105,7 @@ class S3CryptoModuleEO extends S3CryptoModuleBase<MultipartUploadCbcContext> {
 
     @Override
     final ByteRangeCapturingInputStream wrapForMultipart(
+            MultipartUploadCbcContext uploadContext, UploadPartRequest req,
             CipherLiteInputStream is, long partSize) {
         int blockSize = contentCryptoScheme.getBlockSizeInBytes();
         return new ByteRangeCapturingInputStream(is,
@@ -132,7 +133,7 @@ class S3CryptoModuleEO extends S3CryptoModuleBase<MultipartUploadCbcContext> {
 
     @Override
     final CipherLite cipherLiteForNextPart(
-            MultipartUploadCbcContext uploadContext) {
+            MultipartUploadCbcContext uploadContext, UploadPartRequest req) {
         CipherLite cipherLite = uploadContext.getCipherLite();
         byte[] nextIV = uploadContext.getNextInitializationVector();
         return cipherLite.createUsingIV(nextIV);
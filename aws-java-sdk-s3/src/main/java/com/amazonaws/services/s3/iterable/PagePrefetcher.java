@@ -0,0 +1,184 @@
+/*
+ * Copyright 2012-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.iterable;
+
+import com.amazonaws.AmazonClientException;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the pages of a listing in the background, ahead of the caller. Each
+ * page is requested with the marker of the previous one, so pages are fetched
+ * one at a time; up to {@code depth} pages are held that the caller hasn't
+ * taken yet.
+ * <p>
+ * No thread waits on the caller: fetching stops once {@code depth} pages are
+ * held, and resumes when the caller takes one, so an iterator that is
+ * abandoned part way through only holds on to the pages it prefetched.
+ *
+ * @param <P> the type of the pages.
+ */
+abstract class PagePrefetcher<P> {
+
+    /**
+     * Pool of daemon threads used when no executor is specified. Listing calls
+     * are short-lived, so idle threads are released after a minute.
+     */
+    private static final class DefaultExecutor {
+        static final ExecutorService INSTANCE = Executors.newCachedThreadPool(
+                new ThreadFactory() {
+                    final AtomicInteger threadCount = new AtomicInteger(0);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final int threadNumber = threadCount.incrementAndGet();
+                        final Thread thread = new Thread(r);
+                        thread.setDaemon(true);
+                        thread.setName("S3ListingPrefetchThread-" + threadNumber);
+                        return thread;
+                    }
+                });
+    }
+
+    private final Executor executor;
+    private final int depth;
+
+    /** Pages fetched and not taken yet, in order. */
+    private final LinkedList<P> pages = new LinkedList<P>();
+    /** The last page fetched, null until the first page is fetched. */
+    private P lastPage;
+    private boolean fetching;
+    private boolean lastPageFetched;
+    private RuntimeException failure;
+
+    /**
+     * @param depth the maximum number of pages fetched ahead of the caller.
+     * @param executor the executor fetching the pages, or null for a shared
+     *            pool of daemon threads.
+     */
+    PagePrefetcher(int depth, Executor executor) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Prefetch depth must be at least 1");
+        }
+        this.depth = depth;
+        this.executor = executor == null ? DefaultExecutor.INSTANCE : executor;
+    }
+
+    /**
+     * @return the first page of the listing.
+     */
+    protected abstract P fetchFirstPage();
+
+    /**
+     * @param previousPage the last page fetched.
+     * @return the page following the given page.
+     */
+    protected abstract P fetchNextPage(P previousPage);
+
+    /**
+     * @param page a page of the listing.
+     * @return whether the page is followed by another.
+     */
+    protected abstract boolean isTruncated(P page);
+
+    /**
+     * Returns the next page of the listing, waiting for it to be fetched if
+     * necessary. Fetching errors are rethrown to the caller.
+     *
+     * @return the next page, or null if all the pages have been taken.
+     */
+    synchronized P nextPage() {
+        fetchIfNeeded();
+        while (pages.isEmpty()) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (lastPageFetched) {
+                return null;
+            }
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Interrupted while waiting for a listing", e);
+            }
+        }
+        final P page = pages.removeFirst();
+        fetchIfNeeded();
+        return page;
+    }
+
+    /**
+     * @return the number of pages fetched and not taken yet.
+     */
+    synchronized int getPrefetchedPageCount() {
+        return pages.size();
+    }
+
+    private void fetchIfNeeded() {
+        if (fetching || lastPageFetched || failure != null || pages.size() >= depth) {
+            return;
+        }
+        fetching = true;
+        final P previousPage = lastPage;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fetch(previousPage);
+                }
+            });
+        } catch (final RuntimeException e) {
+            fetching = false;
+            throw e;
+        }
+    }
+
+    private void fetch(P previousPage) {
+        P page = null;
+        boolean truncated = false;
+        RuntimeException error = null;
+        try {
+            page = previousPage == null ? fetchFirstPage() : fetchNextPage(previousPage);
+            truncated = isTruncated(page);
+        } catch (final RuntimeException e) {
+            error = e;
+        } catch (final Error e) {
+            error = new AmazonClientException("Unable to fetch the next page of a listing", e);
+        }
+        synchronized (this) {
+            fetching = false;
+            if (error != null) {
+                failure = error;
+            } else {
+                lastPage = page;
+                lastPageFetched = !truncated;
+                pages.addLast(page);
+                try {
+                    fetchIfNeeded();
+                } catch (final RuntimeException e) {
+                    // Rejected by the executor: retried when the caller takes a page
+                }
+            }
+            notifyAll();
+        }
+    }
+}
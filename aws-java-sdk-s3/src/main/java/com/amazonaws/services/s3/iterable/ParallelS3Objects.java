@@ -0,0 +1,817 @@
+/*
+ * Copyright 2012-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.iterable;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lists the objects of an Amazon S3 bucket with many concurrent
+ * ListObjectsV2 requests, and iterates them in a "foreach" statement. For
+ * example:
+ *
+ * <pre class="brush: java">
+ * for (S3ObjectSummary summary : ParallelS3Objects.withPrefix(s3, &quot;my-bucket&quot;, &quot;photos/&quot;)
+ *         .withMaxConcurrency(20)) {
+ *     System.out.printf(&quot;Object with key '%s'\n&quot;, summary.getKey());
+ * }
+ * </pre>
+ * <p>
+ * A listing is sequential: each page is requested with the continuation
+ * token of the previous one. To list in parallel, the key space is split into
+ * partitions, which are listed independently:
+ * <ul>
+ * <li>supplied by the caller with
+ * {@link #withPrefixes(AmazonS3, String, Collection)}, or</li>
+ * <li>discovered by probing: the prefix is listed with a delimiter, and each
+ * common prefix found becomes a partition, probed in turn up to
+ * {@link #withProbeDepth(int)} levels. Objects found directly under a probed
+ * prefix are returned as they are.</li>
+ * </ul>
+ * A probe reads a single page of {@link #withBatchSize(int)} keys. If the
+ * prefix has more, the rest of it is listed as one more partition, with the
+ * common prefixes found on its later pages listed in turn, so that probing a
+ * large prefix holds no more than a page. Probing only helps if keys are
+ * structured by the delimiter. A bucket of keys without it is listed
+ * sequentially.
+ * <p>
+ * Objects are returned in no particular order by default; with
+ * {@link #withSortedOutput(boolean)} they're returned in key order, as Amazon
+ * S3 lists them, at the cost of listing fewer partitions ahead of the one
+ * being iterated. At most {@link #withBufferedPages(int)} pages are held per
+ * concurrent request.
+ * <p>
+ * Each iterator lists the objects with its own pool of threads. An iterator
+ * that isn't iterated to the end must be closed to stop them.
+ */
+public final class ParallelS3Objects implements Iterable<S3ObjectSummary> {
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 10;
+    private static final int DEFAULT_BUFFERED_PAGES = 4;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    /**
+     * Orders keys and prefixes as Amazon S3 lists them, by UTF-8 bytes, which
+     * is the order of their code points.
+     */
+    static final Comparator<String> KEY_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            int i = 0;
+            int j = 0;
+            while (i < a.length() && j < b.length()) {
+                final int ca = a.codePointAt(i);
+                final int cb = b.codePointAt(j);
+                if (ca != cb) {
+                    return ca < cb ? -1 : 1;
+                }
+                i += Character.charCount(ca);
+                j += Character.charCount(cb);
+            }
+            return (a.length() - i) - (b.length() - j);
+        }
+    };
+
+    private final AmazonS3 s3;
+    private final String bucketName;
+    private String prefix = null;
+    private List<String> prefixes = null;
+    private String delimiter = "/";
+    private int probeDepth = 1;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private double maxRequestsPerSecond = 0;
+    private Integer batchSize = null;
+    private int bufferedPages = DEFAULT_BUFFERED_PAGES;
+    private boolean sortedOutput = false;
+
+    private ParallelS3Objects(AmazonS3 s3, String bucketName) {
+        this.s3 = s3;
+        this.bucketName = bucketName;
+    }
+
+    /**
+     * Constructs an iterable that covers all the objects in an Amazon S3
+     * bucket.
+     *
+     * @param s3 The Amazon S3 client.
+     * @param bucketName The bucket name.
+     * @return An iterable of object summaries.
+     */
+    public static ParallelS3Objects inBucket(AmazonS3 s3, String bucketName) {
+        return new ParallelS3Objects(s3, bucketName);
+    }
+
+    /**
+     * Constructs an iterable that covers the objects in an Amazon S3 bucket
+     * where the key begins with the given prefix.
+     *
+     * @param s3 The Amazon S3 client.
+     * @param bucketName The bucket name.
+     * @param prefix The prefix.
+     * @return An iterable of object summaries.
+     */
+    public static ParallelS3Objects withPrefix(AmazonS3 s3, String bucketName, String prefix) {
+        final ParallelS3Objects objects = new ParallelS3Objects(s3, bucketName);
+        objects.prefix = prefix;
+        return objects;
+    }
+
+    /**
+     * Constructs an iterable that covers the objects in an Amazon S3 bucket
+     * where the key begins with any of the given prefixes, each listed as a
+     * partition. Prefixes extending another of the prefixes are redundant, and
+     * ignored.
+     *
+     * @param s3 The Amazon S3 client.
+     * @param bucketName The bucket name.
+     * @param prefixes The prefixes.
+     * @return An iterable of object summaries.
+     */
+    public static ParallelS3Objects withPrefixes(AmazonS3 s3, String bucketName,
+            Collection<String> prefixes) {
+        final ParallelS3Objects objects = new ParallelS3Objects(s3, bucketName);
+        objects.prefixes = normalizePrefixes(prefixes);
+        objects.probeDepth = 0;
+        return objects;
+    }
+
+    /**
+     * Sets the delimiter used to probe for partitions. The default is "/".
+     *
+     * @param delimiter The delimiter.
+     * @return the ParallelS3Objects.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ParallelS3Objects withDelimiter(String delimiter) {
+        if (delimiter == null || delimiter.length() == 0) {
+            throw new IllegalArgumentException("Delimiter must not be empty");
+        }
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    /**
+     * Sets how many levels of the key space are probed with the delimiter to
+     * discover partitions. The default is 1, or 0 with
+     * {@link #withPrefixes(AmazonS3, String, Collection)}, in which case the
+     * prefixes are listed as they are.
+     *
+     * @param probeDepth How many levels to probe.
+     * @return the ParallelS3Objects.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ParallelS3Objects withProbeDepth(int probeDepth) {
+        if (probeDepth < 0) {
+            throw new IllegalArgumentException("Probe depth can't be negative");
+        }
+        this.probeDepth = probeDepth;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of concurrent list requests. The default is 10.
+     *
+     * @param maxConcurrency The maximum number of concurrent requests.
+     * @return the ParallelS3Objects.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ParallelS3Objects withMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be at least 1");
+        }
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Sets the maximum rate at which list requests are sent, across all
+     * threads. The default, 0, doesn't limit the rate.
+     *
+     * @param maxRequestsPerSecond The maximum number of requests per second.
+     * @return the ParallelS3Objects.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ParallelS3Objects withMaxRequestsPerSecond(double maxRequestsPerSecond) {
+        if (maxRequestsPerSecond < 0) {
+            throw new IllegalArgumentException("Max requests per second can't be negative");
+        }
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        return this;
+    }
+
+    /**
+     * Sets the batch size, i.e., how many {@link S3ObjectSummary}s will be
+     * fetched at once.
+     *
+     * @param batchSize How many object summaries to fetch at once.
+     * @return the ParallelS3Objects.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ParallelS3Objects withBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets how many pages fetched by each concurrent request may be held
+     * before they're iterated. The default is 4.
+     *
+     * @param bufferedPages How many pages to hold per concurrent request.
+     * @return the ParallelS3Objects.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ParallelS3Objects withBufferedPages(int bufferedPages) {
+        if (bufferedPages < 1) {
+            throw new IllegalArgumentException("Buffered pages must be at least 1");
+        }
+        this.bufferedPages = bufferedPages;
+        return this;
+    }
+
+    /**
+     * Sets whether the objects are returned in key order. The default is
+     * false.
+     *
+     * @param sortedOutput Whether to return the objects in key order.
+     * @return the ParallelS3Objects.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public ParallelS3Objects withSortedOutput(boolean sortedOutput) {
+        this.sortedOutput = sortedOutput;
+        return this;
+    }
+
+    public AmazonS3 getS3() {
+        return s3;
+    }
+
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public int getProbeDepth() {
+        return probeDepth;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public double getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBufferedPages() {
+        return bufferedPages;
+    }
+
+    public boolean isSortedOutput() {
+        return sortedOutput;
+    }
+
+    @Override
+    public ParallelObjectIterator iterator() {
+        return new ParallelObjectIterator();
+    }
+
+    /**
+     * Sorts the prefixes, and removes the ones extending another: all the
+     * keys beginning with a prefix follow it in key order, so the extensions
+     * of a prefix immediately follow it once sorted.
+     */
+    private static List<String> normalizePrefixes(Collection<String> prefixes) {
+        final List<String> sorted = new ArrayList<String>(prefixes);
+        Collections.sort(sorted, KEY_ORDER);
+        final List<String> normalized = new ArrayList<String>();
+        for (final String p : sorted) {
+            if (normalized.isEmpty() || !p.startsWith(normalized.get(normalized.size() - 1))) {
+                normalized.add(p);
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * A disjoint range of the key space: either a prefix to list, the rest of
+     * a probe to list from its continuation token, or objects already listed
+     * while probing.
+     */
+    private static final class Partition {
+        private final String prefix;
+        private final String continuationToken;
+        private final List<S3ObjectSummary> summaries;
+
+        Partition(String prefix, List<S3ObjectSummary> summaries) {
+            this(prefix, null, summaries);
+        }
+
+        Partition(String prefix, String continuationToken, List<S3ObjectSummary> summaries) {
+            this.prefix = prefix;
+            this.continuationToken = continuationToken;
+            this.summaries = summaries;
+        }
+
+        /** Whether the partition is a prefix that may be probed further. */
+        boolean isProbeable() {
+            return prefix != null && continuationToken == null;
+        }
+    }
+
+    /**
+     * A page of a partition listing, or the end of it, or the error that
+     * ended it.
+     */
+    private static final class Page {
+        private final List<S3ObjectSummary> summaries;
+        private final RuntimeException error;
+
+        Page(List<S3ObjectSummary> summaries, RuntimeException error) {
+            this.summaries = summaries;
+            this.error = error;
+        }
+
+        boolean isLast() {
+            return summaries == null;
+        }
+    }
+
+    /**
+     * Spaces the requests of all the threads so that no more than the given
+     * number are sent per second.
+     */
+    private static final class RequestRateLimiter {
+        private final long intervalNanos;
+        private long nextRequestNanos = System.nanoTime();
+
+        RequestRateLimiter(double maxRequestsPerSecond) {
+            this.intervalNanos = maxRequestsPerSecond == 0 ? 0
+                    : (long) (TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecond);
+        }
+
+        void acquire() throws InterruptedException {
+            if (intervalNanos == 0) {
+                return;
+            }
+            final long requestNanos;
+            synchronized (this) {
+                requestNanos = Math.max(nextRequestNanos, System.nanoTime());
+                nextRequestNanos = requestNanos + intervalNanos;
+            }
+            final long waitNanos = requestNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+    }
+
+    /**
+     * Iterator over the objects, listing them in the background. Closing the
+     * iterator stops the listing.
+     */
+    public final class ParallelObjectIterator implements Iterator<S3ObjectSummary>, Closeable {
+
+        private final RequestRateLimiter rateLimiter = new RequestRateLimiter(
+                maxRequestsPerSecond);
+        private ExecutorService executor;
+        private volatile boolean closed = false;
+
+        /** The partitions, in key order. */
+        private List<Partition> partitions;
+        /** With sorted output, the queue of each partition. */
+        private List<BlockingQueue<Page>> partitionQueues;
+        /** With unordered output, the queue of all the partitions. */
+        private BlockingQueue<Page> sharedQueue;
+        /** The number of partitions submitted for listing. */
+        private int submittedPartitions = 0;
+        /** The number of partitions iterated to the end. */
+        private int finishedPartitions = 0;
+        /** The number of partitions listed to the end, with unordered output. */
+        private int listedPartitions = 0;
+        /** The number of partitions to be listed, with unordered output. */
+        private int partitionsToList = 0;
+
+        private Iterator<S3ObjectSummary> currentIterator = null;
+
+        @Override
+        public boolean hasNext() {
+            prepareCurrentPage();
+            return currentIterator != null && currentIterator.hasNext();
+        }
+
+        @Override
+        public S3ObjectSummary next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currentIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Stops listing the objects. The iterator has no more objects once
+         * closed.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            currentIterator = null;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        private void prepareCurrentPage() {
+            if (closed) {
+                return;
+            }
+            if (partitions == null) {
+                start();
+            }
+            while (currentIterator == null || !currentIterator.hasNext()) {
+                final List<S3ObjectSummary> page = nextPage();
+                if (page == null) {
+                    close();
+                    return;
+                }
+                currentIterator = page.iterator();
+            }
+        }
+
+        private void start() {
+            executor = Executors.newFixedThreadPool(maxConcurrency, new ThreadFactory() {
+                final AtomicInteger threadCount = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    final int threadNumber = threadCount.incrementAndGet();
+                    final Thread thread = new Thread(r);
+                    thread.setDaemon(true);
+                    thread.setName("S3ParallelListingThread-" + threadNumber);
+                    return thread;
+                }
+            });
+            try {
+                partitions = discoverPartitions();
+            } catch (final RuntimeException e) {
+                close();
+                throw e;
+            }
+            if (sortedOutput) {
+                partitionQueues = new ArrayList<BlockingQueue<Page>>(partitions.size());
+                for (int i = 0; i < partitions.size(); i++) {
+                    partitionQueues.add(partitions.get(i).prefix == null ? null
+                            : new ArrayBlockingQueue<Page>(bufferedPages));
+                }
+                submitSortedPartitions();
+            } else {
+                sharedQueue = new ArrayBlockingQueue<Page>(bufferedPages * maxConcurrency);
+                for (final Partition partition : partitions) {
+                    if (partition.prefix != null) {
+                        partitionsToList++;
+                        submit(partition, sharedQueue);
+                    }
+                }
+            }
+        }
+
+        /**
+         * With sorted output, only the partitions that may be iterated soon
+         * are listed, so that at most {@code maxConcurrency} partitions are
+         * held: the executor runs them in order, so the partition being
+         * iterated is always listed first.
+         */
+        private void submitSortedPartitions() {
+            while (submittedPartitions < partitions.size()
+                    && submittedPartitions < finishedPartitions + maxConcurrency) {
+                final Partition partition = partitions.get(submittedPartitions);
+                if (partition.prefix != null) {
+                    submit(partition, partitionQueues.get(submittedPartitions));
+                }
+                submittedPartitions++;
+            }
+        }
+
+        /**
+         * Returns the next page of objects, or null at the end of the listing.
+         */
+        private List<S3ObjectSummary> nextPage() {
+            if (sortedOutput) {
+                while (finishedPartitions < partitions.size()) {
+                    final int index = finishedPartitions;
+                    final Partition partition = partitions.get(index);
+                    if (partition.prefix != null) {
+                        final List<S3ObjectSummary> page = take(partitionQueues.get(index));
+                        if (page != null) {
+                            return page;
+                        }
+                    }
+                    partitions.set(index, null);
+                    partitionQueues.set(index, null);
+                    finishedPartitions++;
+                    submitSortedPartitions();
+                    if (partition.prefix == null) {
+                        return partition.summaries;
+                    }
+                }
+                return null;
+            }
+            while (finishedPartitions < partitions.size()) {
+                final Partition partition = partitions.get(finishedPartitions++);
+                if (partition.prefix == null) {
+                    return partition.summaries;
+                }
+            }
+            while (listedPartitions < partitionsToList) {
+                final List<S3ObjectSummary> page = take(sharedQueue);
+                if (page != null) {
+                    return page;
+                }
+                listedPartitions++;
+            }
+            return null;
+        }
+
+        /**
+         * Takes the next page from a queue, or returns null at the end of a
+         * partition. Listing errors are rethrown.
+         */
+        private List<S3ObjectSummary> take(BlockingQueue<Page> queue) {
+            final Page page;
+            try {
+                page = queue.take();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new AmazonClientException("Interrupted while listing objects", e);
+            }
+            if (page.error != null) {
+                close();
+                throw page.error;
+            }
+            return page.isLast() ? null : page.summaries;
+        }
+
+        private void submit(final Partition partition, final BlockingQueue<Page> queue) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listPartition(partition, queue);
+                }
+            });
+        }
+
+        private void listPartition(Partition partition, BlockingQueue<Page> queue) {
+            try {
+                if (partition.continuationToken == null) {
+                    listPrefix(partition.prefix, queue);
+                } else {
+                    listProbeRemainder(partition, queue);
+                }
+                put(queue, new Page(null, null));
+            } catch (final InterruptedException e) {
+                // Closed
+            } catch (final RuntimeException e) {
+                try {
+                    put(queue, new Page(null, e));
+                } catch (final InterruptedException ie) {
+                    // Closed
+                }
+            }
+        }
+
+        private void listPrefix(String partitionPrefix, BlockingQueue<Page> queue)
+                throws InterruptedException {
+            final ListObjectsV2Request request = new ListObjectsV2Request()
+                    .withBucketName(bucketName)
+                    .withPrefix(partitionPrefix)
+                    .withMaxKeys(batchSize);
+            while (true) {
+                final ListObjectsV2Result result = list(request);
+                if (!result.getObjectSummaries().isEmpty()) {
+                    put(queue, new Page(result.getObjectSummaries(), null));
+                }
+                if (!result.isTruncated()) {
+                    break;
+                }
+                request.setContinuationToken(result.getNextContinuationToken());
+            }
+        }
+
+        /**
+         * Lists the rest of a probe page by page, with the delimiter, and
+         * lists each common prefix found where it falls between the objects,
+         * keeping key order.
+         */
+        private void listProbeRemainder(Partition partition, BlockingQueue<Page> queue)
+                throws InterruptedException {
+            final ListObjectsV2Request request = newProbeRequest(partition.prefix)
+                    .withContinuationToken(partition.continuationToken);
+            while (true) {
+                final ListObjectsV2Result result = list(request);
+                final List<S3ObjectSummary> summaries = result.getObjectSummaries();
+                int s = 0;
+                for (final String commonPrefix : result.getCommonPrefixes()) {
+                    final int start = s;
+                    s = objectsBefore(summaries, s, commonPrefix);
+                    if (s > start) {
+                        put(queue, new Page(summaries.subList(start, s), null));
+                    }
+                    listPrefix(commonPrefix, queue);
+                }
+                if (s < summaries.size()) {
+                    put(queue, new Page(summaries.subList(s, summaries.size()), null));
+                }
+                if (!result.isTruncated()) {
+                    break;
+                }
+                request.setContinuationToken(result.getNextContinuationToken());
+            }
+        }
+
+        private ListObjectsV2Request newProbeRequest(String probePrefix) {
+            return new ListObjectsV2Request()
+                    .withBucketName(bucketName)
+                    .withPrefix(probePrefix)
+                    .withDelimiter(delimiter)
+                    .withMaxKeys(batchSize);
+        }
+
+        /**
+         * Returns the index of the first of the objects, from {@code from},
+         * not before the given common prefix.
+         */
+        private int objectsBefore(List<S3ObjectSummary> summaries, int from,
+                String commonPrefix) {
+            int s = from;
+            while (s < summaries.size()
+                    && KEY_ORDER.compare(summaries.get(s).getKey(), commonPrefix) < 0) {
+                s++;
+            }
+            return s;
+        }
+
+        private ListObjectsV2Result list(ListObjectsV2Request request)
+                throws InterruptedException {
+            rateLimiter.acquire();
+            if (closed) {
+                throw new InterruptedException();
+            }
+            return s3.listObjectsV2(request);
+        }
+
+        /**
+         * Waits for room in the queue, unless the iterator is closed.
+         */
+        private void put(BlockingQueue<Page> queue, Page page) throws InterruptedException {
+            while (!queue.offer(page, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+
+        /**
+         * Splits the key space into partitions, probing {@code probeDepth}
+         * levels of it concurrently.
+         */
+        private List<Partition> discoverPartitions() {
+            List<Partition> result = new ArrayList<Partition>();
+            if (prefixes != null) {
+                for (final String p : prefixes) {
+                    result.add(new Partition(p, null));
+                }
+            } else {
+                result.add(new Partition(prefix == null ? "" : prefix, null));
+            }
+            for (int level = 0; level < probeDepth; level++) {
+                final List<Future<List<Partition>>> probes =
+                        new ArrayList<Future<List<Partition>>>(result.size());
+                boolean probed = false;
+                for (final Partition partition : result) {
+                    if (!partition.isProbeable()) {
+                        probes.add(null);
+                    } else {
+                        probed = true;
+                        probes.add(executor.submit(new Callable<List<Partition>>() {
+                            @Override
+                            public List<Partition> call() throws Exception {
+                                return probe(partition.prefix);
+                            }
+                        }));
+                    }
+                }
+                if (!probed) {
+                    break;
+                }
+                final List<Partition> next = new ArrayList<Partition>();
+                for (int i = 0; i < result.size(); i++) {
+                    if (probes.get(i) == null) {
+                        next.add(result.get(i));
+                    } else {
+                        next.addAll(getProbeResult(probes.get(i)));
+                    }
+                }
+                result = next;
+            }
+            return result;
+        }
+
+        private List<Partition> getProbeResult(Future<List<Partition>> probe) {
+            try {
+                return probe.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Interrupted while listing objects", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new AmazonClientException("Unable to list objects", e.getCause());
+            }
+        }
+
+        /**
+         * Lists the first page of a prefix with the delimiter, and returns, in
+         * key order, a partition for each common prefix, partitions of the
+         * objects between them, and a partition for the rest of the prefix if
+         * the page is truncated.
+         */
+        private List<Partition> probe(String probePrefix) throws InterruptedException {
+            final ListObjectsV2Result page = list(newProbeRequest(probePrefix));
+            final List<S3ObjectSummary> summaries = page.getObjectSummaries();
+
+            final List<Partition> result = new ArrayList<Partition>();
+            int s = 0;
+            for (final String commonPrefix : page.getCommonPrefixes()) {
+                final int start = s;
+                s = objectsBefore(summaries, s, commonPrefix);
+                if (s > start) {
+                    result.add(new Partition(null, summaries.subList(start, s)));
+                }
+                result.add(new Partition(commonPrefix, null));
+            }
+            if (s < summaries.size()) {
+                result.add(new Partition(null, summaries.subList(s, summaries.size())));
+            }
+            if (page.isTruncated()) {
+                result.add(new Partition(probePrefix, page.getNextContinuationToken(), null));
+            }
+            return result;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Provides an easy way to iterate Amazon S3 objects in a "foreach" statement.
@@ -35,6 +36,11 @@ import java.util.Iterator;
  * The list of {@link S3ObjectSummary}s will be fetched lazily, a page at a
  * time, as they are needed. The size of the page can be controlled with the
  * {@link S3Objects#withBatchSize(int)} method.
+ * <p>
+ * By default, the next page is only requested once the current one has been
+ * iterated. With {@link S3Objects#withPrefetchDepth(int)}, pages are requested
+ * in the background while the current one is iterated, so that iterating a
+ * large bucket doesn't wait a round trip every page.
  */
 public final class S3Objects implements Iterable<S3ObjectSummary> {
 
@@ -42,6 +48,8 @@ public final class S3Objects implements Iterable<S3ObjectSummary> {
     private String prefix = null;
     private String bucketName;
     private Integer batchSize = null;
+    private int prefetchDepth = 0;
+    private ExecutorService prefetchExecutor = null;
 
     private S3Objects(AmazonS3 s3, String bucketName) {
         this.s3 = s3;
@@ -88,6 +96,38 @@ public final class S3Objects implements Iterable<S3ObjectSummary> {
         return this;
     }
 
+    /**
+     * Sets the prefetch depth, i.e., how many pages of
+     * {@link S3ObjectSummary}s will be fetched in the background ahead of the
+     * one being iterated. At most that many pages are held in memory in
+     * addition to the current one. A depth of 0, the default, disables
+     * prefetching.
+     *
+     * @param prefetchDepth How many pages to fetch ahead.
+     * @return the S3Objects.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public S3Objects withPrefetchDepth(int prefetchDepth) {
+        if (prefetchDepth < 0) {
+            throw new IllegalArgumentException("Prefetch depth can't be negative");
+        }
+        this.prefetchDepth = prefetchDepth;
+        return this;
+    }
+
+    /**
+     * Sets the executor fetching pages in the background when prefetching is
+     * enabled. By default a shared pool of daemon threads is used.
+     *
+     * @param prefetchExecutor The executor fetching the pages.
+     * @return the S3Objects.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public S3Objects withPrefetchExecutor(ExecutorService prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+        return this;
+    }
+
     public Integer getBatchSize() {
         return batchSize;
     }
@@ -104,12 +144,47 @@ public final class S3Objects implements Iterable<S3ObjectSummary> {
         return s3;
     }
 
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public ExecutorService getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    private ObjectListing listFirstBatchOfObjects() {
+        ListObjectsRequest req = new ListObjectsRequest();
+        req.setBucketName(getBucketName());
+        req.setPrefix(getPrefix());
+        req.setMaxKeys(getBatchSize());
+        return getS3().listObjects(req);
+    }
+
     private class S3ObjectIterator implements Iterator<S3ObjectSummary> {
 
         private ObjectListing currentListing = null;
 
         private Iterator<S3ObjectSummary> currentIterator = null;
 
+        private final PagePrefetcher<ObjectListing> prefetcher = getPrefetchDepth() == 0
+                ? null
+                : new PagePrefetcher<ObjectListing>(getPrefetchDepth(), getPrefetchExecutor()) {
+                    @Override
+                    protected ObjectListing fetchFirstPage() {
+                        return listFirstBatchOfObjects();
+                    }
+
+                    @Override
+                    protected ObjectListing fetchNextPage(ObjectListing previousPage) {
+                        return getS3().listNextBatchOfObjects(previousPage);
+                    }
+
+                    @Override
+                    protected boolean isTruncated(ObjectListing page) {
+                        return page.isTruncated();
+                    }
+                };
+
         @Override
         public boolean hasNext() {
             prepareCurrentListing();
@@ -131,12 +206,10 @@ public final class S3Objects implements Iterable<S3ObjectSummary> {
             while (currentListing == null
                     || (!currentIterator.hasNext() && currentListing.isTruncated())) {
 
-                if (currentListing == null) {
-                    ListObjectsRequest req = new ListObjectsRequest();
-                    req.setBucketName(getBucketName());
-                    req.setPrefix(getPrefix());
-                    req.setMaxKeys(getBatchSize());
-                    currentListing = getS3().listObjects(req);
+                if (prefetcher != null) {
+                    currentListing = prefetcher.nextPage();
+                } else if (currentListing == null) {
+                    currentListing = listFirstBatchOfObjects();
                 } else {
                     currentListing = getS3().listNextBatchOfObjects(currentListing);
                 }
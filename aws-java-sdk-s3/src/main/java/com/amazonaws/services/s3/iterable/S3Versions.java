@@ -21,6 +21,7 @@ import com.amazonaws.services.s3.model.S3VersionSummary;
 import com.amazonaws.services.s3.model.VersionListing;
 
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Provides an easy way to iterate Amazon S3 object versions in a "foreach"
@@ -35,6 +36,11 @@ import java.util.Iterator;
  * The list of {@link S3VersionSummary}s will be fetched lazily, a page at a
  * time, as they are needed. The size of the page can be controlled with the
  * {@link S3Versions#withBatchSize(int)} method.
+ * <p>
+ * By default, the next page is only requested once the current one has been
+ * iterated. With {@link S3Versions#withPrefetchDepth(int)}, pages are
+ * requested in the background while the current one is iterated, so that
+ * iterating a large bucket doesn't wait a round trip every page.
  */
 public final class S3Versions implements Iterable<S3VersionSummary> {
 
@@ -43,6 +49,8 @@ public final class S3Versions implements Iterable<S3VersionSummary> {
     private String prefix;
     private String key;
     private Integer batchSize;
+    private int prefetchDepth = 0;
+    private ExecutorService prefetchExecutor;
 
     private S3Versions(AmazonS3 s3, String bucketName) {
         this.s3 = s3;
@@ -105,6 +113,38 @@ public final class S3Versions implements Iterable<S3VersionSummary> {
         return this;
     }
 
+    /**
+     * Sets the prefetch depth, i.e., how many pages of
+     * {@link S3VersionSummary}s will be fetched in the background ahead of the
+     * one being iterated. At most that many pages are held in memory in
+     * addition to the current one. A depth of 0, the default, disables
+     * prefetching.
+     *
+     * @param prefetchDepth How many pages to fetch ahead.
+     * @return S3Versions.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public S3Versions withPrefetchDepth(int prefetchDepth) {
+        if (prefetchDepth < 0) {
+            throw new IllegalArgumentException("Prefetch depth can't be negative");
+        }
+        this.prefetchDepth = prefetchDepth;
+        return this;
+    }
+
+    /**
+     * Sets the executor fetching pages in the background when prefetching is
+     * enabled. By default a shared pool of daemon threads is used.
+     *
+     * @param prefetchExecutor The executor fetching the pages.
+     * @return S3Versions.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public S3Versions withPrefetchExecutor(ExecutorService prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+        return this;
+    }
+
     public Integer getBatchSize() {
         return batchSize;
     }
@@ -125,12 +165,53 @@ public final class S3Versions implements Iterable<S3VersionSummary> {
         return bucketName;
     }
 
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public ExecutorService getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    private VersionListing listFirstBatchOfVersions() {
+        ListVersionsRequest req = new ListVersionsRequest();
+        req.setBucketName(getBucketName());
+
+        if (getKey() != null) {
+            req.setPrefix(getKey());
+        } else {
+            req.setPrefix(getPrefix());
+        }
+
+        req.setMaxResults(getBatchSize());
+        return getS3().listVersions(req);
+    }
+
     private class VersionIterator implements Iterator<S3VersionSummary> {
 
         private VersionListing currentListing = null;
         private Iterator<S3VersionSummary> currentIterator = null;
         private S3VersionSummary nextSummary = null;
 
+        private final PagePrefetcher<VersionListing> prefetcher = getPrefetchDepth() == 0
+                ? null
+                : new PagePrefetcher<VersionListing>(getPrefetchDepth(), getPrefetchExecutor()) {
+                    @Override
+                    protected VersionListing fetchFirstPage() {
+                        return listFirstBatchOfVersions();
+                    }
+
+                    @Override
+                    protected VersionListing fetchNextPage(VersionListing previousPage) {
+                        return getS3().listNextBatchOfVersions(previousPage);
+                    }
+
+                    @Override
+                    protected boolean isTruncated(VersionListing page) {
+                        return page.isTruncated();
+                    }
+                };
+
         @Override
         public boolean hasNext() {
             prepareCurrentListing();
@@ -164,18 +245,10 @@ public final class S3Versions implements Iterable<S3VersionSummary> {
             while (currentListing == null
                     || (!currentIterator.hasNext() && currentListing
                             .isTruncated())) {
-                if (currentListing == null) {
-                    ListVersionsRequest req = new ListVersionsRequest();
-                    req.setBucketName(getBucketName());
-
-                    if (getKey() != null) {
-                        req.setPrefix(getKey());
-                    } else {
-                        req.setPrefix(getPrefix());
-                    }
-
-                    req.setMaxResults(getBatchSize());
-                    currentListing = getS3().listVersions(req);
+                if (prefetcher != null) {
+                    currentListing = prefetcher.nextPage();
+                } else if (currentListing == null) {
+                    currentListing = listFirstBatchOfVersions();
                 } else {
                     currentListing = getS3().listNextBatchOfVersions(
                             currentListing);
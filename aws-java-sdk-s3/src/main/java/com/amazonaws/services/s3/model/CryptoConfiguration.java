@@ -48,6 +48,11 @@ public class CryptoConfiguration implements Cloneable,Serializable {
      * null if no explicit KMS region is specified.
      */
     private transient com.amazonaws.regions.Region awskmsRegion;
+    /**
+     * The cache of the data keys generated and decrypted by KMS, or null if
+     * every key is generated or decrypted by a call to KMS.
+     */
+    private transient KMSDataKeyCache kmsDataKeyCache;
 
     /**
      * Creates a new CryptoConfiguration object with default storage mode and
@@ -278,6 +283,12 @@ public class CryptoConfiguration implements Cloneable,Serializable {
         @Override public CryptoConfiguration withKmsRegion(Regions kmsRegion) {
             throw new UnsupportedOperationException();
         }
+        @Override public void setKMSDataKeyCache(KMSDataKeyCache kmsDataKeyCache) {
+            throw new UnsupportedOperationException();
+        }
+        @Override public CryptoConfiguration withKMSDataKeyCache(KMSDataKeyCache kmsDataKeyCache) {
+            throw new UnsupportedOperationException();
+        }
     }
 
     /**
@@ -301,6 +312,7 @@ public class CryptoConfiguration implements Cloneable,Serializable {
         that.cryptoProvider = this.cryptoProvider;
         that.ignoreMissingInstructionFile = this.ignoreMissingInstructionFile;
         that.awskmsRegion = this.awskmsRegion;
+        that.kmsDataKeyCache = this.kmsDataKeyCache;
         return that;
     }
 
@@ -399,4 +411,35 @@ public class CryptoConfiguration implements Cloneable,Serializable {
         this.awskmsRegion = awsKmsRegion;
         return this;
     }
+
+    /**
+     * Returns the cache of the data keys generated and decrypted by KMS, or
+     * null if every key is generated or decrypted by a call to KMS.
+     */
+    public KMSDataKeyCache getKMSDataKeyCache() {
+        return kmsDataKeyCache;
+    }
+
+    /**
+     * Sets the cache of the data keys generated and decrypted by KMS when
+     * objects are encrypted with {@link KMSEncryptionMaterials}, so that most
+     * uploads and downloads don't wait for KMS. The cache is shared, not
+     * copied, by the copies of this configuration.
+     *
+     * @param kmsDataKeyCache The cache, or null to call KMS for every key.
+     */
+    public void setKMSDataKeyCache(KMSDataKeyCache kmsDataKeyCache) {
+        this.kmsDataKeyCache = kmsDataKeyCache;
+    }
+
+    /**
+     * Fluent API for setting the cache of the data keys generated and
+     * decrypted by KMS.
+     *
+     * @see #setKMSDataKeyCache(KMSDataKeyCache)
+     */
+    public CryptoConfiguration withKMSDataKeyCache(KMSDataKeyCache kmsDataKeyCache) {
+        this.kmsDataKeyCache = kmsDataKeyCache;
+        return this;
+    }
 }
@@ -32,6 +32,8 @@ import java.util.Map;
  * <li>specify encryption material description on a per-request basis;</li>
  * <li>specify whether a new set of encryption material is to be created for the
  * upload or not;</li>
+ * <li>specify the size of the parts, so that they can be encrypted and uploaded
+ * in parallel in authenticated encryption mode.</li>
  * </ul>
  * In particular, {@link EncryptedInitiateMultipartUploadRequest} is only
  * recognized by {@link AmazonS3EncryptionClient}.
@@ -43,6 +45,8 @@ import java.util.Map;
  */
 public class EncryptedInitiateMultipartUploadRequest extends
         InitiateMultipartUploadRequest implements MaterialsDescriptionProvider, Serializable {
+    private static final int CIPHER_BLOCK_SIZE = 16;
+
     /**
      * description of encryption materials to be used with this request.
      */
@@ -52,6 +56,11 @@ public class EncryptedInitiateMultipartUploadRequest extends
      * otherwise. Default is true.
      */
     private boolean createEncryptionMaterial = true;
+    /**
+     * The size of all the parts but the last, or 0 if the parts are to be
+     * uploaded in series.
+     */
+    private long partSize;
 
     public EncryptedInitiateMultipartUploadRequest(String bucketName, String key) {
         super(bucketName, key);
@@ -118,4 +127,45 @@ public class EncryptedInitiateMultipartUploadRequest extends
         this.createEncryptionMaterial = createEncryptionMaterial;
         return this;
     }
+
+    /**
+     * Returns the size of all the parts of the upload but the last, or 0 if
+     * the parts are to be uploaded in series. Default is 0.
+     */
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Sets the size of all the parts of the upload but the last, which lets
+     * the parts be encrypted independently of each other and uploaded in
+     * parallel and in any order, provided that the last part is uploaded after
+     * all the others. This only applies in authenticated encryption mode; in
+     * encryption only mode, each part is chained to the previous one and the
+     * parts are always uploaded in series.
+     *
+     * @param partSize the size of all the parts but the last, which must be a
+     *            multiple of the 16-byte cipher block size, or 0 to upload the
+     *            parts in series.
+     * @throws IllegalArgumentException if the part size is negative or not a
+     *             multiple of 16.
+     */
+    public void setPartSize(long partSize) {
+        if (partSize < 0 || partSize % CIPHER_BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("The part size must be a multiple of "
+                    + CIPHER_BLOCK_SIZE + ", but was " + partSize);
+        }
+        this.partSize = partSize;
+    }
+
+    /**
+     * Sets the size of all the parts of the upload but the last, and returns
+     * this request.
+     *
+     * @see #setPartSize(long)
+     */
+    public EncryptedInitiateMultipartUploadRequest withPartSize(long partSize) {
+        setPartSize(partSize);
+        return this;
+    }
 }
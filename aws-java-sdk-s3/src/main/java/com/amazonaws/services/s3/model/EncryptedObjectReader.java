@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.model;
+
+import java.io.IOException;
+
+/**
+ * Random access to the plaintext of an object encrypted with AES/GCM by the S3
+ * encryption client, as returned by
+ * {@link com.amazonaws.services.s3.AmazonS3EncryptionClient#openEncryptedObject(GetObjectRequest)}.
+ * <p>
+ * The content encrypting key of the object is unwrapped once, when the object
+ * is opened, and each read then fetches only the cipher blocks that hold the
+ * bytes read. Like a range get of an encrypted object, a read doesn't verify
+ * the GCM tag of the object.
+ * <p>
+ * Reads are always made from the version of the object that was opened.
+ * Implementations are thread safe.
+ */
+public interface EncryptedObjectReader {
+
+    /**
+     * Returns the length of the plaintext of the object, in bytes.
+     */
+    public long getContentLength();
+
+    /**
+     * Reads up to the given number of bytes of plaintext from the given
+     * position in the object, with a single range get.
+     *
+     * @param position The position in the plaintext to read from.
+     * @param b The buffer to read into.
+     * @param off The offset in the buffer to read into.
+     * @param len The maximum number of bytes to read.
+     * @return The number of bytes read, which is less than the number asked for
+     *         only at the end of the object, or -1 if the position is at or
+     *         past the end of the object.
+     * @throws IOException if the content of the object can't be read.
+     * @throws com.amazonaws.AmazonClientException if the object has changed
+     *             since it was opened, or can't be fetched.
+     */
+    public int read(long position, byte[] b, int off, int len) throws IOException;
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.model;
+
+import com.amazonaws.services.kms.crypto.DataKeyCache;
+
+/**
+ * A bounded cache of the data keys generated and decrypted by KMS for the
+ * Amazon S3 Encryption Client, set with
+ * {@link CryptoConfiguration#setKMSDataKeyCache(KMSDataKeyCache)}. Without a
+ * cache, every object encrypted with {@link KMSEncryptionMaterials} costs a
+ * call to KMS to generate its data key, and every object decrypted costs a
+ * call to decrypt it.
+ * <p>
+ * A generated data key is reused to encrypt other objects with the same
+ * customer master key and encryption context until it reaches its maximum
+ * age, number of uses or number of bytes encrypted, after which a new one is
+ * generated. Each object still gets its own random IV. A decrypted data key
+ * is cached by its encrypted form and encryption context until it reaches its
+ * maximum age, so that reading the same objects again doesn't call KMS.
+ * <p>
+ * Caching trades some security for performance: the plaintext keys stay in
+ * memory while cached, and a key that's reused protects more data. Keep the
+ * limits as low as the workload allows. A cache may be shared by several
+ * clients, and is safe for use by multiple threads.
+ * <p>
+ * The same cache may also back an
+ * {@link com.amazonaws.services.kms.crypto.EnvelopeEncryptor}.
+ */
+public class KMSDataKeyCache extends DataKeyCache {
+
+    @Override
+    public KMSDataKeyCache withMaxEntries(int maxEntries) {
+        setMaxEntries(maxEntries);
+        return this;
+    }
+
+    @Override
+    public KMSDataKeyCache withMaxAgeMillis(long maxAgeMillis) {
+        setMaxAgeMillis(maxAgeMillis);
+        return this;
+    }
+
+    /**
+     * Fluent API for {@link #setMaxUses(long)}, the maximum number of objects
+     * or multipart uploads encrypted with a generated key.
+     */
+    @Override
+    public KMSDataKeyCache withMaxUses(long maxUses) {
+        setMaxUses(maxUses);
+        return this;
+    }
+
+    /**
+     * Fluent API for {@link #setMaxBytes(long)}. If the maximum number of
+     * bytes is limited, the objects uploaded in parts get keys of their own.
+     */
+    @Override
+    public KMSDataKeyCache withMaxBytes(long maxBytes) {
+        setMaxBytes(maxBytes);
+        return this;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that limits the rate at which bytes are transferred. The
+ * bucket fills at the configured rate up to a tenth of a second's worth of
+ * bytes, and each transferred byte takes a token, waiting for the bucket to
+ * refill if it's empty.
+ * <p>
+ * A limiter may have a parent, which the bytes are acquired from as well, so
+ * that the transfers of a transfer manager or transfer utility share a
+ * global limit while each of them has its own. The limits can be changed at
+ * any time, and apply to the bytes acquired from then on, including by the
+ * threads already waiting.
+ */
+public class BandwidthLimiter {
+
+    /**
+     * The time at the limited rate that fills the bucket.
+     */
+    private static final long BURST_MILLIS = 100;
+
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final BandwidthLimiter parent;
+    private long bytesPerSecond;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * Creates a limiter that doesn't limit the bandwidth until
+     * {@link #setBytesPerSecond(long)} is called.
+     */
+    public BandwidthLimiter() {
+        this(0, null);
+    }
+
+    /**
+     * @param bytesPerSecond The maximum rate, or 0 for no limit.
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        this(bytesPerSecond, null);
+    }
+
+    /**
+     * @param bytesPerSecond The maximum rate, or 0 for no limit.
+     * @param parent The limiter that also limits the bytes acquired from this
+     *            one, or null.
+     */
+    public BandwidthLimiter(long bytesPerSecond, BandwidthLimiter parent) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        this.parent = parent;
+        this.tokens = getBurstSize();
+    }
+
+    /**
+     * Returns the parent limiter, or null.
+     */
+    public BandwidthLimiter getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the maximum rate in bytes per second, or 0 if the rate isn't
+     * limited by this limiter.
+     */
+    public synchronized long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Changes the maximum rate.
+     *
+     * @param bytesPerSecond The maximum rate in bytes per second, or 0 for no
+     *            limit.
+     */
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        refill();
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        tokens = Math.min(tokens, getBurstSize());
+        notifyAll();
+    }
+
+    /**
+     * Returns true if this limiter or one of its parents limits the rate.
+     */
+    public boolean isLimited() {
+        for (BandwidthLimiter limiter = this; limiter != null; limiter = limiter.parent) {
+            if (limiter.getBytesPerSecond() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the largest number of bytes that this limiter and its parents
+     * let through at once, or {@link Long#MAX_VALUE} if none limits the rate.
+     * Reading at most this many bytes at a time keeps the transfer smooth.
+     */
+    public long getMaxBurstSize() {
+        long burstSize = Long.MAX_VALUE;
+        for (BandwidthLimiter limiter = this; limiter != null; limiter = limiter.parent) {
+            synchronized (limiter) {
+                if (limiter.bytesPerSecond > 0) {
+                    burstSize = Math.min(burstSize, limiter.getBurstSize());
+                }
+            }
+        }
+        return burstSize;
+    }
+
+    /**
+     * Takes tokens for the given number of bytes from this limiter and its
+     * parents, waiting as long as it takes for them to become available.
+     *
+     * @param bytes The number of bytes transferred.
+     * @throws InterruptedException if the thread is interrupted while
+     *             waiting.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        for (BandwidthLimiter limiter = this; limiter != null; limiter = limiter.parent) {
+            limiter.acquireTokens(bytes);
+        }
+    }
+
+    private synchronized void acquireTokens(long bytes) throws InterruptedException {
+        long remaining = bytes;
+        while (remaining > 0 && bytesPerSecond > 0) {
+            refill();
+            final long chunk = Math.min(remaining, getBurstSize());
+            if (tokens >= chunk) {
+                tokens -= chunk;
+                remaining -= chunk;
+            } else {
+                final long waitNanos = (long) ((chunk - tokens) * NANOS_PER_SECOND
+                        / bytesPerSecond);
+                TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+            }
+        }
+    }
+
+    private long getBurstSize() {
+        return Math.max(1, bytesPerSecond * BURST_MILLIS / 1000);
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        if (bytesPerSecond > 0) {
+            tokens = Math.min(getBurstSize(),
+                    tokens + (now - lastRefillNanos) * bytesPerSecond / NANOS_PER_SECOND);
+        }
+        lastRefillNanos = now;
+    }
+}
@@ -16,22 +16,31 @@
 package com.amazonaws.auth;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.services.s3.internal.AWSS3V4Signer;
 import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.IOUtils;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
 
 public class AwsChunkedEncodingInputStreamTest {
 
+    private static final String SEED_SIGNATURE =
+            "c61bd05d152a8ca5ca2a024ec45d0670c0f4aa2aa67ee26be9de8657f6cfea37";
+
     AwsChunkedEncodingInputStream aceis = null;
 
     @Before
@@ -134,6 +143,64 @@ public class AwsChunkedEncodingInputStreamTest {
         assertArrayEquals(expected.toByteArray(), baos.toByteArray());
     }
 
+    @Test
+    public void testChunkSignaturesVerify() throws Exception {
+        final String scope = "20150513/us-west-2/s3/aws4_request";
+        final byte[] key = AwsChunkedSignatureVerifier.deriveSigningKey("secret", scope);
+        final AwsChunkedSignatureVerifier verifier = new AwsChunkedSignatureVerifier(key,
+                "20150513T222354Z", scope, SEED_SIGNATURE);
+        for (final int size : new int[] {
+                0, 1, 128 * 1024 - 1, 128 * 1024, 128 * 1024 + 1, 300 * 1024
+        }) {
+            final byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+            final AwsChunkedEncodingInputStream in = new AwsChunkedEncodingInputStream(
+                    new ByteArrayInputStream(data), key, "20150513T222354Z", scope,
+                    SEED_SIGNATURE, new AWSS3V4Signer());
+            final byte[] encoded = IOUtils.toByteArray(in);
+            assertEquals(AwsChunkedEncodingInputStream.calculateStreamContentLength(size),
+                    encoded.length);
+            assertArrayEquals(data, verifier.verify(encoded));
+        }
+    }
+
+    @Test(expected = AssertionError.class)
+    public void testTamperedChunkIsRejected() throws Exception {
+        final String scope = "20150513/us-west-2/s3/aws4_request";
+        final byte[] key = AwsChunkedSignatureVerifier.deriveSigningKey("secret", scope);
+        final AwsChunkedEncodingInputStream in = new AwsChunkedEncodingInputStream(
+                new ByteArrayInputStream(new byte[1000]), key, "20150513T222354Z", scope,
+                SEED_SIGNATURE, new AWSS3V4Signer());
+        final byte[] encoded = IOUtils.toByteArray(in);
+        encoded[200]++;
+        new AwsChunkedSignatureVerifier(key, "20150513T222354Z", scope, SEED_SIGNATURE)
+                .verify(encoded);
+    }
+
+    @Test
+    public void testResetOfUnmarkableStreamRepeatsSignatures() throws Exception {
+        final String scope = "20150513/us-west-2/s3/aws4_request";
+        final byte[] key = AwsChunkedSignatureVerifier.deriveSigningKey("secret", scope);
+        final byte[] data = new byte[200 * 1024];
+        new Random(1).nextBytes(data);
+        final InputStream unmarkable = new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        final AwsChunkedEncodingInputStream in = new AwsChunkedEncodingInputStream(
+                unmarkable, key, "20150513T222354Z", scope, SEED_SIGNATURE,
+                new AWSS3V4Signer());
+        in.mark(-1);
+        final byte[] first = IOUtils.toByteArray(in);
+        in.reset();
+        final byte[] second = IOUtils.toByteArray(in);
+        assertArrayEquals(first, second);
+        assertArrayEquals(data, new AwsChunkedSignatureVerifier(key, "20150513T222354Z",
+                scope, SEED_SIGNATURE).verify(second));
+    }
+
     private byte[] getExpectedOutput() throws IOException {
         // Get the output we expect
         File written = new File(getClass().getResource("/com/amazonaws/auth/SignedTestData.txt")
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.auth;
+
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Checks an aws-chunked (STREAMING-AWS4-HMAC-SHA256-PAYLOAD) body the way
+ * Amazon S3 does, independently of the SDK's signing code: every chunk
+ * signature must chain from the seed signature of the request headers.
+ */
+public class AwsChunkedSignatureVerifier {
+
+    private final byte[] kSigning;
+    private final String dateTime;
+    private final String scope;
+    private final String seedSignature;
+
+    /**
+     * @param kSigning the signing key.
+     * @param dateTime the X-Amz-Date of the request.
+     * @param scope the credential scope (date/region/service/aws4_request).
+     * @param seedSignature the signature of the request headers.
+     */
+    public AwsChunkedSignatureVerifier(byte[] kSigning, String dateTime, String scope,
+            String seedSignature) {
+        this.kSigning = kSigning;
+        this.dateTime = dateTime;
+        this.scope = scope;
+        this.seedSignature = seedSignature;
+    }
+
+    /**
+     * Derives the signing key from the secret key, as specified for SigV4.
+     */
+    public static byte[] deriveSigningKey(String secretKey, String scope) throws Exception {
+        byte[] key = ("AWS4" + secretKey).getBytes(StringUtils.UTF8);
+        for (final String part : scope.split("/")) {
+            key = hmac(key, part);
+        }
+        return key;
+    }
+
+    /**
+     * Verifies the chunks of the body.
+     *
+     * @param body the encoded body.
+     * @return the decoded content.
+     * @throws AssertionError if the body is malformed or a signature doesn't
+     *             match.
+     */
+    public byte[] verify(byte[] body) throws Exception {
+        final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        String priorSignature = seedSignature;
+        int pos = 0;
+        while (true) {
+            final int semicolon = indexOf(body, (byte) ';', pos);
+            final int size = Integer.parseInt(new String(body, pos, semicolon - pos,
+                    StringUtils.UTF8), 16);
+            final String extension = new String(body, semicolon, 17 + 64, StringUtils.UTF8);
+            check(extension.startsWith(";chunk-signature="), "chunk extension at " + pos);
+            final String signature = extension.substring(17);
+            pos = semicolon + 17 + 64;
+            check(body[pos] == '\r' && body[pos + 1] == '\n', "chunk header CRLF at " + pos);
+            pos += 2;
+
+            final MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(body, pos, size);
+            final String stringToSign = "AWS4-HMAC-SHA256-PAYLOAD\n" + dateTime + "\n" + scope
+                    + "\n" + priorSignature + "\n"
+                    + BinaryUtils.toHex(MessageDigest.getInstance("SHA-256").digest())
+                    + "\n" + BinaryUtils.toHex(sha256.digest());
+            check(signature.equals(BinaryUtils.toHex(hmac(kSigning, stringToSign))),
+                    "signature of chunk at " + pos);
+            priorSignature = signature;
+
+            decoded.write(body, pos, size);
+            pos += size;
+            check(body[pos] == '\r' && body[pos + 1] == '\n', "chunk trailer CRLF at " + pos);
+            pos += 2;
+            if (size == 0) {
+                check(pos == body.length, "content after the final chunk");
+                return decoded.toByteArray();
+            }
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data.getBytes(StringUtils.UTF8));
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        throw new AssertionError("Truncated chunk at " + from);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError("Invalid aws-chunked body: " + message);
+        }
+    }
+}
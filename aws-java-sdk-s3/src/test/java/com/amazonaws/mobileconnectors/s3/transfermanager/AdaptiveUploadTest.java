@@ -0,0 +1,272 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.AdaptiveUploadController;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AdaptiveUploadTest {
+
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * Aggregate throughput of a simulated link, in bytes per second, which
+     * peaks at six connections and degrades with more.
+     */
+    private static double linkThroughput(int connections) {
+        final double megabytes = connections <= 6 ? connections : 6 - 0.5 * (connections - 6);
+        return Math.max(0.5, megabytes) * MB;
+    }
+
+    /**
+     * Uploads the given number of rounds of parts over the simulated link,
+     * each round being as many concurrent parts as the controller asks for.
+     */
+    private static void simulate(AdaptiveUploadController controller, int rounds) {
+        long now = 0;
+        for (int round = 0; round < rounds; round++) {
+            final int concurrency = controller.getConcurrency();
+            final long partSize = controller.getPartSize(1000 * MB, 1);
+            final double connectionThroughput = linkThroughput(concurrency) / concurrency;
+            final long durationNanos = (long) (partSize / connectionThroughput * 1e9);
+            for (int i = 0; i < concurrency; i++) {
+                controller.recordPart(partSize, now, now + durationNanos);
+            }
+            now += durationNanos;
+        }
+    }
+
+    @Test
+    public void testConvergesOnBestConcurrency() {
+        final AdaptiveUploadController controller = new AdaptiveUploadController(256 * 1024,
+                64 * MB, 16);
+        simulate(controller, 20);
+
+        for (int round = 0; round < 20; round++) {
+            simulate(controller, 1);
+            final int concurrency = controller.getConcurrency();
+            assertTrue("Concurrency " + concurrency, concurrency >= 5 && concurrency <= 7);
+        }
+        final AdaptiveUploadMetrics metrics = controller.getMetrics();
+        assertTrue(metrics.getDecisions() > 0);
+        assertTrue(metrics.getThroughput() >= 5 * MB);
+        assertNotNull(metrics.getLastDecision());
+    }
+
+    @Test
+    public void testSizesPartsForTheConnectionThroughput() {
+        final AdaptiveUploadController controller = new AdaptiveUploadController(256 * 1024,
+                64 * MB, 6);
+        simulate(controller, 10);
+
+        // About two seconds at the 1 MB/s of each connection
+        final long partSize = controller.getMetrics().getPartSize();
+        assertTrue("Part size " + partSize, partSize >= MB && partSize <= 3 * MB);
+    }
+
+    @Test
+    public void testPartSizeStaysWithinBounds() {
+        final AdaptiveUploadController controller = new AdaptiveUploadController(5 * MB,
+                8 * MB, 4);
+        // A fast link: 100 MB parts in a tenth of a second
+        for (int i = 0; i < 10; i++) {
+            controller.recordPart(100 * MB, i * 100000000L, (i + 1) * 100000000L);
+        }
+        assertEquals(8 * MB, controller.getPartSize(1000 * MB, 1));
+    }
+
+    @Test
+    public void testPartSizeFitsTheRemainingParts() {
+        final AdaptiveUploadController controller = new AdaptiveUploadController(5, 10, 4);
+        assertEquals(5, controller.getPartSize(1000, 1));
+        // Two parts left for 100000 bytes
+        assertEquals(50000, controller.getPartSize(100000, 9999));
+    }
+
+    @Test
+    public void testUploadsFileWithTunedParts() throws Exception {
+        final byte[] content = new byte[30000];
+        new Random(1).nextBytes(content);
+        final File file = File.createTempFile("AdaptiveUploadTest", ".tmp");
+        final ExecutorService threadPool = Executors.newFixedThreadPool(4);
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write(content);
+            out.close();
+
+            final PartRecordingS3Client s3 = new PartRecordingS3Client();
+            final TransferManager tm = new TransferManager(s3, threadPool);
+            final TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+            configuration.setMultipartUploadThreshold(1000);
+            configuration.setMinimumUploadPartSize(1000);
+            configuration.setMaximumUploadPartSize(4000);
+            configuration.setMaximumUploadConcurrency(3);
+            configuration.setAdaptiveUploadTuning(true);
+            tm.setConfiguration(configuration);
+            assertNull(tm.getAdaptiveUploadMetrics());
+
+            final Upload upload = tm.upload("bucket", "key", file);
+            assertEquals("etag-of-upload", upload.waitForUploadResult().getETag());
+
+            assertArrayEquals(content, s3.getCompletedObject());
+            assertTrue(s3.maxConcurrentParts.get() <= 3);
+            final AdaptiveUploadMetrics metrics = tm.getAdaptiveUploadMetrics();
+            assertEquals(s3.parts.size(), metrics.getPartsMeasured());
+            assertEquals(content.length, metrics.getBytesMeasured());
+        } finally {
+            threadPool.shutdownNow();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testConcurrencyIsBoundedByThreadPool() throws Exception {
+        final byte[] content = new byte[30000];
+        new Random(2).nextBytes(content);
+        final File file = File.createTempFile("AdaptiveUploadTest", ".tmp");
+        final ExecutorService threadPool = Executors.newFixedThreadPool(2);
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write(content);
+            out.close();
+
+            final PartRecordingS3Client s3 = new PartRecordingS3Client();
+            final TransferManager tm = new TransferManager(s3, threadPool);
+            final TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+            configuration.setMultipartUploadThreshold(1000);
+            configuration.setMinimumUploadPartSize(1000);
+            configuration.setMaximumUploadPartSize(1000);
+            configuration.setMaximumUploadConcurrency(16);
+            configuration.setAdaptiveUploadTuning(true);
+            tm.setConfiguration(configuration);
+
+            tm.upload("bucket", "key", file).waitForUploadResult();
+            assertArrayEquals(content, s3.getCompletedObject());
+            // Half the configured maximum would be 8 parts at once
+            final int concurrency = tm.getAdaptiveUploadMetrics().getConcurrency();
+            assertTrue("Concurrency " + concurrency, concurrency <= 2);
+        } finally {
+            threadPool.shutdownNow();
+            file.delete();
+        }
+    }
+
+    /**
+     * Amazon S3 client stub recording the parts of a multipart upload of a
+     * file.
+     */
+    private static class PartRecordingS3Client extends AmazonS3Client {
+        private final Map<Integer, byte[]> parts = new TreeMap<Integer, byte[]>();
+        private final AtomicInteger concurrentParts = new AtomicInteger();
+        private final AtomicInteger maxConcurrentParts = new AtomicInteger();
+        private volatile boolean completed;
+
+        PartRecordingS3Client() {
+            super(new BasicAWSCredentials("access", "secret"));
+        }
+
+        synchronized byte[] getCompletedObject() throws IOException {
+            assertTrue(completed);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (final byte[] part : parts.values()) {
+                out.write(part);
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(
+                InitiateMultipartUploadRequest request) {
+            final InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload-id");
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            final int concurrent = concurrentParts.incrementAndGet();
+            synchronized (maxConcurrentParts) {
+                maxConcurrentParts.set(Math.max(maxConcurrentParts.get(), concurrent));
+            }
+            try {
+                final byte[] data = new byte[(int) request.getPartSize()];
+                final RandomAccessFile in = new RandomAccessFile(request.getFile(), "r");
+                try {
+                    in.seek(request.getFileOffset());
+                    in.readFully(data);
+                } finally {
+                    in.close();
+                }
+                Thread.sleep(5);
+                synchronized (this) {
+                    parts.put(request.getPartNumber(), data);
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrentParts.decrementAndGet();
+            }
+            final UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(
+                CompleteMultipartUploadRequest request) {
+            int partNumber = 1;
+            for (final PartETag partETag : request.getPartETags()) {
+                assertEquals(partNumber++, partETag.getPartNumber());
+            }
+            assertEquals(parts.size(), request.getPartETags().size());
+            completed = true;
+            final CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+            result.setETag("etag-of-upload");
+            return result;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.mobileconnectors.s3.transfermanager.model.SyncResult;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.Md5Utils;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class DirectorySyncTest {
+
+    private static final String BUCKET = "bucket";
+
+    private BucketS3Client s3;
+    private ExecutorService threadPool;
+    private TransferManager tm;
+    private File directory;
+    private File manifest;
+
+    @Before
+    public void setUp() throws IOException {
+        s3 = new BucketS3Client();
+        threadPool = Executors.newFixedThreadPool(2);
+        tm = new TransferManager(s3, threadPool);
+        directory = File.createTempFile("DirectorySyncTest", "");
+        directory.delete();
+        directory.mkdirs();
+        manifest = File.createTempFile("DirectorySyncTest", ".manifest");
+        manifest.delete();
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+        delete(directory);
+        manifest.delete();
+    }
+
+    private static void delete(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (final File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private File write(String path, String content) throws IOException {
+        final File file = new File(directory, path);
+        file.getParentFile().mkdirs();
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(StringUtils.UTF8));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static String read(File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            return new String(IOUtils.toByteArray(in), StringUtils.UTF8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private SyncResult sync(DirectorySyncOptions options) throws InterruptedException {
+        final DirectorySync sync = tm.syncDirectory(BUCKET, "backup", directory, options);
+        final SyncResult result = sync.waitForSyncResult();
+        assertEquals(Transfer.TransferState.Completed, sync.getState());
+        return result;
+    }
+
+    @Test
+    public void testUploadsOnlyChangedFiles() throws Exception {
+        write("a.txt", "first");
+        write("sub/b.txt", "second");
+        final DirectorySyncOptions options = new DirectorySyncOptions()
+                .withManifestFile(manifest);
+
+        SyncResult result = sync(options);
+        assertEquals(2, result.getUploadedFiles());
+        assertEquals(11, result.getBytesTransferred());
+        assertTrue(result.isRemoteListed());
+        assertEquals("second", s3.getContent("backup/sub/b.txt"));
+
+        // The manifest spares the next sync the listing
+        s3.listings = 0;
+        result = sync(options);
+        assertEquals(0, result.getUploadedFiles());
+        assertEquals(2, result.getUnchangedFiles());
+        assertFalse(result.isRemoteListed());
+        assertEquals(0, s3.listings);
+
+        write("a.txt", "first, changed");
+        result = sync(options);
+        assertEquals(1, result.getUploadedFiles());
+        assertEquals(1, result.getUnchangedFiles());
+        assertEquals("first, changed", s3.getContent("backup/a.txt"));
+    }
+
+    @Test
+    public void testComparesChecksumsWithoutManifest() throws Exception {
+        write("same.txt", "same");
+        write("other.txt", "abcd");
+        s3.putContent("backup/same.txt", "same", new Date(0));
+        s3.putContent("backup/other.txt", "wxyz", new Date(0));
+
+        final SyncResult result = sync(new DirectorySyncOptions());
+        assertEquals(1, result.getUploadedFiles());
+        assertEquals(1, result.getUnchangedFiles());
+        assertEquals("abcd", s3.getContent("backup/other.txt"));
+    }
+
+    @Test
+    public void testDeletesRemovedObjects() throws Exception {
+        write("kept.txt", "kept");
+        s3.putContent("backup/removed.txt", "removed", new Date());
+        s3.putContent("unrelated.txt", "unrelated", new Date());
+
+        SyncResult result = sync(new DirectorySyncOptions());
+        assertEquals(0, result.getDeletedFiles());
+        assertEquals("removed", s3.getContent("backup/removed.txt"));
+
+        result = sync(new DirectorySyncOptions().withDeleteRemoved(true));
+        assertEquals(1, result.getDeletedFiles());
+        assertEquals(null, s3.getContent("backup/removed.txt"));
+        assertEquals("unrelated", s3.getContent("unrelated.txt"));
+    }
+
+    @Test
+    public void testDownloadsChangedObjects() throws Exception {
+        s3.putContent("backup/a.txt", "first", new Date());
+        s3.putContent("backup/sub/b.txt", "second", new Date());
+        s3.putContent("backup/sub/", "", new Date());
+        s3.putContent("backup/../escaped.txt", "escaped", new Date());
+        final File extra = write("extra.txt", "extra");
+        final DirectorySyncOptions options = new DirectorySyncOptions()
+                .withDirection(DirectorySyncOptions.Direction.DOWNLOAD)
+                .withManifestFile(manifest)
+                .withDeleteRemoved(true);
+
+        SyncResult result = sync(options);
+        assertEquals(2, result.getDownloadedFiles());
+        assertEquals(1, result.getDeletedFiles());
+        assertEquals("first", read(new File(directory, "a.txt")));
+        assertEquals("second", read(new File(directory, "sub/b.txt")));
+        assertFalse(extra.exists());
+        assertFalse(new File(directory.getParentFile(), "escaped.txt").exists());
+
+        s3.putContent("backup/a.txt", "first, changed", new Date());
+        result = sync(options);
+        assertTrue(result.isRemoteListed());
+        assertEquals(1, result.getDownloadedFiles());
+        assertEquals(1, result.getUnchangedFiles());
+        assertEquals("first, changed", read(new File(directory, "a.txt")));
+    }
+
+    @Test
+    public void testKeepsManifestEntriesOfFailedUploads() throws Exception {
+        write("a.txt", "first");
+        write("b.txt", "second");
+        final DirectorySyncOptions options = new DirectorySyncOptions()
+                .withManifestFile(manifest);
+        s3.failingKey = "backup/b.txt";
+
+        final DirectorySync sync = tm.syncDirectory(BUCKET, "backup", directory, options);
+        try {
+            sync.waitForSyncResult();
+        } catch (final AmazonClientException expected) {
+        }
+        assertEquals(Transfer.TransferState.Failed, sync.getState());
+        assertEquals("first", s3.getContent("backup/a.txt"));
+
+        s3.failingKey = null;
+        s3.listings = 0;
+        final SyncResult result = sync(options);
+        assertEquals(1, result.getUploadedFiles());
+        assertEquals(1, result.getUnchangedFiles());
+        assertEquals(0, s3.listings);
+        assertEquals("second", s3.getContent("backup/b.txt"));
+    }
+
+    @Test
+    public void testSyncsEmptyDirectory() throws Exception {
+        final SyncResult result = sync(new DirectorySyncOptions());
+        assertEquals(0, result.getUploadedFiles());
+        assertEquals(0, result.getUnchangedFiles());
+    }
+
+    /**
+     * A client that keeps the objects of a single bucket in memory.
+     */
+    private static class BucketS3Client extends AmazonS3Client {
+        private final Map<String, byte[]> contents = new TreeMap<String, byte[]>();
+        private final Map<String, Date> lastModified = new TreeMap<String, Date>();
+        private volatile int listings;
+        private volatile String failingKey;
+
+        BucketS3Client() {
+            super(new BasicAWSCredentials("access", "secret"));
+        }
+
+        synchronized void putContent(String key, String content, Date modified) {
+            contents.put(key, content.getBytes(StringUtils.UTF8));
+            lastModified.put(key, modified);
+        }
+
+        synchronized String getContent(String key) {
+            final byte[] content = contents.get(key);
+            return content == null ? null : new String(content, StringUtils.UTF8);
+        }
+
+        private static String eTag(byte[] content) {
+            return BinaryUtils.toHex(Md5Utils.computeMD5Hash(content));
+        }
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest request) {
+            if (request.getKey().equals(failingKey)) {
+                throw new AmazonClientException("Unable to upload " + request.getKey());
+            }
+            final byte[] content;
+            try {
+                final InputStream in = request.getFile() != null
+                        ? new FileInputStream(request.getFile())
+                        : request.getInputStream();
+                try {
+                    content = IOUtils.toByteArray(in);
+                } finally {
+                    in.close();
+                }
+            } catch (final IOException e) {
+                throw new AmazonClientException(e.getMessage(), e);
+            }
+            synchronized (this) {
+                contents.put(request.getKey(), content);
+                lastModified.put(request.getKey(), new Date());
+            }
+            final PutObjectResult result = new PutObjectResult();
+            result.setETag(eTag(content));
+            return result;
+        }
+
+        @Override
+        public synchronized ObjectListing listObjects(ListObjectsRequest request) {
+            listings++;
+            final ObjectListing listing = new ObjectListing();
+            listing.setBucketName(request.getBucketName());
+            for (final Map.Entry<String, byte[]> entry : contents.entrySet()) {
+                if (entry.getKey().startsWith(request.getPrefix())) {
+                    final S3ObjectSummary summary = new S3ObjectSummary();
+                    summary.setBucketName(request.getBucketName());
+                    summary.setKey(entry.getKey());
+                    summary.setSize(entry.getValue().length);
+                    summary.setETag(eTag(entry.getValue()));
+                    summary.setLastModified(lastModified.get(entry.getKey()));
+                    listing.getObjectSummaries().add(summary);
+                }
+            }
+            return listing;
+        }
+
+        @Override
+        public synchronized DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+            for (final KeyVersion key : request.getKeys()) {
+                contents.remove(key.getKey());
+                lastModified.remove(key.getKey());
+            }
+            return new DeleteObjectsResult(new ArrayList<DeleteObjectsResult.DeletedObject>());
+        }
+
+        @Override
+        public synchronized ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+            return metadata(request.getKey());
+        }
+
+        private ObjectMetadata metadata(String key) {
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(contents.get(key).length);
+            metadata.setHeader("ETag", eTag(contents.get(key)));
+            metadata.setLastModified(lastModified.get(key));
+            return metadata;
+        }
+
+        @Override
+        public synchronized S3Object getObject(GetObjectRequest request) {
+            final S3Object object = new S3Object();
+            object.setBucketName(request.getBucketName());
+            object.setKey(request.getKey());
+            object.setObjectMetadata(metadata(request.getKey()));
+            object.setObjectContent(new ByteArrayInputStream(contents.get(request.getKey())));
+            return object;
+        }
+    }
+}
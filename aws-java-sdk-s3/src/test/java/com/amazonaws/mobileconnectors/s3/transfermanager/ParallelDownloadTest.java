@@ -0,0 +1,436 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressListenerCallbackExecutor;
+import com.amazonaws.event.ProgressReportingInputStream;
+import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer.TransferState;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.S3ProgressListener;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.Md5Utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelDownloadTest {
+
+    private static final int PART_SIZE = 1000;
+    private static final int OBJECT_SIZE = 4500;
+
+    private final byte[] content = new byte[OBJECT_SIZE];
+    private RangeServingS3Client s3;
+    private ExecutorService threadPool;
+    private TransferManager tm;
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        new Random(1).nextBytes(content);
+        s3 = new RangeServingS3Client(content);
+        threadPool = Executors.newFixedThreadPool(3);
+        tm = new TransferManager(s3, threadPool);
+        final TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+        configuration.setMultipartDownloadThreshold(PART_SIZE);
+        configuration.setMinimumDownloadPartSize(PART_SIZE);
+        tm.setConfiguration(configuration);
+        file = File.createTempFile("ParallelDownloadTest", ".tmp");
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+        file.delete();
+    }
+
+    private byte[] readFile() throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void waitForProgress(Transfer transfer, long bytes) throws Exception {
+        for (int i = 0; i < 100 && transfer.getProgress().getBytesTransferred() < bytes; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(bytes, transfer.getProgress().getBytesTransferred());
+    }
+
+    @Test
+    public void testDownloadsPartsConcurrently() throws Exception {
+        s3.latencyMillis = 50;
+        final AtomicInteger partsCompleted = new AtomicInteger();
+        final Download download = tm.download(new GetObjectRequest("bucket", "key"), file,
+                new S3ProgressListener() {
+                    @Override
+                    public void progressChanged(ProgressEvent progressEvent) {
+                        if (progressEvent.getEventCode()
+                                == ProgressEvent.PART_COMPLETED_EVENT_CODE) {
+                            partsCompleted.incrementAndGet();
+                        }
+                    }
+
+                    @Override
+                    public void onPersistableTransfer(PersistableTransfer persistableTransfer) {
+                    }
+                });
+        download.waitForCompletion();
+
+        assertEquals(TransferState.Completed, download.getState());
+        assertArrayEquals(content, readFile());
+        assertEquals(Arrays.asList("0-999", "1000-1999", "2000-2999", "3000-3999", "4000-4499"),
+                s3.getRequestedRanges());
+        assertEquals(3, s3.maxConcurrentRequests.get());
+        waitForProgress(download, OBJECT_SIZE);
+        // Progress events are delivered asynchronously
+        for (int i = 0; i < 100 && partsCompleted.get() < 5; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, partsCompleted.get());
+    }
+
+    @Test
+    public void testDownloadsRangeInParts() throws Exception {
+        final GetObjectRequest request = new GetObjectRequest("bucket", "key");
+        request.setRange(500, 3499);
+        tm.download(request, file).waitForCompletion();
+
+        assertArrayEquals(Arrays.copyOfRange(content, 500, 3500), readFile());
+        assertEquals(Arrays.asList("500-1499", "1500-2499", "2500-3499"),
+                s3.getRequestedRanges());
+    }
+
+    @Test
+    public void testSmallDownloadUsesSingleRequest() throws Exception {
+        tm.getConfiguration().setMultipartDownloadThreshold(OBJECT_SIZE);
+        tm.download(new GetObjectRequest("bucket", "key"), file).waitForCompletion();
+
+        assertArrayEquals(content, readFile());
+        assertEquals(Collections.singletonList("all"), s3.getRequestedRanges());
+    }
+
+    @Test
+    public void testOverwritesLongerFile() throws Exception {
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[OBJECT_SIZE * 2]);
+        out.close();
+
+        tm.download(new GetObjectRequest("bucket", "key"), file).waitForCompletion();
+        assertArrayEquals(content, readFile());
+    }
+
+    @Test
+    public void testFailedPartFailsDownload() throws Exception {
+        s3.failingRangeStart = 2000;
+        final Download download = tm.download(new GetObjectRequest("bucket", "key"), file);
+        try {
+            download.waitForCompletion();
+            fail("Expected AmazonS3Exception");
+        } catch (final AmazonS3Exception expected) {
+            assertEquals("Internal Error", expected.getErrorMessage());
+        }
+        assertEquals(TransferState.Failed, download.getState());
+    }
+
+    @Test
+    public void testRetriesPartThatFailsPartway() throws Exception {
+        s3.brokenRangeStart = 2000;
+        s3.brokenRangeFailures.set(1);
+        final Download download = tm.download(new GetObjectRequest("bucket", "key"), file);
+        download.waitForCompletion();
+
+        assertArrayEquals(content, readFile());
+        // The retry gets the rest of the part
+        assertEquals(Arrays.asList("0-999", "1000-1999", "2000-2999", "2300-2999", "3000-3999",
+                "4000-4499"), s3.getRequestedRanges());
+        waitForProgress(download, OBJECT_SIZE);
+    }
+
+    @Test
+    public void testPartThatFailsPartwayTwiceFailsDownload() throws Exception {
+        s3.brokenRangeStart = 2000;
+        s3.brokenRangeFailures.set(2);
+        final Download download = tm.download(new GetObjectRequest("bucket", "key"), file);
+        try {
+            download.waitForCompletion();
+            fail("Expected AmazonClientException");
+        } catch (final AmazonClientException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("Connection reset"));
+        }
+        assertEquals(TransferState.Failed, download.getState());
+    }
+
+    @Test
+    public void testModifiedObjectFailsDownload() throws Exception {
+        s3.eTagSeenByParts = "modified";
+        final Download download = tm.download(new GetObjectRequest("bucket", "key"), file);
+        try {
+            download.waitForCompletion();
+            fail("Expected AmazonClientException");
+        } catch (final AmazonClientException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("modified"));
+        }
+    }
+
+    @Test
+    public void testPauseAndResumeSkipsCompletedParts() throws Exception {
+        s3.blockedRangeStart = 2000;
+        final Download download = tm.download(new GetObjectRequest("bucket", "key"), file);
+        waitForProgress(download, 2 * PART_SIZE);
+
+        final PersistableDownload paused = PersistableTransfer
+                .deserializeFrom(download.pause().serialize());
+        s3.unblock.countDown();
+        assertEquals(PART_SIZE, paused.getPartSize());
+        assertArrayEquals(new int[] {
+                0, 1
+        }, paused.getCompletedParts());
+
+        // Resuming with a new configuration keeps the original parts
+        tm.getConfiguration().setMinimumDownloadPartSize(10 * PART_SIZE);
+        s3.blockedRangeStart = -1;
+        s3.clearRequestedRanges();
+        final Download resumed = tm.resumeDownload(paused);
+        resumed.waitForCompletion();
+
+        assertArrayEquals(content, readFile());
+        assertEquals(Arrays.asList("2000-2999", "3000-3999", "4000-4499"),
+                s3.getRequestedRanges());
+        waitForProgress(resumed, OBJECT_SIZE);
+    }
+
+    @Test
+    public void testResumeOfChangedObjectDownloadsEveryPart() throws Exception {
+        s3.blockedRangeStart = 2000;
+        final Download download = tm.download(new GetObjectRequest("bucket", "key"), file);
+        waitForProgress(download, 2 * PART_SIZE);
+
+        final PersistableDownload paused = PersistableTransfer
+                .deserializeFrom(download.pause().serialize());
+        s3.unblock.countDown();
+        assertEquals(s3.eTag, paused.getETag());
+        assertEquals(2, paused.getCompletedParts().length);
+
+        // The object is overwritten while the download is paused
+        new Random(2).nextBytes(content);
+        s3.setContent(content);
+        s3.blockedRangeStart = -1;
+        s3.clearRequestedRanges();
+        tm.resumeDownload(paused).waitForCompletion();
+
+        assertArrayEquals(content, readFile());
+        assertEquals(Arrays.asList("0-999", "1000-1999", "2000-2999", "3000-3999", "4000-4499"),
+                s3.getRequestedRanges());
+    }
+
+    @Test
+    public void testResumeWithoutFileDownloadsEveryPart() throws Exception {
+        file.delete();
+        final PersistableDownload paused = new PersistableDownload("bucket", "key", null, null,
+                null, false, file.getAbsolutePath(), PART_SIZE, new int[] {
+                        0, 1, 2
+                });
+        tm.resumeDownload(paused).waitForCompletion();
+
+        assertArrayEquals(content, readFile());
+        assertEquals(5, s3.getRequestedRanges().size());
+    }
+
+    /**
+     * Amazon S3 client stub serving a single object held in memory, with
+     * byte ranges.
+     */
+    private static class RangeServingS3Client extends AmazonS3Client {
+        private final byte[] content;
+        private volatile String eTag;
+        private final List<String> requestedRanges = new ArrayList<String>();
+        private final AtomicInteger concurrentRequests = new AtomicInteger();
+        private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+        private final CountDownLatch unblock = new CountDownLatch(1);
+        private volatile long latencyMillis;
+        private volatile long failingRangeStart = -1;
+        /**
+         * Ranges within the part from this byte fail after 300 bytes, as many
+         * times as set.
+         */
+        private volatile long brokenRangeStart = -1;
+        private final AtomicInteger brokenRangeFailures = new AtomicInteger();
+        private volatile long blockedRangeStart = -1;
+        private volatile String eTagSeenByParts;
+
+        RangeServingS3Client(byte[] content) {
+            super(new BasicAWSCredentials("access", "secret"));
+            this.content = content;
+            this.eTag = BinaryUtils.toHex(Md5Utils.computeMD5Hash(content));
+            this.eTagSeenByParts = eTag;
+        }
+
+        /**
+         * Returns the ranges requested so far, ordered by their first byte.
+         */
+        synchronized List<String> getRequestedRanges() {
+            final List<String> ranges = new ArrayList<String>(requestedRanges);
+            Collections.sort(ranges, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Long.valueOf(firstByte(a)).compareTo(firstByte(b));
+                }
+
+                private long firstByte(String range) {
+                    return range.equals("all") ? -1 : Long.parseLong(range.split("-")[0]);
+                }
+            });
+            return ranges;
+        }
+
+        /**
+         * Replaces the object with the given content, of the same length.
+         */
+        void setContent(byte[] newContent) {
+            System.arraycopy(newContent, 0, content, 0, content.length);
+            eTag = BinaryUtils.toHex(Md5Utils.computeMD5Hash(content));
+            eTagSeenByParts = eTag;
+        }
+
+        synchronized void clearRequestedRanges() {
+            requestedRanges.clear();
+        }
+
+        @Override
+        public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(content.length);
+            metadata.setHeader("ETag", eTag);
+            return metadata;
+        }
+
+        @Override
+        public S3Object getObject(GetObjectRequest request) {
+            final long[] range = request.getRange();
+            synchronized (this) {
+                requestedRanges.add(range == null ? "all" : range[0] + "-" + range[1]);
+            }
+            if (!request.getMatchingETagConstraints().isEmpty()
+                    && !request.getMatchingETagConstraints().contains(eTagSeenByParts)) {
+                return null;
+            }
+            final int concurrent = concurrentRequests.incrementAndGet();
+            synchronized (maxConcurrentRequests) {
+                maxConcurrentRequests.set(Math.max(maxConcurrentRequests.get(), concurrent));
+            }
+            try {
+                if (range != null && blockedRangeStart >= 0 && range[0] >= blockedRangeStart) {
+                    unblock.await();
+                }
+                Thread.sleep(latencyMillis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrentRequests.decrementAndGet();
+            }
+            if (range != null && range[0] == failingRangeStart) {
+                final AmazonS3Exception e = new AmazonS3Exception("Internal Error");
+                e.setStatusCode(500);
+                throw e;
+            }
+
+            final int start = range == null ? 0 : (int) range[0];
+            final int end = range == null ? content.length : (int) range[1] + 1;
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(end - start);
+            metadata.setHeader("ETag", eTag);
+            final S3Object object = new S3Object();
+            object.setBucketName(request.getBucketName());
+            object.setKey(request.getKey());
+            object.setObjectMetadata(metadata);
+            InputStream in = new ByteArrayInputStream(content, start, end - start);
+            if (range != null && range[0] >= brokenRangeStart
+                    && range[0] < brokenRangeStart + PART_SIZE
+                    && brokenRangeFailures.getAndDecrement() > 0) {
+                in = new BrokenInputStream(in, 300);
+            }
+            object.setObjectContent(new ProgressReportingInputStream(in,
+                    new ProgressListenerCallbackExecutor(request.getGeneralProgressListener())));
+            return object;
+        }
+    }
+
+    /**
+     * Fails like a reset connection once the given number of bytes is read.
+     */
+    private static class BrokenInputStream extends FilterInputStream {
+        private int remaining;
+
+        BrokenInputStream(InputStream in, int length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                throw new IOException("Connection reset");
+            }
+            final int read = super.read(b, off, Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer.TransferState;
+import com.amazonaws.mobileconnectors.s3.transfermanager.model.UploadResult;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.IOUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StreamingUploadTest {
+
+    private static final int PART_SIZE = 1000;
+    private static final int BUFFER_COUNT = 3;
+
+    private MultipartRecordingS3Client s3;
+    private ExecutorService threadPool;
+    private TransferManager tm;
+
+    @Before
+    public void setup() {
+        s3 = new MultipartRecordingS3Client();
+        threadPool = Executors.newFixedThreadPool(4);
+        tm = new TransferManager(s3, threadPool);
+        final TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+        configuration.setMinimumUploadPartSize(PART_SIZE);
+        configuration.setStreamingUploadBufferCount(BUFFER_COUNT);
+        tm.setConfiguration(configuration);
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    private static byte[] randomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testUploadsStreamOfUnknownLengthInParts() throws Exception {
+        s3.latencyMillis = 20;
+        final byte[] content = randomBytes(10 * PART_SIZE + 500);
+        final TrackingInputStream input = new TrackingInputStream(content);
+        s3.source = input;
+        final Upload upload = tm.upload("bucket", "key", input, new ObjectMetadata());
+        final UploadResult result = upload.waitForUploadResult();
+
+        assertEquals(TransferState.Completed, upload.getState());
+        assertEquals("etag-of-upload", result.getETag());
+        assertArrayEquals(content, s3.getCompletedObject());
+        assertEquals(11, s3.parts.size());
+        assertEquals(0, s3.putObjectRequests.get());
+        assertTrue(s3.maxConcurrentParts.get() > 1);
+        assertTrue(s3.maxConcurrentParts.get() <= BUFFER_COUNT);
+        // The stream is never read more than the buffers ahead of the parts
+        assertTrue("Read " + s3.maxBytesReadAhead.get() + " bytes ahead",
+                s3.maxBytesReadAhead.get() <= BUFFER_COUNT * PART_SIZE);
+        assertTrue(input.closed);
+    }
+
+    @Test
+    public void testSmallStreamUsesSinglePut() throws Exception {
+        final byte[] content = randomBytes(PART_SIZE - 1);
+        final UploadResult result = tm.upload("bucket", "key",
+                new TrackingInputStream(content), new ObjectMetadata()).waitForUploadResult();
+
+        assertEquals("etag-of-put", result.getETag());
+        assertEquals(1, s3.putObjectRequests.get());
+        assertArrayEquals(content, s3.putContent);
+        assertEquals(PART_SIZE - 1, s3.putContentLength);
+        assertNull(s3.uploadId);
+    }
+
+    @Test
+    public void testStreamOfExactlyOnePart() throws Exception {
+        final byte[] content = randomBytes(PART_SIZE);
+        tm.upload("bucket", "key", new TrackingInputStream(content), new ObjectMetadata())
+                .waitForUploadResult();
+
+        assertArrayEquals(content, s3.getCompletedObject());
+        assertEquals(1, s3.parts.size());
+    }
+
+    @Test
+    public void testFailedPartAbortsUpload() throws Exception {
+        s3.failingPartNumber = 3;
+        final Upload upload = tm.upload("bucket", "key",
+                new TrackingInputStream(randomBytes(10 * PART_SIZE)), new ObjectMetadata());
+        try {
+            upload.waitForUploadResult();
+            fail("Expected AmazonS3Exception");
+        } catch (final AmazonS3Exception expected) {
+            assertEquals("Internal Error", expected.getErrorMessage());
+        }
+        assertEquals(TransferState.Failed, upload.getState());
+        assertTrue(s3.aborted);
+        assertFalse(s3.completed);
+    }
+
+    @Test
+    public void testKnownLengthStreamIsUnchanged() throws Exception {
+        final byte[] content = randomBytes(PART_SIZE * 2);
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        tm.upload("bucket", "key", new TrackingInputStream(content), metadata)
+                .waitForUploadResult();
+
+        assertEquals(1, s3.putObjectRequests.get());
+        assertEquals(content.length, s3.putContentLength);
+    }
+
+    @Test
+    public void testOutputStreamUploadsInParts() throws Exception {
+        s3.latencyMillis = 20;
+        final byte[] content = randomBytes(7 * PART_SIZE + 123);
+        final UploadOutputStream out = tm.openUploadStream("bucket", "key",
+                new ObjectMetadata());
+        out.write(content[0]);
+        out.write(content, 1, 2500);
+        out.write(ByteBuffer.wrap(content, 2501, 3000));
+        for (int i = 5501; i < content.length; i += 77) {
+            out.write(content, i, Math.min(77, content.length - i));
+        }
+        // Writes are accepted no faster than the buffers are uploaded
+        assertTrue(s3.parts.size() >= 7 - BUFFER_COUNT);
+        out.close();
+        out.close();
+
+        assertFalse(out.isOpen());
+        assertEquals("etag-of-upload", out.getUploadResult().getETag());
+        assertArrayEquals(content, s3.getCompletedObject());
+        assertEquals(8, s3.parts.size());
+        assertTrue(s3.maxConcurrentParts.get() <= BUFFER_COUNT);
+    }
+
+    @Test
+    public void testSmallOutputStreamUsesSinglePut() throws Exception {
+        final UploadOutputStream out = tm.openUploadStream("bucket", "key",
+                new ObjectMetadata());
+        out.write(new byte[] {
+                1, 2, 3
+        });
+        out.close();
+
+        assertEquals("etag-of-put", out.getUploadResult().getETag());
+        assertArrayEquals(new byte[] {
+                1, 2, 3
+        }, s3.putContent);
+        assertNull(s3.uploadId);
+    }
+
+    @Test
+    public void testEmptyOutputStreamPutsEmptyObject() throws Exception {
+        final UploadOutputStream out = tm.openUploadStream("bucket", "key",
+                new ObjectMetadata());
+        out.close();
+
+        assertEquals(0, s3.putContent.length);
+        assertEquals(0, s3.putContentLength);
+    }
+
+    @Test
+    public void testFailedPartFailsWritesAndAbortsUpload() throws Exception {
+        s3.failingPartNumber = 2;
+        final UploadOutputStream out = tm.openUploadStream("bucket", "key",
+                new ObjectMetadata());
+        try {
+            for (int i = 0; i < 20; i++) {
+                out.write(new byte[PART_SIZE]);
+            }
+            out.close();
+            fail("Expected AmazonS3Exception");
+        } catch (final AmazonS3Exception expected) {
+            assertEquals("Internal Error", expected.getErrorMessage());
+        }
+        assertTrue(s3.aborted);
+        assertFalse(s3.completed);
+        assertFalse(out.isOpen());
+        try {
+            out.write(1);
+            fail("Expected ClosedChannelException");
+        } catch (final ClosedChannelException expected) {
+            // The stream can't be used after a failure
+        }
+        out.close();
+        assertFalse(s3.completed);
+    }
+
+    @Test
+    public void testAbortedOutputStreamIsNotCompleted() throws Exception {
+        final UploadOutputStream out = tm.openUploadStream("bucket", "key",
+                new ObjectMetadata());
+        out.write(new byte[PART_SIZE * 2 + 10]);
+        out.abort();
+        out.close();
+
+        assertTrue(s3.aborted);
+        assertFalse(s3.completed);
+        assertNull(out.getUploadResult());
+    }
+
+    /**
+     * A stream of known content that doesn't support mark, and records how
+     * much of it has been read.
+     */
+    private static class TrackingInputStream extends InputStream {
+        private final byte[] content;
+        private volatile int position;
+        private volatile boolean closed;
+
+        TrackingInputStream(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read() {
+            return position < content.length ? content[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position == content.length) {
+                return -1;
+            }
+            // Short reads, to check that the buffers are filled
+            final int count = Math.min(Math.min(len, 300), content.length - position);
+            System.arraycopy(content, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Amazon S3 client stub recording the parts of a multipart upload.
+     */
+    private static class MultipartRecordingS3Client extends AmazonS3Client {
+        private final Map<Integer, byte[]> parts = new TreeMap<Integer, byte[]>();
+        private final AtomicInteger concurrentParts = new AtomicInteger();
+        private final AtomicInteger maxConcurrentParts = new AtomicInteger();
+        private final AtomicInteger maxBytesReadAhead = new AtomicInteger();
+        private final AtomicInteger putObjectRequests = new AtomicInteger();
+        private volatile long latencyMillis;
+        private volatile int failingPartNumber = -1;
+        private volatile String uploadId;
+        private volatile boolean completed;
+        private volatile boolean aborted;
+        private volatile byte[] putContent;
+        private volatile long putContentLength;
+        private volatile TrackingInputStream source;
+
+        MultipartRecordingS3Client() {
+            super(new BasicAWSCredentials("access", "secret"));
+        }
+
+        synchronized byte[] getCompletedObject() throws IOException {
+            assertTrue(completed);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (final byte[] part : parts.values()) {
+                out.write(part);
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest request) {
+            putObjectRequests.incrementAndGet();
+            try {
+                putContent = IOUtils.toByteArray(request.getInputStream());
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+            putContentLength = request.getMetadata().getContentLength();
+            final PutObjectResult result = new PutObjectResult();
+            result.setETag("etag-of-put");
+            return result;
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(
+                InitiateMultipartUploadRequest request) {
+            uploadId = "upload-id";
+            final InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId(uploadId);
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            assertEquals(uploadId, request.getUploadId());
+            if (source != null) {
+                final int readAhead = source.position
+                        - (request.getPartNumber() - 1) * PART_SIZE;
+                synchronized (maxBytesReadAhead) {
+                    maxBytesReadAhead.set(Math.max(maxBytesReadAhead.get(), readAhead));
+                }
+            }
+            final int concurrent = concurrentParts.incrementAndGet();
+            synchronized (maxConcurrentParts) {
+                maxConcurrentParts.set(Math.max(maxConcurrentParts.get(), concurrent));
+            }
+            try {
+                final byte[] data = IOUtils.toByteArray(request.getInputStream());
+                assertEquals(request.getPartSize(), data.length);
+                Thread.sleep(latencyMillis);
+                if (request.getPartNumber() == failingPartNumber) {
+                    final AmazonS3Exception e = new AmazonS3Exception("Internal Error");
+                    e.setStatusCode(500);
+                    throw e;
+                }
+                synchronized (this) {
+                    parts.put(request.getPartNumber(), data);
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrentParts.decrementAndGet();
+            }
+            final UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(
+                CompleteMultipartUploadRequest request) {
+            int partNumber = 1;
+            for (final PartETag partETag : request.getPartETags()) {
+                assertEquals(partNumber, partETag.getPartNumber());
+                assertEquals("etag-" + partNumber, partETag.getETag());
+                partNumber++;
+            }
+            assertEquals(parts.size(), request.getPartETags().size());
+            completed = true;
+            final CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+            result.setETag("etag-of-upload");
+            return result;
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            assertEquals(uploadId, request.getUploadId());
+            aborted = true;
+        }
+    }
+}
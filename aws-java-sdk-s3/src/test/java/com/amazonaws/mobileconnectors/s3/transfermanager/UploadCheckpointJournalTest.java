@@ -0,0 +1,305 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.UploadCheckpointJournal;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.UploadPartCallable;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.IOUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class UploadCheckpointJournalTest {
+
+    private File directory;
+    private File source;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("UploadCheckpointJournalTest", "");
+        directory.delete();
+        source = File.createTempFile("UploadCheckpointJournalTest", ".tmp");
+        final FileOutputStream out = new FileOutputStream(source);
+        out.write(new byte[30000]);
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        source.delete();
+    }
+
+    private UploadCheckpointJournal recordParts(int... partNumbers) throws IOException {
+        final UploadCheckpointJournal journal = UploadCheckpointJournal.open(directory,
+                "upload-id", source, 10000);
+        for (final int partNumber : partNumbers) {
+            journal.recordPart(partNumber, 10000, "etag-" + partNumber,
+                    UploadCheckpointJournal.checksumOf(source, (partNumber - 1) * 10000L, 10000));
+        }
+        return journal;
+    }
+
+    @Test
+    public void testRestoresRecordedParts() throws IOException {
+        final UploadCheckpointJournal first = recordParts(1, 3);
+        assertFalse(first.isRestored());
+        first.close();
+
+        final UploadCheckpointJournal journal = recordParts();
+        assertTrue(journal.isRestored());
+        assertEquals(Arrays.asList(1, 3), new ArrayList<Integer>(journal.getRestoredParts()
+                .keySet()));
+        assertEquals("etag-3", journal.getRestoredParts().get(3).getETag());
+        assertEquals(10000, journal.getRestoredParts().get(3).getSize());
+        journal.close();
+    }
+
+    @Test
+    public void testDropsTornCheckpoint() throws IOException {
+        recordParts(1, 2).close();
+        final File file = UploadCheckpointJournal.getJournalFile(directory, "upload-id");
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        final UploadCheckpointJournal journal = recordParts(3);
+        assertEquals(Arrays.asList(1), new ArrayList<Integer>(journal.getRestoredParts()
+                .keySet()));
+        journal.close();
+
+        // The torn line was cut off before the new part was appended
+        final UploadCheckpointJournal reopened = recordParts();
+        assertEquals(Arrays.asList(1, 3), new ArrayList<Integer>(reopened.getRestoredParts()
+                .keySet()));
+        reopened.close();
+    }
+
+    @Test
+    public void testDiscardsCheckpointsOfModifiedFile() throws IOException {
+        recordParts(1, 2).close();
+        assertTrue(source.setLastModified(source.lastModified() - 60000));
+
+        final UploadCheckpointJournal journal = recordParts();
+        assertFalse(journal.isRestored());
+        assertTrue(journal.getRestoredParts().isEmpty());
+        journal.delete();
+        assertFalse(UploadCheckpointJournal.getJournalFile(directory, "upload-id").exists());
+    }
+
+    @Test
+    public void testResumesFromCheckpointsWithoutListingParts() throws Exception {
+        recordParts(1, 2).close();
+
+        final ResumingS3Client s3 = resumeUpload();
+        assertEquals(Arrays.asList(3), s3.uploadedParts);
+        assertEquals(3, s3.completedParts.size());
+        assertEquals("etag-1", s3.completedParts.get(0).getETag());
+        assertFalse(UploadCheckpointJournal.getJournalFile(directory, "upload-id")
+                .exists());
+    }
+
+    @Test
+    public void testUploadsPartChangedSinceCheckpointAgain() throws Exception {
+        recordParts(1, 2).close();
+        // Part 2 changes in place, keeping the length and modification time
+        final long lastModified = source.lastModified();
+        final RandomAccessFile raf = new RandomAccessFile(source, "rw");
+        raf.seek(15000);
+        raf.write(1);
+        raf.close();
+        assertTrue(source.setLastModified(lastModified));
+
+        final UploadCheckpointJournal journal = recordParts();
+        assertTrue(journal.isRestored());
+        assertTrue(journal.isRestoredPartUnchanged(partRequest(1)));
+        assertFalse(journal.isRestoredPartUnchanged(partRequest(2)));
+        assertFalse(journal.isRestoredPartUnchanged(partRequest(3)));
+        journal.close();
+
+        final ResumingS3Client s3 = resumeUpload();
+        assertEquals(Arrays.asList(2, 3), sorted(s3.uploadedParts));
+        assertEquals(3, s3.completedParts.size());
+    }
+
+    @Test
+    public void testRecordsChecksumOfBytesSent() throws Exception {
+        final UploadCheckpointJournal journal = recordParts();
+        final ResumingS3Client s3 = new ResumingS3Client() {
+            @Override
+            public synchronized UploadPartResult uploadPart(UploadPartRequest request) {
+                if (request.getPartNumber() == 2) {
+                    // The part changes after the upload starts, before its
+                    // bytes are read
+                    try {
+                        final long lastModified = source.lastModified();
+                        final RandomAccessFile raf = new RandomAccessFile(source, "rw");
+                        raf.seek(15000);
+                        raf.write(1);
+                        raf.close();
+                        assertTrue(source.setLastModified(lastModified));
+                    } catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return super.uploadPart(request);
+            }
+        };
+        for (int partNumber = 1; partNumber <= 2; partNumber++) {
+            new UploadPartCallable(s3, partRequest(partNumber).withUploadId("upload-id"), null,
+                    journal).call();
+        }
+        journal.close();
+
+        // The checksum of part 2 is that of the bytes uploaded
+        final UploadCheckpointJournal reopened = UploadCheckpointJournal.open(directory,
+                "upload-id", source, 10000);
+        assertEquals(Arrays.asList(1, 2), new ArrayList<Integer>(reopened.getRestoredParts()
+                .keySet()));
+        assertTrue(reopened.isRestoredPartUnchanged(partRequest(1)));
+        assertTrue(reopened.isRestoredPartUnchanged(partRequest(2)));
+        reopened.close();
+    }
+
+    @Test
+    public void testDoesNotRecordPartNotReadToTheEnd() throws Exception {
+        final UploadCheckpointJournal journal = recordParts();
+        final ResumingS3Client s3 = new ResumingS3Client() {
+            @Override
+            public synchronized UploadPartResult uploadPart(UploadPartRequest request) {
+                // A client that doesn't send the bytes through the stream
+                final UploadPartResult result = new UploadPartResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag-" + request.getPartNumber());
+                return result;
+            }
+        };
+        new UploadPartCallable(s3, partRequest(1).withUploadId("upload-id"), null, journal)
+                .call();
+        journal.close();
+
+        final UploadCheckpointJournal reopened = recordParts();
+        assertTrue(reopened.getRestoredParts().isEmpty());
+        reopened.close();
+    }
+
+    private UploadPartRequest partRequest(int partNumber) {
+        return new UploadPartRequest().withPartNumber(partNumber).withFile(source)
+                .withFileOffset((partNumber - 1) * 10000L).withPartSize(10000);
+    }
+
+    private static List<Integer> sorted(List<Integer> list) {
+        final List<Integer> sorted = new ArrayList<Integer>(list);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private ResumingS3Client resumeUpload() throws Exception {
+        final ExecutorService threadPool = Executors.newFixedThreadPool(2);
+        try {
+            final ResumingS3Client s3 = new ResumingS3Client();
+            final TransferManager tm = new TransferManager(s3, threadPool);
+            final TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+            configuration.setUploadCheckpointDirectory(directory);
+            tm.setConfiguration(configuration);
+
+            final Upload upload = tm.resumeUpload(new PersistableUpload("bucket", "key",
+                    source.getAbsolutePath(), "upload-id", 10000, 10000));
+            assertEquals("etag-of-upload", upload.waitForUploadResult().getETag());
+            return s3;
+        } finally {
+            threadPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Amazon S3 client stub of a multipart upload being resumed, which fails
+     * if the parts are listed.
+     */
+    private static class ResumingS3Client extends AmazonS3Client {
+        private final List<Integer> uploadedParts = new ArrayList<Integer>();
+        private List<PartETag> completedParts;
+
+        ResumingS3Client() {
+            super(new BasicAWSCredentials("access", "secret"));
+        }
+
+        @Override
+        public PartListing listParts(ListPartsRequest request) {
+            fail("The parts shouldn't be listed");
+            return null;
+        }
+
+        @Override
+        public synchronized UploadPartResult uploadPart(UploadPartRequest request) {
+            assertEquals("upload-id", request.getUploadId());
+            if (request.getInputStream() != null) {
+                try {
+                    assertEquals(request.getPartSize(),
+                            IOUtils.toByteArray(request.getInputStream()).length);
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            uploadedParts.add(request.getPartNumber());
+            final UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(
+                CompleteMultipartUploadRequest request) {
+            completedParts = request.getPartETags();
+            final CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+            result.setETag("etag-of-upload");
+            return result;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class RecordStoreTest {
+
+    private File journal;
+    private RecordStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        journal = File.createTempFile("RecordStoreTest", ".journal");
+        journal.delete();
+        store = new RecordStore(journal);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+        journal.delete();
+    }
+
+    private static Record record(TransferType type, TransferState state) {
+        final Record record = new Record();
+        record.setType(type);
+        record.setState(state);
+        record.setBucketName("bucket");
+        record.setKey("key");
+        return record;
+    }
+
+    private int countLines() throws IOException {
+        final BufferedReader in = new BufferedReader(new FileReader(journal));
+        try {
+            int lines = 0;
+            while (in.readLine() != null) {
+                lines++;
+            }
+            return lines;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testAssignsIds() {
+        assertTrue(store.isEmpty());
+        final int first = store.put(record(TransferType.UPLOAD, TransferState.WAITING));
+        final int second = store.put(record(TransferType.DOWNLOAD, TransferState.WAITING));
+        assertEquals(1, first);
+        assertEquals(2, second);
+        assertEquals(TransferType.DOWNLOAD, store.get(second).getType());
+        assertNull(store.get(3));
+    }
+
+    @Test
+    public void testIndexesFollowReplacedRecords() {
+        final Record upload = record(TransferType.UPLOAD, TransferState.IN_PROGRESS);
+        final int id = store.put(upload);
+        final Record part = record(TransferType.UPLOAD, TransferState.WAITING);
+        part.setMainUploadId(id);
+        final int partId = store.put(part);
+        store.put(record(TransferType.DOWNLOAD, TransferState.IN_PROGRESS));
+
+        assertEquals(2, store.getByState(TransferState.IN_PROGRESS).size());
+        assertEquals(2, store.getByType(TransferType.UPLOAD).size());
+        assertEquals(3, store.getByType(TransferType.ANY).size());
+        assertEquals(Collections.singletonList(part), store.getByMainUploadId(id));
+
+        final Record paused = record(TransferType.UPLOAD, TransferState.PAUSED);
+        paused.setId(id);
+        store.put(paused);
+        assertEquals(1, store.getByState(TransferState.IN_PROGRESS).size());
+        assertEquals(Collections.singletonList(paused),
+                store.getByState(TransferState.PAUSED));
+        assertEquals(2, store.getByState(TransferState.PAUSED, TransferState.WAITING).size());
+
+        assertTrue(store.remove(partId));
+        assertFalse(store.remove(partId));
+        assertTrue(store.getByMainUploadId(id).isEmpty());
+        assertTrue(store.getByState(TransferState.WAITING).isEmpty());
+    }
+
+    @Test
+    public void testIndexesFollowRecordsChangedInPlace() {
+        final int id = store.put(record(TransferType.UPLOAD, TransferState.IN_PROGRESS));
+        final Record part = record(TransferType.UPLOAD, TransferState.IN_PROGRESS);
+        part.setMainUploadId(id);
+        final int partId = store.put(part);
+
+        final Record fetched = store.get(partId);
+        fetched.setState(TransferState.COMPLETED);
+        fetched.setType(TransferType.DOWNLOAD);
+        fetched.setMainUploadId(0);
+        store.put(fetched);
+
+        assertEquals(1, store.getByState(TransferState.IN_PROGRESS).size());
+        assertEquals(id, store.getByState(TransferState.IN_PROGRESS).get(0).getId());
+        assertEquals(Collections.singletonList(fetched),
+                store.getByState(TransferState.COMPLETED));
+        assertEquals(Collections.singletonList(fetched),
+                store.getByType(TransferType.DOWNLOAD));
+        assertEquals(1, store.getByType(TransferType.UPLOAD).size());
+        assertTrue(store.getByMainUploadId(id).isEmpty());
+
+        fetched.setState(TransferState.PAUSED);
+        assertTrue(store.remove(partId));
+        assertTrue(store.getByState(TransferState.COMPLETED).isEmpty());
+        assertTrue(store.getByType(TransferType.DOWNLOAD).isEmpty());
+    }
+
+    @Test
+    public void testReloadsFromJournal() {
+        final Record upload = record(TransferType.UPLOAD, TransferState.COMPLETED);
+        upload.setBytesTotal(1L << 40);
+        upload.setUserMetadata(Collections.singletonMap("name", "value"));
+        final int id = store.put(upload);
+        final int removed = store.put(record(TransferType.DOWNLOAD, TransferState.FAILED));
+        store.remove(removed);
+        store.close();
+
+        store = new RecordStore(journal);
+        assertEquals(1, store.size());
+        assertNull(store.get(removed));
+        final Record loaded = store.get(id);
+        assertEquals(RecordStore.toJson(upload), RecordStore.toJson(loaded));
+        assertEquals(1L << 40, loaded.getBytesTotal());
+        assertEquals("value", loaded.getUserMetadata().get("name"));
+        assertEquals(removed + 1, store.put(record(TransferType.UPLOAD, TransferState.WAITING)));
+    }
+
+    @Test
+    public void testPutsBatch() throws IOException {
+        final Record first = record(TransferType.UPLOAD, TransferState.IN_PROGRESS);
+        final Record second = record(TransferType.DOWNLOAD, TransferState.IN_PROGRESS);
+        store.putAll(Arrays.asList(first, second));
+        assertEquals(1, first.getId());
+        assertEquals(2, second.getId());
+        assertEquals(2, countLines());
+
+        first.setBytesCurrent(10);
+        second.setBytesCurrent(20);
+        store.putAll(Arrays.asList(first, second));
+        store.close();
+
+        store = new RecordStore(journal);
+        assertEquals(10, store.get(1).getBytesCurrent());
+        assertEquals(20, store.get(2).getBytesCurrent());
+    }
+
+    @Test
+    public void testSkipsTruncatedLine() throws IOException {
+        final int id = store.put(record(TransferType.UPLOAD, TransferState.WAITING));
+        store.close();
+        final String line = RecordStore.toJson(record(TransferType.DOWNLOAD,
+                TransferState.WAITING));
+        final FileWriter out = new FileWriter(journal, true);
+        out.write(line.substring(0, line.length() / 2));
+        out.close();
+
+        store = new RecordStore(journal);
+        assertEquals(1, store.size());
+        assertEquals(TransferType.UPLOAD, store.get(id).getType());
+    }
+
+    @Test
+    public void testCompactsJournal() throws IOException {
+        final Record record = record(TransferType.UPLOAD, TransferState.IN_PROGRESS);
+        final int id = store.put(record);
+        for (int i = 0; i < 1500; i++) {
+            record.setBytesCurrent(i);
+            store.put(record);
+        }
+        assertTrue(countLines() < 1000);
+        store.close();
+
+        store = new RecordStore(journal);
+        assertEquals(1, store.size());
+        assertEquals(1499, store.get(id).getBytesCurrent());
+    }
+}
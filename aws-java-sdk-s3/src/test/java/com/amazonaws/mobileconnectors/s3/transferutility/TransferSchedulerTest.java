@@ -0,0 +1,255 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TransferSchedulerTest {
+
+    private TransferScheduler scheduler;
+    private CountDownLatch blocker;
+    private List<String> order;
+
+    @Before
+    public void setUp() throws Exception {
+        order = Collections.synchronizedList(new ArrayList<String>());
+        blocker = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        blocker.countDown();
+        scheduler.shutdownNow();
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A task of a transfer that records its name when it runs.
+     */
+    private class Task implements Callable<Boolean>, TransferScheduler.TransferTask {
+        private final int transferId;
+        private final int priority;
+        private final String name;
+
+        Task(int transferId, int priority, String name) {
+            this.transferId = transferId;
+            this.priority = priority;
+            this.name = name;
+        }
+
+        @Override
+        public int getTransferId() {
+            return transferId;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public Boolean call() {
+            order.add(name);
+            return true;
+        }
+    }
+
+    /**
+     * Occupies the single thread of the scheduler until the blocker is
+     * released, so that the tasks submitted meanwhile queue up.
+     */
+    private Future<?> occupyThread() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final Future<?> future = scheduler.submit(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocker.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return future;
+    }
+
+    private void runQueued(List<Future<Boolean>> futures) throws Exception {
+        blocker.countDown();
+        for (final Future<Boolean> future : futures) {
+            assertTrue(future.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testSharesThreadsAcrossTransfers() throws Exception {
+        scheduler = new TransferScheduler("test", 1, 100);
+        occupyThread();
+        final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (int i = 1; i <= 4; i++) {
+            futures.add(scheduler.submit(new Task(1, 0, "large-" + i)));
+        }
+        futures.add(scheduler.submit(new Task(2, 0, "small-1")));
+        futures.add(scheduler.submit(new Task(3, 0, "other-1")));
+        futures.add(scheduler.submit(new Task(2, 0, "small-2")));
+
+        assertEquals(7, scheduler.getMetrics().getQueuedTasks());
+        assertEquals(Integer.valueOf(4), scheduler.getMetrics().getQueuedTasksByTransfer().get(1));
+        runQueued(futures);
+
+        assertEquals(Arrays.asList("large-1", "small-1", "other-1", "large-2", "small-2",
+                "large-3", "large-4"), order);
+    }
+
+    @Test
+    public void testRunsHigherPriorityFirst() throws Exception {
+        scheduler = new TransferScheduler("test", 1, 100);
+        occupyThread();
+        final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        futures.add(scheduler.submit(new Task(1, 0, "low-1")));
+        futures.add(scheduler.submit(new Task(1, 0, "low-2")));
+        futures.add(scheduler.submit(new Task(2, 5, "high-1")));
+        futures.add(scheduler.submit(new Task(3, 0, "raised-1")));
+        scheduler.setPriority(3, 10);
+        runQueued(futures);
+
+        assertEquals(Arrays.asList("raised-1", "high-1", "low-1", "low-2"), order);
+    }
+
+    @Test
+    public void testBlocksInsteadOfDiscarding() throws Exception {
+        scheduler = new TransferScheduler("test", 1, 2);
+        occupyThread();
+        final List<Future<Boolean>> futures = Collections
+                .synchronizedList(new ArrayList<Future<Boolean>>());
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final Thread submitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= 5; i++) {
+                    futures.add(scheduler.submit(new Task(1, 0, "part-" + i)));
+                }
+                submitted.countDown();
+            }
+        });
+        submitter.start();
+
+        // The third part waits for room in the queue of the transfer, but
+        // other transfers can still queue theirs
+        assertTrue(waitFor(futures, 2));
+        final Future<Boolean> other = scheduler.submit(new Task(2, 0, "other-1"));
+        assertEquals(1, scheduler.getMetrics().getBackpressureWaits());
+        assertEquals(2, futures.size());
+
+        blocker.countDown();
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        runQueued(new ArrayList<Future<Boolean>>(futures));
+        assertTrue(other.get(5, TimeUnit.SECONDS));
+        assertEquals(6, order.size());
+        assertTrue(scheduler.getMetrics().getPeakQueuedTasks() <= 3);
+    }
+
+    private static boolean waitFor(List<?> list, int size) throws InterruptedException {
+        for (int i = 0; i < 500 && list.size() < size; i++) {
+            Thread.sleep(10);
+        }
+        // Give the submitter time to block on the next one
+        Thread.sleep(50);
+        return list.size() == size;
+    }
+
+    @Test
+    public void testRejectsInterruptedSubmission() throws Exception {
+        scheduler = new TransferScheduler("test", 1, 1);
+        occupyThread();
+        scheduler.submit(new Task(1, 0, "part-1"));
+        final AtomicReference<Exception> rejection = new AtomicReference<Exception>();
+        final Thread submitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.submit(new Task(1, 0, "part-2"));
+                } catch (final RejectedExecutionException e) {
+                    rejection.set(e);
+                }
+            }
+        });
+        submitter.start();
+        Thread.sleep(100);
+        submitter.interrupt();
+        submitter.join(5000);
+
+        assertTrue(rejection.get().getCause() instanceof InterruptedException);
+        assertEquals(1, scheduler.getMetrics().getQueuedTasks());
+    }
+
+    @Test
+    public void testRejectsAfterShutdown() throws Exception {
+        scheduler = new TransferScheduler("test", 2, 10);
+        final Future<Boolean> future = scheduler.submit(new Task(1, 0, "part-1"));
+        assertTrue(future.get(5, TimeUnit.SECONDS));
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        try {
+            scheduler.submit(new Task(1, 0, "part-2"));
+            fail("Expected RejectedExecutionException");
+        } catch (final RejectedExecutionException expected) {
+        }
+        assertEquals(1, scheduler.getMetrics().getCompletedTasks());
+    }
+
+    @Test
+    public void testThrowingTaskDoesNotKillWorker() throws Exception {
+        scheduler = new TransferScheduler("test", 1, 10);
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        });
+        final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (int i = 1; i <= 3; i++) {
+            futures.add(scheduler.submit(new Task(1, 0, "part-" + i)));
+        }
+        for (final Future<Boolean> future : futures) {
+            assertTrue(future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(Arrays.asList("part-1", "part-2", "part-3"), order);
+
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(4, scheduler.getMetrics().getCompletedTasks());
+        assertEquals(0, scheduler.getMetrics().getActiveTasks());
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TransferStatusUpdaterTest {
+
+    private static final long KB = 1024;
+    private static final long TOTAL = 1024 * KB;
+
+    private RecordingDBUtil dbUtil;
+    private QueueingExecutor mainThread;
+    private TransferStatusUpdater updater;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() {
+        dbUtil = new RecordingDBUtil();
+        mainThread = new QueueingExecutor();
+        updater = new TransferStatusUpdater(dbUtil, mainThread);
+        listener = new RecordingListener();
+        TransferStatusUpdater.registerListener(1, listener);
+    }
+
+    @After
+    public void tearDown() {
+        updater.close();
+        updater.clear();
+    }
+
+    private static TransferRecord transfer(int id, TransferState state) {
+        final Record record = new Record();
+        record.setId(id);
+        record.setState(state);
+        record.setBytesTotal(TOTAL);
+        final TransferRecord transfer = new TransferRecord();
+        transfer.updateFromDB(record);
+        return transfer;
+    }
+
+    @Test
+    public void testCoalescesProgressBelowThresholds() throws InterruptedException {
+        mainThread.direct = true;
+        updater.updateProgress(1, KB, TOTAL);
+        // Neither a second nor 64 KB since the last notification
+        updater.updateProgress(1, 2 * KB, TOTAL);
+        // 64 KB, but not a second
+        updater.updateProgress(1, 65 * KB, TOTAL);
+        assertEquals(Arrays.asList("progress 1024"), listener.events);
+
+        Thread.sleep(1100);
+        // A second, but not 64 KB
+        updater.updateProgress(1, 10 * KB, TOTAL);
+        assertEquals(1, listener.events.size());
+        // Both
+        updater.updateProgress(1, 65 * KB, TOTAL);
+        // The last byte is always delivered, once
+        updater.updateProgress(1, TOTAL, TOTAL);
+        updater.updateProgress(1, TOTAL, TOTAL);
+        assertEquals(Arrays.asList("progress 1024", "progress " + 65 * KB,
+                "progress " + TOTAL), listener.events);
+    }
+
+    @Test
+    public void testQueuesAtMostOneProgressNotification() {
+        updater.updateProgress(1, KB, TOTAL);
+        updater.updateProgress(1, TOTAL / 2, TOTAL / 2);
+        updater.updateProgress(1, TOTAL, TOTAL);
+        assertEquals(1, mainThread.queued.size());
+
+        // The queued notification delivers the latest progress
+        mainThread.runQueued();
+        assertEquals(Arrays.asList("progress " + TOTAL), listener.events);
+
+        // Once delivered, the next notification is queued again
+        updater.updateProgress(1, TOTAL / 4, TOTAL / 4);
+        updater.updateProgress(1, TOTAL / 2, TOTAL / 2);
+        assertEquals(1, mainThread.queued.size());
+        mainThread.runQueued();
+        assertEquals(Arrays.asList("progress " + TOTAL, "progress " + TOTAL / 2),
+                listener.events);
+    }
+
+    @Test
+    public void testDeliversFinalStateOnce() {
+        mainThread.direct = true;
+        updater.addTransfer(transfer(1, TransferState.IN_PROGRESS));
+        updater.updateState(1, TransferState.FAILED);
+        updater.updateState(1, TransferState.FAILED);
+        assertEquals(Arrays.asList("state FAILED"), listener.events);
+
+        // Until the transfer is restarted
+        TransferStatusUpdater.registerListener(1, listener);
+        updater.updateState(1, TransferState.IN_PROGRESS);
+        updater.updateState(1, TransferState.FAILED);
+        assertEquals(Arrays.asList("state FAILED", "state IN_PROGRESS", "state FAILED"),
+                listener.events);
+    }
+
+    @Test
+    public void testDeliversFinalStateOnceDespiteConcurrentProgress() throws Exception {
+        mainThread.direct = true;
+        final int transfers = 20;
+        final int threadsPerTransfer = 4;
+        final AtomicInteger finalStates = new AtomicInteger();
+        final TransferListener counter = new RecordingListener() {
+            @Override
+            public void onStateChanged(int id, TransferState state) {
+                if (TransferState.FAILED.equals(state)) {
+                    finalStates.incrementAndGet();
+                }
+            }
+        };
+        for (int id = 1; id <= transfers; id++) {
+            updater.addTransfer(transfer(id, TransferState.IN_PROGRESS));
+            TransferStatusUpdater.registerListener(id, counter);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int id = 1; id <= transfers; id++) {
+            for (int t = 0; t < threadsPerTransfer; t++) {
+                final int transferId = id;
+                final Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (final InterruptedException e) {
+                            return;
+                        }
+                        for (int i = 1; i <= 100; i++) {
+                            updater.updateProgress(transferId, i * KB, TOTAL);
+                        }
+                        updater.updateState(transferId, TransferState.FAILED);
+                    }
+                };
+                thread.start();
+                threads.add(thread);
+            }
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join(10000);
+        }
+        assertEquals(transfers, finalStates.get());
+    }
+
+    @Test
+    public void testPersistsStateWithPendingProgress() {
+        updater.addTransfer(transfer(1, TransferState.IN_PROGRESS));
+        updater.updateProgress(1, KB, TOTAL);
+        updater.updateState(1, TransferState.PAUSED);
+        assertEquals(1, dbUtil.transferRecordUpdates.get());
+
+        // The state was written with the progress, so there's nothing left
+        updater.close();
+        assertTrue(dbUtil.progressBatches.isEmpty());
+    }
+
+    @Test
+    public void testCloseFlushesProgress() {
+        updater.updateProgress(1, KB, TOTAL);
+        updater.updateProgress(2, 2 * KB, TOTAL);
+        updater.updateProgress(1, 3 * KB, TOTAL);
+        assertTrue(dbUtil.progressBatches.isEmpty());
+
+        updater.close();
+        final Map<Integer, Long> expected = new HashMap<Integer, Long>();
+        expected.put(1, 3 * KB);
+        expected.put(2, 2 * KB);
+        assertEquals(Collections.singletonList(expected), dbUtil.progressBatches);
+
+        updater.close();
+        assertEquals(1, dbUtil.progressBatches.size());
+    }
+
+    /**
+     * Runs the notifications directly, or holds them until they're run.
+     */
+    private static final class QueueingExecutor implements Executor {
+        private final List<Runnable> queued = new ArrayList<Runnable>();
+        private volatile boolean direct;
+
+        @Override
+        public void execute(Runnable command) {
+            if (direct) {
+                command.run();
+            } else {
+                synchronized (queued) {
+                    queued.add(command);
+                }
+            }
+        }
+
+        void runQueued() {
+            final List<Runnable> commands;
+            synchronized (queued) {
+                commands = new ArrayList<Runnable>(queued);
+                queued.clear();
+            }
+            for (final Runnable command : commands) {
+                command.run();
+            }
+        }
+    }
+
+    private static class RecordingListener implements TransferListener {
+        private final List<String> events = Collections.synchronizedList(
+                new ArrayList<String>());
+
+        @Override
+        public void onStateChanged(int id, TransferState state) {
+            events.add("state " + state);
+        }
+
+        @Override
+        public void onProgressChanged(int id, long bytesCurrent, long bytesTotal) {
+            events.add("progress " + bytesCurrent);
+        }
+
+        @Override
+        public void onError(int id, Exception ex) {
+            events.add("error " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Records the writes instead of storing the transfers.
+     */
+    private static final class RecordingDBUtil extends TransferDBUtil {
+        private final List<Map<Integer, Long>> progressBatches = Collections.synchronizedList(
+                new ArrayList<Map<Integer, Long>>());
+        private final AtomicInteger transferRecordUpdates = new AtomicInteger();
+
+        @Override
+        public int updateTransferRecord(TransferRecord transfer) {
+            transferRecordUpdates.incrementAndGet();
+            return transfer.getRecord().getId();
+        }
+
+        @Override
+        public void updateBytesTransferred(Map<Integer, Long> bytesById) {
+            progressBatches.add(new HashMap<Integer, Long>(bytesById));
+        }
+
+        @Override
+        public int updateState(int id, TransferState state) {
+            return id;
+        }
+
+        @Override
+        public int deleteTransferRecords(int id) {
+            return id;
+        }
+    }
+}
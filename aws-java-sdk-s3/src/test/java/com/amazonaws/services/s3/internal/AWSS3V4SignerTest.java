@@ -15,6 +15,7 @@
 
 package com.amazonaws.services.s3.internal;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -22,6 +23,7 @@ import com.amazonaws.DefaultRequest;
 import com.amazonaws.Request;
 import com.amazonaws.SDKGlobalConfiguration;
 import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AwsChunkedSignatureVerifier;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.http.HttpMethodName;
 import com.amazonaws.services.s3.Headers;
@@ -34,6 +36,7 @@ import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.services.s3.model.transform.RequestXmlFactory;
+import com.amazonaws.util.IOUtils;
 import com.amazonaws.util.StringUtils;
 
 import org.junit.After;
@@ -48,6 +51,7 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
 
 public class AWSS3V4SignerTest {
 
@@ -88,6 +92,43 @@ public class AWSS3V4SignerTest {
                 "e0a8ac165c54dc1fc3dd987f5e00b44f1b91f3c63b05ee642432e1f3c7286d69");
     }
 
+    @Test
+    public void testPutObjectPayloadIsSignedByChunk() throws Exception {
+        final AWSS3V4Signer signer = new S3SignerWithDateOverride(new Date(1431115356859L));
+        // THESE ARE BOGUS CREDENTIALS
+        final AWSCredentials credentials = new BasicAWSCredentials(
+                "AKIAJd4scjDDmxXZTESTGOZQ", "LYd/ad4scjDDmxXZTESTtRz7xdOM1SiD6");
+        final byte[] content = new byte[300 * 1024];
+        new Random(1).nextBytes(content);
+        final ByteArrayInputStream bais = new ByteArrayInputStream(content);
+        final ObjectMetadata om = new ObjectMetadata();
+        om.setContentLength(content.length);
+        final PutObjectRequest por = new PutObjectRequest("test-bucket123456", "key", bais, om);
+        final Request<?> pr = new DefaultRequest(por, Constants.S3_SERVICE_DISPLAY_NAME);
+        pr.setContent(bais);
+        pr.setResourcePath("key");
+        pr.setHttpMethod(HttpMethodName.PUT);
+        pr.addHeader(Headers.CONTENT_LENGTH, String.valueOf(content.length));
+        pr.setEndpoint(new URI("https://test-bucket123456.s3-us-west-2.amazonaws.com"));
+        pr.addHeader("Host", "test-bucket123456.s3-us-west-2.amazonaws.com");
+        signer.sign(pr, credentials);
+
+        assertEquals("STREAMING-AWS4-HMAC-SHA256-PAYLOAD",
+                pr.getHeaders().get("x-amz-content-sha256"));
+        assertEquals(String.valueOf(content.length),
+                pr.getHeaders().get("x-amz-decoded-content-length"));
+        final byte[] body = IOUtils.toByteArray(pr.getContent());
+        assertEquals(String.valueOf(body.length), pr.getHeaders().get(Headers.CONTENT_LENGTH));
+
+        final String auth = pr.getHeaders().get("Authorization");
+        final String scope = auth.substring(auth.indexOf('/') + 1, auth.indexOf(','));
+        final AwsChunkedSignatureVerifier verifier = new AwsChunkedSignatureVerifier(
+                AwsChunkedSignatureVerifier.deriveSigningKey(
+                        "LYd/ad4scjDDmxXZTESTtRz7xdOM1SiD6", scope),
+                pr.getHeaders().get("X-Amz-Date"), scope, getSignature(pr));
+        assertArrayEquals(content, verifier.verify(body));
+    }
+
     @Test
     public void testSignGetObject() throws URISyntaxException {
         final AWSS3V4Signer signer = new S3SignerWithDateOverride(new Date(1431114076667L));
@@ -15,9 +15,12 @@
 
 package com.amazonaws.services.s3.internal;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import com.amazonaws.internal.FileRegionInputStream;
 import com.amazonaws.util.Md5Utils;
 import com.amazonaws.util.StringUtils;
 
@@ -25,7 +28,12 @@ import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
 import java.util.Arrays;
+import java.util.Random;
 
 public class MD5DigestCalculatingInputStreamTest {
     private static final boolean DEBUG = true;
@@ -105,4 +113,68 @@ public class MD5DigestCalculatingInputStreamTest {
         }
     }
 
+    @Test
+    public void testTransferredBytesAreDigested() throws Exception {
+        byte[] data = "0123456789abcdefghijklmnopqrstuvwxyz!@#$%^&*()_+-="
+                .getBytes(StringUtils.UTF8);
+        File file = File.createTempFile("MD5DigestCalculatingInputStreamTest", ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(data);
+            out.close();
+            MD5DigestCalculatingInputStream is = new MD5DigestCalculatingInputStream(
+                    new FileRegionInputStream(file, 5, 30));
+            assertNotNull(is.getFileRegion());
+            is.read(new byte[10]);
+            is.transferred(20);
+            assertEquals(-1, is.read());
+            assertTrue(Arrays.equals(Md5Utils.computeMD5Hash(Arrays.copyOfRange(data, 5, 35)),
+                    is.getMd5Digest()));
+            is.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTransferredBytesAreDigestedFromMappedWindows() throws Exception {
+        // Just over one window of the file region
+        byte[] data = new byte[8 * 1024 * 1024 + 1000];
+        new Random(1).nextBytes(data);
+        File file = File.createTempFile("MD5DigestCalculatingInputStreamTest", ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(data);
+            out.close();
+            CountingFileRegionInputStream region = new CountingFileRegionInputStream(file);
+            MD5DigestCalculatingInputStream is = new MD5DigestCalculatingInputStream(region);
+            // Sent a socket buffer at a time
+            for (int i = 0; i < data.length; i += 65000) {
+                is.transferred(Math.min(65000, data.length - i));
+            }
+            assertEquals(-1, is.read());
+            assertEquals(2, region.maps);
+            assertTrue(Arrays.equals(Md5Utils.computeMD5Hash(data), is.getMd5Digest()));
+            is.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Counts the times the region is mapped.
+     */
+    private static final class CountingFileRegionInputStream extends FileRegionInputStream {
+        private int maps;
+
+        CountingFileRegionInputStream(File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        public MappedByteBuffer map(long count) throws IOException {
+            maps++;
+            return super.map(count);
+        }
+    }
 }
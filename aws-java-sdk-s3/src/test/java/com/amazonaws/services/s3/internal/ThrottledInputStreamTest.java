@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.util.BandwidthLimiter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ThrottledInputStreamTest {
+
+    private static long readAll(InputStream in) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Test
+    public void testLimitsRate() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter(100 * 1024);
+        final InputStream in = new ThrottledInputStream(
+                new ByteArrayInputStream(new byte[50 * 1024]), limiter);
+
+        final long start = System.nanoTime();
+        assertEquals(50 * 1024, readAll(in));
+        final long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        // The first 100 ms worth of bytes go through at once
+        assertTrue("Read in " + elapsedMillis + " ms", elapsedMillis >= 350);
+        assertTrue("Read in " + elapsedMillis + " ms", elapsedMillis < 2000);
+    }
+
+    @Test
+    public void testParentLimitIsShared() throws Exception {
+        final BandwidthLimiter global = new BandwidthLimiter(100 * 1024);
+        final BandwidthLimiter first = new BandwidthLimiter(0, global);
+        final BandwidthLimiter second = new BandwidthLimiter(1024 * 1024, global);
+        assertTrue(first.isLimited());
+        assertEquals(10 * 1024, second.getMaxBurstSize());
+
+        final long start = System.nanoTime();
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    readAll(new ThrottledInputStream(
+                            new ByteArrayInputStream(new byte[25 * 1024]), second));
+                } catch (final IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        reader.start();
+        readAll(new ThrottledInputStream(new ByteArrayInputStream(new byte[25 * 1024]), first));
+        reader.join(5000);
+        final long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue("Read in " + elapsedMillis + " ms", elapsedMillis >= 350);
+    }
+
+    @Test
+    public void testLimitChangesApplyToWaitingReads() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter(1024);
+        final InputStream in = new ThrottledInputStream(
+                new ByteArrayInputStream(new byte[100 * 1024]), limiter);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                limiter.setBytesPerSecond(0);
+            }
+        }).start();
+
+        final long start = System.nanoTime();
+        assertEquals(100 * 1024, readAll(in));
+        final long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertFalse(limiter.isLimited());
+        assertTrue("Read in " + elapsedMillis + " ms", elapsedMillis < 5000);
+    }
+
+    @Test
+    public void testInterruptAbortsRead() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter(10);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    readAll(new ThrottledInputStream(
+                            new ByteArrayInputStream(new byte[1024]), limiter));
+                } catch (final Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        reader.start();
+        Thread.sleep(100);
+        reader.interrupt();
+        reader.join(5000);
+
+        assertFalse(reader.isAlive());
+        assertTrue(failure.get() instanceof AbortedException);
+    }
+
+    @Test
+    public void testThrottlesFilePartOnlyWhenLimited() throws Exception {
+        final File file = File.createTempFile("throttled", ".dat");
+        file.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[1000]);
+        out.close();
+
+        final UploadPartRequest request = new UploadPartRequest()
+                .withFile(file)
+                .withFileOffset(200)
+                .withPartSize(300);
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        assertSame(request, ThrottledInputStream.throttle(request, limiter));
+        assertSame(file, request.getFile());
+
+        limiter.setBytesPerSecond(1024 * 1024);
+        ThrottledInputStream.throttle(request, limiter);
+        assertNull(request.getFile());
+        assertTrue(request.getInputStream() instanceof ThrottledInputStream);
+        assertEquals(300, readAll(request.getInputStream()));
+        request.getInputStream().close();
+    }
+}
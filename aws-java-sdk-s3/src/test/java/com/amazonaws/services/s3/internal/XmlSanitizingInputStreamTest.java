@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.transform.XmlResponsesSaxParser;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class XmlSanitizingInputStreamTest {
+
+    @Test
+    public void testDocumentWithoutCarriageReturnIsUnchanged() throws IOException {
+        final String xml = "<a>b\nc é中</a>";
+        assertEquals(xml, sanitize(xml, 8192));
+    }
+
+    @Test
+    public void testCarriageReturnsAreReplaced() throws IOException {
+        assertEquals("<a>&#013;x&#013;&#013;é&#013;</a>&#013;",
+                sanitize("<a>\rx\r\ré\r</a>\r", 8192));
+    }
+
+    @Test
+    public void testSmallReads() throws IOException {
+        final String xml = "<a>\rx\r\ré\r</a>\r";
+        for (int size = 1; size < 10; size++) {
+            assertEquals("<a>&#013;x&#013;&#013;é&#013;</a>&#013;", sanitize(xml, size));
+        }
+    }
+
+    @Test
+    public void testLargeDocument() throws IOException {
+        final StringBuilder xml = new StringBuilder();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            xml.append("<Key>key\r").append(i).append("</Key>\n");
+            expected.append("<Key>key&#013;").append(i).append("</Key>\n");
+        }
+        assertEquals(expected.toString(), sanitize(xml.toString(), 1000));
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        final InputStream in = new XmlSanitizingInputStream(new ByteArrayInputStream(
+                "a\rbc".getBytes(StringUtils.UTF8)));
+        assertEquals(3, in.skip(3));
+        assertEquals("013;bc", IOUtils.toString(in));
+    }
+
+    @Test
+    public void testListingKeysKeepCarriageReturns() throws IOException {
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+                + "<Name>bucket</Name><Prefix></Prefix><Marker></Marker><MaxKeys>1000</MaxKeys>"
+                + "<IsTruncated>false</IsTruncated><Contents><Key>line\r\nbreak</Key>"
+                + "<LastModified>2018-06-07T12:34:56.000Z</LastModified><ETag>&quot;etag&quot;</ETag>"
+                + "<Size>10</Size><StorageClass>STANDARD</StorageClass></Contents>"
+                + "</ListBucketResult>";
+        final ObjectListing listing = new XmlResponsesSaxParser()
+                .parseListBucketObjectsResponse(
+                        new ByteArrayInputStream(xml.getBytes(StringUtils.UTF8)), false)
+                .getObjectListing();
+        assertEquals(1, listing.getObjectSummaries().size());
+        assertEquals("line\r\nbreak", listing.getObjectSummaries().get(0).getKey());
+    }
+
+    private static String sanitize(String xml, int readSize) throws IOException {
+        final InputStream in = new XmlSanitizingInputStream(new ByteArrayInputStream(
+                xml.getBytes(StringUtils.UTF8)));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] b = new byte[readSize];
+        int read;
+        while ((read = in.read(b)) != -1) {
+            out.write(b, 0, read);
+        }
+        return new String(out.toByteArray(), StringUtils.UTF8);
+    }
+}
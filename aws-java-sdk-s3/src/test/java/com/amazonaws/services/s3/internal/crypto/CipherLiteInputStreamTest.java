@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+public class CipherLiteInputStreamTest {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Random random = new Random(7);
+    private SecretKey key;
+    private byte[] plaintext;
+
+    @Before
+    public void setUp() {
+        final byte[] keyBytes = new byte[16];
+        random.nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "AES");
+        plaintext = new byte[100 * 1024 + 37];
+        random.nextBytes(plaintext);
+    }
+
+    /**
+     * A stream that returns few bytes at a time, as a network stream may.
+     */
+    private static InputStream trickle(byte[] data) {
+        return new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[3000];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    private static Cipher cipher(String algorithm, int mode, SecretKey key,
+            AlgorithmParameterSpec spec) throws Exception {
+        final Cipher cipher = Cipher.getInstance(algorithm);
+        cipher.init(mode, key, spec);
+        return cipher;
+    }
+
+    private void assertRoundTrip(String algorithm, ContentCryptoScheme scheme,
+            AlgorithmParameterSpec spec) throws Exception {
+        final byte[] expected = cipher(algorithm, Cipher.ENCRYPT_MODE, key, spec)
+                .doFinal(plaintext);
+        final byte[] ciphertext = readAll(new CipherLiteInputStream(trickle(plaintext),
+                new CipherLite(cipher(algorithm, Cipher.ENCRYPT_MODE, key, spec), scheme, key,
+                        Cipher.ENCRYPT_MODE), BUFFER_SIZE));
+        assertArrayEquals(expected, ciphertext);
+
+        final byte[] decrypted = readAll(new CipherLiteInputStream(trickle(ciphertext),
+                new CipherLite(cipher(algorithm, Cipher.DECRYPT_MODE, key, spec), scheme, key,
+                        Cipher.DECRYPT_MODE), BUFFER_SIZE));
+        assertArrayEquals(plaintext, decrypted);
+    }
+
+    @Test
+    public void testCbcRoundTrip() throws Exception {
+        assertRoundTrip("AES/CBC/PKCS5Padding", ContentCryptoScheme.AES_CBC,
+                new IvParameterSpec(new byte[16]));
+    }
+
+    @Test
+    public void testCtrRoundTrip() throws Exception {
+        assertRoundTrip("AES/CTR/NoPadding", ContentCryptoScheme.AES_CTR,
+                new IvParameterSpec(new byte[16]));
+    }
+
+    @Test
+    public void testGcmRoundTrip() throws Exception {
+        final GCMParameterSpec spec = new GCMParameterSpec(128, new byte[12]);
+        final byte[] expected = cipher("AES/GCM/NoPadding", Cipher.ENCRYPT_MODE, key, spec)
+                .doFinal(plaintext);
+        final byte[] ciphertext = readAll(new CipherLiteInputStream(trickle(plaintext),
+                new GCMCipherLite(cipher("AES/GCM/NoPadding", Cipher.ENCRYPT_MODE, key, spec),
+                        key, Cipher.ENCRYPT_MODE), BUFFER_SIZE));
+        assertArrayEquals(expected, ciphertext);
+
+        // Decryption may hold back the whole plaintext until the tag is
+        // verified, which the output buffer has to grow for
+        final byte[] decrypted = readAll(new CipherLiteInputStream(trickle(ciphertext),
+                new GCMCipherLite(cipher("AES/GCM/NoPadding", Cipher.DECRYPT_MODE, key, spec),
+                        key, Cipher.DECRYPT_MODE), BUFFER_SIZE));
+        assertArrayEquals(plaintext, decrypted);
+    }
+
+    @Test
+    public void testGcmResetReencrypts() throws Exception {
+        final GCMParameterSpec spec = new GCMParameterSpec(128, new byte[12]);
+        final byte[] expected = cipher("AES/GCM/NoPadding", Cipher.ENCRYPT_MODE, key, spec)
+                .doFinal(plaintext);
+        final CipherLiteInputStream in = new CipherLiteInputStream(
+                new ByteArrayInputStream(plaintext),
+                new GCMCipherLite(cipher("AES/GCM/NoPadding", Cipher.ENCRYPT_MODE, key, spec),
+                        key, Cipher.ENCRYPT_MODE), BUFFER_SIZE);
+        in.mark(plaintext.length);
+        in.read(new byte[3 * BUFFER_SIZE]);
+        in.reset();
+        assertArrayEquals(expected, readAll(in));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import static com.amazonaws.services.s3.internal.crypto.ContentCryptoScheme.AES_CTR;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.internal.S3Direct;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+public class EncryptedObjectReaderImplTest {
+    private static final String ETAG = "etag";
+
+    private final Random random = new Random(42);
+    private byte[] plaintext;
+    private byte[] ciphertext;
+    private ContentCryptoMaterial cekMaterial;
+    private FakeS3Direct s3;
+
+    @Before
+    public void setUp() throws Exception {
+        final byte[] key = new byte[16];
+        random.nextBytes(key);
+        final SecretKey cek = new SecretKeySpec(key, "AES");
+        final byte[] iv = new byte[12];
+        random.nextBytes(iv);
+        plaintext = new byte[1000];
+        random.nextBytes(plaintext);
+        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, cek, new GCMParameterSpec(128, iv));
+        ciphertext = cipher.doFinal(plaintext);
+        // As set up for a range get from the start of the object
+        cekMaterial = new ContentCryptoMaterial(null, new byte[0], "AESWrap",
+                AES_CTR.createCipherLite(cek, AES_CTR.adjustIV(iv, 0), Cipher.DECRYPT_MODE, null));
+        s3 = new FakeS3Direct();
+    }
+
+    private EncryptedObjectReaderImpl newReader() {
+        return new EncryptedObjectReaderImpl(s3, new GetObjectRequest("bucket", "key"),
+                cekMaterial, null, ETAG, ciphertext.length);
+    }
+
+    @Test
+    public void testReadsFetchOnlyTheBlocksRead() throws Exception {
+        final EncryptedObjectReaderImpl reader = newReader();
+        assertEquals(plaintext.length, reader.getContentLength());
+
+        final byte[] b = new byte[100];
+        assertEquals(50, reader.read(37, b, 10, 50));
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 37, 87), Arrays.copyOfRange(b, 10, 60));
+        assertArrayEquals(new long[] {
+                32, 86
+        }, s3.requests.get(0).getRange());
+        assertEquals(Arrays.asList(ETAG), s3.requests.get(0).getMatchingETagConstraints());
+
+        assertEquals(1, reader.read(999, b, 0, 1));
+        assertEquals(plaintext[999], b[0]);
+        assertArrayEquals(new long[] {
+                992, 999
+        }, s3.requests.get(1).getRange());
+    }
+
+    @Test
+    public void testReadAtTheEndOfTheObject() throws Exception {
+        final EncryptedObjectReaderImpl reader = newReader();
+        final byte[] b = new byte[100];
+        // The read stops short of the tag
+        assertEquals(40, reader.read(960, b, 0, 100));
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 960, 1000), Arrays.copyOf(b, 40));
+        assertArrayEquals(new long[] {
+                960, 999
+        }, s3.requests.get(0).getRange());
+
+        assertEquals(-1, reader.read(1000, b, 0, 100));
+        assertEquals(1, s3.requests.size());
+    }
+
+    @Test
+    public void testReadsOfTheWholeObject() throws Exception {
+        final EncryptedObjectReaderImpl reader = newReader();
+        final byte[] b = new byte[plaintext.length];
+        int position = 0;
+        for (int len = 1; position < plaintext.length; len += 7) {
+            position += reader.read(position, b, position, Math.min(len, b.length - position));
+        }
+        assertArrayEquals(plaintext, b);
+    }
+
+    @Test
+    public void testReadOfChangedObject() throws Exception {
+        final EncryptedObjectReaderImpl reader = newReader();
+        s3.eTag = "changed";
+        try {
+            reader.read(0, new byte[10], 0, 10);
+            fail();
+        } catch (final AmazonClientException expected) {
+        }
+    }
+
+    private class FakeS3Direct extends S3Direct {
+        private final List<GetObjectRequest> requests = new ArrayList<GetObjectRequest>();
+        private String eTag = ETAG;
+
+        @Override
+        public S3Object getObject(GetObjectRequest req) {
+            requests.add(req);
+            if (!req.getMatchingETagConstraints().contains(eTag)) {
+                return null;
+            }
+            final long[] range = req.getRange();
+            final int end = (int) Math.min(range[1] + 1, ciphertext.length);
+            final S3Object object = new S3Object();
+            object.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(
+                    ciphertext, (int) range[0], end - (int) range[0])));
+            return object;
+        }
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ObjectMetadata getObject(GetObjectRequest req, File dest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(
+                CompleteMultipartUploadRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(
+                InitiateMultipartUploadRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CopyPartResult copyPart(CopyPartRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest req) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
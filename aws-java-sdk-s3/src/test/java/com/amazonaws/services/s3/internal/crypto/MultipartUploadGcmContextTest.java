@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+public class MultipartUploadGcmContextTest {
+    private static final int PART_SIZE = 4096;
+
+    private final Random random = new Random(42);
+    private SecretKey cek;
+    private byte[] iv;
+    private byte[] plaintext;
+    private MultipartUploadGcmContext uploadContext;
+
+    @Before
+    public void setUp() throws Exception {
+        final byte[] key = new byte[16];
+        random.nextBytes(key);
+        cek = new SecretKeySpec(key, "AES");
+        iv = new byte[12];
+        random.nextBytes(iv);
+        // Three whole parts and a partial last block
+        plaintext = new byte[3 * PART_SIZE + 100];
+        random.nextBytes(plaintext);
+
+        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, cek, new GCMParameterSpec(128, iv));
+        final ContentCryptoMaterial cekMaterial = new ContentCryptoMaterial(null,
+                new byte[0], "AESWrap", new GCMCipherLite(cipher, cek, Cipher.ENCRYPT_MODE));
+        uploadContext = new MultipartUploadGcmContext("bucket", "key", cekMaterial, PART_SIZE);
+    }
+
+    private byte[] serialCiphertext() throws Exception {
+        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, cek, new GCMParameterSpec(128, iv));
+        return cipher.doFinal(plaintext);
+    }
+
+    private InputStream partStream(int partNumber) {
+        final int offset = (partNumber - 1) * PART_SIZE;
+        final boolean isLastPart = offset + PART_SIZE >= plaintext.length;
+        final InputStream in = new ByteArrayInputStream(plaintext, offset,
+                Math.min(PART_SIZE, plaintext.length - offset));
+        return new GcmPartInputStream(new RenewableCipherLiteInputStream(in,
+                uploadContext.newPartCipherLite(partNumber), 512, true, isLastPart),
+                uploadContext, partNumber, isLastPart);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1000];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testPartsEncryptedOutOfOrderMatchSerialEncryption() throws Exception {
+        final byte[] part3 = readAll(partStream(3));
+        final byte[] part1 = readAll(partStream(1));
+        final byte[] part2 = readAll(partStream(2));
+        final byte[] part4 = readAll(partStream(4));
+
+        assertArrayEquals(serialCiphertext(), concat(part1, part2, part3, part4));
+    }
+
+    @Test
+    public void testSingleLastPart() throws Exception {
+        plaintext = Arrays.copyOf(plaintext, 1000);
+        assertArrayEquals(serialCiphertext(), readAll(partStream(1)));
+    }
+
+    @Test
+    public void testLastPartRequiresAllOtherParts() throws Exception {
+        readAll(partStream(1));
+        readAll(partStream(3));
+        try {
+            partStream(4);
+            fail("Expected AmazonClientException");
+        } catch (final AmazonClientException expected) {
+        }
+    }
+
+    @Test
+    public void testResetRehashesPart() throws Exception {
+        final InputStream retried = partStream(2);
+        retried.mark(PART_SIZE);
+        retried.read(new byte[PART_SIZE / 2]);
+        retried.reset();
+        final byte[] part2 = readAll(retried);
+        final byte[] part1 = readAll(partStream(1));
+        final byte[] part3 = readAll(partStream(3));
+
+        final InputStream last = partStream(4);
+        last.mark(PART_SIZE);
+        readAll(last);
+        last.reset();
+        final byte[] part4 = readAll(last);
+
+        assertArrayEquals(serialCiphertext(), concat(part1, part2, part3, part4));
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.internal.S3Direct;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.CryptoConfiguration;
+import com.amazonaws.services.s3.model.CryptoMode;
+import com.amazonaws.services.s3.model.CryptoStorageMode;
+import com.amazonaws.services.s3.model.EncryptedGetObjectRequest;
+import com.amazonaws.services.s3.model.EncryptedObjectReader;
+import com.amazonaws.services.s3.model.EncryptionMaterials;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.StaticEncryptionMaterialsProvider;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.IOUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Tests the reads of objects encrypted by {@link S3CryptoModuleAE}, with
+ * their encryption info in their metadata or in an instruction file.
+ */
+public class S3CryptoModuleAETest {
+
+    private final Random random = new Random(42);
+    private StaticEncryptionMaterialsProvider materials;
+    private InMemoryS3Direct s3;
+    private byte[] plaintext;
+
+    @Before
+    public void setUp() {
+        final byte[] key = new byte[16];
+        random.nextBytes(key);
+        materials = new StaticEncryptionMaterialsProvider(
+                new EncryptionMaterials(new SecretKeySpec(key, "AES")));
+        s3 = new InMemoryS3Direct();
+        plaintext = new byte[1000];
+        random.nextBytes(plaintext);
+    }
+
+    private S3CryptoModuleAE newModule(CryptoStorageMode storageMode) {
+        return new S3CryptoModuleAE(s3, materials,
+                new CryptoConfiguration(CryptoMode.AuthenticatedEncryption)
+                        .withStorageMode(storageMode).readOnly());
+    }
+
+    private S3CryptoModuleAE putObject(CryptoStorageMode storageMode) {
+        final S3CryptoModuleAE module = newModule(storageMode);
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(plaintext.length);
+        module.putObjectSecurely(new PutObjectRequest("bucket", "key",
+                new ByteArrayInputStream(plaintext), metadata));
+        return module;
+    }
+
+    private void assertReads(EncryptedObjectReader reader) throws IOException {
+        assertEquals(plaintext.length, reader.getContentLength());
+        final byte[] b = new byte[100];
+        assertEquals(100, reader.read(437, b, 0, 100));
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 437, 537), b);
+    }
+
+    @Test
+    public void testOpensObjectWithoutChangingTheRequest() throws IOException {
+        final S3CryptoModuleAE module = putObject(CryptoStorageMode.ObjectMetadata);
+        final GetObjectRequest req = new GetObjectRequest("bucket", "key");
+        final EncryptedObjectReader reader = module.openObjectSecurely(req);
+        assertNull(req.getRange());
+        assertArrayEquals(new long[] {
+                0, 15
+        }, s3.requests.get(0).getRange());
+
+        assertReads(reader);
+        // The same request can be used again
+        assertReads(module.openObjectSecurely(req));
+    }
+
+    @Test
+    public void testOpensObjectWithInstructionFile() throws IOException {
+        final S3CryptoModuleAE module = putObject(CryptoStorageMode.InstructionFile);
+        assertReads(module.openObjectSecurely(new GetObjectRequest("bucket", "key")));
+    }
+
+    @Test
+    public void testOpenWithMissingInstructionFileSuffixFails() {
+        final S3CryptoModuleAE module = putObject(CryptoStorageMode.ObjectMetadata);
+        try {
+            module.openObjectSecurely(new EncryptedGetObjectRequest("bucket", "key")
+                    .withInstructionFileSuffix("missing"));
+            fail("Opened an object without its instruction file");
+        } catch (final AmazonClientException expected) {
+            // The suffix names an instruction file that isn't there
+        }
+    }
+
+    @Test
+    public void testGetsObject() throws IOException {
+        for (final CryptoStorageMode storageMode : CryptoStorageMode.values()) {
+            final S3CryptoModuleAE module = putObject(storageMode);
+            final S3Object object = module.getObjectSecurely(
+                    new GetObjectRequest("bucket", "key"));
+            assertArrayEquals(storageMode.toString(), plaintext,
+                    IOUtils.toByteArray(object.getObjectContent()));
+
+            final S3Object range = module.getObjectSecurely(
+                    new GetObjectRequest("bucket", "key").withRange(437, 536));
+            assertArrayEquals(storageMode.toString(), Arrays.copyOfRange(plaintext, 437, 537),
+                    IOUtils.toByteArray(range.getObjectContent()));
+        }
+    }
+
+    /**
+     * Stores the objects put in memory, and serves gets of them and of their
+     * ranges.
+     */
+    private static final class InMemoryS3Direct extends S3Direct {
+        private final Map<String, byte[]> contents = new HashMap<String, byte[]>();
+        private final Map<String, ObjectMetadata> metadata = new HashMap<String, ObjectMetadata>();
+        private final List<GetObjectRequest> requests = new ArrayList<GetObjectRequest>();
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest req) {
+            final byte[] content;
+            try {
+                content = IOUtils.toByteArray(req.getInputStream());
+            } catch (final IOException e) {
+                throw new AmazonClientException(e);
+            }
+            final ObjectMetadata stored = req.getMetadata() == null ? new ObjectMetadata()
+                    : req.getMetadata().clone();
+            stored.setContentLength(content.length);
+            stored.setHeader(Headers.ETAG, "etag-" + req.getKey());
+            contents.put(req.getKey(), content);
+            metadata.put(req.getKey(), stored);
+            return new PutObjectResult();
+        }
+
+        @Override
+        public S3Object getObject(GetObjectRequest req) {
+            requests.add(req);
+            final byte[] content = contents.get(req.getKey());
+            if (content == null) {
+                final AmazonS3Exception e = new AmazonS3Exception("Not Found");
+                e.setStatusCode(404);
+                throw e;
+            }
+            final ObjectMetadata stored = metadata.get(req.getKey()).clone();
+            if (!req.getMatchingETagConstraints().isEmpty()
+                    && !req.getMatchingETagConstraints().contains(stored.getETag())) {
+                return null;
+            }
+            int start = 0;
+            int end = content.length - 1;
+            if (req.getRange() != null) {
+                start = (int) req.getRange()[0];
+                end = (int) Math.min(req.getRange()[1], content.length - 1);
+                stored.setHeader(Headers.CONTENT_RANGE, "bytes " + start + "-" + end + "/"
+                        + content.length);
+            }
+            stored.setContentLength(end - start + 1);
+            final S3Object object = new S3Object();
+            object.setBucketName(req.getBucketName());
+            object.setKey(req.getKey());
+            object.setObjectMetadata(stored);
+            object.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(
+                    content, start, end - start + 1), null));
+            return object;
+        }
+
+        @Override
+        public ObjectMetadata getObject(GetObjectRequest req, File dest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(
+                CompleteMultipartUploadRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(
+                InitiateMultipartUploadRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CopyPartResult copyPart(CopyPartRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest req) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.services.s3.iterable;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Amazon S3 client stub serving ListObjectsV2 requests for a bucket held in
+ * memory, with prefixes, delimiters, pages and continuation tokens.
+ */
+public class InMemoryListingS3Client extends AmazonS3Client {
+
+    private static final int DEFAULT_MAX_KEYS = 1000;
+
+    private final SortedSet<String> keys = new TreeSet<String>(ParallelS3Objects.KEY_ORDER);
+    private final Set<String> failingPrefixes = Collections.synchronizedSet(
+            new TreeSet<String>());
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+    private final long latencyMillis;
+
+    /**
+     * @param keys the keys of the bucket.
+     * @param latencyMillis the time each request takes.
+     */
+    public InMemoryListingS3Client(Collection<String> keys, long latencyMillis) {
+        super(new BasicAWSCredentials("access", "secret"));
+        this.keys.addAll(keys);
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Makes listing the given prefix fail.
+     */
+    public void failPrefix(String prefix) {
+        failingPrefixes.add(prefix);
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests.get();
+    }
+
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+        requestCount.incrementAndGet();
+        final int concurrent = concurrentRequests.incrementAndGet();
+        synchronized (maxConcurrentRequests) {
+            maxConcurrentRequests.set(Math.max(maxConcurrentRequests.get(), concurrent));
+        }
+        try {
+            Thread.sleep(latencyMillis);
+            return list(request);
+        } catch (final InterruptedException e) {
+            throw new AmazonS3Exception("Interrupted");
+        } finally {
+            concurrentRequests.decrementAndGet();
+        }
+    }
+
+    private ListObjectsV2Result list(ListObjectsV2Request request) {
+        final String prefix = request.getPrefix() == null ? "" : request.getPrefix();
+        if (failingPrefixes.contains(prefix)) {
+            throw new AmazonS3Exception("Internal Error");
+        }
+        final int maxKeys = request.getMaxKeys() == null ? DEFAULT_MAX_KEYS
+                : request.getMaxKeys();
+        final String token = request.getContinuationToken();
+        final ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setPrefix(request.getPrefix());
+        result.setDelimiter(request.getDelimiter());
+
+        final SortedSet<String> candidates = token == null ? keys.tailSet(prefix)
+                : keys.tailSet(token + "\u0000");
+        // A token ending with the delimiter is the common prefix ending the
+        // previous page
+        String lastCommonPrefix = token != null && request.getDelimiter() != null
+                && token.endsWith(request.getDelimiter()) ? token : null;
+        int count = 0;
+        for (final String key : candidates) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            if (lastCommonPrefix != null && key.startsWith(lastCommonPrefix)) {
+                continue;
+            }
+            if (count == maxKeys) {
+                result.setTruncated(true);
+                break;
+            }
+            final int delimiterIndex = request.getDelimiter() == null ? -1
+                    : key.indexOf(request.getDelimiter(), prefix.length());
+            if (delimiterIndex >= 0) {
+                lastCommonPrefix = key.substring(0,
+                        delimiterIndex + request.getDelimiter().length());
+                result.getCommonPrefixes().add(lastCommonPrefix);
+                result.setNextContinuationToken(lastCommonPrefix);
+            } else {
+                final S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setBucketName(request.getBucketName());
+                summary.setKey(key);
+                result.getObjectSummaries().add(summary);
+                result.setNextContinuationToken(key);
+            }
+            count++;
+        }
+        if (!result.isTruncated()) {
+            result.setNextContinuationToken(null);
+        }
+        result.setKeyCount(count);
+        return result;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.services.s3.iterable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ParallelS3ObjectsTest {
+
+    /**
+     * Keys of a bucket with two levels of directories, and objects at each
+     * level.
+     */
+    private static List<String> nestedKeys() {
+        final List<String> keys = new ArrayList<String>();
+        keys.add("a-root-object");
+        for (int d = 0; d < 10; d++) {
+            keys.add("dir" + d);
+            keys.add("dir" + d + "/object");
+            for (int s = 0; s < 5; s++) {
+                for (int k = 0; k < 7; k++) {
+                    keys.add("dir" + d + "/sub" + s + "/key" + k);
+                }
+            }
+        }
+        keys.add("z-root-object");
+        return keys;
+    }
+
+    private static List<String> list(Iterable<S3ObjectSummary> objects) {
+        final List<String> keys = new ArrayList<String>();
+        for (final S3ObjectSummary summary : objects) {
+            keys.add(summary.getKey());
+        }
+        return keys;
+    }
+
+    private static List<String> sorted(List<String> keys) {
+        final List<String> sorted = new ArrayList<String>(keys);
+        Collections.sort(sorted, ParallelS3Objects.KEY_ORDER);
+        return sorted;
+    }
+
+    @Test
+    public void testListsEveryObjectOnce() {
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(nestedKeys(), 0);
+        for (int depth = 0; depth < 4; depth++) {
+            final List<String> keys = list(ParallelS3Objects.inBucket(s3, "bucket")
+                    .withProbeDepth(depth).withBatchSize(4));
+            assertEquals(sorted(nestedKeys()), sorted(keys));
+        }
+    }
+
+    @Test
+    public void testSortedOutput() {
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(nestedKeys(), 1);
+        for (int depth = 0; depth < 3; depth++) {
+            final List<String> keys = list(ParallelS3Objects.inBucket(s3, "bucket")
+                    .withProbeDepth(depth).withBatchSize(3).withMaxConcurrency(3)
+                    .withBufferedPages(1).withSortedOutput(true));
+            assertEquals(sorted(nestedKeys()), keys);
+        }
+    }
+
+    @Test
+    public void testListsUnderPrefix() {
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(nestedKeys(), 0);
+        final List<String> keys = list(ParallelS3Objects.withPrefix(s3, "bucket", "dir3/")
+                .withProbeDepth(2).withSortedOutput(true));
+        final List<String> expected = new ArrayList<String>();
+        for (final String key : sorted(nestedKeys())) {
+            if (key.startsWith("dir3/")) {
+                expected.add(key);
+            }
+        }
+        assertEquals(expected, keys);
+    }
+
+    @Test
+    public void testListsSuppliedPrefixes() {
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(nestedKeys(), 0);
+        final ParallelS3Objects objects = ParallelS3Objects.withPrefixes(s3, "bucket",
+                Arrays.asList("dir2/sub1/", "dir1/", "dir1/sub3/", "dir2/sub0/"));
+        assertEquals(Arrays.asList("dir1/", "dir2/sub0/", "dir2/sub1/"), objects.getPrefixes());
+
+        final List<String> keys = list(objects.withSortedOutput(true));
+        final List<String> expected = new ArrayList<String>();
+        for (final String key : sorted(nestedKeys())) {
+            if (key.startsWith("dir1/") || key.startsWith("dir2/sub0/")
+                    || key.startsWith("dir2/sub1/")) {
+                expected.add(key);
+            }
+        }
+        assertEquals(expected, keys);
+        // No probing: one request per partition
+        assertEquals(3, s3.getRequestCount());
+    }
+
+    @Test
+    public void testListsPartitionsConcurrently() {
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(nestedKeys(), 20);
+        final long start = System.currentTimeMillis();
+        final List<String> keys = list(ParallelS3Objects.inBucket(s3, "bucket")
+                .withProbeDepth(2).withMaxConcurrency(8));
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(nestedKeys().size(), keys.size());
+        assertEquals(8, s3.getMaxConcurrentRequests());
+        assertTrue("Took " + elapsed + " ms for " + s3.getRequestCount() + " requests",
+                elapsed < s3.getRequestCount() * 20 / 2);
+    }
+
+    @Test
+    public void testProbesOnlyTheFirstPage() {
+        final List<String> flatKeys = new ArrayList<String>();
+        for (int k = 0; k < 100; k++) {
+            flatKeys.add("key" + k);
+        }
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(flatKeys, 20);
+        final ParallelS3Objects.ParallelObjectIterator iter = ParallelS3Objects
+                .inBucket(s3, "bucket").withBatchSize(10).withSortedOutput(true).iterator();
+        final long start = System.currentTimeMillis();
+        assertTrue(iter.hasNext());
+        final long elapsed = System.currentTimeMillis() - start;
+        iter.close();
+
+        // The first page is returned without listing the other nine first
+        assertTrue("Took " + elapsed + " ms", elapsed < 5 * 20);
+    }
+
+    @Test
+    public void testListsRestOfTruncatedProbeInOrder() {
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(nestedKeys(), 0);
+        for (int batchSize = 1; batchSize < 8; batchSize++) {
+            final List<String> keys = list(ParallelS3Objects.inBucket(s3, "bucket")
+                    .withProbeDepth(2).withBatchSize(batchSize).withSortedOutput(true));
+            assertEquals(sorted(nestedKeys()), keys);
+        }
+    }
+
+    @Test
+    public void testLimitsRequestRate() {
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(nestedKeys(), 0);
+        final long start = System.currentTimeMillis();
+        list(ParallelS3Objects.inBucket(s3, "bucket").withMaxRequestsPerSecond(100));
+        final long elapsed = System.currentTimeMillis() - start;
+
+        // The root probe, and a listing of each directory
+        assertEquals(11, s3.getRequestCount());
+        assertTrue("Took " + elapsed + " ms", elapsed >= 90);
+    }
+
+    @Test
+    public void testRethrowsListingErrors() {
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(nestedKeys(), 0);
+        s3.failPrefix("dir4/");
+        try {
+            list(ParallelS3Objects.inBucket(s3, "bucket"));
+            fail("Expected AmazonS3Exception");
+        } catch (final AmazonS3Exception expected) {
+            assertEquals("Internal Error", expected.getErrorMessage());
+        }
+    }
+
+    @Test
+    public void testCloseStopsListing() throws Exception {
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(nestedKeys(), 5);
+        final ParallelS3Objects.ParallelObjectIterator iter = ParallelS3Objects
+                .inBucket(s3, "bucket").withBatchSize(1).withMaxConcurrency(2)
+                .withBufferedPages(1).iterator();
+        assertTrue(iter.hasNext());
+        iter.close();
+        assertFalse(iter.hasNext());
+
+        Thread.sleep(50);
+        final int requestCount = s3.getRequestCount();
+        Thread.sleep(100);
+        assertEquals(requestCount, s3.getRequestCount());
+    }
+
+    @Test
+    public void testKeyOrderIsCodePointOrder() {
+        // U+FF5E sorts before U+1F600 in UTF-8, but not in UTF-16
+        final String fullwidthTilde = "～";
+        final String emoji = new String(Character.toChars(0x1f600));
+        assertTrue(ParallelS3Objects.KEY_ORDER.compare(fullwidthTilde, emoji) < 0);
+        assertTrue(ParallelS3Objects.KEY_ORDER.compare("a", "ab") < 0);
+        assertEquals(0, ParallelS3Objects.KEY_ORDER.compare("ab", "ab"));
+
+        final Set<String> keys = new HashSet<String>(Arrays.asList(
+                "k/" + emoji, "k/" + fullwidthTilde, "k/a"));
+        final InMemoryListingS3Client s3 = new InMemoryListingS3Client(keys, 0);
+        assertEquals(Arrays.asList("k/a", "k/" + fullwidthTilde, "k/" + emoji),
+                list(ParallelS3Objects.inBucket(s3, "bucket").withSortedOutput(true)));
+    }
+}
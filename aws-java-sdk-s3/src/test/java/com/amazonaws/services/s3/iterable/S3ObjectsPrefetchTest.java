@@ -0,0 +1,165 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.services.s3.iterable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class S3ObjectsPrefetchTest extends S3ObjectsTestCommon {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        s3Objects = S3Objects.withPrefix(s3, "my-bucket", "photos/")
+                .withPrefetchDepth(2)
+                .withPrefetchExecutor(executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testStoresPrefetchSettings() {
+        assertEquals(2, s3Objects.getPrefetchDepth());
+        assertSame(executor, s3Objects.getPrefetchExecutor());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativePrefetchDepth() {
+        s3Objects.withPrefetchDepth(-1);
+    }
+
+    @Test
+    public void testIteratesAllPagesInOrder() {
+        final AtomicInteger listed = stubPages(10, 3);
+
+        final Iterator<S3ObjectSummary> iter = s3Objects.iterator();
+        for (int i = 0; i < 30; i++) {
+            assertTrue(iter.hasNext());
+            assertEquals("key-" + i, iter.next().getKey());
+        }
+        assertFalse(iter.hasNext());
+        assertEquals(10, listed.get());
+    }
+
+    @Test
+    public void testFetchesAtMostDepthPagesAhead() throws Exception {
+        final AtomicInteger listed = stubPages(Integer.MAX_VALUE, 1);
+
+        final Iterator<S3ObjectSummary> iter = s3Objects.iterator();
+        iter.next();
+        // The current page, and two prefetched pages
+        waitFor(listed, 3);
+        Thread.sleep(100);
+        assertEquals(3, listed.get());
+
+        iter.next();
+        waitFor(listed, 4);
+        Thread.sleep(100);
+        assertEquals(4, listed.get());
+    }
+
+    @Test
+    public void testRethrowsListingErrors() {
+        final ObjectListing firstPage = page(0, 1, true);
+        when(s3.listObjects(any(ListObjectsRequest.class))).thenReturn(firstPage);
+        final AmazonS3Exception error = new AmazonS3Exception("Slow Down");
+        when(s3.listNextBatchOfObjects(firstPage)).thenThrow(error);
+
+        final Iterator<S3ObjectSummary> iter = s3Objects.iterator();
+        assertEquals("key-0", iter.next().getKey());
+        try {
+            iter.hasNext();
+            fail("Expected AmazonS3Exception");
+        } catch (final AmazonS3Exception expected) {
+            assertSame(error, expected);
+        }
+    }
+
+    /**
+     * Stubs a listing of the given number of pages, of the given number of
+     * keys each.
+     *
+     * @return the number of pages listed so far.
+     */
+    private AtomicInteger stubPages(final int pageCount, final int pageSize) {
+        final AtomicInteger listed = new AtomicInteger();
+        when(s3.listObjects(any(ListObjectsRequest.class))).thenAnswer(
+                new Answer<ObjectListing>() {
+                    @Override
+                    public ObjectListing answer(InvocationOnMock invocation) {
+                        listed.incrementAndGet();
+                        return page(0, pageSize, pageCount > 1);
+                    }
+                });
+        when(s3.listNextBatchOfObjects(any(ObjectListing.class))).thenAnswer(
+                new Answer<ObjectListing>() {
+                    @Override
+                    public ObjectListing answer(InvocationOnMock invocation) {
+                        final ObjectListing previous = (ObjectListing) invocation.getArguments()[0];
+                        final int index = Integer.parseInt(previous.getNextMarker()) + 1;
+                        listed.incrementAndGet();
+                        return page(index, pageSize, index < pageCount - 1);
+                    }
+                });
+        return listed;
+    }
+
+    private static ObjectListing page(int index, int pageSize, boolean truncated) {
+        final ObjectListing listing = new ObjectListing();
+        for (int i = 0; i < pageSize; i++) {
+            final S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setKey("key-" + (index * pageSize + i));
+            listing.getObjectSummaries().add(summary);
+        }
+        listing.setNextMarker(String.valueOf(index));
+        listing.setTruncated(truncated);
+        return listing;
+    }
+
+    private static void waitFor(AtomicInteger count, int expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (count.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, count.get());
+    }
+}
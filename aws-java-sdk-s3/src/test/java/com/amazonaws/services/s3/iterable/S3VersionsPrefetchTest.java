@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.services.s3.iterable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.model.ListVersionsRequest;
+import com.amazonaws.services.s3.model.S3VersionSummary;
+import com.amazonaws.services.s3.model.VersionListing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+public class S3VersionsPrefetchTest extends S3VersionsTestCommon {
+
+    @Before
+    public void setUp() throws Exception {
+        s3Versions = S3Versions.withPrefix(s3, "my-bucket", "photos/").withPrefetchDepth(1);
+    }
+
+    @Test
+    public void testStoresPrefetchDepth() {
+        assertEquals(1, s3Versions.getPrefetchDepth());
+    }
+
+    @Test
+    public void testIteratesAllPagesInOrder() {
+        final VersionListing firstPage = page(0, true);
+        final VersionListing secondPage = page(1, true);
+        final VersionListing thirdPage = page(2, false);
+        when(s3.listVersions(any(ListVersionsRequest.class))).thenReturn(firstPage);
+        when(s3.listNextBatchOfVersions(firstPage)).thenReturn(secondPage);
+        when(s3.listNextBatchOfVersions(secondPage)).thenReturn(thirdPage);
+
+        final Iterator<S3VersionSummary> iter = s3Versions.iterator();
+        for (int i = 0; i < 6; i++) {
+            assertTrue(iter.hasNext());
+            assertEquals("version-" + i, iter.next().getVersionId());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    private static VersionListing page(int index, boolean truncated) {
+        final VersionListing listing = new VersionListing();
+        for (int i = 0; i < 2; i++) {
+            final S3VersionSummary summary = new S3VersionSummary();
+            summary.setKey("photos/key");
+            summary.setVersionId("version-" + (index * 2 + i));
+            listing.getVersionSummaries().add(summary);
+        }
+        listing.setTruncated(truncated);
+        return listing;
+    }
+}
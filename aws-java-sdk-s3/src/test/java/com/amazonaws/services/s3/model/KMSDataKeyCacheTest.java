@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.kms.AWSKMSClient;
+import com.amazonaws.services.kms.model.DecryptRequest;
+import com.amazonaws.services.kms.model.DecryptResult;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyResult;
+import com.amazonaws.util.BinaryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+public class KMSDataKeyCacheTest {
+
+    private CountingKMSClient kms;
+    private KMSDataKeyCache cache;
+
+    @Before
+    public void setUp() {
+        kms = new CountingKMSClient();
+        cache = new KMSDataKeyCache();
+    }
+
+    private static GenerateDataKeyRequest keyRequest(String context) {
+        return new GenerateDataKeyRequest()
+                .withKeyId("cmk")
+                .withKeySpec("AES_256")
+                .withEncryptionContext(Collections.singletonMap("kms_cmk_id", context));
+    }
+
+    private byte[] generate(String context, long length) {
+        return BinaryUtils.copyAllBytesFrom(
+                cache.generateDataKey(kms, keyRequest(context), length).getPlaintext());
+    }
+
+    private byte[] decrypt(byte[] ciphertextBlob, String context) {
+        final DecryptResult result = cache.decrypt(kms, new DecryptRequest()
+                .withCiphertextBlob(ByteBuffer.wrap(ciphertextBlob))
+                .withEncryptionContext(Collections.singletonMap("kms_cmk_id", context)));
+        return BinaryUtils.copyAllBytesFrom(result.getPlaintext());
+    }
+
+    @Test
+    public void testReusesGeneratedKeyUpToMaxUses() {
+        cache.setMaxUses(2);
+        final byte[] first = generate("a", 10);
+        assertArrayEquals(first, generate("a", 10));
+        assertEquals(1, kms.generated);
+
+        assertFalse(BinaryUtils.toHex(first).equals(BinaryUtils.toHex(generate("a", 10))));
+        assertEquals(2, kms.generated);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testSeparatesKeysByEncryptionContext() {
+        generate("a", 10);
+        generate("b", 10);
+        generate("a", 10);
+        assertEquals(2, kms.generated);
+    }
+
+    @Test
+    public void testLimitsBytesPerKey() {
+        cache.setMaxBytes(100);
+        generate("a", 60);
+        generate("a", 40);
+        assertEquals(1, kms.generated);
+        generate("a", 1);
+        assertEquals(2, kms.generated);
+
+        // The length of a multipart upload isn't known in advance
+        generate("a", -1);
+        generate("a", -1);
+        assertEquals(4, kms.generated);
+    }
+
+    @Test
+    public void testExpiresKeys() throws InterruptedException {
+        cache.setMaxAgeMillis(1);
+        generate("a", 10);
+        Thread.sleep(5);
+        generate("a", 10);
+        assertEquals(2, kms.generated);
+    }
+
+    @Test
+    public void testCachesDecryptedKeys() {
+        final byte[] blob = new byte[] { 1, 2, 3 };
+        final byte[] plaintext = decrypt(blob, "a");
+        assertArrayEquals(plaintext, decrypt(blob, "a"));
+        assertEquals(1, kms.decrypted);
+
+        // KMS would refuse a different encryption context
+        decrypt(blob, "b");
+        assertEquals(2, kms.decrypted);
+    }
+
+    @Test
+    public void testGeneratedKeysAreDecryptable() {
+        final GenerateDataKeyResult result = cache.generateDataKey(kms, keyRequest("a"), 10);
+        final byte[] plaintext = decrypt(BinaryUtils.copyAllBytesFrom(result.getCiphertextBlob()),
+                "a");
+        assertArrayEquals(BinaryUtils.copyAllBytesFrom(result.getPlaintext()), plaintext);
+        assertEquals(0, kms.decrypted);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedKeys() {
+        cache.setMaxEntries(2);
+        generate("a", 10);
+        generate("b", 10);
+        generate("a", 10);
+        generate("c", 10);
+        assertEquals(3, kms.generated);
+        generate("a", 10);
+        assertEquals(3, kms.generated);
+        generate("b", 10);
+        assertEquals(4, kms.generated);
+
+        cache.clear();
+        generate("a", 10);
+        assertEquals(5, kms.generated);
+    }
+
+    /**
+     * A KMS client that makes up keys and counts the calls made to it.
+     */
+    private static class CountingKMSClient extends AWSKMSClient {
+        private int generated;
+        private int decrypted;
+
+        CountingKMSClient() {
+            super(new BasicAWSCredentials("access", "secret"));
+        }
+
+        @Override
+        public GenerateDataKeyResult generateDataKey(GenerateDataKeyRequest request) {
+            generated++;
+            final byte[] plaintext = new byte[32];
+            plaintext[0] = (byte) generated;
+            final byte[] blob = new byte[] { (byte) generated, 42 };
+            return new GenerateDataKeyResult()
+                    .withKeyId(request.getKeyId())
+                    .withPlaintext(ByteBuffer.wrap(plaintext))
+                    .withCiphertextBlob(ByteBuffer.wrap(blob));
+        }
+
+        @Override
+        public DecryptResult decrypt(DecryptRequest request) {
+            decrypted++;
+            final Map<String, String> context = request.getEncryptionContext();
+            final byte[] plaintext = new byte[32];
+            plaintext[0] = (byte) context.hashCode();
+            plaintext[1] = (byte) decrypted;
+            return new DecryptResult().withPlaintext(ByteBuffer.wrap(plaintext));
+        }
+    }
+}